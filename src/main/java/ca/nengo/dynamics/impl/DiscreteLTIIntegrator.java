@@ -0,0 +1,255 @@
+package ca.nengo.dynamics.impl;
+
+import java.util.Arrays;
+
+import ca.nengo.dynamics.DynamicalSystem;
+import ca.nengo.dynamics.Integrator;
+import ca.nengo.model.Units;
+import ca.nengo.util.TimeSeries;
+import ca.nengo.util.impl.TimeSeriesImpl;
+
+/**
+ * <p>Exact integration of linear time-invariant systems, with each input value held constant until
+ * the next input time (zero-order hold). For a given step size dt the system is discretized once, as
+ * x(t+dt) = Ad x(t) + Bd u(t), where Ad = exp(A dt) and Bd is the integral of exp(A s) B over the step.
+ * Discretizations of the last few step sizes are cached, so that each step is a single matrix-vector
+ * product, with no sub-steps.</p>
+ *
+ * <p>Only instances of LTISystem and SimpleLTISystem themselves are treated as time-invariant (a subclass
+ * may override getA(t) etc.). Other systems are passed to a fallback integrator.</p>
+ */
+public class DiscreteLTIIntegrator implements Integrator {
+
+	private static final long serialVersionUID = 1L;
+
+	private static final int ourCacheSize = 4;
+
+	private Integrator myFallback;
+
+	//recently used discretizations, most recent first (copied on write, so can be shared between threads)
+	private transient volatile Discretization[] myCache;
+
+	/**
+	 * @param fallback Integrator for systems that are not LTI
+	 */
+	public DiscreteLTIIntegrator(Integrator fallback) {
+		myFallback = fallback;
+	}
+
+	/**
+	 * Uses an EulerIntegrator with default step size for systems that are not LTI.
+	 */
+	public DiscreteLTIIntegrator() {
+		this(new EulerIntegrator());
+	}
+
+	/**
+	 * @return Integrator for systems that are not LTI
+	 */
+	public Integrator getFallback() {
+		return myFallback;
+	}
+
+	/**
+	 * @param fallback Integrator for systems that are not LTI
+	 */
+	public void setFallback(Integrator fallback) {
+		myFallback = fallback;
+	}
+
+	/**
+	 * Each input value is held constant until the next input time. The output is given at each input time.
+	 *
+	 * @see ca.nengo.dynamics.Integrator#integrate(ca.nengo.dynamics.DynamicalSystem, ca.nengo.util.TimeSeries)
+	 */
+	public TimeSeries integrate(DynamicalSystem system, TimeSeries input) {
+		if (system.getClass() != LTISystem.class && system.getClass() != SimpleLTISystem.class) {
+			return myFallback.integrate(system, input);
+		}
+
+		LTISystem lti = (LTISystem) system;
+		float[][] A = lti.getA();
+		float[][] B = lti.getB();
+
+		float[] times = input.getTimes();
+		float[][] inputs = input.getValues();
+		float[][] values = new float[times.length][];
+
+		//copy the state so that it can be updated in place (the system may share its state array)
+		float[] x = lti.getState().clone();
+		float[] next = new float[x.length];
+		lti.setState(x);
+		values[0] = system.g(times[0], inputs[0]);
+
+		for (int k = 1; k < times.length; k++) {
+			Discretization d = getDiscretization(A, B, times[k] - times[k-1]);
+			float[] u = inputs[k-1];
+			for (int i = 0; i < x.length; i++) {
+				float[] adRow = d.Ad[i];
+				float[] bdRow = d.Bd[i];
+				float sum = 0;
+				for (int j = 0; j < x.length; j++) {
+					sum += adRow[j] * x[j];
+				}
+				for (int j = 0; j < u.length; j++) {
+					sum += bdRow[j] * u[j];
+				}
+				next[i] = sum;
+			}
+			System.arraycopy(next, 0, x, 0, x.length);
+			values[k] = system.g(times[k], inputs[k]);
+		}
+
+		Units[] units = new Units[system.getOutputDimension()];
+		for (int i = 0; i < units.length; i++) {
+			units[i] = system.getOutputUnits(i);
+		}
+
+		return new TimeSeriesImpl(times, values, units);
+	}
+
+	private Discretization getDiscretization(float[][] A, float[][] B, float dt) {
+		Discretization[] cache = myCache;
+		for (int i = 0; cache != null && i < cache.length; i++) {
+			if (cache[i].matches(A, B, dt)) {
+				return cache[i];
+			}
+		}
+
+		Discretization result = new Discretization(A, B, dt);
+		int oldLength = (cache == null) ? 0 : Math.min(cache.length, ourCacheSize - 1);
+		Discretization[] newCache = new Discretization[oldLength + 1];
+		newCache[0] = result;
+		if (oldLength > 0) {
+			System.arraycopy(cache, 0, newCache, 1, oldLength);
+		}
+		myCache = newCache;
+
+		return result;
+	}
+
+	/**
+	 * @param A Dynamics matrix
+	 * @param B Input matrix
+	 * @param dt Step size
+	 * @return {Ad, Bd}, the zero-order-hold discretization of the system over the given step
+	 */
+	public static float[][][] discretize(float[][] A, float[][] B, float dt) {
+		int n = A.length;
+		int p = B[0].length;
+
+		//exp([A B; 0 0] dt) = [Ad Bd; 0 I]
+		double[][] M = new double[n+p][n+p];
+		for (int i = 0; i < n; i++) {
+			for (int j = 0; j < n; j++) {
+				M[i][j] = A[i][j] * (double) dt;
+			}
+			for (int j = 0; j < p; j++) {
+				M[i][n+j] = B[i][j] * (double) dt;
+			}
+		}
+		double[][] E = expm(M);
+
+		float[][] Ad = new float[n][n];
+		float[][] Bd = new float[n][p];
+		for (int i = 0; i < n; i++) {
+			for (int j = 0; j < n; j++) {
+				Ad[i][j] = (float) E[i][j];
+			}
+			for (int j = 0; j < p; j++) {
+				Bd[i][j] = (float) E[i][n+j];
+			}
+		}
+		return new float[][][]{Ad, Bd};
+	}
+
+	//matrix exponential by scaling and squaring of a Taylor series
+	private static double[][] expm(double[][] M) {
+		int n = M.length;
+
+		double norm = 0;
+		for (int i = 0; i < n; i++) {
+			double rowSum = 0;
+			for (int j = 0; j < n; j++) {
+				rowSum += Math.abs(M[i][j]);
+			}
+			norm = Math.max(norm, rowSum);
+		}
+		int squarings = (norm > .5) ? (int) Math.ceil(Math.log(norm / .5) / Math.log(2)) : 0;
+		double scale = Math.pow(2, -squarings);
+
+		double[][] scaled = new double[n][n];
+		double[][] result = new double[n][n];
+		double[][] term = new double[n][n];
+		for (int i = 0; i < n; i++) {
+			for (int j = 0; j < n; j++) {
+				scaled[i][j] = M[i][j] * scale;
+			}
+			result[i][i] = 1;
+			term[i][i] = 1;
+		}
+
+		//with norm <= .5, 20 terms are well past double precision
+		for (int k = 1; k <= 20; k++) {
+			term = prod(term, scaled);
+			for (int i = 0; i < n; i++) {
+				for (int j = 0; j < n; j++) {
+					term[i][j] /= k;
+					result[i][j] += term[i][j];
+				}
+			}
+		}
+
+		for (int s = 0; s < squarings; s++) {
+			result = prod(result, result);
+		}
+		return result;
+	}
+
+	private static double[][] prod(double[][] X, double[][] Y) {
+		int n = X.length;
+		double[][] result = new double[n][n];
+		for (int i = 0; i < n; i++) {
+			for (int k = 0; k < n; k++) {
+				double x = X[i][k];
+				if (x != 0) {
+					for (int j = 0; j < n; j++) {
+						result[i][j] += x * Y[k][j];
+					}
+				}
+			}
+		}
+		return result;
+	}
+
+	@Override
+	public Integrator clone() throws CloneNotSupportedException {
+		DiscreteLTIIntegrator result = (DiscreteLTIIntegrator) super.clone();
+		result.myFallback = myFallback.clone();
+		return result;
+	}
+
+	//discretization of a system for one step size
+	private static class Discretization {
+
+		private final float[][] A;
+		private final float[][] B;
+		private final float dt;
+		private final float[][] Ad;
+		private final float[][] Bd;
+
+		public Discretization(float[][] A, float[][] B, float dt) {
+			this.A = A;
+			this.B = B;
+			this.dt = dt;
+			float[][][] discrete = discretize(A, B, dt);
+			Ad = discrete[0];
+			Bd = discrete[1];
+		}
+
+		public boolean matches(float[][] A, float[][] B, float dt) {
+			return this.dt == dt && Arrays.deepEquals(this.A, A) && Arrays.deepEquals(this.B, B);
+		}
+	}
+
+}
@@ -54,6 +54,16 @@ public interface LinearApproximator extends Serializable, Cloneable {
 	 */
 	public float[] findCoefficients(Function target);
 
+	/**
+	 * Finds coefficients for several targets at once. This gives the same results as separate
+	 * calls to findCoefficients(Function), but may be faster, because work that doesn't depend
+	 * on the target can be shared.
+	 *
+	 * @param targets Functions to approximate
+	 * @return Coefficients for each target (the first dimension is the target)
+	 */
+	public float[][] findCoefficients(Function[] targets);
+
 	/**
 	 * @return Valid clone
 	 * @throws CloneNotSupportedException if clone can't be made
@@ -37,6 +37,7 @@ import java.util.Random;
 public class PDFTools {
 	
 	private static final Random ourRandom = new Random();
+	private static final ThreadLocal<Random> ourThreadRandom = new ThreadLocal<Random>();
 
 	/**
 	 * Note: PDF treated as univariate (only first dimension considered). 
@@ -76,7 +77,8 @@ public class PDFTools {
 	 * @return A random sample between 0 and 1
 	 */
 	public static double random() {
-		return ourRandom.nextDouble();
+		Random random = ourThreadRandom.get();
+		return (random == null) ? ourRandom.nextDouble() : random.nextDouble();
 	}
 	
 	/**
@@ -86,4 +88,27 @@ public class PDFTools {
 		ourRandom.setSeed(seed);
 	}
 	
+	/**
+	 * Gives the current thread its own source for random(), so that work on the thread (eg 
+	 * building an ensemble) can be reproduced whatever other threads are doing. While it is set, 
+	 * ParallelLoops started on the thread run on the thread alone, so that all random() calls 
+	 * in them use this source, in order. 
+	 * 
+	 * @param random Source of random() on the current thread (null to go back to the shared source)
+	 */
+	public static void setThreadRandom(Random random) {
+		if (random == null) {
+			ourThreadRandom.remove();
+		} else {
+			ourThreadRandom.set(random);
+		}
+	}
+	
+	/**
+	 * @return Source of random() on the current thread, or null if the shared source is used
+	 */
+	public static Random getThreadRandom() {
+		return ourThreadRandom.get();
+	}
+	
 }
@@ -0,0 +1,173 @@
+package ca.nengo.math.impl;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import ca.nengo.math.ApproximatorFactory;
+import ca.nengo.math.Function;
+import ca.nengo.math.LinearApproximator;
+import ca.nengo.util.MU;
+
+/**
+ * <p>Wraps another ApproximatorFactory so that coefficients are looked up in a DecoderCache before
+ * they are found. The wrapped factory's approximator isn't made until there is a miss, so if every
+ * target is in the cache, the cost of building it (eg forming and inverting a correlation matrix) is
+ * avoided entirely.</p>
+ *
+ * <p>Entries are keyed by a hash of the wrapped factory (including its settings, eg noise and number of
+ * singular values), the evaluation points, the component function values (which reflect the neurons and
+ * encoders), and the target function. Factories and functions that can't be serialized aren't cached.</p>
+ */
+public class CachingApproximatorFactory implements ApproximatorFactory {
+
+	private static final long serialVersionUID = 1L;
+
+	private ApproximatorFactory myFactory;
+	private transient DecoderCache myCache;
+
+	/**
+	 * @param factory Factory that makes approximators on cache misses
+	 * @param cache Cache in which coefficients are stored
+	 */
+	public CachingApproximatorFactory(ApproximatorFactory factory, DecoderCache cache) {
+		myFactory = factory;
+		myCache = cache;
+	}
+
+	/**
+	 * @return Factory that makes approximators on cache misses
+	 */
+	public ApproximatorFactory getFactory() {
+		return myFactory;
+	}
+
+	/**
+	 * @return Cache in which coefficients are stored
+	 */
+	public DecoderCache getCache() {
+		return myCache;
+	}
+
+	/**
+	 * @see ca.nengo.math.ApproximatorFactory#getApproximator(float[][], float[][])
+	 */
+	public LinearApproximator getApproximator(float[][] evalPoints, float[][] values) {
+		String key = new DecoderCache.Key().add(myFactory).add(evalPoints).add(values).finish();
+		return new CachingApproximator(myFactory, myCache, key, evalPoints, values);
+	}
+
+	@Override
+	public ApproximatorFactory clone() throws CloneNotSupportedException {
+		CachingApproximatorFactory result = (CachingApproximatorFactory) super.clone();
+		result.myFactory = myFactory.clone();
+		return result;
+	}
+
+	/**
+	 * A LinearApproximator that finds coefficients in a DecoderCache if possible, otherwise
+	 * with an approximator from another factory.
+	 */
+	public static class CachingApproximator implements LinearApproximator {
+
+		private static final long serialVersionUID = 1L;
+
+		private ApproximatorFactory myFactory;
+		private transient DecoderCache myCache;
+		private final String myKey; //null if not cacheable
+		private float[][] myEvalPoints;
+		private float[][] myValues;
+		private LinearApproximator myApproximator; //made on first miss
+
+		/**
+		 * @param factory Factory that makes an approximator on the first cache miss
+		 * @param cache Cache in which coefficients are stored
+		 * @param key Hash of the factory and component functions (null to bypass the cache)
+		 * @param evalPoints Points at which component functions are evaluated
+		 * @param values Values of component functions at the evalPoints
+		 */
+		public CachingApproximator(ApproximatorFactory factory, DecoderCache cache, String key, float[][] evalPoints, float[][] values) {
+			myFactory = factory;
+			myCache = cache;
+			myKey = key;
+			myEvalPoints = evalPoints;
+			myValues = values;
+		}
+
+		/**
+		 * @see ca.nengo.math.LinearApproximator#findCoefficients(ca.nengo.math.Function)
+		 */
+		public float[] findCoefficients(Function target) {
+			return findCoefficients(new Function[]{target})[0];
+		}
+
+		/**
+		 * Targets that aren't in the cache are found with one batch call to the wrapped approximator.
+		 *
+		 * @see ca.nengo.math.LinearApproximator#findCoefficients(ca.nengo.math.Function[])
+		 */
+		public float[][] findCoefficients(Function[] targets) {
+			float[][] result = new float[targets.length][];
+			String[] keys = new String[targets.length];
+			List<Integer> misses = new ArrayList<Integer>();
+			for (int t = 0; t < targets.length; t++) {
+				keys[t] = (myKey == null || myCache == null) ? null : new DecoderCache.Key().add(myKey).add(targets[t]).finish();
+				result[t] = (keys[t] == null) ? null : myCache.get(keys[t]);
+				if (result[t] == null || result[t].length != myValues.length) {
+					misses.add(Integer.valueOf(t));
+				}
+			}
+
+			if (!misses.isEmpty()) {
+				Function[] missed = new Function[misses.size()];
+				for (int i = 0; i < missed.length; i++) {
+					missed[i] = targets[misses.get(i).intValue()];
+				}
+				float[][] found = getApproximator().findCoefficients(missed);
+				for (int i = 0; i < missed.length; i++) {
+					int t = misses.get(i).intValue();
+					result[t] = found[i];
+					if (keys[t] != null) {
+						myCache.put(keys[t], found[i]);
+					}
+				}
+			}
+			return result;
+		}
+
+		/**
+		 * @return The wrapped factory's approximator (made if necessary)
+		 */
+		public synchronized LinearApproximator getApproximator() {
+			if (myApproximator == null) {
+				myApproximator = myFactory.getApproximator(myEvalPoints, myValues);
+			}
+			return myApproximator;
+		}
+
+		/**
+		 * @see ca.nengo.math.LinearApproximator#getEvalPoints()
+		 */
+		public float[][] getEvalPoints() {
+			return myEvalPoints;
+		}
+
+		/**
+		 * @see ca.nengo.math.LinearApproximator#getValues()
+		 */
+		public float[][] getValues() {
+			return myValues;
+		}
+
+		@Override
+		public LinearApproximator clone() throws CloneNotSupportedException {
+			CachingApproximator result = (CachingApproximator) super.clone();
+			result.myEvalPoints = MU.clone(myEvalPoints);
+			result.myValues = MU.clone(myValues);
+			if (myApproximator != null) {
+				result.myApproximator = myApproximator.clone();
+			}
+			return result;
+		}
+	}
+
+}
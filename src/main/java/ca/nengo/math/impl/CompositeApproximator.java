@@ -112,6 +112,35 @@ public class CompositeApproximator implements LinearApproximator {
 		return result;
 	}
 
+	/**
+	 * Finds coefficients for all targets with one batch call to each component.
+	 *
+	 * @see ca.nengo.math.LinearApproximator#findCoefficients(ca.nengo.math.Function[])
+	 */
+	public float[][] findCoefficients(Function[] targets) {
+		float[][][] compCoeffs = new float[myDimensions.length][][];
+		int length = 0;
+		for (int i = 0; i < myDimensions.length; i++) {
+			Function[] f = new Function[targets.length];
+			for (int t = 0; t < targets.length; t++) {
+				f[t] = new FunctionWrapper(targets[t], myDimensions[i]);
+			}
+			compCoeffs[i] = myComponents[i].findCoefficients(f);
+			length += (targets.length > 0) ? compCoeffs[i][0].length : 0;
+		}
+
+		float[][] result = new float[targets.length][length];
+		for (int t = 0; t < targets.length; t++) {
+			int offset = 0;
+			for (int i = 0; i < myDimensions.length; i++) {
+				System.arraycopy(compCoeffs[i][t], 0, result[t], offset, compCoeffs[i][t].length);
+				offset += compCoeffs[i][t].length;
+			}
+		}
+
+		return result;
+	}
+
 	private static class FunctionWrapper extends AbstractFunction {
 
 		private static final long serialVersionUID = 1L;
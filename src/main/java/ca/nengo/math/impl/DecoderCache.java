@@ -0,0 +1,311 @@
+package ca.nengo.math.impl;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Comparator;
+
+import org.apache.log4j.Logger;
+
+/**
+ * <p>A store of coefficients (eg decoders) on disk, so that they needn't be found again when a model
+ * is rebuilt. Entries are named by a hash of everything the coefficients depend on (see
+ * CachingApproximatorFactory), so a changed ensemble or function simply misses the cache.</p>
+ *
+ * <p>The total size of the entries is limited. When the limit is exceeded, the least recently used
+ * entries (by file modification time, which is updated on each hit) are deleted.</p>
+ *
+ * <p>If a default cache is set, NEF ensembles use it when finding decoders.</p>
+ */
+public class DecoderCache {
+
+	private static Logger ourLogger = Logger.getLogger(DecoderCache.class);
+
+	private static final String ourSuffix = ".dec";
+	private static DecoderCache ourDefault;
+
+	private final File myDirectory;
+	private final long myMaxBytes;
+	private int myNumHits;
+	private int myNumMisses;
+
+	/**
+	 * @param directory Directory in which entries are stored (created if necessary)
+	 * @param maxBytes Maximum total size of the entries
+	 */
+	public DecoderCache(File directory, long maxBytes) {
+		myDirectory = directory;
+		myMaxBytes = maxBytes;
+	}
+
+	/**
+	 * @return Cache used by NEF ensembles, or null if decoders aren't cached (the default)
+	 */
+	public static DecoderCache getDefault() {
+		return ourDefault;
+	}
+
+	/**
+	 * @param cache Cache used by NEF ensembles (null to stop caching)
+	 */
+	public static void setDefault(DecoderCache cache) {
+		ourDefault = cache;
+	}
+
+	/**
+	 * @return Directory in which entries are stored
+	 */
+	public File getDirectory() {
+		return myDirectory;
+	}
+
+	/**
+	 * @return Maximum total size of the entries
+	 */
+	public long getMaxBytes() {
+		return myMaxBytes;
+	}
+
+	/**
+	 * @return Number of times get() has found an entry
+	 */
+	public synchronized int getNumHits() {
+		return myNumHits;
+	}
+
+	/**
+	 * @return Number of times get() hasn't found an entry
+	 */
+	public synchronized int getNumMisses() {
+		return myNumMisses;
+	}
+
+	/**
+	 * @param key Hash of whatever the coefficients depend on
+	 * @return Coefficients stored under the key, or null if there are none
+	 */
+	public synchronized float[] get(String key) {
+		File file = getFile(key);
+		if (!file.exists()) {
+			myNumMisses++;
+			return null;
+		}
+
+		try {
+			DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+			try {
+				float[] result = new float[in.readInt()];
+				for (int i = 0; i < result.length; i++) {
+					result[i] = in.readFloat();
+				}
+				file.setLastModified(System.currentTimeMillis());
+				myNumHits++;
+				return result;
+			} finally {
+				in.close();
+			}
+		} catch (IOException e) {
+			ourLogger.warn("Can't read cached decoders from " + file, e);
+			file.delete();
+			myNumMisses++;
+			return null;
+		}
+	}
+
+	/**
+	 * @param key Hash of whatever the coefficients depend on
+	 * @param coefficients Coefficients to store
+	 */
+	public synchronized void put(String key, float[] coefficients) {
+		if (!myDirectory.exists() && !myDirectory.mkdirs()) {
+			ourLogger.warn("Can't create decoder cache directory " + myDirectory);
+			return;
+		}
+
+		//written under another name first so that other processes never see part of an entry
+		File temp = new File(myDirectory, key + ".tmp" + System.nanoTime());
+		try {
+			DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp)));
+			try {
+				out.writeInt(coefficients.length);
+				for (float coefficient : coefficients) {
+					out.writeFloat(coefficient);
+				}
+			} finally {
+				out.close();
+			}
+			File file = getFile(key);
+			file.delete();
+			if (!temp.renameTo(file)) {
+				temp.delete();
+			}
+		} catch (IOException e) {
+			ourLogger.warn("Can't write decoders to cache", e);
+			temp.delete();
+		}
+
+		evict();
+	}
+
+	/**
+	 * Deletes all entries.
+	 */
+	public synchronized void clear() {
+		for (File file : getEntries()) {
+			file.delete();
+		}
+	}
+
+	/**
+	 * @return Total size of the entries (bytes)
+	 */
+	public synchronized long getSize() {
+		long result = 0;
+		for (File file : getEntries()) {
+			result += file.length();
+		}
+		return result;
+	}
+
+	//deletes least recently used entries until the size is within the limit
+	private void evict() {
+		File[] entries = getEntries();
+		long size = 0;
+		for (File file : entries) {
+			size += file.length();
+		}
+		if (size <= myMaxBytes) {
+			return;
+		}
+
+		Arrays.sort(entries, new Comparator<File>() {
+			public int compare(File a, File b) {
+				long difference = a.lastModified() - b.lastModified();
+				return (difference < 0) ? -1 : (difference > 0 ? 1 : 0);
+			}
+		});
+		for (int i = 0; i < entries.length && size > myMaxBytes; i++) {
+			size -= entries[i].length();
+			entries[i].delete();
+		}
+	}
+
+	private File[] getEntries() {
+		File[] result = myDirectory.listFiles();
+		if (result == null) {
+			return new File[0];
+		}
+
+		int n = 0;
+		for (File file : result) {
+			if (file.getName().endsWith(ourSuffix)) {
+				result[n++] = file;
+			}
+		}
+		return Arrays.copyOf(result, n);
+	}
+
+	private File getFile(String key) {
+		return new File(myDirectory, key + ourSuffix);
+	}
+
+	/**
+	 * Builds cache keys from the things that coefficients depend on.
+	 */
+	public static class Key {
+
+		private final MessageDigest myDigest;
+		private boolean myValid;
+
+		/**
+		 * Starts an empty key.
+		 */
+		public Key() {
+			try {
+				myDigest = MessageDigest.getInstance("SHA-1");
+			} catch (NoSuchAlgorithmException e) {
+				throw new RuntimeException("SHA-1 isn't available", e);
+			}
+			myValid = true;
+		}
+
+		/**
+		 * @param values Values to add to the key
+		 * @return This key
+		 */
+		public Key add(float[][] values) {
+			ByteBuffer buffer = ByteBuffer.allocate(4);
+			for (float[] row : values) {
+				if (buffer.capacity() < row.length * 4 + 4) {
+					buffer = ByteBuffer.allocate(row.length * 4 + 4);
+				}
+				buffer.clear();
+				buffer.putInt(row.length);
+				buffer.asFloatBuffer().put(row);
+				myDigest.update(buffer.array(), 0, row.length * 4 + 4);
+			}
+			return this;
+		}
+
+		/**
+		 * @param object A serializable object to add to the key, by its serialized form. If it can't be
+		 * 		serialized, the key becomes invalid.
+		 * @return This key
+		 */
+		public Key add(Object object) {
+			try {
+				ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+				ObjectOutputStream out = new ObjectOutputStream(bytes);
+				out.writeObject(object);
+				out.close();
+				myDigest.update(bytes.toByteArray());
+			} catch (IOException e) {
+				myValid = false;
+			}
+			return this;
+		}
+
+		/**
+		 * @param text Text to add to the key
+		 * @return This key
+		 */
+		public Key add(String text) {
+			try {
+				myDigest.update(text.getBytes("UTF-8"));
+			} catch (java.io.UnsupportedEncodingException e) {
+				throw new RuntimeException(e);
+			}
+			return this;
+		}
+
+		/**
+		 * @return The key as a hexadecimal string, or null if something added couldn't be serialized.
+		 * 		The key can't be added to afterwards.
+		 */
+		public String finish() {
+			byte[] hash = myDigest.digest();
+			if (!myValid) {
+				return null;
+			}
+
+			StringBuilder result = new StringBuilder(hash.length * 2);
+			for (byte b : hash) {
+				result.append(Character.forDigit((b >> 4) & 0xf, 16));
+				result.append(Character.forDigit(b & 0xf, 16));
+			}
+			return result.toString();
+		}
+	}
+
+}
@@ -0,0 +1,332 @@
+package ca.nengo.math.impl;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.log4j.Logger;
+
+/**
+ * <p>A WeightedCostApproximator.Solver that inverts matrices in a separate, long-lived worker
+ * process (eg one that uses a GPU or a native linear algebra library), so that the solve neither
+ * competes for the Java heap nor requires a new process for each ensemble.</p>
+ *
+ * <p>The worker is started on the first solve and reused until close(). For each solve, the matrix is
+ * written to a file as big-endian 32-bit floats (row-major, as used by the existing
+ * external/pseudoInverse program), and a request line is written to the worker's standard input:</p>
+ *
+ * <pre>SOLVE n inputFile outputFile minSV nSV</pre>
+ *
+ * <p>The worker writes the n x n result to outputFile in the same format, and replies with a line
+ * "DONE" (or "ERROR message") on its standard output. It exits on a line "QUIT" or at the end of its
+ * input.</p>
+ *
+ * <p>If the worker can't be started, fails, or doesn't reply within the timeout, it is stopped and the
+ * matrix is inverted in this process by SVD.</p>
+ *
+ * <p>LocalWorker is a pure-Java worker, for testing.</p>
+ */
+public class ExternalSolver implements WeightedCostApproximator.Solver {
+
+	private static final long serialVersionUID = 1L;
+	private static Logger ourLogger = Logger.getLogger(ExternalSolver.class);
+
+	private static final int ourBufferSize = 1 << 16; //bytes of matrix data buffered for file I/O
+	private static final String ourExited = new String("EXITED"); //marks the end of the worker's replies
+
+	private final String[] myCommand;
+	private final File myDirectory;
+	private long myTimeout;
+
+	private transient Process myProcess;
+	private transient BufferedWriter myRequests;
+	private transient BlockingQueue<String> myResponses;
+	private transient int mySolveCount;
+
+	/**
+	 * @param command Command that starts the worker (program and arguments)
+	 * @param directory Directory in which matrix files are exchanged
+	 */
+	public ExternalSolver(String[] command, File directory) {
+		myCommand = command.clone();
+		myDirectory = directory;
+		myTimeout = 10 * 60 * 1000;
+	}
+
+	/**
+	 * @return A command that runs LocalWorker in a new JVM with the current class path
+	 */
+	public static String[] getLocalWorkerCommand() {
+		String java = System.getProperty("java.home") + File.separator + "bin" + File.separator + "java";
+		return new String[]{java, "-cp", System.getProperty("java.class.path"), LocalWorker.class.getName()};
+	}
+
+	/**
+	 * @return Command that starts the worker
+	 */
+	public String[] getCommand() {
+		return myCommand.clone();
+	}
+
+	/**
+	 * @return Time (ms) to wait for the worker to reply to each request (default 10 minutes)
+	 */
+	public long getTimeout() {
+		return myTimeout;
+	}
+
+	/**
+	 * @param timeout Time (ms) to wait for the worker to reply to each request; if it takes longer,
+	 * 		it is stopped and the matrix is inverted by SVD. Zero or less waits indefinitely.
+	 */
+	public void setTimeout(long timeout) {
+		myTimeout = timeout;
+	}
+
+	/**
+	 * @return Number of matrices inverted by the worker since it was started
+	 */
+	public synchronized int getSolveCount() {
+		return mySolveCount;
+	}
+
+	/**
+	 * @see ca.nengo.math.impl.WeightedCostApproximator.Solver#invert(double[][], float, int, boolean)
+	 */
+	public synchronized double[][] invert(double[][] gamma, float minSV, int nSV, boolean quiet) {
+		String name = "matrix_" + System.nanoTime();
+		File input = new File(myDirectory, name);
+		File output = new File(myDirectory, name + ".inv");
+
+		try {
+			start();
+			writeMatrix(input, gamma);
+			myRequests.write("SOLVE " + gamma.length + " " + input.getAbsolutePath() + " "
+					+ output.getAbsolutePath() + " " + minSV + " " + nSV);
+			myRequests.newLine();
+			myRequests.flush();
+
+			String response = (myTimeout > 0)
+				? myResponses.poll(myTimeout, TimeUnit.MILLISECONDS) : myResponses.take();
+			if (response == null) {
+				throw new IOException("Solver worker did not reply within " + myTimeout + " ms");
+			} else if (response == ourExited) { //identity, so a reply with the same text isn't mistaken for it
+				throw new IOException("Solver worker exited");
+			} else if (!response.equals("DONE")) {
+				throw new IOException("Solver worker failed: " + response);
+			}
+
+			mySolveCount++;
+			return readMatrix(output, gamma.length);
+		} catch (IOException e) {
+			ourLogger.warn("External solver failed; using SVD", e);
+			close();
+			return new WeightedCostApproximator.SVDSolver().invert(gamma, minSV, nSV, quiet);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			ourLogger.warn("Interrupted waiting for external solver; using SVD", e);
+			close();
+			return new WeightedCostApproximator.SVDSolver().invert(gamma, minSV, nSV, quiet);
+		} finally {
+			input.delete();
+			output.delete();
+		}
+	}
+
+	/**
+	 * Stops the worker. It is started again if needed.
+	 */
+	public synchronized void close() {
+		if (myProcess != null) {
+			try {
+				myRequests.write("QUIT");
+				myRequests.newLine();
+				myRequests.close();
+			} catch (IOException e) {
+				//worker has already gone
+			}
+			myProcess.destroy();
+			myProcess = null;
+			myRequests = null;
+			myResponses = null;
+		}
+	}
+
+	private void start() throws IOException {
+		if (myProcess != null) {
+			return;
+		}
+		if (!myDirectory.exists() && !myDirectory.mkdirs()) {
+			throw new IOException("Can't create directory " + myDirectory);
+		}
+
+		myProcess = new ProcessBuilder(myCommand).start();
+		myRequests = new BufferedWriter(new OutputStreamWriter(myProcess.getOutputStream(), "UTF-8"));
+		myResponses = new LinkedBlockingQueue<String>();
+		mySolveCount = 0;
+
+		//replies are read on another thread so that invert() can stop waiting for them
+		final BufferedReader replies = new BufferedReader(new InputStreamReader(myProcess.getInputStream(), "UTF-8"));
+		final BlockingQueue<String> responses = myResponses;
+		Thread reader = new Thread(new Runnable() {
+			public void run() {
+				try {
+					String line;
+					while ((line = replies.readLine()) != null) {
+						responses.add(line);
+					}
+				} catch (IOException e) {
+					//worker has gone
+				}
+				responses.add(ourExited);
+			}
+		}, "Solver worker replies");
+		reader.setDaemon(true);
+		reader.start();
+
+		//error output is copied so the worker never blocks on it
+		final InputStream errors = myProcess.getErrorStream();
+		Thread drain = new Thread(new Runnable() {
+			public void run() {
+				try {
+					byte[] buffer = new byte[1024];
+					int n;
+					while ((n = errors.read(buffer)) >= 0) {
+						System.err.write(buffer, 0, n);
+					}
+				} catch (IOException e) {
+					//worker has gone
+				}
+			}
+		}, "Solver worker errors");
+		drain.setDaemon(true);
+		drain.start();
+	}
+
+	/**
+	 * Writes a square matrix to a file as big-endian floats. The matrix is streamed through a small
+	 * buffer, so no copy of the whole matrix is made. The file isn't memory-mapped, because on some
+	 * platforms (eg Windows) a mapped file can't be deleted until the mapping is garbage collected.
+	 *
+	 * @param file File to write (replaced if it exists)
+	 * @param matrix Square matrix
+	 * @throws IOException if the file can't be written
+	 */
+	public static void writeMatrix(File file, double[][] matrix) throws IOException {
+		file.delete();
+		RandomAccessFile raf = new RandomAccessFile(file, "rw");
+		try {
+			FileChannel channel = raf.getChannel();
+			ByteBuffer buffer = ByteBuffer.allocate(ourBufferSize);
+			buffer.order(ByteOrder.BIG_ENDIAN);
+			for (double[] row : matrix) {
+				for (int j = 0; j < matrix.length; j++) {
+					if (!buffer.hasRemaining()) {
+						write(channel, buffer);
+					}
+					buffer.putFloat((float) row[j]);
+				}
+			}
+			write(channel, buffer);
+		} finally {
+			raf.close();
+		}
+	}
+
+	//writes out and clears the buffer
+	private static void write(FileChannel channel, ByteBuffer buffer) throws IOException {
+		buffer.flip();
+		while (buffer.hasRemaining()) {
+			channel.write(buffer);
+		}
+		buffer.clear();
+	}
+
+	/**
+	 * Reads a square matrix of big-endian floats from a file, streaming it into the result through a
+	 * small buffer (see writeMatrix).
+	 *
+	 * @param file File to read
+	 * @param n Number of rows (and columns)
+	 * @return The matrix
+	 * @throws IOException if the file can't be read or is too short
+	 */
+	public static double[][] readMatrix(File file, int n) throws IOException {
+		RandomAccessFile raf = new RandomAccessFile(file, "r");
+		try {
+			FileChannel channel = raf.getChannel();
+			long size = (long) n * n * 4;
+			if (channel.size() < size) {
+				throw new IOException("Expected " + size + " bytes in " + file + " but found " + channel.size());
+			}
+			ByteBuffer buffer = ByteBuffer.allocate(ourBufferSize);
+			buffer.order(ByteOrder.BIG_ENDIAN);
+			buffer.flip(); //empty
+
+			double[][] result = new double[n][n];
+			for (double[] row : result) {
+				for (int j = 0; j < n; j++) {
+					if (buffer.remaining() < 4) {
+						buffer.compact();
+						while (buffer.position() < 4) {
+							if (channel.read(buffer) < 0) {
+								throw new IOException("Unexpected end of " + file);
+							}
+						}
+						buffer.flip();
+					}
+					row[j] = buffer.getFloat();
+				}
+			}
+			return result;
+		} finally {
+			raf.close();
+		}
+	}
+
+	/**
+	 * A worker that inverts matrices in Java, by SVD. Used to test the protocol and to move solves
+	 * into another JVM (eg one with a larger heap).
+	 */
+	public static class LocalWorker {
+
+		/**
+		 * @param args Ignored
+		 * @throws IOException if standard input or output fail
+		 */
+		public static void main(String[] args) throws IOException {
+			BufferedReader requests = new BufferedReader(new InputStreamReader(System.in, "UTF-8"));
+			WeightedCostApproximator.Solver solver = new WeightedCostApproximator.SVDSolver();
+
+			String request;
+			while ((request = requests.readLine()) != null && !request.equals("QUIT")) {
+				String[] parts = request.split(" ");
+				try {
+					if (parts.length != 6 || !parts[0].equals("SOLVE")) {
+						throw new IllegalArgumentException("Unknown request: " + request);
+					}
+					int n = Integer.parseInt(parts[1]);
+					double[][] matrix = readMatrix(new File(parts[2]), n);
+					double[][] result = solver.invert(matrix, Float.parseFloat(parts[4]), Integer.parseInt(parts[5]), true);
+					writeMatrix(new File(parts[3]), result);
+					System.out.println("DONE");
+				} catch (Exception e) {
+					System.out.println("ERROR " + e.getMessage());
+				}
+				System.out.flush();
+			}
+		}
+	}
+
+}
@@ -167,6 +167,17 @@ public class GradientDescentApproximator implements LinearApproximator {
 		return result;
 	}
 
+	/**
+	 * @see ca.nengo.math.LinearApproximator#findCoefficients(ca.nengo.math.Function[])
+	 */
+	public float[][] findCoefficients(Function[] targets) {
+		float[][] result = new float[targets.length][];
+		for (int t = 0; t < targets.length; t++) {
+			result[t] = findCoefficients(targets[t]);
+		}
+		return result;
+	}
+
 	//finds values of target function at eval points
 	private float[] getTargetValues(Function target) {
 		float[] result = new float[myEvalPoints.length];
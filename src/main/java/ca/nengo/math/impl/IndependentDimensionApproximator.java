@@ -129,6 +129,27 @@ public class IndependentDimensionApproximator implements LinearApproximator {
 		return result;
 	}
 
+	/**
+	 * Targets along the same dimension share one solution.
+	 *
+	 * @see ca.nengo.math.LinearApproximator#findCoefficients(ca.nengo.math.Function[])
+	 */
+	public float[][] findCoefficients(Function[] targets) {
+		float[][] result = new float[targets.length][];
+		float[][] byDimension = new float[myApproximators.length][];
+		for (int t = 0; t < targets.length; t++) {
+			if ( !(targets[t] instanceof IdentityFunction) ) {
+				throw new IllegalArgumentException("Only IdentityFunction supported");
+			}
+			int dim = ((IdentityFunction) targets[t]).getIdentityDimension();
+			if (byDimension[dim] == null) {
+				byDimension[dim] = findCoefficients(targets[t]);
+			}
+			result[t] = byDimension[dim].clone();
+		}
+		return result;
+	}
+
 	@Override
 	public LinearApproximator clone() throws CloneNotSupportedException {
 		IndependentDimensionApproximator result = (IndependentDimensionApproximator) super.clone();
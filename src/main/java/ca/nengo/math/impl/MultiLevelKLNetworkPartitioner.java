@@ -461,6 +461,10 @@ public class MultiLevelKLNetworkPartitioner implements NetworkPartitioner {
 			double minCut = Double.POSITIVE_INFINITY;
 			Set<V> minCutPartition = new HashSet<V>();
 			
+			// best partition with poor balance, used if none is balanced within myBalanceFactor
+			double minImbalance = Double.POSITIVE_INFINITY, minImbalanceCut = Double.POSITIVE_INFINITY;
+			Set<V> minImbalancePartition = null;
+			
 			List<V> startVertexList = new LinkedList<V>(vertexSet);
 			Collections.shuffle(startVertexList);
 			
@@ -531,14 +535,26 @@ public class MultiLevelKLNetworkPartitioner implements NetworkPartitioner {
 				}
 				
 				// compare current partition to the best so far, as long as current partition has decent balance
-				if(Math.abs(balance - 0.5) < myBalanceFactor){
+				double imbalance = Math.abs(balance - 0.5);
+				if(imbalance < myBalanceFactor){
 					if(cutValue < minCut){
 						minCut = cutValue;
 						minCutPartition = partition;
 					}
+				}else if(!partition.isEmpty() && partition.size() < graphSize
+						&& (imbalance < minImbalance || (imbalance == minImbalance && cutValue < minImbalanceCut))){
+					minImbalance = imbalance;
+					minImbalanceCut = cutValue;
+					minImbalancePartition = partition;
 				}
 			}
 			
+			// a few heavy vertices may make a good balance impossible, but an empty side would
+			// leave a partition with nothing in it
+			if(minCutPartition.isEmpty() && minImbalancePartition != null){
+				return minImbalancePartition;
+			}
+			
 			return minCutPartition;
 			
 		}else{
@@ -605,12 +621,14 @@ public class MultiLevelKLNetworkPartitioner implements NetworkPartitioner {
 			
 			Node originNode = projectionOrigin.getNode();
 			
-			//Don't add self loops, since they are irrelevant to the min-cut computation 
-			//(and it allows us to use a SimpleWeightedGraph object).
-			if(originNode != terminationNode){
-				NodeVertex terminationVertex = nodeToVertex.get(terminationNode);  
-				NodeVertex originVertex = nodeToVertex.get(originNode);  
-				
+			NodeVertex terminationVertex = nodeToVertex.get(terminationNode);
+			NodeVertex originVertex = nodeToVertex.get(originNode);
+
+			//Don't add self loops, since they are irrelevant to the min-cut computation
+			//(and it allows us to use a SimpleWeightedGraph object). Also skip projections to or from
+			//nodes that aren't being partitioned (e.g. a NetworkArray whose ensembles were given instead).
+			if(originNode != terminationNode && originVertex != null && terminationVertex != null){
+
 				DefaultWeightedEdge edge = networkGraph.addEdge(originVertex, terminationVertex);
 				int edgeWeight = projectionTermination.getDimensions();
 				
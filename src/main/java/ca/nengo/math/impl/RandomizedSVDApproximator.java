@@ -0,0 +1,413 @@
+package ca.nengo.math.impl;
+
+import java.util.Random;
+
+import org.apache.log4j.Logger;
+
+import Jama.EigenvalueDecomposition;
+import Jama.Matrix;
+import ca.nengo.math.ApproximatorFactory;
+import ca.nengo.math.Function;
+import ca.nengo.math.LinearApproximator;
+import ca.nengo.util.MU;
+import ca.nengo.util.impl.ParallelLoop;
+
+/**
+ * <p>A LinearApproximator that gives (approximately) the same coefficients as WeightedCostApproximator,
+ * for large numbers of components (eg thousands of neurons). Rather than forming and inverting the N x N
+ * correlation matrix (gamma), which takes O(N^3) time, it finds the leading k singular vectors of the
+ * (cost-weighted) N x M matrix of component values by randomized SVD (Halko, Martinsson & Tropp, 2011),
+ * in O(N M k) time, and solves the least-squares problem in that subspace.</p>
+ *
+ * <p>Noise is treated as in StreamingApproximator: the expected effect of the noise on gamma is added to
+ * its eigenvalues, rather than random noise being added to the values.</p>
+ */
+public class RandomizedSVDApproximator implements LinearApproximator {
+
+	private static final long serialVersionUID = 1L;
+	private static Logger ourLogger = Logger.getLogger(RandomizedSVDApproximator.class);
+
+	private static final int ourOversampling = 10; //extra random vectors, for accuracy of the top k
+
+	private float[][] myEvalPoints;
+	private float[][] myValues;
+	private Function myCostFunction;
+	private double[] myWeights;
+	private double[][] myVectors; //leading left singular vectors of the weighted values (first dimension is the vector)
+	private double[] myInverseEigenvalues; //1 / corresponding (regularized) eigenvalue of gamma
+
+	/**
+	 * @param evalPoints Points at which error is evaluated
+	 * @param values Values of the component functions at the evalPoints (first dimension is the component)
+	 * @param costFunction A cost function that weights squared error over the domain of evaluation points
+	 * @param noise Standard deviation of noise in values, as a proportion of the maximum absolute value
+	 * @param rank Number of singular vectors to find (k)
+	 * @param powerIterations Number of power iterations (more is slower, but more accurate if the singular
+	 * 		values decay slowly; 1 or 2 is usually enough)
+	 * @param seed Random seed
+	 * @param quiet Turn off logging?
+	 */
+	public RandomizedSVDApproximator(float[][] evalPoints, float[][] values, Function costFunction,
+			float noise, int rank, int powerIterations, long seed, boolean quiet) {
+		myEvalPoints = evalPoints;
+		myValues = values;
+		myCostFunction = costFunction;
+
+		final int n = values.length;
+		final int m = evalPoints.length;
+		myWeights = new double[m];
+		final double[] sqrtWeights = new double[m];
+		double totalWeight = 0;
+		for (int k = 0; k < m; k++) {
+			myWeights[k] = costFunction.map(evalPoints[k]) / (double) m;
+			sqrtWeights[k] = Math.sqrt(myWeights[k]);
+			totalWeight += myWeights[k];
+		}
+
+		float maxValue = 0;
+		for (float[] row : values) {
+			for (float value : row) {
+				maxValue = Math.max(maxValue, Math.abs(value));
+			}
+		}
+		float noiseVariance = (noise * maxValue) * (noise * maxValue);
+
+		//random projection of the weighted values: Q = orth(B * omega), with power iterations Q = orth(B B' Q)
+		int l = Math.min(Math.min(rank + ourOversampling, n), m);
+		Random random = new Random(seed);
+		final double[][] omega = new double[m][l];
+		for (int k = 0; k < m; k++) {
+			for (int c = 0; c < l; c++) {
+				omega[k][c] = random.nextGaussian() * sqrtWeights[k];
+			}
+		}
+		double[][] q = orthonormalize(timesColumns(values, omega, l));
+		for (int i = 0; i < powerIterations; i++) {
+			q = orthonormalize(timesColumns(values, weightedTranspose(weightedProjection(values, sqrtWeights, q), sqrtWeights), l));
+		}
+
+		//small SVD of C = Q' B, by eigendecomposition of C C' (l x l)
+		double[][] c = weightedProjection(values, sqrtWeights, q);
+		double[][] cct = new double[l][l];
+		for (int i = 0; i < l; i++) {
+			for (int j = i; j < l; j++) {
+				double sum = 0;
+				for (int k = 0; k < m; k++) {
+					sum += c[i][k] * c[j][k];
+				}
+				cct[i][j] = sum;
+				cct[j][i] = sum;
+			}
+		}
+		EigenvalueDecomposition eig = new Matrix(cct).eig();
+		double[] eigenvalues = eig.getRealEigenvalues(); //ascending
+		double[][] eigenvectors = eig.getV().getArray();
+
+		double regularization = noiseVariance * totalWeight;
+		int used = 0;
+		while (used < Math.min(rank, l) && eigenvalues[l-1-used] + regularization > noiseVariance) {
+			used++;
+		}
+		if (!quiet) {
+			ourLogger.info("Using " + used + " of " + n + " singular vectors");
+		}
+
+		myVectors = new double[used][n];
+		myInverseEigenvalues = new double[used];
+		for (int j = 0; j < used; j++) {
+			int index = l - 1 - j;
+			myInverseEigenvalues[j] = 1d / (eigenvalues[index] + regularization);
+			for (int r = 0; r < l; r++) {
+				double v = eigenvectors[r][index];
+				double[] qr = q[r];
+				double[] u = myVectors[j];
+				for (int i = 0; i < n; i++) {
+					u[i] += v * qr[i];
+				}
+			}
+		}
+	}
+
+	//values * x, where x has l columns; result is column-major (l x n)
+	private static double[][] timesColumns(final float[][] values, final double[][] x, final int l) {
+		final double[][] result = new double[l][values.length];
+		ParallelLoop.run(values.length, new ParallelLoop.Body() {
+			public void run(int i) {
+				float[] a = values[i];
+				double[] sums = new double[l];
+				for (int k = 0; k < a.length; k++) {
+					double v = a[k];
+					if (v != 0) {
+						double[] xk = x[k];
+						for (int c = 0; c < l; c++) {
+							sums[c] += v * xk[c];
+						}
+					}
+				}
+				for (int c = 0; c < l; c++) {
+					result[c][i] = sums[c];
+				}
+			}
+		});
+		return result;
+	}
+
+	//Q' B where B = values * diag(sqrtWeights) (l x m)
+	private static double[][] weightedProjection(final float[][] values, final double[] sqrtWeights, final double[][] q) {
+		final int m = sqrtWeights.length;
+		final double[][] result = new double[q.length][m];
+		ParallelLoop.run(q.length, new ParallelLoop.Body() {
+			public void run(int c) {
+				double[] qc = q[c];
+				double[] row = result[c];
+				for (int i = 0; i < values.length; i++) {
+					double v = qc[i];
+					float[] a = values[i];
+					for (int k = 0; k < m; k++) {
+						row[k] += v * a[k];
+					}
+				}
+				for (int k = 0; k < m; k++) {
+					row[k] *= sqrtWeights[k];
+				}
+			}
+		});
+		return result;
+	}
+
+	//diag(sqrtWeights) * matrix' (m x l), so that values times the result is B * matrix'
+	private static double[][] weightedTranspose(double[][] matrix, double[] sqrtWeights) {
+		double[][] result = new double[sqrtWeights.length][matrix.length];
+		for (int i = 0; i < matrix.length; i++) {
+			for (int k = 0; k < sqrtWeights.length; k++) {
+				result[k][i] = matrix[i][k] * sqrtWeights[k];
+			}
+		}
+		return result;
+	}
+
+	//modified Gram-Schmidt on rows; rows that are (nearly) dependent are zeroed
+	private static double[][] orthonormalize(double[][] vectors) {
+		for (int i = 0; i < vectors.length; i++) {
+			double[] v = vectors[i];
+			for (int j = 0; j < i; j++) {
+				double[] u = vectors[j];
+				double dot = 0;
+				for (int k = 0; k < v.length; k++) {
+					dot += v[k] * u[k];
+				}
+				for (int k = 0; k < v.length; k++) {
+					v[k] -= dot * u[k];
+				}
+			}
+			double norm = 0;
+			for (double x : v) {
+				norm += x * x;
+			}
+			norm = Math.sqrt(norm);
+			for (int k = 0; k < v.length; k++) {
+				v[k] = (norm > 1e-12) ? v[k] / norm : 0;
+			}
+		}
+		return vectors;
+	}
+
+	/**
+	 * @return Number of singular vectors used
+	 */
+	public int getRank() {
+		return myVectors.length;
+	}
+
+	/**
+	 * @see ca.nengo.math.LinearApproximator#findCoefficients(ca.nengo.math.Function)
+	 */
+	public float[] findCoefficients(Function target) {
+		return findCoefficients(new Function[]{target})[0];
+	}
+
+	/**
+	 * @see ca.nengo.math.LinearApproximator#findCoefficients(ca.nengo.math.Function[])
+	 */
+	public float[][] findCoefficients(Function[] targets) {
+		float[][] targetValues = new float[targets.length][];
+		for (int t = 0; t < targets.length; t++) {
+			targetValues[t] = targets[t].multiMap(myEvalPoints);
+		}
+		float[][] upsilon = WeightedCostApproximator.findUpsilon(myValues, myWeights, targetValues);
+
+		int n = myValues.length;
+		float[][] result = new float[targets.length][n];
+		for (int t = 0; t < targets.length; t++) {
+			double[] sum = new double[n];
+			for (int j = 0; j < myVectors.length; j++) {
+				double[] u = myVectors[j];
+				double projection = 0;
+				for (int i = 0; i < n; i++) {
+					projection += u[i] * upsilon[t][i];
+				}
+				projection *= myInverseEigenvalues[j];
+				for (int i = 0; i < n; i++) {
+					sum[i] += projection * u[i];
+				}
+			}
+			for (int i = 0; i < n; i++) {
+				result[t][i] = (float) sum[i];
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * @see ca.nengo.math.LinearApproximator#getEvalPoints()
+	 */
+	public float[][] getEvalPoints() {
+		return myEvalPoints;
+	}
+
+	/**
+	 * @see ca.nengo.math.LinearApproximator#getValues()
+	 */
+	public float[][] getValues() {
+		return myValues;
+	}
+
+	@Override
+	public LinearApproximator clone() throws CloneNotSupportedException {
+		RandomizedSVDApproximator result = (RandomizedSVDApproximator) super.clone();
+		result.myEvalPoints = MU.clone(myEvalPoints);
+		result.myValues = MU.clone(myValues);
+		result.myCostFunction = myCostFunction.clone();
+		return result;
+	}
+
+	/**
+	 * An ApproximatorFactory that produces RandomizedSVDApproximators. To use it for new ensembles,
+	 * pass it to NEFEnsembleFactory.setApproximatorFactory(...).
+	 */
+	public static class Factory implements ApproximatorFactory {
+
+		private static final long serialVersionUID = 1L;
+
+		private float myNoise;
+		private int myRank;
+		private int myPowerIterations;
+		private long mySeed;
+		private boolean myQuiet;
+
+		/**
+		 * @param noise Noise in component functions (proportion of largest value over all functions)
+		 * @param rank Number of singular vectors to find
+		 */
+		public Factory(float noise, int rank) {
+			this(noise, rank, true);
+		}
+
+		/**
+		 * @param noise Noise in component functions (proportion of largest value over all functions)
+		 * @param rank Number of singular vectors to find
+		 * @param quiet Turn off logging?
+		 */
+		public Factory(float noise, int rank, boolean quiet) {
+			myNoise = noise;
+			myRank = rank;
+			myPowerIterations = 2;
+			mySeed = 0;
+			myQuiet = quiet;
+		}
+
+		/**
+		 * @return Noise in component functions (proportion of largest value over all functions)
+		 */
+		public float getNoise() {
+			return myNoise;
+		}
+
+		/**
+		 * @param noise Noise in component functions (proportion of largest value over all functions)
+		 */
+		public void setNoise(float noise) {
+			myNoise = noise;
+		}
+
+		/**
+		 * @return Number of singular vectors to find
+		 */
+		public int getRank() {
+			return myRank;
+		}
+
+		/**
+		 * @param rank Number of singular vectors to find
+		 */
+		public void setRank(int rank) {
+			myRank = rank;
+		}
+
+		/**
+		 * @return Number of power iterations
+		 */
+		public int getPowerIterations() {
+			return myPowerIterations;
+		}
+
+		/**
+		 * @param powerIterations Number of power iterations
+		 */
+		public void setPowerIterations(int powerIterations) {
+			myPowerIterations = powerIterations;
+		}
+
+		/**
+		 * @return Random seed
+		 */
+		public long getSeed() {
+			return mySeed;
+		}
+
+		/**
+		 * @param seed Random seed
+		 */
+		public void setSeed(long seed) {
+			mySeed = seed;
+		}
+
+		/**
+		 * @return Whether logging is turned off
+		 */
+		public boolean getQuiet() {
+			return myQuiet;
+		}
+
+		/**
+		 * @param quiet Turn off logging?
+		 */
+		public void setQuiet(boolean quiet) {
+			myQuiet = quiet;
+		}
+
+		/**
+		 * @see ca.nengo.math.ApproximatorFactory#getApproximator(float[][], float[][])
+		 */
+		public LinearApproximator getApproximator(float[][] evalPoints, float[][] values) {
+			return new RandomizedSVDApproximator(evalPoints, values, getCostFunction(evalPoints[0].length),
+					myNoise, myRank, myPowerIterations, mySeed, myQuiet);
+		}
+
+		/**
+		 * Note: override to use non-uniform error weighting.
+		 *
+		 * @param dimension Dimension of the function to be approximated
+		 * @return A function over the input space that defines relative importance of error at each point
+		 */
+		public Function getCostFunction(int dimension) {
+			return new ConstantFunction(dimension, 1);
+		}
+
+		@Override
+		public ApproximatorFactory clone() throws CloneNotSupportedException {
+			return (ApproximatorFactory) super.clone();
+		}
+	}
+
+}
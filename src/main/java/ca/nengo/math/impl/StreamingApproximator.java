@@ -0,0 +1,203 @@
+package ca.nengo.math.impl;
+
+import org.apache.log4j.Logger;
+
+import ca.nengo.math.Function;
+import ca.nengo.math.LinearApproximator;
+
+/**
+ * <p>A LinearApproximator like WeightedCostApproximator, for very large numbers of evaluation points.
+ * Points and component values are taken from a Source one chunk at a time, and only the correlation
+ * matrix (gamma) and its inverse are kept, so memory use is O(N^2) in the number of components N,
+ * however many points there are.</p>
+ *
+ * <p>Gamma is accumulated while the approximator is made. Each call to findCoefficients(...) goes
+ * through the chunks again to accumulate upsilon, so the Source must give the same points each time,
+ * and several targets should be found with one call to findCoefficients(Function[]).</p>
+ *
+ * <p>Rather than adding random noise to the values, the expected effect of that noise is added to
+ * gamma (the noise variance, times the mean cost, on the diagonal).</p>
+ */
+public class StreamingApproximator implements LinearApproximator {
+
+	private static final long serialVersionUID = 1L;
+	private static Logger ourLogger = Logger.getLogger(StreamingApproximator.class);
+
+	/**
+	 * Provides evaluation points and component values in chunks.
+	 */
+	public interface Source extends java.io.Serializable {
+
+		/**
+		 * @return Number of component functions (eg neurons)
+		 */
+		public int getNumComponents();
+
+		/**
+		 * @return Number of chunks of evaluation points
+		 */
+		public int getNumChunks();
+
+		/**
+		 * @return Total number of evaluation points in all chunks
+		 */
+		public int getNumPoints();
+
+		/**
+		 * @param chunk Index of a chunk
+		 * @return Evaluation points in the chunk (the same each time it is called)
+		 */
+		public float[][] getPoints(int chunk);
+
+		/**
+		 * @param points Evaluation points
+		 * @return Values of the component functions at the points (first dimension is the component)
+		 */
+		public float[][] getValues(float[][] points);
+
+	}
+
+	private final Source mySource;
+	private Function myCostFunction;
+	private double[][] myGammaInverse;
+
+	/**
+	 * @param source Source of evaluation points and component values
+	 * @param costFunction A cost function that weights squared error over the domain of evaluation points
+	 * @param noise Standard deviation of noise in values, as a proportion of the maximum absolute value
+	 * @param nSV Number of singular values to keep (zero or less for no limit)
+	 * @param solver Method of inverting gamma (null for SVD)
+	 * @param quiet Turn off logging?
+	 */
+	public StreamingApproximator(Source source, Function costFunction, float noise, int nSV,
+			WeightedCostApproximator.Solver solver, boolean quiet) {
+		mySource = source;
+		myCostFunction = costFunction;
+
+		int n = source.getNumComponents();
+		double[][] gamma = new double[n][n];
+		double meanCost = 0;
+		float maxValue = 0;
+		for (int c = 0; c < source.getNumChunks(); c++) {
+			float[][] points = source.getPoints(c);
+			float[][] values = source.getValues(points);
+			double[] weights = getWeights(points);
+			WeightedCostApproximator.addToGamma(values, weights, gamma);
+
+			for (double weight : weights) {
+				meanCost += weight;
+			}
+			for (float[] row : values) {
+				for (float value : row) {
+					maxValue = Math.max(maxValue, Math.abs(value));
+				}
+			}
+		}
+
+		float noiseVariance = (noise * maxValue) * (noise * maxValue);
+		for (int i = 0; i < n; i++) {
+			gamma[i][i] += noiseVariance * meanCost;
+			for (int j = i + 1; j < n; j++) {
+				gamma[j][i] = gamma[i][j];
+			}
+		}
+
+		if (!quiet) {
+			ourLogger.info("Accumulated gamma over " + source.getNumPoints() + " points");
+		}
+		if (solver == null) {
+			solver = new WeightedCostApproximator.SVDSolver();
+		}
+		myGammaInverse = solver.invert(gamma, noiseVariance, nSV, quiet);
+	}
+
+	/**
+	 * @return Source of evaluation points and component values
+	 */
+	public Source getSource() {
+		return mySource;
+	}
+
+	//cost at each point, divided by the total number of points
+	private double[] getWeights(float[][] points) {
+		double[] result = new double[points.length];
+		for (int k = 0; k < points.length; k++) {
+			result[k] = myCostFunction.map(points[k]) / (double) mySource.getNumPoints();
+		}
+		return result;
+	}
+
+	/**
+	 * @see ca.nengo.math.LinearApproximator#findCoefficients(ca.nengo.math.Function)
+	 */
+	public float[] findCoefficients(Function target) {
+		return findCoefficients(new Function[]{target})[0];
+	}
+
+	/**
+	 * @see ca.nengo.math.LinearApproximator#findCoefficients(ca.nengo.math.Function[])
+	 */
+	public float[][] findCoefficients(Function[] targets) {
+		int n = mySource.getNumComponents();
+		double[][] upsilon = new double[targets.length][n];
+
+		for (int c = 0; c < mySource.getNumChunks(); c++) {
+			float[][] points = mySource.getPoints(c);
+			float[][] values = mySource.getValues(points);
+			float[][] targetValues = new float[targets.length][];
+			for (int t = 0; t < targets.length; t++) {
+				targetValues[t] = targets[t].multiMap(points);
+			}
+
+			float[][] chunkUpsilon = WeightedCostApproximator.findUpsilon(values, getWeights(points), targetValues);
+			for (int t = 0; t < targets.length; t++) {
+				for (int i = 0; i < n; i++) {
+					upsilon[t][i] += chunkUpsilon[t][i];
+				}
+			}
+		}
+
+		float[][] floatUpsilon = new float[targets.length][n];
+		for (int t = 0; t < targets.length; t++) {
+			for (int i = 0; i < n; i++) {
+				floatUpsilon[t][i] = (float) upsilon[t][i];
+			}
+		}
+		return WeightedCostApproximator.multiply(myGammaInverse, floatUpsilon);
+	}
+
+	/**
+	 * Note: this gathers every chunk of points, so it defeats the purpose of this class.
+	 *
+	 * @see ca.nengo.math.LinearApproximator#getEvalPoints()
+	 */
+	public float[][] getEvalPoints() {
+		float[][] result = new float[mySource.getNumPoints()][];
+		int k = 0;
+		for (int c = 0; c < mySource.getNumChunks(); c++) {
+			for (float[] point : mySource.getPoints(c)) {
+				result[k++] = point;
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * @see ca.nengo.math.LinearApproximator#getValues()
+	 */
+	public float[][] getValues() {
+		throw new RuntimeException("Values aren't stored by StreamingApproximator");
+	}
+
+	@Override
+	public LinearApproximator clone() throws CloneNotSupportedException {
+		StreamingApproximator result = (StreamingApproximator) super.clone();
+		result.myCostFunction = myCostFunction.clone();
+		result.myGammaInverse = new double[myGammaInverse.length][];
+		for (int i = 0; i < myGammaInverse.length; i++) {
+			result.myGammaInverse[i] = myGammaInverse[i].clone();
+		}
+		return result;
+	}
+
+}
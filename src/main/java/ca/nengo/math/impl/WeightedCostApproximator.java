@@ -33,6 +33,8 @@ import java.util.Random;
 
 import org.apache.log4j.Logger;
 
+import Jama.CholeskyDecomposition;
+import Jama.EigenvalueDecomposition;
 import Jama.Matrix;
 import Jama.SingularValueDecomposition;
 import ca.nengo.math.ApproximatorFactory;
@@ -40,12 +42,17 @@ import ca.nengo.math.Function;
 import ca.nengo.math.LinearApproximator;
 import ca.nengo.util.MU;
 import ca.nengo.util.Memory;
+import ca.nengo.util.impl.ParallelLoop;
 
 /**
  * <p>A LinearApproximator in which error is evaluated at a fixed set of points, and
  * the cost function that is minimized is a weighted integral of squared error.</p>
  *
- * <p>Uses the Moore-Penrose pseudoinverse.</p>
+ * <p>Uses the Moore-Penrose pseudoinverse, or another Solver if one is given.</p>
+ *
+ * <p>The correlation matrix (gamma) and the correlations with target functions (upsilon) are
+ * computed in blocks, on several threads (see ParallelLoop). Only the upper triangle of gamma is
+ * computed, as it is symmetric.</p>
  *
  * TODO: test
  *
@@ -56,14 +63,20 @@ public class WeightedCostApproximator implements LinearApproximator {
 	private static Logger ourLogger = Logger.getLogger(WeightedCostApproximator.class);
 	private static final long serialVersionUID = 1L;
 
+	private static final int ourRowBlockSize = 32; //functions per block in gamma and upsilon
+	private static final int ourPointBlockSize = 1024; //evaluation points per block in gamma
+	private static ExternalSolver ourWorkerSolver; //shared by all approximators, started on first use
+
 	private float[][] myEvalPoints;
 	private final float[][] myValues;
 	private float[][] myNoisyValues;
 	private Function myCostFunction;
 	private int mySignalLength;
 	private final boolean myQuiet;
+	private final Solver mySolver;
 
 	private double[][] myGammaInverse;
+	private double[] myCostWeights; //cost at each evaluation point, divided by number of points
 
 	private static boolean myUseGPU = false;
 	private static boolean canUseGPU;
@@ -147,6 +160,21 @@ public class WeightedCostApproximator implements LinearApproximator {
 	 * @param quiet Turn off logging?
 	 */
 	public WeightedCostApproximator(float[][] evaluationPoints, float[][] values, Function costFunction, float noise, int nSV, boolean quiet) {
+		this(evaluationPoints, values, costFunction, noise, nSV, quiet, null);
+	}
+
+	/**
+	 * @param evaluationPoints As in WeightedCostApproximator(float[][], float[][], Function, float, int, boolean)
+	 * @param values As in WeightedCostApproximator(float[][], float[][], Function, float, int, boolean)
+	 * @param costFunction A cost function that weights squared error over the domain of
+	 * 		evaluation points
+	 * @param noise Standard deviation of Gaussian noise to add to values, as a proportion of the
+	 * 		maximum absolute value over all values
+	 * @param nSV Number of singular values to keep
+	 * @param quiet Turn off logging?
+	 * @param solver Method of inverting the correlation matrix (null for pseudoInverse(...))
+	 */
+	public WeightedCostApproximator(float[][] evaluationPoints, float[][] values, Function costFunction, float noise, int nSV, boolean quiet, Solver solver) {
 		assert MU.isMatrix(evaluationPoints);
 		assert MU.isMatrix(values);
 		assert evaluationPoints.length == values[0].length;
@@ -155,6 +183,7 @@ public class WeightedCostApproximator implements LinearApproximator {
 		myValues = MU.clone(values);
 		myNoisyValues = MU.clone(values);
 		myQuiet = quiet;
+		mySolver = solver;
 		mySignalLength = -1;
 		float absNoiseSD = addNoise(myNoisyValues, noise);
 
@@ -181,6 +210,21 @@ public class WeightedCostApproximator implements LinearApproximator {
 	 * @param quiet Turn off logging?
 	 */
 	public WeightedCostApproximator(float[][][] evaluationSignals, float[][][] values, Function costFunction, float noise, int nSV, boolean quiet) {
+		this(evaluationSignals, values, costFunction, noise, nSV, quiet, null);
+	}
+
+	/**
+	 * @param evaluationSignals As in WeightedCostApproximator(float[][][], float[][][], Function, float, int, boolean)
+	 * @param values As in WeightedCostApproximator(float[][][], float[][][], Function, float, int, boolean)
+	 * @param costFunction A cost function that weights squared error over the domain of
+	 * 		evaluation points
+	 * @param noise Standard deviation of Gaussian noise to add to values, as a proportion of the
+	 * 		maximum absolute value over all values
+	 * @param nSV Number of singular values to keep
+	 * @param quiet Turn off logging?
+	 * @param solver Method of inverting the correlation matrix (null for pseudoInverse(...))
+	 */
+	public WeightedCostApproximator(float[][][] evaluationSignals, float[][][] values, Function costFunction, float noise, int nSV, boolean quiet, Solver solver) {
 		//should do some error checking (e.g. make sure all signals are same length)
 		
 		
@@ -214,6 +258,7 @@ public class WeightedCostApproximator implements LinearApproximator {
 
 		myNoisyValues = MU.clone(myValues);
 		myQuiet = quiet;
+		mySolver = solver;
 		float absNoiseSD = addNoise(myNoisyValues, noise);
 
 		myCostFunction = costFunction;
@@ -267,11 +312,15 @@ public class WeightedCostApproximator implements LinearApproximator {
 				}
 			}
 		}else{
-			double[][] gamma = findGamma();
+			double[][] gamma = findGamma(myNoisyValues, getCostWeights());
 			if(!myQuiet) {
                 Memory.report("before inverse");
             }
-			myGammaInverse = pseudoInverse(gamma, absNoiseSD*absNoiseSD, nSV);
+			if (mySolver == null) {
+				myGammaInverse = pseudoInverse(gamma, absNoiseSD*absNoiseSD, nSV);
+			} else {
+				myGammaInverse = mySolver.invert(gamma, absNoiseSD*absNoiseSD, nSV, myQuiet);
+			}
 			if(!myQuiet) {
                 Memory.report("after inverse");
             }
@@ -368,8 +417,19 @@ public class WeightedCostApproximator implements LinearApproximator {
 
 
 
+	private static synchronized ExternalSolver getWorkerSolver(java.io.File worker) {
+		if (ourWorkerSolver == null) {
+			ourWorkerSolver = new ExternalSolver(new String[]{worker.getAbsolutePath()}, worker.getParentFile());
+		}
+		return ourWorkerSolver;
+	}
+
 	/**
-	 * Override this method to use a different pseudoinverse implementation (eg clustered).
+	 * <p>Override this method to use a different pseudoinverse implementation (eg clustered).</p>
+	 *
+	 * <p>If there is a program external/pseudoInverseWorker, it is started once and shared by all
+	 * approximators (see ExternalSolver). Otherwise, if there is a program external/pseudoInverse,
+	 * it is run for this matrix. If neither exists, or they fail, SVD is used.</p>
 	 *
 	 * @param matrix Any matrix
 	 * @param minSV Hint as to smallest singular value to use
@@ -389,6 +449,11 @@ public class WeightedCostApproximator implements LinearApproximator {
 		java.io.File path=new java.io.File(parent,"external");
 		String filename="matrix_"+random.nextLong();
 
+		java.io.File worker=new java.io.File(path,"pseudoInverseWorker");
+		if (worker.exists()) {
+			return getWorkerSolver(worker).invert(matrix, minSV, nSV, myQuiet);
+		}
+
 	 	try {
 			// TODO: separate this out into a helper method, so we can do this sort of thing for other calculations as well
 	 		java.io.File pinvfile = new java.io.File(path,"pseudoInverse");
@@ -405,23 +470,7 @@ public class WeightedCostApproximator implements LinearApproximator {
                     file2.delete();
                 }
 
-				java.nio.channels.FileChannel channel=new java.io.RandomAccessFile(file,"rw").getChannel();
-	//			java.nio.ByteBuffer buffer=channel.map(java.nio.channels.FileChannel.MapMode.READ_WRITE, 0, matrix.length*matrix.length*4);
-				java.nio.ByteBuffer buffer= java.nio.ByteBuffer.allocate(matrix.length*matrix.length*4);
-				buffer.rewind();
-
-
-				buffer.order(java.nio.ByteOrder.BIG_ENDIAN);
-				for (double[] element : matrix) {
-					for (int j=0; j<matrix.length; j++) {
-						buffer.putFloat((float)(element[j]));
-					}
-				}
-				buffer.rewind();
-
-				channel.write(buffer);
-				channel.force(true);
-	            channel.close();
+				ExternalSolver.writeMatrix(file, matrix);
 
 				if (System.getProperty("os.name").startsWith("Windows")) {
 					Process process=runtime.exec("cmd /c pseudoInverse.bat "+filename+" "+filename+".inv"+" "+minSV+" "+nSV,null,path);
@@ -448,27 +497,8 @@ public class WeightedCostApproximator implements LinearApproximator {
 
 				// matrix file cleaned up in finally block
 
-				channel=new java.io.RandomAccessFile(file2,"r").getChannel();
-	//			buffer=channel.map(java.nio.channels.FileChannel.MapMode.READ_ONLY, 0, matrix.length*matrix.length*4);
-				buffer= java.nio.ByteBuffer.allocate(matrix.length*matrix.length*4);
-				channel.read(buffer);
-				buffer.rewind();
-
-				double[][] inv=new double[matrix.length][];
-
-				for (int i=0; i<matrix.length; i++) {
-					double[] row=new double[matrix.length];
-					for (int j=0; j<matrix.length; j++) {
-						row[j]=buffer.getFloat();
-					}
-					inv[i]=row;
-				}
-				result=inv;
-
-				// Close all file handles
-	            channel.close();
-
-	            // channel file cleaned up in finally block
+				result=ExternalSolver.readMatrix(file2, matrix.length);
+				// inverse file cleaned up in finally block
 			}
 		} catch (FileNotFoundException e) {
 			System.err.println("File not found: " + e);
@@ -493,26 +523,7 @@ public class WeightedCostApproximator implements LinearApproximator {
         }
 
 		if (result==null) {
-
-			Matrix m = new Matrix(matrix);
-			SingularValueDecomposition svd = m.svd();
-			Matrix sInv = svd.getS().inverse();
-
-			int i = 0;
-			while (i < svd.getS().getRowDimension() && svd.getS().get(i, i) > minSV && (nSV <= 0 || i < nSV)) {
-                i++;
-            }
-
-			if(!myQuiet) {
-                ourLogger.info("Using " + i + " singular values for pseudo-inverse");
-            }
-
-			for (int j = i; j < matrix.length; j++) {
-				sInv.set(j, j, 0d);
-			}
-
-			result = svd.getV().times(sInv).times(svd.getU().transpose()).getArray();
-
+			result = new SVDSolver().invert(matrix, minSV, nSV, myQuiet);
 		}
 
 		return result;
@@ -527,30 +538,25 @@ public class WeightedCostApproximator implements LinearApproximator {
 	 * @see ca.nengo.math.LinearApproximator#findCoefficients(ca.nengo.math.Function)
 	 */
     public float[] findCoefficients(Function target) {
+		return findCoefficients(new Function[]{target})[0];
+	}
+
+	/**
+	 * Evaluates all targets over the evaluation points, then finds UPSILON for all targets in one pass
+	 * over the component values, and multiplies by GAMMA" in one matrix-matrix product.
+	 *
+	 * @see ca.nengo.math.LinearApproximator#findCoefficients(ca.nengo.math.Function[])
+	 */
+	public float[][] findCoefficients(Function[] targets) {
     	if(mySignalLength != -1)
     		System.err.println("Warning, finding coefficients using a function on WeightedCostApproximator initialized with signals");
-    	
-		float[] targetValues = new float[myEvalPoints.length];
-		for (int i = 0; i < targetValues.length; i++) {
-			targetValues[i] = target.map(myEvalPoints[i]);
-		}
-
-		float[] upsilon = new float[myNoisyValues.length];
-		for (int i = 0; i < myNoisyValues.length; i++) {
-			for (int j = 0; j < myEvalPoints.length; j++) {
-				upsilon[i] += myNoisyValues[i][j] * targetValues[j] * myCostFunction.map(myEvalPoints[j]);
-			}
-			upsilon[i] = upsilon[i] / myEvalPoints.length;
-		}
 
-		float[] result = new float[myNoisyValues.length];
-		for (int i = 0; i < myNoisyValues.length; i++) {
-			for (int j = 0; j < myNoisyValues.length; j++) {
-				result[i] += myGammaInverse[i][j] * upsilon[j];
-			}
+		float[][] targetValues = new float[targets.length][];
+		for (int t = 0; t < targets.length; t++) {
+			targetValues[t] = targets[t].multiMap(myEvalPoints);
 		}
 
-		return result;
+		return multiply(myGammaInverse, findUpsilon(myNoisyValues, getCostWeights(), targetValues));
 	}
     
     /**
@@ -584,42 +590,158 @@ public class WeightedCostApproximator implements LinearApproximator {
     			targetValues[i*mySignalLength+j] = targetSignal[j];
     	}
     	
-    	float[] upsilon = new float[myNoisyValues.length];
-		for (int i = 0; i < myNoisyValues.length; i++) {
-			for (int j = 0; j < myEvalPoints.length; j++) {
-				upsilon[i] += myNoisyValues[i][j] * targetValues[j] * myCostFunction.map(myEvalPoints[j]);
+		return multiply(myGammaInverse, findUpsilon(myNoisyValues, getCostWeights(), new float[][]{targetValues}))[0];
+    }
+
+	//cost function at each evaluation point, divided by the number of points (so that sums are averages)
+	private double[] getCostWeights() {
+		if (myCostWeights == null) {
+			double[] weights = new double[myEvalPoints.length];
+			for (int k = 0; k < weights.length; k++) {
+				weights[k] = myCostFunction.map(myEvalPoints[k]) / (double) myEvalPoints.length;
 			}
-			upsilon[i] = upsilon[i] / myEvalPoints.length;
+			myCostWeights = weights;
 		}
+		return myCostWeights;
+	}
 
-		float[] result = new float[myNoisyValues.length];
-		for (int i = 0; i < myNoisyValues.length; i++) {
-			for (int j = 0; j < myNoisyValues.length; j++) {
-				result[i] += myGammaInverse[i][j] * upsilon[j];
+	/**
+	 * @param values Values of component functions at evaluation points
+	 * @param weights Weight of each evaluation point (cost divided by number of points)
+	 * @param targetValues Values of each target function at the evaluation points
+	 * @return UPSILON_ti = < cost(x) target_t(x) a_i(x) > for each target t
+	 */
+	static float[][] findUpsilon(final float[][] values, final double[] weights, final float[][] targetValues) {
+		final int n = values.length;
+		final float[][] result = new float[targetValues.length][n];
+
+		ParallelLoop.run(numBlocks(n, ourRowBlockSize), new ParallelLoop.Body() {
+			public void run(int block) {
+				double[] weighted = new double[weights.length];
+				int end = Math.min(n, (block + 1) * ourRowBlockSize);
+				for (int i = block * ourRowBlockSize; i < end; i++) {
+					float[] a = values[i];
+					for (int k = 0; k < weights.length; k++) {
+						weighted[k] = a[k] * weights[k];
+					}
+					for (int t = 0; t < targetValues.length; t++) {
+						float[] target = targetValues[t];
+						double sum = 0;
+						for (int k = 0; k < weights.length; k++) {
+							sum += weighted[k] * target[k];
+						}
+						result[t][i] = (float) sum;
+					}
+				}
 			}
-		}
+		});
 
 		return result;
-    }
+	}
 
-	private double[][] findGamma() {
+	/**
+	 * @param inverse Inverse of GAMMA
+	 * @param upsilon UPSILON for each target
+	 * @return GAMMA" UPSILON_t for each target t
+	 */
+	static float[][] multiply(final double[][] inverse, final float[][] upsilon) {
+		final int n = inverse.length;
+		final float[][] result = new float[upsilon.length][n];
+
+		ParallelLoop.run(numBlocks(n, ourRowBlockSize), new ParallelLoop.Body() {
+			public void run(int block) {
+				int end = Math.min(n, (block + 1) * ourRowBlockSize);
+				for (int i = block * ourRowBlockSize; i < end; i++) {
+					double[] row = inverse[i];
+					for (int t = 0; t < upsilon.length; t++) {
+						float[] u = upsilon[t];
+						double sum = 0;
+						for (int j = 0; j < n; j++) {
+							sum += row[j] * u[j];
+						}
+						result[t][i] = (float) sum;
+					}
+				}
+			}
+		});
 
-		double[][] result = new double[myNoisyValues.length][];
-//		double[][] nativeResult = new double[myNoisyValues.length][];
+		return result;
+	}
 
+	/**
+	 * @param values Values of component functions at evaluation points
+	 * @param weights Weight of each evaluation point (cost divided by number of points)
+	 * @return GAMMA_ij = < cost(x) a_i(x) a_j(x) >
+	 */
+	static double[][] findGamma(float[][] values, double[] weights) {
+		double[][] result = new double[values.length][values.length];
+		addToGamma(values, weights, result);
 		for (int i = 0; i < result.length; i++) {
-			result[i] = new double[myNoisyValues.length];
-			for (int j = 0; j < result[i].length; j++) {
-				for (int k = 0; k < myEvalPoints.length; k++) {
-					result[i][j] += myNoisyValues[i][k] * myNoisyValues[j][k] * myCostFunction.map(myEvalPoints[k]);
-				}
-				result[i][j] = result[i][j] / myEvalPoints.length;
+			for (int j = i + 1; j < result.length; j++) {
+				result[j][i] = result[i][j];
 			}
 		}
-
 		return result;
 	}
 
+	/**
+	 * Adds the contribution of some evaluation points to the upper triangle of GAMMA. The work is
+	 * done for pairs of row blocks on several threads.
+	 *
+	 * @param values Values of component functions at evaluation points
+	 * @param weights Weight of each evaluation point (cost divided by total number of points)
+	 * @param gamma GAMMA, of which the upper triangle (including the diagonal) is updated
+	 */
+	static void addToGamma(final float[][] values, final double[] weights, final double[][] gamma) {
+		final int n = values.length;
+		final int m = weights.length;
+
+		int numRowBlocks = numBlocks(n, ourRowBlockSize);
+		final int[] firstBlocks = new int[numRowBlocks * (numRowBlocks + 1) / 2];
+		final int[] secondBlocks = new int[firstBlocks.length];
+		int pair = 0;
+		for (int bi = 0; bi < numRowBlocks; bi++) {
+			for (int bj = bi; bj < numRowBlocks; bj++) {
+				firstBlocks[pair] = bi;
+				secondBlocks[pair] = bj;
+				pair++;
+			}
+		}
+
+		ParallelLoop.run(firstBlocks.length, new ParallelLoop.Body() {
+			public void run(int p) {
+				int iStart = firstBlocks[p] * ourRowBlockSize;
+				int iEnd = Math.min(n, iStart + ourRowBlockSize);
+				int jStart = secondBlocks[p] * ourRowBlockSize;
+				int jEnd = Math.min(n, jStart + ourRowBlockSize);
+				double[] weighted = new double[Math.min(m, ourPointBlockSize)];
+
+				for (int kStart = 0; kStart < m; kStart += ourPointBlockSize) {
+					int kLength = Math.min(m - kStart, ourPointBlockSize);
+					for (int i = iStart; i < iEnd; i++) {
+						float[] a = values[i];
+						for (int k = 0; k < kLength; k++) {
+							weighted[k] = a[kStart + k] * weights[kStart + k];
+						}
+						double[] row = gamma[i];
+						for (int j = Math.max(i, jStart); j < jEnd; j++) {
+							float[] b = values[j];
+							double sum = 0;
+							for (int k = 0; k < kLength; k++) {
+								sum += weighted[k] * b[kStart + k];
+							}
+							row[j] += sum;
+						}
+					}
+				}
+			}
+		});
+	}
+
+	private static int numBlocks(int length, int blockSize) {
+		return (length + blockSize - 1) / blockSize;
+	}
+
 	@Override
 	public LinearApproximator clone() throws CloneNotSupportedException {
 		WeightedCostApproximator result = (WeightedCostApproximator) super.clone();
@@ -637,6 +759,157 @@ public class WeightedCostApproximator implements LinearApproximator {
 	}
 
 
+	/**
+	 * A method of inverting the (symmetric, positive semi-definite) correlation matrix.
+	 */
+	public interface Solver extends java.io.Serializable {
+
+		/**
+		 * @param gamma Correlation matrix
+		 * @param minSV Hint as to smallest singular value to use (the variance of the noise added to values)
+		 * @param nSV Max number of singular values to use (zero or less for no limit)
+		 * @param quiet Turn off logging?
+		 * @return (Pseudo)inverse of gamma
+		 */
+		public double[][] invert(double[][] gamma, float minSV, int nSV, boolean quiet);
+
+	}
+
+	/**
+	 * Moore-Penrose pseudoinverse by singular value decomposition (the default).
+	 */
+	public static class SVDSolver implements Solver {
+
+		private static final long serialVersionUID = 1L;
+
+		/**
+		 * @see ca.nengo.math.impl.WeightedCostApproximator.Solver#invert(double[][], float, int, boolean)
+		 */
+		public double[][] invert(double[][] gamma, float minSV, int nSV, boolean quiet) {
+			Matrix m = new Matrix(gamma);
+			SingularValueDecomposition svd = m.svd();
+			Matrix sInv = svd.getS().inverse();
+
+			int i = 0;
+			while (i < svd.getS().getRowDimension() && svd.getS().get(i, i) > minSV && (nSV <= 0 || i < nSV)) {
+                i++;
+            }
+
+			if(!quiet) {
+                ourLogger.info("Using " + i + " singular values for pseudo-inverse");
+            }
+
+			for (int j = i; j < gamma.length; j++) {
+				sInv.set(j, j, 0d);
+			}
+
+			return svd.getV().times(sInv).times(svd.getU().transpose()).getArray();
+		}
+
+	}
+
+	/**
+	 * Pseudoinverse by symmetric eigendecomposition. Gives the same result as SVDSolver (the eigenvalues
+	 * of gamma are its singular values), with the same cutoffs, in less time.
+	 */
+	public static class EigenSolver implements Solver {
+
+		private static final long serialVersionUID = 1L;
+
+		/**
+		 * @see ca.nengo.math.impl.WeightedCostApproximator.Solver#invert(double[][], float, int, boolean)
+		 */
+		public double[][] invert(double[][] gamma, float minSV, int nSV, boolean quiet) {
+			int n = gamma.length;
+			EigenvalueDecomposition eig = new Matrix(gamma).eig();
+			double[] values = eig.getRealEigenvalues(); //ascending for symmetric matrices
+			double[][] vectors = eig.getV().getArray();
+
+			int first = n; //index of the smallest eigenvalue used
+			while (first > 0 && values[first-1] > minSV && (nSV <= 0 || n - first < nSV)) {
+				first--;
+			}
+
+			if(!quiet) {
+                ourLogger.info("Using " + (n - first) + " eigenvalues for pseudo-inverse");
+            }
+
+			double[][] result = new double[n][n];
+			for (int i = 0; i < n; i++) {
+				for (int j = i; j < n; j++) {
+					double sum = 0;
+					for (int k = first; k < n; k++) {
+						sum += vectors[i][k] * vectors[j][k] / values[k];
+					}
+					result[i][j] = sum;
+					result[j][i] = sum;
+				}
+			}
+			return result;
+		}
+
+	}
+
+	/**
+	 * Regularized (Tikhonov) inverse by Cholesky decomposition, ie the inverse of gamma + lambda*I, where
+	 * lambda is minSV (the variance of the noise added to values) or a fixed value. This is usually the
+	 * fastest method. nSV is ignored. Falls back to SVDSolver if gamma + lambda*I isn't positive definite.
+	 */
+	public static class CholeskySolver implements Solver {
+
+		private static final long serialVersionUID = 1L;
+
+		private final float myRegularization;
+
+		/**
+		 * Uses minSV as the regularization.
+		 */
+		public CholeskySolver() {
+			this(-1);
+		}
+
+		/**
+		 * @param regularization Value added to the diagonal of gamma (negative to use minSV)
+		 */
+		public CholeskySolver(float regularization) {
+			myRegularization = regularization;
+		}
+
+		/**
+		 * @return Value added to the diagonal of gamma (negative if minSV is used)
+		 */
+		public float getRegularization() {
+			return myRegularization;
+		}
+
+		/**
+		 * @see ca.nengo.math.impl.WeightedCostApproximator.Solver#invert(double[][], float, int, boolean)
+		 */
+		public double[][] invert(double[][] gamma, float minSV, int nSV, boolean quiet) {
+			int n = gamma.length;
+			double lambda = (myRegularization >= 0) ? myRegularization : minSV;
+
+			Matrix m = Matrix.constructWithCopy(gamma); //gamma is passed unchanged to SVD if this fails
+			for (int i = 0; i < n; i++) {
+				m.set(i, i, m.get(i, i) + lambda);
+			}
+
+			CholeskyDecomposition chol = m.chol();
+			if (!chol.isSPD()) {
+				if(!quiet) {
+	                ourLogger.info("Regularized matrix isn't positive definite; using SVD");
+	            }
+				return new SVDSolver().invert(gamma, minSV, nSV, quiet);
+			}
+
+			if(!quiet) {
+                ourLogger.info("Using Cholesky inverse with regularization " + lambda);
+            }
+			return chol.solve(Matrix.identity(n, n)).getArray();
+		}
+
+	}
+
 	/**
 	 * An ApproximatorFactory that produces WeightedCostApproximators.
 	 *
@@ -649,6 +922,7 @@ public class WeightedCostApproximator implements LinearApproximator {
 		private float myNoise;
 		private int myNSV;
 		private boolean myQuiet;
+		private Solver mySolver;
 
 		/**
 		 * @param noise Random noise to add to component functions (proportion of largest value over all functions)
@@ -732,11 +1006,26 @@ public class WeightedCostApproximator implements LinearApproximator {
 		}
 
 
+		/**
+		 * @return Method of inverting the correlation matrix (null means WeightedCostApproximator.pseudoInverse(...),
+		 * 		which uses an external program if there is one, otherwise SVD)
+		 */
+		public Solver getSolver() {
+			return mySolver;
+		}
+
+		/**
+		 * @param solver Method of inverting the correlation matrix (null for the default)
+		 */
+		public void setSolver(Solver solver) {
+			mySolver = solver;
+		}
+
 		/**
 		 * @see ca.nengo.math.ApproximatorFactory#getApproximator(float[][], float[][])
 		 */
         public LinearApproximator getApproximator(float[][] evalPoints, float[][] values) {
-			return new WeightedCostApproximator(evalPoints, values, getCostFunction(evalPoints[0].length), myNoise, myNSV, myQuiet);
+			return new WeightedCostApproximator(evalPoints, values, getCostFunction(evalPoints[0].length), myNoise, myNSV, myQuiet, mySolver);
 		}
         
         /**
@@ -749,7 +1038,7 @@ public class WeightedCostApproximator implements LinearApproximator {
          * @return A LinearApproximator that can be used to approximate new Functions as a weighted sum of the given components.
          */
         public LinearApproximator getApproximator(float[][][] evaluationSignals, float[][][] values) {
-        	return new WeightedCostApproximator(evaluationSignals, values, getCostFunction(evaluationSignals[0].length), myNoise, myNSV, myQuiet);
+        	return new WeightedCostApproximator(evaluationSignals, values, getCostFunction(evaluationSignals[0].length), myNoise, myNSV, myQuiet, mySolver);
         }
 
 		/**
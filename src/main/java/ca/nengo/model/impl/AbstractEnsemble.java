@@ -203,10 +203,14 @@ public abstract class AbstractEnsemble implements Ensemble, Probeable, VisiblyMu
 			mySpikePattern = new SpikePatternImpl(myNodes.length);
 		}
 
-		for (int i = 0; i < myNodes.length; i++) {
-			myNodes[i].run(startTime, endTime);
+		runNodes(startTime, endTime);
+
+		if (!myCollectSpikesFlag) {
+			return;
+		}
 
-			if (myCollectSpikesFlag && (myCollectSpikesRatio == 1 || i % myCollectSpikesRatio == 0)) {
+		for (int i = 0; i < myNodes.length; i++) {
+			if (myCollectSpikesRatio == 1 || i % myCollectSpikesRatio == 0) {
 				try {
 					InstantaneousOutput output = myNodes[i].getOrigin(Neuron.AXON).getValues();
 					if (output instanceof PreciseSpikeOutput) {
@@ -224,6 +228,20 @@ public abstract class AbstractEnsemble implements Ensemble, Probeable, VisiblyMu
 		}
 	}
 
+	/**
+	 * Runs each Node in the Ensemble. Subclasses may override this to advance the Nodes by
+	 * other means, as long as the Nodes' Origins hold the resulting outputs afterwards.
+	 *
+	 * @param startTime simulation time at which running starts (s)
+	 * @param endTime simulation time at which running ends (s)
+	 * @throws SimulationException if a problem is encountered while trying to run
+	 */
+	protected void runNodes(float startTime, float endTime) throws SimulationException {
+		for (Node node : myNodes) {
+			node.run(startTime, endTime);
+		}
+	}
+
 	/**
 	 * Resets each Node in this Ensemble.
 	 *
@@ -44,7 +44,9 @@ import ca.nengo.model.SpikeOutput;
 import ca.nengo.model.StructuralException;
 import ca.nengo.model.Termination;
 import ca.nengo.model.Units;
+import ca.nengo.model.nef.NEFEnsemble;
 import ca.nengo.model.nef.impl.DecodedTermination;
+import ca.nengo.model.nef.impl.NEFEnsembleFactoryImpl;
 import ca.nengo.model.nef.impl.NEFEnsembleImpl;
 import ca.nengo.model.nef.impl.DecodedOrigin;
 import ca.nengo.model.plasticity.impl.PESTermination;
@@ -124,6 +126,42 @@ public class NetworkArrayImpl extends NetworkImpl {
 		
 	}
 	
+	/**
+	 * Create a network holding an array of new ensembles, which are made concurrently (see 
+	 * NEFEnsembleFactoryImpl.makeAll(...)). The ensembles are named by their indices, and are the same 
+	 * for a given seed whatever the number of threads.
+	 * 
+	 * @param name The name of the NetworkArray to create
+	 * @param factory Factory with which to make the ensembles
+	 * @param length Number of ensembles
+	 * @param neurons Number of neurons in each ensemble
+	 * @param radii Radius of each ensemble in each of its dimensions
+	 * @param seed Random seed
+	 * @throws StructuralException if an ensemble can't be made
+	 */
+	public NetworkArrayImpl(String name, NEFEnsembleFactoryImpl factory, int length, int neurons, float[] radii, long seed) 
+			throws StructuralException {
+		this(name, makeEnsembles(factory, length, neurons, radii, seed));
+	}
+
+	private static NEFEnsembleImpl[] makeEnsembles(NEFEnsembleFactoryImpl factory, int length, int neurons, float[] radii, long seed) 
+			throws StructuralException {
+		String[] names = new String[length];
+		for (int i = 0; i < length; i++) {
+			names[i] = String.valueOf(i);
+		}
+
+		NEFEnsemble[] ensembles = factory.makeAll(names, neurons, radii, seed);
+		NEFEnsembleImpl[] result = new NEFEnsembleImpl[length];
+		for (int i = 0; i < length; i++) {
+			if ( !(ensembles[i] instanceof NEFEnsembleImpl) ) {
+				throw new StructuralException("A NetworkArray must be made of NEFEnsembleImpls");
+			}
+			result[i] = (NEFEnsembleImpl) ensembles[i];
+		}
+		return result;
+	}
+
 	/** 
 	 * Create an Origin that concatenates the values of internal Origins.
      *
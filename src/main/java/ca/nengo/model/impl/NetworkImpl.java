@@ -57,6 +57,8 @@ import ca.nengo.model.StepListener;
 import ca.nengo.model.StructuralException;
 import ca.nengo.model.Termination;
 import ca.nengo.model.nef.impl.DecodableEnsembleImpl;
+import ca.nengo.model.nef.impl.DecodedOrigin;
+import ca.nengo.model.nef.impl.FactoredTermination;
 import ca.nengo.model.nef.impl.NEFEnsembleImpl;
 import ca.nengo.model.neuron.Neuron;
 import ca.nengo.sim.Simulator;
@@ -1162,6 +1164,28 @@ public class NetworkImpl implements Network, VisiblyMutable, VisiblyMutable.List
 //		result.myProbeables
 //		result.myProbeableStates
 
+		//factored terminations follow the copies of their presynaptic origins
+		for (Node oldNode : myNodeMap.values()) {
+			for (Termination oldTermination : oldNode.getTerminations()) {
+				if (oldTermination instanceof FactoredTermination && ((FactoredTermination) oldTermination).getOrigin() != null) {
+					DecodedOrigin oldOrigin = ((FactoredTermination) oldTermination).getOrigin();
+					Node newPre = result.myNodeMap.get(oldOrigin.getNode().getName());
+					if (newPre != null && myNodeMap.get(oldOrigin.getNode().getName()) == oldOrigin.getNode()) {
+						try {
+							FactoredTermination newTermination = (FactoredTermination) result.myNodeMap.get(oldNode.getName())
+								.getTermination(oldTermination.getName());
+							Origin newOrigin = newPre.getOrigin(oldOrigin.getName());
+							if (newOrigin instanceof DecodedOrigin) {
+								newTermination.setOrigin((DecodedOrigin) newOrigin);
+							}
+						} catch (StructuralException e) {
+							throw new CloneNotSupportedException("Problem copying factored Termination: " + e.getMessage());
+						}
+					}
+				}
+			}
+		}
+
 		//TODO: this works with a single Projection impl & no params; should add Projection.copy(Origin, Termination, Network)?
 		result.myProjectionMap = new HashMap<Termination, Projection>(10);
 		for (Projection oldProjection : getProjections()) {
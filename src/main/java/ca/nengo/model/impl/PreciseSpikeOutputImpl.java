@@ -92,6 +92,26 @@ public class PreciseSpikeOutputImpl implements PreciseSpikeOutput {
 		return myTime;
 	}
 
+	/**
+	 * Overwrites one of the spike times of this output (and the corresponding spike value). This is
+	 * meant for the producer of the output, which may reuse it from step to step rather than
+	 * allocating a new one.
+	 *
+	 * @param index Index of the spike time to overwrite
+	 * @param spikeTime New spike time (negative if there is no spike)
+	 */
+	public void setSpikeTime(int index, float spikeTime) {
+		mySpikeTimes[index] = spikeTime;
+		myValues[index] = spikeTime >= 0;
+	}
+
+	/**
+	 * @param time New time (see getTime())
+	 */
+	public void setTime(float time) {
+		myTime = time;
+	}
+
 	@Override
 	public PreciseSpikeOutput clone() throws CloneNotSupportedException {
 		return new PreciseSpikeOutputImpl(mySpikeTimes.clone(), myUnits, myTime);
@@ -52,6 +52,7 @@ import ca.nengo.model.nef.impl.BiasOrigin;
 import ca.nengo.model.nef.impl.BiasTermination;
 import ca.nengo.model.nef.impl.DecodedOrigin;
 import ca.nengo.model.nef.impl.DecodedTermination;
+import ca.nengo.model.nef.impl.FactoredTermination;
 import ca.nengo.util.MU;
 import ca.nengo.util.ScriptGenException;
 
@@ -219,7 +220,9 @@ public class ProjectionImpl implements Projection {
 	public float[][] getWeights() {
 		float[][] result = null;
 
-		if ( (myOrigin instanceof DecodedOrigin) && (myTermination instanceof DecodedTermination)) {
+		if (myTermination instanceof FactoredTermination) {
+			result = ((FactoredTermination) myTermination).getWeights();
+		} else if ( (myOrigin instanceof DecodedOrigin) && (myTermination instanceof DecodedTermination)) {
 			float[][] encoders = ((NEFEnsemble) myTermination.getNode()).getEncoders();
 			float[][] transform = ((DecodedTermination) myTermination).getTransform();
 			float[][] decoders = ((DecodedOrigin) myOrigin).getDecoders();
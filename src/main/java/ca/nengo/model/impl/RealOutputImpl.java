@@ -82,6 +82,24 @@ public class RealOutputImpl implements RealOutput {
 		return myTime;
 	}
 
+	/**
+	 * Overwrites one of the values of this output. This is meant for the producer of the output,
+	 * which may reuse it from step to step rather than allocating a new one.
+	 *
+	 * @param index Index of the value to overwrite
+	 * @param value New value
+	 */
+	public void setValue(int index, float value) {
+		myValues[index] = value;
+	}
+
+	/**
+	 * @param time New time (see getTime())
+	 */
+	public void setTime(float time) {
+		myTime = time;
+	}
+
 	@Override
 	public RealOutput clone() throws CloneNotSupportedException {
 		return new RealOutputImpl(myValues.clone(), myUnits, myTime);
@@ -82,6 +82,24 @@ public class SpikeOutputImpl implements SpikeOutput {
 		return myTime;
 	}
 
+	/**
+	 * Overwrites one of the values of this output. This is meant for the producer of the output,
+	 * which may reuse it from step to step rather than allocating a new one.
+	 *
+	 * @param index Index of the value to overwrite
+	 * @param value New value
+	 */
+	public void setValue(int index, boolean value) {
+		myValues[index] = value;
+	}
+
+	/**
+	 * @param time New time (see getTime())
+	 */
+	public void setTime(float time) {
+		myTime = time;
+	}
+
 	@Override
 	public SpikeOutput clone() throws CloneNotSupportedException {
 		return new SpikeOutputImpl(myValues.clone(), myUnits, myTime);
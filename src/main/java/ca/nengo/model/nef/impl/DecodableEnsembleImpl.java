@@ -28,6 +28,7 @@ a recipient may use your version of this file under either the MPL or the GPL Li
 package ca.nengo.model.nef.impl;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.LinkedHashMap;
@@ -37,15 +38,19 @@ import java.util.Properties;
 import org.apache.log4j.Logger;
 
 import Jama.Matrix;
+import ca.nengo.dynamics.Integrator;
 import ca.nengo.dynamics.LinearSystem;
 import ca.nengo.dynamics.impl.CanonicalModel;
+import ca.nengo.dynamics.impl.DiscreteLTIIntegrator;
 import ca.nengo.dynamics.impl.EulerIntegrator;
 import ca.nengo.dynamics.impl.LTISystem;
 import ca.nengo.dynamics.impl.SimpleLTISystem;
 import ca.nengo.math.ApproximatorFactory;
 import ca.nengo.math.Function;
 import ca.nengo.math.LinearApproximator;
+import ca.nengo.math.impl.CachingApproximatorFactory;
 import ca.nengo.math.impl.ConstantFunction;
+import ca.nengo.math.impl.DecoderCache;
 import ca.nengo.math.impl.TimeSeriesFunction;
 import ca.nengo.model.Network;
 import ca.nengo.model.Node;
@@ -118,7 +123,7 @@ public class DecodableEnsembleImpl extends PlasticEnsembleImpl implements Decoda
 		float[][] values = probe.getData().getValues();
 		float[][] valuesT = MU.transpose(values);
 
-		LinearApproximator approximator = myApproximatorFactory.getApproximator(evalPoints, valuesT);
+		LinearApproximator approximator = makeApproximator(evalPoints, valuesT);
 		DecodedOrigin result = new DecodedOrigin(this, name, getNodes(), nodeOrigin, functions, approximator);
 		result.setMode(getMode());
 
@@ -163,7 +168,7 @@ public class DecodableEnsembleImpl extends PlasticEnsembleImpl implements Decoda
 			}
 		}
 
-		LinearApproximator approximator = myApproximatorFactory.getApproximator(evalPoints, values);
+		LinearApproximator approximator = makeApproximator(evalPoints, values);
 		DecodedOrigin result = new DecodedOrigin(this, name, getNodes(), nodeOrigin, functions, approximator);
 		result.setMode(getMode());
 		myDecodedOrigins.put(name, result);
@@ -232,7 +237,7 @@ public class DecodableEnsembleImpl extends PlasticEnsembleImpl implements Decoda
 			}
 		}
 
-		LinearApproximator approximator = myApproximatorFactory.getApproximator(evalPoints, valuesT);
+		LinearApproximator approximator = makeApproximator(evalPoints, valuesT);
 		DecodedOrigin result = new DecodedOrigin(this, name, getNodes(), nodeOrigin, functions, approximator);
 		result.setMode(getMode());
 
@@ -276,7 +281,7 @@ public class DecodableEnsembleImpl extends PlasticEnsembleImpl implements Decoda
                 new Units[]{Units.UNK}
         );
 
-        EulerIntegrator integrator = new EulerIntegrator(tauPSC / 10f);
+        Integrator integrator = new DiscreteLTIIntegrator(new EulerIntegrator(tauPSC / 10f));
 
         DecodedTermination result = new DecodedTermination(this, name, matrix, dynamics, integrator);
         if (isModulatory) {
@@ -323,7 +328,7 @@ public class DecodableEnsembleImpl extends PlasticEnsembleImpl implements Decoda
             }
         }
 
-        EulerIntegrator integrator = new EulerIntegrator(1f / (10f * (float) fastest));
+        Integrator integrator = new DiscreteLTIIntegrator(new EulerIntegrator(1f / (10f * (float) fastest)));
 
         DecodedTermination result = new DecodedTermination(this, name, matrix, dynamics, integrator);
         if (isModulatory) {
@@ -435,6 +440,36 @@ public class DecodableEnsembleImpl extends PlasticEnsembleImpl implements Decoda
         return result.toArray(new DecodedOrigin[0]);
     }
 
+    /**
+     * Makes this ensemble use the same decoder and transform arrays as another ensemble, for origins
+     * and decoded terminations that have the same names and equal values (eg because this ensemble is a
+     * copy of the other). This saves memory when many copies of a network are run together, while
+     * state (neurons, filters, outputs) stays separate. Structural changes that modify decoders or
+     * transforms in place (eg changing radii) must not be made to either ensemble afterwards.
+     *
+     * @param source Ensemble whose decoders and transforms are to be shared
+     */
+    public void shareStructure(DecodableEnsembleImpl source) {
+        if (myDecodedOrigins == null || source.myDecodedOrigins == null) {
+            return;
+        }
+
+        for (DecodedOrigin origin : myDecodedOrigins.values()) {
+            DecodedOrigin other = source.myDecodedOrigins.get(origin.getName());
+            if (other != null && origin.getClass() == other.getClass()
+                    && Arrays.deepEquals(origin.getDecoders(), other.getDecoders())) {
+                origin.setDecoders(other.getDecoders());
+            }
+        }
+
+        for (DecodedTermination termination : myDecodedTerminations.values()) {
+            DecodedTermination other = source.myDecodedTerminations.get(termination.getName());
+            if (other != null) {
+                termination.shareTransform(other);
+            }
+        }
+    }
+
     /**
      * @see ca.nengo.model.Ensemble#getTerminations()
      */
@@ -460,12 +495,25 @@ public class DecodableEnsembleImpl extends PlasticEnsembleImpl implements Decoda
 		super.run(startTime, endTime);
 
 		for (DecodedOrigin o : myDecodedOrigins.values()) {
-            o.run(null, startTime, endTime);
+            runDecodedOrigin(o, startTime, endTime);
         }
 
 		setTime(endTime);
 	}
 
+	/**
+	 * Runs one of the DecodedOrigins after the Nodes have been run. Subclasses that know which
+	 * Nodes spiked can override this to use DecodedOrigin.run(int[], int, float, float).
+	 *
+	 * @param origin A DecodedOrigin of this Ensemble
+	 * @param startTime simulation time of timestep onset
+	 * @param endTime simulation time of timestep end
+	 * @throws SimulationException if the Origin can't be run
+	 */
+	protected void runDecodedOrigin(DecodedOrigin origin, float startTime, float endTime) throws SimulationException {
+		origin.run(null, startTime, endTime);
+	}
+
 	/**
 	 * Allows subclasses to set the simulation time, which is used to support Probeable.
 	 * This is normally set in the run() method. Subclasses that override run() without
@@ -484,6 +532,21 @@ public class DecodableEnsembleImpl extends PlasticEnsembleImpl implements Decoda
 		return myApproximatorFactory;
 	}
 
+	/**
+	 * @param evalPoints Points at which component functions are evaluated
+	 * @param values Values of component functions (eg node outputs) at the evalPoints
+	 * @return An approximator from getApproximatorFactory(), which looks up decoders in the default
+	 * 		DecoderCache if there is one
+	 */
+	protected LinearApproximator makeApproximator(float[][] evalPoints, float[][] values) {
+		DecoderCache cache = DecoderCache.getDefault();
+		ApproximatorFactory factory = getApproximatorFactory();
+		if (cache != null) {
+			factory = new CachingApproximatorFactory(factory, cache);
+		}
+		return factory.getApproximator(evalPoints, values);
+	}
+
 	/**
 	 * @see ca.nengo.model.Probeable#getHistory(java.lang.String)
 	 */
@@ -55,6 +55,7 @@ import ca.nengo.model.impl.RealOutputImpl;
 import ca.nengo.model.nef.DecodableEnsemble;
 import ca.nengo.model.nef.ExpressModel;
 import ca.nengo.model.nef.NEFEnsemble;
+import ca.nengo.model.neuron.Neuron;
 import ca.nengo.model.plasticity.ShortTermPlastic;
 import ca.nengo.util.MU;
 import ca.nengo.util.TimeSeries;
@@ -321,10 +322,10 @@ public class DecodedOrigin implements Origin, Resettable, SimulationMode.ModeCon
 			result[i] = new float[functions.length];
 		}
 
+		float[][] coeffs = approximator.findCoefficients(functions);
 		for (int j = 0; j < functions.length; j++) {
-			float[] coeffs = approximator.findCoefficients(functions[j]);
 			for (int i = 0; i < nodes.length; i++) {
-				result[i][j] = coeffs[i];
+				result[i][j] = coeffs[j][i];
 			}
 		}
 
@@ -371,6 +372,9 @@ public class DecodedOrigin implements Origin, Resettable, SimulationMode.ModeCon
 	}
 
 	/**
+	 * Note: if the returned decoders are changed, pass them back to setDecoders(...), so that
+	 * the change is seen in all simulation modes.
+	 *
 	 * @return Decoding vectors for each Node
 	 */
 	public float[][] getDecoders() {
@@ -518,6 +522,51 @@ public class DecodedOrigin implements Origin, Resettable, SimulationMode.ModeCon
 		myOutput = new RealOutputImpl(values, Units.UNK, endTime);
 	}
 
+	/**
+	 * @return True if run(int[], int, float, float) can be used in place of run(float[], float, float),
+	 * 		ie output is decoded from the spikes of the Nodes' AXON Origins, without short-term plasticity
+	 */
+	public boolean getSupportsSparseRun() {
+		return mySTPDynamicsTemplate == null && Neuron.AXON.equals(myNodeOrigin)
+			&& myMode != SimulationMode.DIRECT && myMode != SimulationMode.EXPRESS;
+	}
+
+	/**
+	 * An alternative to run(float[], float, float) for an Ensemble of spiking Nodes that knows which
+	 * of them spiked in this step. Only the decoders of those Nodes are visited, so the cost is
+	 * proportional to the number of spikes rather than the number of Nodes. The result is the same.
+	 * Must only be used if getSupportsSparseRun() is true.
+	 *
+	 * @param spikingNodes Indices of the Nodes that spiked in this step, in increasing order
+	 * @param numSpiking Number of leading elements of spikingNodes that are used
+	 * @param startTime simulation time of timestep onset
+	 * @param endTime simulation time of timestep end
+	 */
+	public void run(int[] spikingNodes, int numSpiking, float startTime, float endTime) {
+		assert getSupportsSparseRun();
+
+		//decoders are read directly rather than cached, as they may be changed in place (eg by rescaleDecoders)
+		int dimension = myFunctions.length;
+		float[] values = new float[dimension];
+		float val = 1f / (endTime - startTime);
+		for (int s = 0; s < numSpiking; s++) {
+			float[] decoder = myDecoders[spikingNodes[s]];
+			for (int j = 0; j < dimension; j++) {
+				values[j] += val * decoder[j];
+			}
+		}
+
+		if (myNoise != null) {
+			for (int i = 0; i < values.length; i++) {
+				values[i] = myNoises[i].getValue(startTime, endTime, values[i]);
+			}
+		}
+
+		mySTPHistory = null;
+		myTime = endTime;
+		myOutput = new RealOutputImpl(values, Units.UNK, endTime);
+	}
+
 	private float[] getDynamicDecoder(int i, float input, float startTime, float endTime) {
 		float[] result = myDecoders[i];
 		if (mySTPDynamicsTemplate != null) { //TODO: could use a NullDynamics here instead of null (to allow nulling in config tree)
@@ -24,6 +24,7 @@ a recipient may use your version of this file under either the MPL or the GPL Li
 
 package ca.nengo.model.nef.impl;
 
+import java.util.Arrays;
 import java.util.Properties;
 
 import org.apache.log4j.Logger;
@@ -32,6 +33,7 @@ import ca.nengo.dynamics.Integrator;
 import ca.nengo.dynamics.LinearSystem;
 import ca.nengo.dynamics.impl.CanonicalModel;
 import ca.nengo.dynamics.impl.LTISystem;
+import ca.nengo.dynamics.impl.SimpleLTISystem;
 import ca.nengo.model.InstantaneousOutput;
 import ca.nengo.model.Node;
 import ca.nengo.model.Probeable;
@@ -95,6 +97,18 @@ public class DecodedTermination implements Termination, Resettable, Probeable {
 	private float[][] myInitialState;
 	private boolean myValuesSet;
 
+	//first-order filter fast path (dx/dt = ax + bu, y = cx + du), used when dynamics are scalar LTI
+	private boolean myFirstOrder;
+	private float myFilterA;
+	private float myFilterB;
+	private float myFilterC;
+	private float myFilterD;
+	private float[] myFilterState;
+	private float myFilterDt = Float.NaN;
+	private float myFilterDecay;
+	private float myFilterGain;
+	private transient float[] myDynamicsInputs;
+
 	/**
 	 * @param node The parent Node
 	 * @param name The name of this Termination
@@ -139,13 +153,18 @@ public class DecodedTermination implements Termination, Resettable, Probeable {
 
 				//maintain state if there is state
 				if (myDynamics != null && myDynamics[i] != null) {
-					newDynamics[i].setState(myDynamics[i].getState());
+					if (myFilterState != null && newDynamics[i].getState().length == 1) {
+						newDynamics[i].setState(new float[]{myFilterState[i]});
+					} else {
+						newDynamics[i].setState(myDynamics[i].getState());
+					}
 				}
 			} catch (CloneNotSupportedException e) {
 				throw new Error("The clone() operation is not supported by the given dynamics object");
 			}
 		}
 		myDynamics = newDynamics;
+		initFirstOrder();
 
 		//zero corresponding initial state if necessary
 		if (myInitialState == null || myInitialState[0].length != newDynamics[0].getState().length) {
@@ -153,6 +172,29 @@ public class DecodedTermination implements Termination, Resettable, Probeable {
 		}
 	}
 
+	//uses a closed-form update in place of the integrator if dynamics are a time-invariant first-order filter
+	private void initFirstOrder() {
+		myFirstOrder = false;
+		myFilterState = null;
+		myFilterDt = Float.NaN;
+
+		Class<?> type = myDynamicsTemplate.getClass();
+		if ((type == LTISystem.class || type == SimpleLTISystem.class)
+				&& myDynamicsTemplate.getState().length == 1 && !(myIntegrator instanceof SynapticIntegrator)) {
+			LTISystem lti = (LTISystem) myDynamicsTemplate;
+			myFilterA = lti.getA()[0][0];
+			myFilterB = lti.getB()[0][0];
+			myFilterC = lti.getC()[0][0];
+			myFilterD = lti.getD()[0][0];
+
+			myFilterState = new float[myDynamics.length];
+			for (int i = 0; i < myDynamics.length; i++) {
+				myFilterState[i] = myDynamics[i].getState()[0];
+			}
+			myFirstOrder = true;
+		}
+	}
+
 	/**
 	 * @param bias Intrinsic bias that is added to inputs to this termination
 	 */
@@ -178,9 +220,9 @@ public class DecodedTermination implements Termination, Resettable, Probeable {
 	 * @see ca.nengo.model.Termination#setValues(ca.nengo.model.InstantaneousOutput)
 	 */
 	public void setValues(InstantaneousOutput values) throws SimulationException {
-		if (values.getDimension() != getDimensions()) {
+		if (values.getDimension() != myTransform[0].length) {
 			throw new SimulationException("Dimension of input (" + values.getDimension()
-					+ ") does not equal dimension of this Termination (" + getDimensions() + ")");
+					+ ") does not equal dimension of this Termination (" + myTransform[0].length + ")");
 		}
 
 		if ( !(values instanceof RealOutput) ) {
@@ -206,29 +248,38 @@ public class DecodedTermination implements Termination, Resettable, Probeable {
 
 		if (!myValuesSet) {
 			ourLogger.warn("Input values not set on termination " + myName + ".  Assuming input of zero.");
-			setValues(new RealOutputImpl(new float[getDimensions()], Units.UNK, 0.0f));
+			setValues(new RealOutputImpl(new float[myTransform[0].length], Units.UNK, 0.0f));
 		}
 
-		float[][] transform = getTransform();
-		if (myScalingTermination != null) {
-			float scale = myScalingTermination.getOutput()[0];
-			transform = MU.prod(transform, scale);
-		}
-		float[] dynamicsInputs = MU.prod(transform, myInputValues.getValues());
+		float[] dynamicsInputs = getDynamicsInputs();
 		float[] result = new float[dynamicsInputs.length];
 
-		for (int i = 0; i < myDynamics.length; i++) {
-			float[] inVal  = new float[]{dynamicsInputs[i]};
-			if(myTau <= endTime-startTime) {
-				TimeSeries inSeries = new TimeSeriesImpl(new float[]{startTime, endTime}, new float[][]{inVal, inVal}, myNullUnits);
-				TimeSeries outSeries = myIntegrator.integrate(myDynamics[i], inSeries);
-				result[i] = outSeries.getValues()[outSeries.getValues().length-1][0];
+		if (myFirstOrder) {
+			//exact solution for input held constant over the step
+			float dt = endTime - startTime;
+			if (dt != myFilterDt) {
+				myFilterDecay = (float) Math.exp(myFilterA * dt);
+				myFilterGain = myFilterA == 0 ? myFilterB * dt : (myFilterDecay - 1) / myFilterA * myFilterB;
+				myFilterDt = dt;
 			}
-			else {
-				//save the overhead on the integration, and just do it all in one step
-				float[] dxdt = myDynamics[i].f(startTime, inVal);
-				myDynamics[i].setState(MU.sum(myDynamics[i].getState(), MU.prod(dxdt, endTime-startTime)));
-				result[i] = myDynamics[i].g(endTime, inVal)[0];
+			for (int i = 0; i < result.length; i++) {
+				myFilterState[i] = myFilterDecay * myFilterState[i] + myFilterGain * dynamicsInputs[i];
+				result[i] = myFilterC * myFilterState[i] + myFilterD * dynamicsInputs[i];
+			}
+		} else {
+			for (int i = 0; i < myDynamics.length; i++) {
+				float[] inVal  = new float[]{dynamicsInputs[i]};
+				if(myTau <= endTime-startTime) {
+					TimeSeries inSeries = new TimeSeriesImpl(new float[]{startTime, endTime}, new float[][]{inVal, inVal}, myNullUnits);
+					TimeSeries outSeries = myIntegrator.integrate(myDynamics[i], inSeries);
+					result[i] = outSeries.getValues()[outSeries.getValues().length-1][0];
+				}
+				else {
+					//save the overhead on the integration, and just do it all in one step
+					float[] dxdt = myDynamics[i].f(startTime, inVal);
+					myDynamics[i].setState(MU.sum(myDynamics[i].getState(), MU.prod(dxdt, endTime-startTime)));
+					result[i] = myDynamics[i].g(endTime, inVal)[0];
+				}
 			}
 		}
 
@@ -236,6 +287,25 @@ public class DecodedTermination implements Termination, Resettable, Probeable {
 		myOutputValues = result;
 	}
 
+	//transform (scaled if there is a scaling termination) times input, into a reused buffer
+	private float[] getDynamicsInputs() {
+		if (myDynamicsInputs == null || myDynamicsInputs.length != myTransform.length) {
+			myDynamicsInputs = new float[myTransform.length];
+		}
+
+		float scale = myScalingTermination == null ? 1 : myScalingTermination.getOutput()[0];
+		float[] input = myInputValues.getValues();
+		for (int i = 0; i < myTransform.length; i++) {
+			float[] row = myTransform[i];
+			float sum = 0;
+			for (int j = 0; j < row.length; j++) {
+				sum += row[j] * input[j];
+			}
+			myDynamicsInputs[i] = sum * scale;
+		}
+		return myDynamicsInputs;
+	}
+
 	/**
 	 * This method should be called after run(...).
 	 *
@@ -271,7 +341,7 @@ public class DecodedTermination implements Termination, Resettable, Probeable {
 	 */
 	public void reset(boolean randomize) {
 		resetInitialState();
-		myInputValues = new RealOutputImpl(new float[getDimensions()], Units.UNK, 0);
+		myInputValues = new RealOutputImpl(new float[myTransform[0].length], Units.UNK, 0);
 		myValuesSet = false;
 	}
 
@@ -279,6 +349,9 @@ public class DecodedTermination implements Termination, Resettable, Probeable {
 		for (int i = 0; myDynamics != null && i < myDynamics.length; i++) {
 			float[] state = myInitialState != null ? myInitialState[i] : new float[myDynamics[i].getState().length];
 			myDynamics[i].setState(state);
+			if (myFilterState != null) {
+				myFilterState[i] = state[0];
+			}
 		}
 	}
 
@@ -465,6 +538,22 @@ public class DecodedTermination implements Termination, Resettable, Probeable {
 			((SynapticIntegrator)myIntegrator).setNode(node);
 	}
 
+	/**
+	 * Makes this termination use the same transform array as another, if their transforms are equal
+	 * (eg because one termination is a copy of the other), to save memory when many copies of a
+	 * network are run together. Neither transform may be changed in place afterwards.
+	 *
+	 * @param source A termination whose transform is to be shared
+	 * @return True if the transforms were equal and are now shared
+	 */
+	boolean shareTransform(DecodedTermination source) {
+		if (!Arrays.deepEquals(myTransform, source.myTransform)) {
+			return false;
+		}
+		myTransform = source.myTransform;
+		return true;
+	}
+
 	@Override
 	public DecodedTermination clone() throws CloneNotSupportedException {
 		return this.clone(myNode);
@@ -482,6 +571,7 @@ public class DecodedTermination implements Termination, Resettable, Probeable {
 			if (myOutputValues != null) {
                 result.myOutputValues = myOutputValues.clone();
             }
+			result.myDynamicsInputs = null;
 			result.myScalingTermination = myScalingTermination; //refer to same copy
 			result.myStaticBias = myStaticBias.clone();
 			result.setNode(node);
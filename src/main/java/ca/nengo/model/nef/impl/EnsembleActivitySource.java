@@ -0,0 +1,110 @@
+package ca.nengo.model.nef.impl;
+
+import java.util.Random;
+
+import ca.nengo.math.impl.StreamingApproximator;
+import ca.nengo.model.StructuralException;
+
+/**
+ * <p>A source of evaluation points and node outputs of an NEFEnsemble, for a StreamingApproximator.
+ * Points are drawn uniformly from the ensemble's (scaled) unit ball, with a generator seeded from the
+ * chunk index, so each chunk is the same every time it is drawn.</p>
+ *
+ * <p>Example usage (Python syntax), with a million evaluation points:</p>
+ * <pre>
+ *   source = EnsembleActivitySource(ensemble, "AXON", 1000000, 10000, 1)
+ *   approximator = StreamingApproximator(source, ConstantFunction(source.getDimension(), 1), 0.1, -1, None, True)
+ *   ensemble.addDecodedOrigin(DecodedOrigin(ensemble, "X", ensemble.getNodes(), "AXON", functions, approximator))
+ * </pre>
+ */
+public class EnsembleActivitySource implements StreamingApproximator.Source {
+
+	private static final long serialVersionUID = 1L;
+
+	private final NEFEnsembleImpl myEnsemble;
+	private final String myNodeOrigin;
+	private final int myNumPoints;
+	private final int myChunkSize;
+	private final long mySeed;
+
+	/**
+	 * @param ensemble Ensemble whose node outputs are to be decoded
+	 * @param nodeOrigin Name of the node origin whose outputs are decoded
+	 * @param numPoints Total number of evaluation points
+	 * @param chunkSize Number of evaluation points per chunk
+	 * @param seed Random seed for the evaluation points
+	 */
+	public EnsembleActivitySource(NEFEnsembleImpl ensemble, String nodeOrigin, int numPoints, int chunkSize, long seed) {
+		if (chunkSize < 1) {
+			throw new IllegalArgumentException("Chunk size must be at least one");
+		}
+		myEnsemble = ensemble;
+		myNodeOrigin = nodeOrigin;
+		myNumPoints = numPoints;
+		myChunkSize = chunkSize;
+		mySeed = seed;
+	}
+
+	/**
+	 * @return Dimension of the evaluation points
+	 */
+	public int getDimension() {
+		return myEnsemble.getDimension();
+	}
+
+	/**
+	 * @see ca.nengo.math.impl.StreamingApproximator.Source#getNumComponents()
+	 */
+	public int getNumComponents() {
+		return myEnsemble.getNodes().length;
+	}
+
+	/**
+	 * @see ca.nengo.math.impl.StreamingApproximator.Source#getNumChunks()
+	 */
+	public int getNumChunks() {
+		return (myNumPoints + myChunkSize - 1) / myChunkSize;
+	}
+
+	/**
+	 * @see ca.nengo.math.impl.StreamingApproximator.Source#getNumPoints()
+	 */
+	public int getNumPoints() {
+		return myNumPoints;
+	}
+
+	/**
+	 * @see ca.nengo.math.impl.StreamingApproximator.Source#getPoints(int)
+	 */
+	public float[][] getPoints(int chunk) {
+		int dimension = myEnsemble.getDimension();
+		float[] radii = myEnsemble.getRadii();
+		Random random = new Random(mySeed * 1000003L + chunk);
+
+		float[][] result = new float[Math.min(myChunkSize, myNumPoints - chunk * myChunkSize)][dimension];
+		for (float[] point : result) {
+			double norm = 0;
+			for (int d = 0; d < dimension; d++) {
+				point[d] = (float) random.nextGaussian();
+				norm += point[d] * point[d];
+			}
+			double scale = Math.pow(random.nextDouble(), 1d / dimension) / Math.sqrt(norm);
+			for (int d = 0; d < dimension; d++) {
+				point[d] = (float) (point[d] * scale) * radii[d];
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * @see ca.nengo.math.impl.StreamingApproximator.Source#getValues(float[][])
+	 */
+	public float[][] getValues(float[][] points) {
+		try {
+			return myEnsemble.getConstantOutputs(points, myNodeOrigin);
+		} catch (StructuralException e) {
+			throw new RuntimeException("Can't find outputs of ensemble " + myEnsemble.getName(), e);
+		}
+	}
+
+}
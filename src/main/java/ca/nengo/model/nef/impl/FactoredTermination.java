@@ -0,0 +1,234 @@
+package ca.nengo.model.nef.impl;
+
+import ca.nengo.dynamics.Integrator;
+import ca.nengo.dynamics.LinearSystem;
+import ca.nengo.model.InstantaneousOutput;
+import ca.nengo.model.Node;
+import ca.nengo.model.RealOutput;
+import ca.nengo.model.SimulationException;
+import ca.nengo.model.SpikeOutput;
+import ca.nengo.model.StructuralException;
+import ca.nengo.model.Units;
+import ca.nengo.model.impl.RealOutputImpl;
+import ca.nengo.model.nef.NEFEnsemble;
+import ca.nengo.util.MU;
+
+/**
+ * <p>A Termination of the neuron-level (eg spike) output of another population onto an NEFEnsemble,
+ * with connection weights stored in factored form. The weight from presynaptic neuron j to postsynaptic
+ * neuron i is the ith encoder times the transform times the jth decoder, but this matrix is never
+ * formed. Instead the presynaptic decoders are applied to each input (visiting only the decoders of
+ * neurons that spiked), and the resulting vector is transformed, filtered and encoded as in a
+ * DecodedTermination. This needs O((N_post + N_pre) d) memory and time per step rather than
+ * O(N_post N_pre).</p>
+ *
+ * <p>Because everything is linear, the result is the same as a DecodedTermination that receives
+ * the output of the corresponding DecodedOrigin. getWeights() gives the full weight matrix, eg for
+ * learning rules that need it. getInput() returns the decoded (pre-transform) input.</p>
+ *
+ * <p>If the Termination is made with a DecodedOrigin, the origin's current decoders are used on each
+ * step, so changes to them (eg rescaleDecoders()) apply to this connection too. If it is made with a
+ * decoder matrix, that matrix is copied, and only changes with setDecoders(). A clone uses a copy of
+ * the decoders at the time of cloning, because the copy of the presynaptic origin isn't known here
+ * (NetworkImpl.clone() binds it to the copy of the origin in the new Network).</p>
+ */
+public class FactoredTermination extends DecodedTermination {
+
+	private static final long serialVersionUID = 1L;
+
+	private DecodedOrigin myOrigin;
+	private float[][] myDecoders;
+	private InstantaneousOutput myRawInput;
+	private transient float[] myDecodedBuffer;
+
+	/**
+	 * @param node The parent Node
+	 * @param name The name of this Termination
+	 * @param decoders Decoders of the presynaptic population (one row per presynaptic neuron)
+	 * @param transform A matrix that maps the decoded vector onto the state space represented by
+	 * 		the NEFEnsemble to which the Termination belongs
+	 * @param dynamics Post-synaptic current dynamics (single-input single-output)
+	 * @param integrator Numerical integrator with which to solve dynamics
+	 * @throws StructuralException If dynamics are not SISO, or decoders and transform are not
+	 * 		matrices of compatible size
+	 */
+	public FactoredTermination(Node node, String name, float[][] decoders, float[][] transform,
+			LinearSystem dynamics, Integrator integrator) throws StructuralException {
+		super(node, name, transform, dynamics, integrator);
+		setDecoders(decoders);
+	}
+
+	/**
+	 * @param node The parent Node
+	 * @param name The name of this Termination
+	 * @param origin DecodedOrigin of the presynaptic population, whose current decoders are used
+	 * @param transform A matrix that maps the origin's output onto the state space represented by
+	 * 		the NEFEnsemble to which the Termination belongs
+	 * @param dynamics Post-synaptic current dynamics (single-input single-output)
+	 * @param integrator Numerical integrator with which to solve dynamics
+	 * @throws StructuralException If dynamics are not SISO, or the origin's decoders and transform
+	 * 		are not matrices of compatible size
+	 */
+	public FactoredTermination(Node node, String name, DecodedOrigin origin, float[][] transform,
+			LinearSystem dynamics, Integrator integrator) throws StructuralException {
+		super(node, name, transform, dynamics, integrator);
+		checkDecoders(origin.getDecoders(), -1);
+		myOrigin = origin;
+	}
+
+	/**
+	 * @return DecodedOrigin whose decoders are used, or null if a fixed decoder matrix is used
+	 */
+	public DecodedOrigin getOrigin() {
+		return myOrigin;
+	}
+
+	/**
+	 * @param origin DecodedOrigin of the presynaptic population, whose current decoders are used from
+	 * 		now on (it must have the same number of neurons)
+	 * @throws StructuralException If the origin's decoders are not a matrix of the right size
+	 */
+	public void setOrigin(DecodedOrigin origin) throws StructuralException {
+		checkDecoders(origin.getDecoders(), getDimensions());
+		myOrigin = origin;
+		myDecoders = null;
+	}
+
+	/**
+	 * @return Decoders of the presynaptic population (one row per presynaptic neuron)
+	 */
+	public float[][] getDecoders() {
+		return MU.clone(getCurrentDecoders());
+	}
+
+	/**
+	 * @param decoders New decoders of the presynaptic population (one row per presynaptic neuron;
+	 * 		the number of neurons must not change). A copy is used from now on, in place of any
+	 * 		DecodedOrigin's decoders.
+	 * @throws StructuralException If the decoders are not a matrix of the right size
+	 */
+	public void setDecoders(float[][] decoders) throws StructuralException {
+		float[][] current = getCurrentDecoders();
+		checkDecoders(decoders, current == null ? -1 : current.length);
+
+		myDecoders = MU.clone(decoders);
+		myOrigin = null;
+	}
+
+	private void checkDecoders(float[][] decoders, int rows) throws StructuralException {
+		if ( !MU.isMatrix(decoders) ) {
+			throw new StructuralException("Given decoders are not a matrix");
+		}
+		if (decoders[0].length != getTransform()[0].length) {
+			throw new StructuralException("Decoders must have " + getTransform()[0].length + " columns");
+		}
+		if (rows >= 0 && decoders.length != rows) {
+			throw new StructuralException("Decoders must have " + rows + " rows");
+		}
+	}
+
+	private float[][] getCurrentDecoders() {
+		return (myOrigin == null) ? myDecoders : myOrigin.getDecoders();
+	}
+
+	/**
+	 * @return Full synaptic weight matrix (encoders * transform * decoders'), with one row per neuron
+	 * 		in the parent NEFEnsemble and one column per presynaptic neuron
+	 */
+	public float[][] getWeights() {
+		float[][] encoders = ((NEFEnsemble) getNode()).getEncoders();
+		return MU.prod(encoders, MU.prod(getTransform(), MU.transpose(getCurrentDecoders())));
+	}
+
+	/**
+	 * @return Number of presynaptic neurons
+	 * @see ca.nengo.model.Termination#getDimensions()
+	 */
+	@Override
+	public int getDimensions() {
+		return getCurrentDecoders().length;
+	}
+
+	/**
+	 * @param values SpikeOutput or RealOutput (eg firing rates) of the presynaptic neurons
+	 *
+	 * @see ca.nengo.model.Termination#setValues(ca.nengo.model.InstantaneousOutput)
+	 */
+	@Override
+	public void setValues(InstantaneousOutput values) throws SimulationException {
+		if (values.getDimension() != getDimensions()) {
+			throw new SimulationException("Dimension of input (" + values.getDimension()
+					+ ") does not equal dimension of this Termination (" + getDimensions() + ")");
+		}
+		if ( !(values instanceof SpikeOutput) && !(values instanceof RealOutput) ) {
+			throw new SimulationException("Only spike and real-valued input are accepted at a FactoredTermination");
+		}
+
+		myRawInput = values;
+	}
+
+	/**
+	 * Decodes the latest presynaptic input, then transforms and filters it as a DecodedTermination.
+	 * Each spike contributes its neuron's decoder divided by the step size, as in a DecodedOrigin.
+	 *
+	 * @see ca.nengo.model.nef.impl.DecodedTermination#run(float, float)
+	 */
+	@Override
+	public void run(float startTime, float endTime) throws SimulationException {
+		float[][] decoders = getCurrentDecoders();
+		int dimension = decoders[0].length;
+		if (myDecodedBuffer == null || myDecodedBuffer.length != dimension) {
+			myDecodedBuffer = new float[dimension];
+		}
+		float[] decoded = myDecodedBuffer;
+		for (int k = 0; k < dimension; k++) {
+			decoded[k] = 0;
+		}
+
+		if (myRawInput instanceof SpikeOutput) {
+			boolean[] spikes = ((SpikeOutput) myRawInput).getValues();
+			float val = 1f / (endTime - startTime);
+			for (int j = 0; j < spikes.length; j++) {
+				if (spikes[j]) {
+					float[] decoder = decoders[j];
+					for (int k = 0; k < dimension; k++) {
+						decoded[k] += val * decoder[k];
+					}
+				}
+			}
+		} else if (myRawInput instanceof RealOutput) {
+			float[] rates = ((RealOutput) myRawInput).getValues();
+			for (int j = 0; j < rates.length; j++) {
+				if (rates[j] != 0) {
+					float[] decoder = decoders[j];
+					for (int k = 0; k < dimension; k++) {
+						decoded[k] += rates[j] * decoder[k];
+					}
+				}
+			}
+		}
+
+		//input is taken as zero if it hasn't been set
+		super.setValues(new RealOutputImpl(decoded, Units.UNK, startTime));
+		super.run(startTime, endTime);
+	}
+
+	/**
+	 * @see ca.nengo.model.Resettable#reset(boolean)
+	 */
+	@Override
+	public void reset(boolean randomize) {
+		super.reset(randomize);
+		myRawInput = null;
+	}
+
+	@Override
+	public FactoredTermination clone(Node node) throws CloneNotSupportedException {
+		FactoredTermination result = (FactoredTermination) super.clone(node);
+		result.myDecoders = MU.clone(getCurrentDecoders());
+		result.myOrigin = null;
+		result.myDecodedBuffer = null;
+		return result;
+	}
+
+}
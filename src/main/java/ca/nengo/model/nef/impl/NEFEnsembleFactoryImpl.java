@@ -27,16 +27,23 @@ a recipient may use your version of this file under either the MPL or the GPL Li
  */
 package ca.nengo.model.nef.impl;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.Random;
 
 import org.apache.log4j.Logger;
 
 import ca.nengo.io.FileManager;
 import ca.nengo.math.ApproximatorFactory;
 import ca.nengo.math.Function;
+import ca.nengo.math.PDFTools;
 import ca.nengo.math.impl.IdentityFunction;
 import ca.nengo.math.impl.IndicatorPDF;
+import ca.nengo.math.impl.RandomizedSVDApproximator;
 import ca.nengo.math.impl.WeightedCostApproximator;
 import ca.nengo.model.Node;
 import ca.nengo.model.SimulationMode;
@@ -50,6 +57,7 @@ import ca.nengo.model.neuron.impl.LIFNeuronFactory;
 import ca.nengo.util.MU;
 import ca.nengo.util.VectorGenerator;
 import ca.nengo.util.VisiblyMutableUtils;
+import ca.nengo.util.impl.ParallelLoop;
 import ca.nengo.util.impl.RandomHypersphereVG;
 
 /**
@@ -113,6 +121,8 @@ public class NEFEnsembleFactoryImpl implements NEFEnsembleFactory, java.io.Seria
 	public void beQuiet() {
 		if(myApproximatorFactory instanceof WeightedCostApproximator.Factory) {
             ((WeightedCostApproximator.Factory)myApproximatorFactory).setQuiet(true);
+        } else if(myApproximatorFactory instanceof RandomizedSVDApproximator.Factory) {
+            ((RandomizedSVDApproximator.Factory)myApproximatorFactory).setQuiet(true);
         } else {
             System.out.println("beQuiet() not supported by this approximator factory");
         }
@@ -220,6 +230,92 @@ public class NEFEnsembleFactoryImpl implements NEFEnsembleFactory, java.io.Seria
 		myNodeFactory = factory;
 	}
 
+	/**
+	 * Makes several independent Ensembles at once, with the default number of threads.
+	 *
+	 * @see #makeAll(String[], int, float[], long, int)
+	 */
+	public NEFEnsemble[] makeAll(String[] names, int n, float[] radii, long seed) throws StructuralException {
+		return makeAll(names, n, radii, seed, ParallelLoop.getDefaultNumThreads());
+	}
+
+	/**
+	 * <p>Makes several independent Ensembles at once, on several threads (eg for a NetworkArray).</p>
+	 *
+	 * <p>Each Ensemble is made by its own copy of this factory (so that stateful PDFs and generators
+	 * aren't shared between threads), with its own source of random numbers, seeded from the given seed
+	 * and the Ensemble's index. Parallel loops within each Ensemble's construction run on that Ensemble's
+	 * thread (see PDFTools.setThreadRandom()), so that even noisy Nodes draw their random numbers from this
+	 * source, in order. The results are therefore the same whatever the number of threads,
+	 * although they differ from Ensembles made one at a time by make(...). If this factory can't be
+	 * copied (by serialization), the Ensembles are made one at a time by this factory, still with
+	 * per-Ensemble seeds.</p>
+	 *
+	 * @param names Name of each new Ensemble
+	 * @param n Number of nodes in each Ensemble
+	 * @param radii Radius of encoded region in each dimension
+	 * @param seed Random seed
+	 * @param numThreads Maximum number of threads to use
+	 * @return New Ensembles, in the order of their names
+	 * @throws StructuralException if an Ensemble can't be made
+	 */
+	public NEFEnsemble[] makeAll(final String[] names, final int n, final float[] radii, final long seed, int numThreads)
+			throws StructuralException {
+		byte[] serialized;
+		try {
+			ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+			ObjectOutputStream out = new ObjectOutputStream(bytes);
+			out.writeObject(this);
+			out.close();
+			serialized = bytes.toByteArray();
+		} catch (IOException e) {
+			ourLogger.warn("Can't copy ensemble factory; ensembles will be made on one thread", e);
+			serialized = null;
+			numThreads = 1;
+		}
+
+		final byte[] factory = serialized;
+		final NEFEnsemble[] result = new NEFEnsemble[names.length];
+		try {
+			ParallelLoop.run(names.length, numThreads, new ParallelLoop.Body() {
+				public void run(int i) {
+					PDFTools.setThreadRandom(new Random(seed * 1000003L + i));
+					try {
+						NEFEnsembleFactoryImpl maker = (factory == null) ? NEFEnsembleFactoryImpl.this : copy(factory);
+						result[i] = maker.doMake(names[i], n, radii, 0);
+						if (result[i] == null) {
+							throw new StructuralException("Error creating ensemble " + names[i]);
+						}
+						result[i].setEnsembleFactory(NEFEnsembleFactoryImpl.this);
+					} catch (StructuralException e) {
+						throw new RuntimeException(e);
+					} finally {
+						PDFTools.setThreadRandom(null);
+					}
+				}
+			});
+		} catch (RuntimeException e) {
+			if (e.getCause() instanceof StructuralException) {
+				throw (StructuralException) e.getCause();
+			}
+			throw e;
+		}
+		return result;
+	}
+
+	private static NEFEnsembleFactoryImpl copy(byte[] serialized) throws StructuralException {
+		try {
+			ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(serialized));
+			NEFEnsembleFactoryImpl result = (NEFEnsembleFactoryImpl) in.readObject();
+			in.close();
+			return result;
+		} catch (IOException e) {
+			throw new StructuralException("Can't copy ensemble factory", e);
+		} catch (ClassNotFoundException e) {
+			throw new StructuralException("Can't copy ensemble factory", e);
+		}
+	}
+
 	//common make(...) implementation
 	private NEFEnsemble doMake(String name, int n, float[] radii, int attempts) throws StructuralException {
 		
@@ -29,7 +29,6 @@ package ca.nengo.model.nef.impl;
 
 import java.util.Arrays;
 import java.util.HashMap;
-import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Properties;
@@ -39,6 +38,7 @@ import java.lang.StringBuilder;
 import ca.nengo.dynamics.DynamicalSystem;
 import ca.nengo.dynamics.Integrator;
 import ca.nengo.dynamics.LinearSystem;
+import ca.nengo.dynamics.impl.DiscreteLTIIntegrator;
 import ca.nengo.dynamics.impl.EulerIntegrator;
 import ca.nengo.dynamics.impl.SimpleLTISystem;
 import ca.nengo.math.ApproximatorFactory;
@@ -61,6 +61,7 @@ import ca.nengo.model.nef.NEFEnsembleFactory;
 import ca.nengo.model.nef.NEFNode;
 import ca.nengo.model.neuron.Neuron;
 import ca.nengo.model.neuron.impl.LIFNeuronFactory;
+import ca.nengo.model.neuron.impl.LIFPopulationEngine;
 import ca.nengo.model.neuron.impl.LIFSpikeGenerator;
 import ca.nengo.model.neuron.impl.SpikeGeneratorOrigin;
 import ca.nengo.model.neuron.impl.SpikingNeuron;
@@ -73,6 +74,7 @@ import ca.nengo.util.MU;
 import ca.nengo.util.ScriptGenException;
 import ca.nengo.util.TimeSeries;
 import ca.nengo.util.impl.LearningTask;
+import ca.nengo.util.impl.ParallelLoop;
 import ca.nengo.util.impl.TimeSeriesImpl;
 /**
  * Default implementation of NEFEnsemble.
@@ -117,6 +119,18 @@ public class NEFEnsembleImpl extends DecodableEnsembleImpl implements NEFEnsembl
 
 	private boolean myUseGPU;
 
+	private boolean myUsePopulationEngine;
+	private transient LIFPopulationEngine myPopulationEngine;
+	private transient boolean myPopulationEngineChecked;
+	private transient float[] myRadialInputs;
+
+	//buffers for finding radial inputs in one pass per step (made as needed)
+	private transient float[][] myFlatEncodersSource; //myEncoders when myFlatEncoders was made
+	private transient float[] myFlatEncoders; //myEncoders in one row-major array
+	private transient float[] myScaledState;
+	private transient float[] myBiasInputs;
+	private transient float[] myRadialInputBuffer; //used if there is no population engine
+
 	/**
 	 * @param name Unique name of Ensemble
 	 * @param nodes Nodes that make up the Ensemble
@@ -151,9 +165,10 @@ public class NEFEnsembleImpl extends DecodableEnsembleImpl implements NEFEnsembl
 		setRadii(radii);
 		myFixedModes = null;
 
-		myDirectModeIntegrator = new EulerIntegrator(.001f);
+		myDirectModeIntegrator = new DiscreteLTIIntegrator(new EulerIntegrator(.001f));
 
 		myUseGPU = true;
+		myUsePopulationEngine = false;
 	}
 
 	/**
@@ -174,7 +189,60 @@ public class NEFEnsembleImpl extends DecodableEnsembleImpl implements NEFEnsembl
 	 * @return Using GPU?
 	 */
 	public boolean getUseGPU() {
-		return myUseGPU && (getMode() == SimulationMode.DEFAULT || getMode() == SimulationMode.RATE);
+		if (!myUseGPU || !(getMode() == SimulationMode.DEFAULT || getMode() == SimulationMode.RATE)) {
+			return false;
+		}
+
+		//the GPU treats decoded terminations as taking decoded input
+		for (DecodedTermination t : myDecodedTerminations.values()) {
+			if (t instanceof FactoredTermination) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * @param use If true, spiking LIF neurons in this ensemble are advanced together by a
+	 * 		LIFPopulationEngine rather than one Node at a time. Ensembles of other kinds of
+	 * 		Nodes run as usual.
+	 */
+	public void setUsePopulationEngine(boolean use) {
+		myUsePopulationEngine = use;
+		invalidatePopulationEngine();
+	}
+
+	/**
+	 * @return True if spiking LIF neurons in this ensemble are advanced together by a LIFPopulationEngine
+	 */
+	public boolean getUsePopulationEngine() {
+		return myUsePopulationEngine;
+	}
+
+	/**
+	 * @return The LIFPopulationEngine that currently runs the Nodes of this ensemble, or null if
+	 * 		the Nodes are run individually
+	 */
+	public LIFPopulationEngine getPopulationEngine() {
+		if (myUsePopulationEngine && !myPopulationEngineChecked) {
+			myPopulationEngineChecked = true;
+			Node[] nodes = getNodes();
+			if (LIFPopulationEngine.isSupported(nodes)) {
+				myPopulationEngine = new LIFPopulationEngine(nodes);
+				myRadialInputs = new float[nodes.length];
+			}
+		}
+		return myPopulationEngine;
+	}
+
+	/**
+	 * Discards the current LIFPopulationEngine (if any) so that a new one is made from the
+	 * Nodes on the next step. Should be called when neuron parameters are changed directly.
+	 */
+	public void invalidatePopulationEngine() {
+		myPopulationEngine = null;
+		myPopulationEngineChecked = false;
+		myRadialInputs = null;
 	}
 
 	/**
@@ -243,7 +311,7 @@ public class NEFEnsembleImpl extends DecodableEnsembleImpl implements NEFEnsembl
 					// recalculate the decoders
 					if (!myReuseApproximators || !myDecodingApproximators.containsKey(nodeOrigin)) {
 						float[][] outputs = getConstantOutputs(myEvalPoints, nodeOrigin);
-						LinearApproximator approximator = getApproximatorFactory().getApproximator(myEvalPoints, outputs);
+						LinearApproximator approximator = makeApproximator(myEvalPoints, outputs);
 						myDecodingApproximators.put(nodeOrigin, approximator);
 					}
 
@@ -322,24 +390,73 @@ public class NEFEnsembleImpl extends DecodableEnsembleImpl implements NEFEnsembl
 	}
 
 	/**
+	 * Nodes are run on several threads only if they are noise-free LIF neurons. Other Nodes may draw
+	 * random numbers (eg for noise), so they are run one at a time, in order, to keep results
+	 * reproducible with PDFTools.setSeed().
+	 *
 	 * @param evalPoints Vector points at which to find output (each one must have same dimension as
 	 * 		encoder)
 	 * @param origin Name of Origin from which to collect output for each Node
 	 * @return Output of each Node at each evaluation point (1st dimension corresponds to Node)
 	 * @throws StructuralException If CONSTANT_RATE is not supported by any Node
 	 */
-	protected float[][] getConstantOutputs(float[][] evalPoints, String origin) throws StructuralException {
+	protected float[][] getConstantOutputs(final float[][] evalPoints, final String origin) throws StructuralException {
 		NEFNode[] nodes = (NEFNode[]) getNodes();
-		float[][] result = new float[nodes.length][];
+		boolean deterministic = LIFPopulationEngine.isConstantRateSupported(nodes);
 
-		for (int i = 0; i < nodes.length; i++) {
-			try {
-				result[i] = getConstantOutput(i, evalPoints, origin);
-			} catch (SimulationException e) {
-				throw new StructuralException("Node " + i + " does not have the Origin " + origin);
+		//LIF rates can be found directly from the radial inputs, without running the nodes
+		if (Neuron.AXON.equals(origin) && deterministic) {
+			return LIFPopulationEngine.getConstantRates(nodes, getRadialInputs(evalPoints));
+		}
+
+		final float[][] result = new float[nodes.length][];
+		try {
+			ParallelLoop.run(nodes.length, deterministic ? ParallelLoop.getDefaultNumThreads() : 1, new ParallelLoop.Body() {
+				public void run(int i) {
+					try {
+						result[i] = getConstantOutput(i, evalPoints, origin);
+					} catch (SimulationException e) {
+						throw new RuntimeException(new StructuralException("Node " + i + " does not have the Origin " + origin));
+					} catch (StructuralException e) {
+						throw new RuntimeException(e);
+					}
+				}
+			});
+		} catch (RuntimeException e) {
+			if (e.getCause() instanceof StructuralException) {
+				throw (StructuralException) e.getCause();
+			}
+			throw e;
+		}
+
+		return result;
+	}
+
+	/**
+	 * @param states Points in the represented space
+	 * @return Radial input to each Node (first dimension) at each point (second dimension)
+	 */
+	private float[][] getRadialInputs(final float[][] states) {
+		final float[][] scaled;
+		if (myRadiiAreOne) {
+			scaled = states;
+		} else {
+			scaled = new float[states.length][];
+			for (int j = 0; j < states.length; j++) {
+				scaled[j] = MU.prodElementwise(states[j], myInverseRadii);
 			}
 		}
 
+		final float[][] result = new float[myEncoders.length][states.length];
+		ParallelLoop.run(myEncoders.length, new ParallelLoop.Body() {
+			public void run(int i) {
+				float[] encoder = myEncoders[i];
+				float[] row = result[i];
+				for (int j = 0; j < scaled.length; j++) {
+					row[j] = MU.prod(scaled[j], encoder);
+				}
+			}
+		});
 		return result;
 	}
 
@@ -384,90 +501,135 @@ public class NEFEnsembleImpl extends DecodableEnsembleImpl implements NEFEnsembl
 	
 	/**
 	 * Similar to getConstantOutputs, but uses a time series as input to each neuron rather than a single point.
+	 * Each Node is run over each signal using clones of the Nodes, so the Nodes of this Ensemble aren't
+	 * locked or changed. Noise-free LIF neurons are run on several threads; other Nodes are run in order.
 	 * 
-	 * @param evalPoints Signals over which to evaluate outputs.  Each signal can have dimension
+	 * @param evalSignals Signals over which to evaluate outputs.  Each signal can have dimension
 	 * 			equal to the number of nodes in the population (each dimension is the input to one node),
 	 * 			or dimension equal to the dimension of this population (a single input for the whole population).
 	 * @param origin Name of Origin from which to collect output for each Node
 	 * @return Output of each Node over each evaluation signal (1st dimension corresponds to Node, 2nd to signal, 3rd to time)
 	 * @throws StructuralException If RATE is not supported by any Node
 	 */
-	protected float[][][] getSignalOutputs(TimeSeries[] evalSignals, String origin) throws StructuralException
+	protected float[][][] getSignalOutputs(final TimeSeries[] evalSignals, final String origin) throws StructuralException
 	{
-		NEFNode[] nodes = (NEFNode[]) getNodes();
-		float[][][] result = new float[nodes.length][evalSignals.length][evalSignals[0].getTimes().length];
-		
-		for (int i = 0; i < nodes.length; i++) {
-			float[][] output;
-			try {
-				output = getSignalOutput(i, evalSignals, origin);
-			} catch (SimulationException e) {
-				throw new StructuralException("Node " + i + " does not have the Origin " + origin);
+		final int numNodes = getNodes().length;
+		final float[][][] result = new float[numNodes][evalSignals.length][];
+		for (int i = 0; i < numNodes; i++) {
+			for (int j = 0; j < evalSignals.length; j++) {
+				result[i][j] = new float[evalSignals[j].getTimes().length];
 			}
-			
-			for(int j=0; j < output.length; j++)
-				result[i][j] = output[j];
+		}
+
+		//nodes other than noise-free LIF neurons may draw random numbers, so they are run in order (see getConstantOutputs)
+		int numThreads = LIFPopulationEngine.isConstantRateSupported(getNodes()) ? ParallelLoop.getDefaultNumThreads() : 1;
+		try {
+			ParallelLoop.run(numNodes * evalSignals.length, numThreads, new ParallelLoop.Body() {
+				public void run(int index) {
+					int i = index / evalSignals.length;
+					int j = index % evalSignals.length;
+					try {
+						runSignal(i, evalSignals[j], origin, result[i][j]);
+					} catch (SimulationException e) {
+						throw new RuntimeException(new StructuralException("Node " + i + " does not have the Origin " + origin));
+					} catch (StructuralException e) {
+						throw new RuntimeException(e);
+					}
+				}
+			});
+		} catch (RuntimeException e) {
+			if (e.getCause() instanceof StructuralException) {
+				throw (StructuralException) e.getCause();
+			}
+			throw e;
 		}
 
 		return result;
-		
 	}
-	
+
 	/**
-	 * Similar to getConstantOutput, but uses a time series as input to each neuron rather than a single point.
-	 * 
-	 * @param nodeIndex Index of Node for which to find output at various inputs
-	 * @param evalPoints Signals over which to evaluate outputs.  Each signal can have dimension
-	 * 			equal to the number of nodes in the population (each dimension is the input to one node),
-	 * 			or dimension equal to the dimension of this population (a single input for the whole population).
+	 * @param nodeIndex Index of Node for which to find output over various input signals
+	 * @param evalSignals Signals over which to evaluate outputs (see getSignalOutputs(...))
 	 * @param origin Name of Origin from which to collect output
-	 * @return Output of indexed Node over each evaluation signal.
+	 * @return Output of indexed Node over each evaluation signal (1st dimension corresponds to signal, 2nd to time)
 	 * @throws StructuralException If RATE is not supported by the given Node
 	 * @throws SimulationException If the Node does not have an Origin with the given name
 	 */
 	protected float[][] getSignalOutput(int nodeIndex, TimeSeries[] evalSignals, String origin) throws StructuralException, SimulationException
 	{
 		float[][] result = new float[evalSignals.length][];
+		for (int i = 0; i < evalSignals.length; i++) {
+			result[i] = new float[evalSignals[i].getTimes().length];
+			runSignal(nodeIndex, evalSignals[i], origin, result[i]);
+		}
+		return result;
+	}
 
-		NEFNode node = (NEFNode) getNodes()[nodeIndex];
-		synchronized (node) {
-			SimulationMode mode = node.getMode();
-
-			node.setMode(SimulationMode.RATE);
-			if ( !node.getMode().equals(SimulationMode.RATE) ) {
-				throw new StructuralException(
-					"To find decoders using this method, all Nodes must support RATE simulation mode");
-			}
+	/**
+	 * Runs a copy of a Node in RATE mode over an evaluation signal, from its reset state. If the Node
+	 * can't be cloned, the Node itself is locked and run, and its mode is restored afterwards.
+	 *
+	 * @param nodeIndex Index of Node
+	 * @param evalSignal Signal over which to evaluate output (see getSignalOutputs(...))
+	 * @param origin Name of Origin from which to collect output
+	 * @param result Array into which output at each time is written
+	 * @throws StructuralException If RATE is not supported by the given Node
+	 * @throws SimulationException If the Node does not have an Origin with the given name
+	 */
+	private void runSignal(int nodeIndex, TimeSeries evalSignal, String origin, float[] result) throws StructuralException, SimulationException
+	{
+		Node[] nodes = getNodes();
+		NEFNode node = (NEFNode) nodes[nodeIndex];
+		NEFNode worker;
+		try {
+			worker = (NEFNode) node.clone();
+		} catch (CloneNotSupportedException e) {
+			worker = null;
+		}
 
-			for (int i = 0; i < evalSignals.length; i++) {
-				node.reset(false);
-				float[][] vals = evalSignals[i].getValues();
-				float[] times = evalSignals[i].getTimes();
-				float dt = times[1] - times[0]; //note: we assume dt is the same across the signal
-				
-				result[i] = new float[times.length];
-				for(int t=0; t < times.length; t++)
-				{
-					//two possibilities: evaluation signal represents a separate signal for each node (first case),
-					//		or evaluation signal presents a single value and a separate input is calculated for each
-					//		node using that node's encoder.
-					if(vals[t].length == getNodes().length) 
-						node.setRadialInput(vals[t][nodeIndex]);
-					else
-						node.setRadialInput(getRadialInput(vals[t], nodeIndex));
-						
-	
-					node.run(times[t], times[t]+dt);
-	
-					RealOutput output = (RealOutput) node.getOrigin(origin).getValues();
-					result[i][t] = output.getValues()[0];
+		if (worker == null) {
+			synchronized (node) {
+				SimulationMode mode = node.getMode();
+				try {
+					runSignal(node, nodeIndex, nodes.length, evalSignal, origin, result);
+				} finally {
+					node.setMode(mode);
 				}
 			}
+		} else {
+			runSignal(worker, nodeIndex, nodes.length, evalSignal, origin, result);
+		}
+	}
 
-			node.setMode(mode);
+	private void runSignal(NEFNode node, int nodeIndex, int numNodes, TimeSeries evalSignal, String origin, float[] result)
+			throws StructuralException, SimulationException
+	{
+		node.setMode(SimulationMode.RATE);
+		if ( !node.getMode().equals(SimulationMode.RATE) ) {
+			throw new StructuralException(
+				"To find decoders using this method, all Nodes must support RATE simulation mode");
 		}
 
-		return result;
+		node.reset(false);
+		Origin nodeOrigin = node.getOrigin(origin);
+		float[][] vals = evalSignal.getValues();
+		float[] times = evalSignal.getTimes();
+		float dt = times[1] - times[0]; //note: we assume dt is the same across the signal
+
+		for(int t=0; t < times.length; t++)
+		{
+			//two possibilities: evaluation signal represents a separate signal for each node (first case),
+			//		or evaluation signal presents a single value and a separate input is calculated for each
+			//		node using that node's encoder.
+			if(vals[t].length == numNodes)
+				node.setRadialInput(vals[t][nodeIndex]);
+			else
+				node.setRadialInput(getRadialInput(vals[t], nodeIndex));
+
+			node.run(times[t], times[t]+dt);
+
+			result[t] = ((RealOutput) nodeOrigin.getValues()).getValues()[0];
+		}
 	}
 
 	/**
@@ -516,7 +678,7 @@ public class NEFEnsembleImpl extends DecodableEnsembleImpl implements NEFEnsembl
     public Origin addDecodedOrigin(String name, Function[] functions, String nodeOrigin) throws StructuralException {
 		if (!myReuseApproximators || !myDecodingApproximators.containsKey(nodeOrigin)) {
 			float[][] outputs = getConstantOutputs(myEvalPoints, nodeOrigin);
-			LinearApproximator approximator = getApproximatorFactory().getApproximator(myEvalPoints, outputs);
+			LinearApproximator approximator = makeApproximator(myEvalPoints, outputs);
 			myDecodingApproximators.put(nodeOrigin, approximator);
 		}
 
@@ -601,6 +763,84 @@ public class NEFEnsembleImpl extends DecodableEnsembleImpl implements NEFEnsembl
 	    return super.addDecodedTermination(name, matrix, tfNumerator,tfDenominator, passthrough, isModulatory);
 	}
 
+	/**
+	 * Adds a Termination of the neuron-level output (eg spikes) of another population, with connection
+	 * weights kept in factored form (see FactoredTermination) rather than as a full weight matrix.
+	 * The given decoders are copied, so later changes to the presynaptic origin's decoders don't apply
+	 * to this Termination (see the DecodedOrigin version).
+	 *
+	 * @param name Unique name for the Termination (in the scope of this Ensemble)
+	 * @param decoders Decoders of the presynaptic population, one row per presynaptic neuron
+	 * 		(eg from DecodedOrigin.getDecoders())
+	 * @param matrix Transformation matrix from the decoded space onto the space represented by this
+	 * 		Ensemble (one row per dimension of this Ensemble)
+	 * @param tauPSC Time constant of post-synaptic current decay
+	 * @param isModulatory If true, inputs to this Termination do not drive Nodes in the Ensemble directly
+	 * @return Added Termination
+	 * @throws StructuralException if termination name is taken, or matrix or decoders are the wrong size
+	 */
+	public Termination addFactoredTermination(String name, float[][] decoders, float[][] matrix, float tauPSC,
+			boolean isModulatory) throws StructuralException {
+		checkFactoredTermination(name, matrix);
+		FactoredTermination result = new FactoredTermination(this, name, decoders, matrix,
+				getPSCDynamics(tauPSC), new DiscreteLTIIntegrator(new EulerIntegrator(tauPSC / 10f)));
+		return addFactoredTermination(result, isModulatory);
+	}
+
+	/**
+	 * Adds a Termination of the neuron-level output (eg spikes) of another population, with connection
+	 * weights kept in factored form (see FactoredTermination). The origin's current decoders are used
+	 * on each step, so changes to them (eg by rescaleDecoders()) apply to this Termination too.
+	 *
+	 * @param name Unique name for the Termination (in the scope of this Ensemble)
+	 * @param origin DecodedOrigin of the presynaptic population
+	 * @param matrix Transformation matrix from the origin's output onto the space represented by this
+	 * 		Ensemble (one row per dimension of this Ensemble)
+	 * @param tauPSC Time constant of post-synaptic current decay
+	 * @param isModulatory If true, inputs to this Termination do not drive Nodes in the Ensemble directly
+	 * @return Added Termination
+	 * @throws StructuralException if termination name is taken, or matrix is the wrong size
+	 */
+	public Termination addFactoredTermination(String name, DecodedOrigin origin, float[][] matrix, float tauPSC,
+			boolean isModulatory) throws StructuralException {
+		checkFactoredTermination(name, matrix);
+		FactoredTermination result = new FactoredTermination(this, name, origin, matrix,
+				getPSCDynamics(tauPSC), new DiscreteLTIIntegrator(new EulerIntegrator(tauPSC / 10f)));
+		return addFactoredTermination(result, isModulatory);
+	}
+
+	private void checkFactoredTermination(String name, float[][] matrix) throws StructuralException {
+		for(Termination t : getTerminations()) {
+			if(t.getName().equals(name))
+				throw new StructuralException("The ensemble already contains a termination named " + name);
+		}
+		if (matrix.length != myDimension) {
+			throw new StructuralException("Output dimension " + matrix.length + " doesn't equal ensemble dimension " + myDimension);
+		}
+	}
+
+	private static LinearSystem getPSCDynamics(float tauPSC) {
+		float scale = 1 / tauPSC; //output scaling to make impulse integral = 1
+
+		return new SimpleLTISystem(
+				new float[]{-1f/tauPSC},
+				new float[][]{new float[]{1f}},
+				new float[][]{new float[]{scale}},
+				new float[]{0f},
+				new Units[]{Units.UNK}
+		);
+	}
+
+	private Termination addFactoredTermination(FactoredTermination termination, boolean isModulatory) {
+		if (isModulatory) {
+			termination.setModulatory(isModulatory);
+		}
+
+		myDecodedTerminations.put(termination.getName(), termination);
+		fireVisibleChangeEvent();
+		return termination;
+	}
+
    /**
      * @param name Unique name for the Termination (in the scope of this Node)
      * @param weights Each row is used as a 1 by m matrix of weights in a new termination on the nth expandable node
@@ -882,7 +1122,7 @@ public class NEFEnsembleImpl extends DecodableEnsembleImpl implements NEFEnsembl
 		}
 
 		float baseTauPSC = baseTermination.getTau();
-		EulerIntegrator integrator = new EulerIntegrator(Math.min(interneuronTauPSC, baseTauPSC) / 10f);
+		Integrator integrator = new DiscreteLTIIntegrator(new EulerIntegrator(Math.min(interneuronTauPSC, baseTauPSC) / 10f));
 
 		float scale = 1 / interneuronTauPSC; //output scaling to make impulse integral = 1
 		LinearSystem interneuronDynamics = new SimpleLTISystem(
@@ -969,9 +1209,16 @@ public class NEFEnsembleImpl extends DecodableEnsembleImpl implements NEFEnsembl
 				} else {
 					//multiply state by encoders (cosine tuning), set radial input of each Neuron and run ...
 					Node[] nodes = getNodes();
-					for (int i = 0; i < nodes.length; i++) {
-						((NEFNode) nodes[i]).setRadialInput(getRadialInput(state, i) +
-						        getBiasInput(bias, myDecodedTerminations, i));
+					if (getPopulationEngine() != null) {
+						findRadialInputs(state, bias, myRadialInputs);
+					} else {
+						if (myRadialInputBuffer == null || myRadialInputBuffer.length != nodes.length) {
+							myRadialInputBuffer = new float[nodes.length];
+						}
+						findRadialInputs(state, bias, myRadialInputBuffer);
+						for (int i = 0; i < nodes.length; i++) {
+							((NEFNode) nodes[i]).setRadialInput(myRadialInputBuffer[i]);
+						}
 					}
 					super.run(startTime, endTime);
 				}
@@ -982,17 +1229,88 @@ public class NEFEnsembleImpl extends DecodableEnsembleImpl implements NEFEnsembl
 		}
 	}
 
-	// @param bias Bias input (related to avoidance of negative weights with interneurons)
-	private static float getBiasInput(Map<String, Float> bias, Map<String, DecodedTermination> dt, int node) {
-		float sumBias = 0;
-		Iterator<String> it = bias.keySet().iterator();
-		while (it.hasNext()) {
-			String baseName = it.next();
-			float netBias = bias.get(baseName).floatValue();
-			float biasEncoder = ((BiasTermination) dt.get(baseName+BIAS_SUFFIX)).getBiasEncoders()[node];
-			sumBias += netBias * biasEncoder;
+	/**
+	 * Runs the Nodes through the LIFPopulationEngine if there is one.
+	 *
+	 * @see ca.nengo.model.impl.AbstractEnsemble#runNodes(float, float)
+	 */
+	@Override
+	protected void runNodes(float startTime, float endTime) throws SimulationException {
+		if (myPopulationEngine != null) {
+			myPopulationEngine.run(startTime, endTime, myRadialInputs);
+		} else {
+			super.runNodes(startTime, endTime);
+		}
+	}
+
+	/**
+	 * If the Nodes are run by a LIFPopulationEngine, the Origin is given the list of Nodes that
+	 * spiked, so that only their decoders are visited.
+	 *
+	 * @see ca.nengo.model.nef.impl.DecodableEnsembleImpl#runDecodedOrigin(ca.nengo.model.nef.impl.DecodedOrigin, float, float)
+	 */
+	@Override
+	protected void runDecodedOrigin(DecodedOrigin origin, float startTime, float endTime) throws SimulationException {
+		if (myPopulationEngine != null && origin.getSupportsSparseRun()) {
+			origin.run(myPopulationEngine.getSpikeIndices(), myPopulationEngine.getNumSpikes(), startTime, endTime);
+		} else {
+			super.runDecodedOrigin(origin, startTime, endTime);
+		}
+	}
+
+	/**
+	 * Finds the radial input of every Node (the same as getRadialInput(state, i) plus the bias input)
+	 * with one pass over a row-major copy of the encoders. The state is scaled by the radii once, and
+	 * bias inputs are summed over all Nodes once per BiasTermination, so nothing is allocated per Node.
+	 *
+	 * @param state State vector
+	 * @param bias Net input to each BiasTermination, by base name
+	 * @param result Array into which the radial input of each Node is written
+	 */
+	private void findRadialInputs(float[] state, Map<String, Float> bias, float[] result) {
+		int n = myEncoders.length;
+		int dimension = state.length;
+		if (myFlatEncodersSource != myEncoders || myFlatEncoders.length != n * dimension) {
+			float[] flat = new float[n * dimension];
+			for (int i = 0; i < n; i++) {
+				System.arraycopy(myEncoders[i], 0, flat, i * dimension, dimension);
+			}
+			myFlatEncoders = flat;
+			myFlatEncodersSource = myEncoders;
+		}
+
+		float[] scaled = state;
+		if (!myRadiiAreOne) {
+			if (myScaledState == null || myScaledState.length != dimension) {
+				myScaledState = new float[dimension];
+			}
+			scaled = myScaledState;
+			for (int d = 0; d < dimension; d++) {
+				scaled[d] = state[d] * myInverseRadii[d];
+			}
+		}
+
+		if (myBiasInputs == null || myBiasInputs.length != n) {
+			myBiasInputs = new float[n];
+		}
+		float[] biasInputs = myBiasInputs;
+		Arrays.fill(biasInputs, 0f);
+		for (Map.Entry<String, Float> entry : bias.entrySet()) {
+			float netBias = entry.getValue().floatValue();
+			float[] biasEncoders = ((BiasTermination) myDecodedTerminations.get(entry.getKey()+BIAS_SUFFIX)).getBiasEncoders();
+			for (int i = 0; i < n; i++) {
+				biasInputs[i] += netBias * biasEncoders[i];
+			}
+		}
+
+		float[] encoders = myFlatEncoders;
+		for (int i = 0, offset = 0; i < n; i++, offset += dimension) {
+			float sum = 0f;
+			for (int d = 0; d < dimension; d++) {
+				sum += scaled[d] * encoders[offset + d];
+			}
+			result[i] = sum + biasInputs[i];
 		}
-		return sumBias;
 	}
 
 	/**
@@ -1053,6 +1371,20 @@ public class NEFEnsembleImpl extends DecodableEnsembleImpl implements NEFEnsembl
 		if (myDirectModeDynamics != null) {
 			myDirectModeDynamics.setState(new float[myDirectModeDynamics.getState().length]);
 		}
+
+		invalidatePopulationEngine();
+	}
+
+	/**
+	 * The LIFPopulationEngine copies the structure of the ensemble, so it is discarded on
+	 * any visible change (eg new terminations, mode changes).
+	 *
+	 * @see ca.nengo.model.impl.AbstractEnsemble#fireVisibleChangeEvent()
+	 */
+	@Override
+	protected void fireVisibleChangeEvent() {
+		invalidatePopulationEngine();
+		super.fireVisibleChangeEvent();
 	}
 
     public void setEnsembleFactory(NEFEnsembleFactory factory) {
@@ -1121,7 +1453,7 @@ public class NEFEnsembleImpl extends DecodableEnsembleImpl implements NEFEnsembl
 				// recalculate the decoders
 				if (!myReuseApproximators || !myDecodingApproximators.containsKey(nodeOrigin)) {
 					float[][] outputs = getConstantOutputs(myEvalPoints, nodeOrigin);
-					LinearApproximator approximator = getApproximatorFactory().getApproximator(myEvalPoints, outputs);
+					LinearApproximator approximator = makeApproximator(myEvalPoints, outputs);
 					myDecodingApproximators.put(nodeOrigin, approximator);
 				}
 					origin.redefineNodes(nodes,myDecodingApproximators.get(nodeOrigin));
@@ -1184,6 +1516,30 @@ public class NEFEnsembleImpl extends DecodableEnsembleImpl implements NEFEnsembl
         return py.toString();
     }
 
+	/**
+	 * Also shares encoders and evaluation points, if they are equal to those of the source.
+	 *
+	 * @see ca.nengo.model.nef.impl.DecodableEnsembleImpl#shareStructure(ca.nengo.model.nef.impl.DecodableEnsembleImpl)
+	 */
+	@Override
+	public void shareStructure(DecodableEnsembleImpl source) {
+		super.shareStructure(source);
+
+		if (source instanceof NEFEnsembleImpl) {
+			NEFEnsembleImpl other = (NEFEnsembleImpl) source;
+			if (Arrays.deepEquals(myEncoders, other.myEncoders)) {
+				myEncoders = other.myEncoders;
+			}
+			if (Arrays.deepEquals(myEvalPoints, other.myEvalPoints)) {
+				myEvalPoints = other.myEvalPoints;
+			}
+			if (Arrays.deepEquals(myUnscaledEvalPoints, other.myUnscaledEvalPoints)) {
+				myUnscaledEvalPoints = other.myUnscaledEvalPoints;
+			}
+			invalidatePopulationEngine();
+		}
+	}
+
 	@Override
     public NEFEnsembleImpl clone() throws CloneNotSupportedException {
 		NEFEnsembleImpl result = (NEFEnsembleImpl) super.clone();
@@ -1200,6 +1556,12 @@ public class NEFEnsembleImpl extends DecodableEnsembleImpl implements NEFEnsembl
 		result.myInverseRadii = myInverseRadii.clone();
 		result.myRadii = myRadii.clone();
 		result.myUnscaledEvalPoints = MU.clone(myUnscaledEvalPoints);
+		result.invalidatePopulationEngine();
+		result.myFlatEncodersSource = null;
+		result.myFlatEncoders = null;
+		result.myScaledState = null;
+		result.myBiasInputs = null;
+		result.myRadialInputBuffer = null;
 		return result;
 	}
 
@@ -1308,6 +1670,8 @@ public class NEFEnsembleImpl extends DecodableEnsembleImpl implements NEFEnsembl
 				n.setScale(0.0f);
 			}
 		}
+
+		invalidatePopulationEngine();
 	}
 
 //	/**
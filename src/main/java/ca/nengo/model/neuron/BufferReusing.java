@@ -0,0 +1,50 @@
+/*
+The contents of this file are subject to the Mozilla Public License Version 1.1
+(the "License"); you may not use this file except in compliance with the License.
+You may obtain a copy of the License at http://www.mozilla.org/MPL/
+
+Software distributed under the License is distributed on an "AS IS" basis, WITHOUT
+WARRANTY OF ANY KIND, either express or implied. See the License for the specific
+language governing rights and limitations under the License.
+
+The Original Code is "BufferReusing.java". Description:
+"A component that can reuse its outputs and working buffers from one time step to the next"
+
+The Initial Developer of the Original Code is Bryan Tripp & Centre for Theoretical Neuroscience, University of Waterloo. Copyright (C) 2006-2008. All Rights Reserved.
+
+Alternatively, the contents of this file may be used under the terms of the GNU
+Public License license (the GPL License), in which case the provisions of GPL
+License are applicable  instead of those above. If you wish to allow use of your
+version of this file only under the terms of the GPL License and not to allow
+others to use your version of this file under the MPL, indicate your decision
+by deleting the provisions above and replace  them with the notice and other
+provisions required by the GPL License.  If you do not delete the provisions above,
+a recipient may use your version of this file under either the MPL or the GPL License.
+*/
+
+package ca.nengo.model.neuron;
+
+/**
+ * <p>A neuron component that can reuse its outputs and working buffers from one time step to
+ * the next, rather than allocating new ones on every step. With many neurons and short time steps,
+ * the allocation in the default mode produces a lot of garbage.</p>
+ *
+ * <p>When reuse is on, an InstantaneousOutput or TimeSeries returned by the component is
+ * overwritten in later steps. InstantaneousOutputs are double-buffered, so an output passed to a Termination
+ * remains valid through the following step (which is as long as Terminations use their inputs),
+ * but callers should not keep them longer than that. History for Probes is copied when it is
+ * requested.</p>
+ */
+public interface BufferReusing {
+
+	/**
+	 * @param reuse True if outputs and working buffers are to be reused between time steps
+	 */
+	public void setReuseBuffers(boolean reuse);
+
+	/**
+	 * @return True if outputs and working buffers are reused between time steps
+	 */
+	public boolean getReuseBuffers();
+
+}
@@ -43,6 +43,7 @@ import ca.nengo.model.Units;
 import ca.nengo.model.impl.PreciseSpikeOutputImpl;
 import ca.nengo.model.impl.RealOutputImpl;
 import ca.nengo.model.impl.SpikeOutputImpl;
+import ca.nengo.model.neuron.BufferReusing;
 import ca.nengo.model.neuron.SpikeGenerator;
 import ca.nengo.util.TimeSeries;
 import ca.nengo.util.TimeSeries1D;
@@ -65,7 +66,7 @@ import ca.nengo.util.impl.TimeSeries1DImpl;
  *
  * @author Bryan Tripp
  */
-public class ALIFSpikeGenerator implements SpikeGenerator, Probeable {
+public class ALIFSpikeGenerator implements SpikeGenerator, Probeable, BufferReusing {
 
 	private static final long serialVersionUID = 1L;
 
@@ -92,6 +93,9 @@ public class ALIFSpikeGenerator implements SpikeGenerator, Probeable {
 	private float[] myNHistory;
 	private float[] myRateHistory;
 
+	private boolean myReuseBuffers;
+	private transient ReusableOutputs myOutputs;
+
 	private static final float[] ourNullTime = new float[0];
 	private static final float[] ourNullVHistory = new float[0];
 	private static final float[] ourNullNHistory = new float[0];
@@ -209,33 +213,65 @@ public class ALIFSpikeGenerator implements SpikeGenerator, Probeable {
 				myV = 0;
 			}
 
-			myRateHistory = new float[]{spikeTime>=0 ? 1f/dt : 0};
+			myRateHistory = record(myRateHistory, spikeTime>=0 ? 1f/dt : 0);
 
 			if (myMode.equals(SimulationMode.DEFAULT)) {
-                result = new SpikeOutputImpl(new boolean[]{spikeTime>=0f}, Units.SPIKES, time[time.length-1]);
+                result = myReuseBuffers ? getOutputs().spike(spikeTime>=0f, time[time.length-1])
+                		: new SpikeOutputImpl(new boolean[]{spikeTime>=0f}, Units.SPIKES, time[time.length-1]);
             } else {
-                result = new PreciseSpikeOutputImpl(new float[]{spikeTime}, Units.SPIKES, time[time.length-1]);
+                result = myReuseBuffers ? getOutputs().preciseSpike(spikeTime, time[time.length-1])
+                		: new PreciseSpikeOutputImpl(new float[]{spikeTime}, Units.SPIKES, time[time.length-1]);
             }
 		} else if (myMode.equals(SimulationMode.RATE)) {
 			float rate = I > 1 ? 1f / ( myTauRef - myTauRC * ((float) Math.log(1f - 1f/I)) ) : 0;
 			myN += (rate * dt) * myIncN; //analog of # spikes X increment
 
-			myRateHistory = new float[]{rate};
-			result = new RealOutputImpl(new float[]{rate}, Units.SPIKES_PER_S, time[time.length-1]);
+			myRateHistory = record(myRateHistory, rate);
+			result = myReuseBuffers ? getOutputs().real(rate, time[time.length-1])
+					: new RealOutputImpl(new float[]{rate}, Units.SPIKES_PER_S, time[time.length-1]);
 		} else {
 			float rate = I_in > 1 ? 1f / ( myTauRef - myTauRC * ((float) Math.log(1f - 1f/I_in)) ) : 0;
 
-			myRateHistory = new float[]{rate};
-			result = new RealOutputImpl(new float[]{rate}, Units.SPIKES_PER_S, time[time.length-1]);
+			myRateHistory = record(myRateHistory, rate);
+			result = myReuseBuffers ? getOutputs().real(rate, time[time.length-1])
+					: new RealOutputImpl(new float[]{rate}, Units.SPIKES_PER_S, time[time.length-1]);
 		}
 
-		myTime = new float[]{time[time.length-1]};
-		myNHistory = new float[]{myN};
-		myVHistory = new float[]{myV};
+		myTime = record(myTime, time[time.length-1]);
+		myNHistory = record(myNHistory, myN);
+		myVHistory = record(myVHistory, myV);
+
+		return result;
+	}
 
+	//overwrites one-step history unless it is one of the shared empty arrays (getHistory() returns a copy)
+	private static float[] record(float[] history, float value) {
+		float[] result = history.length == 1 ? history : new float[1];
+		result[0] = value;
 		return result;
 	}
 
+	private ReusableOutputs getOutputs() {
+		if (myOutputs == null) {
+			myOutputs = new ReusableOutputs(Units.SPIKES_PER_S);
+		}
+		return myOutputs;
+	}
+
+	/**
+	 * @see ca.nengo.model.neuron.BufferReusing#setReuseBuffers(boolean)
+	 */
+	public void setReuseBuffers(boolean reuse) {
+		myReuseBuffers = reuse;
+	}
+
+	/**
+	 * @see ca.nengo.model.neuron.BufferReusing#getReuseBuffers()
+	 */
+	public boolean getReuseBuffers() {
+		return myReuseBuffers;
+	}
+
 	/**
 	 * @param I driving current
 	 * @return Unadapted firing rate given this current
@@ -303,11 +339,11 @@ public class ALIFSpikeGenerator implements SpikeGenerator, Probeable {
 		TimeSeries1D result = null;
 
 		if (stateName.equals("V")) {
-			result = new TimeSeries1DImpl(myTime, myVHistory, Units.AVU);
+			result = new TimeSeries1DImpl(myTime.clone(), myVHistory.clone(), Units.AVU);
 		} else if (stateName.equalsIgnoreCase("N")) {
-			result = new TimeSeries1DImpl(myTime, myNHistory, Units.UNK);
+			result = new TimeSeries1DImpl(myTime.clone(), myNHistory.clone(), Units.UNK);
 		} else if (stateName.equalsIgnoreCase("rate")) {
-			result = new TimeSeries1DImpl(myTime, myRateHistory, Units.SPIKES_PER_S);
+			result = new TimeSeries1DImpl(myTime.clone(), myRateHistory.clone(), Units.SPIKES_PER_S);
 		} else {
 			throw new SimulationException("The state name " + stateName + " is unknown.");
 		}
@@ -341,6 +377,7 @@ public class ALIFSpikeGenerator implements SpikeGenerator, Probeable {
 		result.myRateHistory = myRateHistory.clone();
 		result.myTime = myTime.clone();
 		result.myVHistory = myVHistory.clone();
+		result.myOutputs = null;
 		return result;
 	}
 
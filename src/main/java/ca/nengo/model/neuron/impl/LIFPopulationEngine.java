@@ -0,0 +1,431 @@
+/*
+The contents of this file are subject to the Mozilla Public License Version 1.1
+(the "License"); you may not use this file except in compliance with the License.
+You may obtain a copy of the License at http://www.mozilla.org/MPL/
+
+Software distributed under the License is distributed on an "AS IS" basis, WITHOUT
+WARRANTY OF ANY KIND, either express or implied. See the License for the specific
+language governing rights and limitations under the License.
+
+The Original Code is "LIFPopulationEngine.java". Description:
+"Advances a population of LIF SpikingNeurons in one loop over flat arrays of state"
+
+The Initial Developer of the Original Code is Bryan Tripp & Centre for Theoretical Neuroscience, University of Waterloo. Copyright (C) 2006-2008. All Rights Reserved.
+
+Alternatively, the contents of this file may be used under the terms of the GNU
+Public License license (the GPL License), in which case the provisions of GPL
+License are applicable  instead of those above. If you wish to allow use of your
+version of this file only under the terms of the GPL License and not to allow
+others to use your version of this file under the MPL, indicate your decision
+by deleting the provisions above and replace  them with the notice and other
+provisions required by the GPL License.  If you do not delete the provisions above,
+a recipient may use your version of this file under either the MPL or the GPL License.
+*/
+
+package ca.nengo.model.neuron.impl;
+
+import ca.nengo.model.InstantaneousOutput;
+import ca.nengo.model.Node;
+import ca.nengo.model.SimulationMode;
+import ca.nengo.model.Termination;
+import ca.nengo.model.impl.LinearExponentialTermination;
+import ca.nengo.util.impl.ParallelLoop;
+
+/**
+ * <p>Advances a population of leaky-integrate-and-fire SpikingNeurons in a single loop.
+ * Membrane voltages, refractory timers, gains, biases and synaptic currents are kept in
+ * flat primitive arrays, rather than being reached through a SpikingNeuron, its
+ * LinearSynapticIntegrator and its LIFSpikeGenerator for every neuron on every step.</p>
+ *
+ * <p>The arithmetic is the same as that of SpikingNeuron.run(...) with a LinearSynapticIntegrator
+ * and a LIFSpikeGenerator in DEFAULT or PRECISE mode. After each step the resulting spikes,
+ * currents and voltages are written back to the neurons, so that Node-level Origins, Probes and
+ * the configuration UI see the same values they would without the engine. If the neurons reuse
+ * their buffers (see BufferReusing), this write-back does not allocate.</p>
+ *
+ * <p>Parameters (gain, bias, time constants) and termination lists are copied when the engine is
+ * made. The owner should discard the engine and make a new one when these change.</p>
+ */
+public class LIFPopulationEngine {
+
+	private static final float Vth = 1;
+
+	private final SpikingNeuron[] myNeurons;
+	private final LIFSpikeGenerator[] myGenerators;
+	private final SimulationMode myMode;
+
+	private final float myIntegratorMaxTimeStep;
+	private final float myGeneratorMaxTimeStep;
+
+	private final float[] myScale;
+	private final float[] myBias;
+	private final float[] myTauRC;
+	private final float[] myTauRef;
+	private final LinearExponentialTermination[][] myTerminations;
+
+	private final float[] myVoltage;
+	private final float[] myPreviousVoltage;
+	private final float[] myTimeSinceLastSpike;
+	private final float[] mySynapticCurrent;
+	private final float[] mySpikeTimes;
+	private final int[] mySpikeIndices;
+	private int myNumSpikes;
+
+	private float[] myTimes;
+	private int[] myInputIndices;
+	private float[] mySynapticBuffer;
+
+	/**
+	 * @param nodes Nodes in the population (must satisfy isSupported(nodes))
+	 */
+	public LIFPopulationEngine(Node[] nodes) {
+		if (!isSupported(nodes)) {
+			throw new IllegalArgumentException("Nodes must be SpikingNeurons with LinearSynapticIntegrators and LIFSpikeGenerators");
+		}
+
+		int n = nodes.length;
+		myNeurons = new SpikingNeuron[n];
+		myGenerators = new LIFSpikeGenerator[n];
+		myScale = new float[n];
+		myBias = new float[n];
+		myTauRC = new float[n];
+		myTauRef = new float[n];
+		myTerminations = new LinearExponentialTermination[n][];
+		myVoltage = new float[n];
+		myPreviousVoltage = new float[n];
+		myTimeSinceLastSpike = new float[n];
+		mySynapticCurrent = new float[n];
+		mySpikeTimes = new float[n];
+		mySpikeIndices = new int[n];
+
+		for (int i = 0; i < n; i++) {
+			SpikingNeuron neuron = (SpikingNeuron) nodes[i];
+			LIFSpikeGenerator generator = (LIFSpikeGenerator) neuron.getGenerator();
+
+			myNeurons[i] = neuron;
+			myGenerators[i] = generator;
+			myScale[i] = neuron.getScale();
+			myBias[i] = neuron.getBias();
+			myTauRC[i] = generator.getTauRC();
+			myTauRef[i] = generator.getTauRef();
+
+			Termination[] terminations = neuron.getIntegrator().getTerminations();
+			myTerminations[i] = new LinearExponentialTermination[terminations.length];
+			for (int j = 0; j < terminations.length; j++) {
+				myTerminations[i][j] = (LinearExponentialTermination) terminations[j];
+			}
+
+			myVoltage[i] = generator.getVoltage();
+			myPreviousVoltage[i] = generator.getPreviousVoltage();
+			myTimeSinceLastSpike[i] = generator.getTimeSinceLastSpike();
+		}
+
+		myMode = myGenerators[0].getMode();
+		myIntegratorMaxTimeStep = ((LinearSynapticIntegrator) myNeurons[0].getIntegrator()).getCorrectedMaxTimeStep();
+		myGeneratorMaxTimeStep = myGenerators[0].getCorrectedMaxTimeStep();
+
+		myTimes = new float[0];
+		myInputIndices = new int[0];
+		mySynapticBuffer = new float[0];
+	}
+
+	/**
+	 * @param nodes A list of Nodes
+	 * @return True if the Nodes can be run by a LIFPopulationEngine, ie they are all SpikingNeurons
+	 * 		without noise, with LinearSynapticIntegrators and LIFSpikeGenerators that share
+	 * 		time steps, and that are all in either DEFAULT or PRECISE mode
+	 */
+	public static boolean isSupported(Node[] nodes) {
+		if (nodes.length == 0 || !isSupported(nodes[0])) {
+			return false;
+		}
+
+		SpikingNeuron first = (SpikingNeuron) nodes[0];
+		LIFSpikeGenerator firstGenerator = (LIFSpikeGenerator) first.getGenerator();
+		SimulationMode mode = firstGenerator.getMode();
+		if (!mode.equals(SimulationMode.DEFAULT) && !mode.equals(SimulationMode.PRECISE)) {
+			return false;
+		}
+		float integratorStep = ((LinearSynapticIntegrator) first.getIntegrator()).getCorrectedMaxTimeStep();
+		float generatorStep = firstGenerator.getCorrectedMaxTimeStep();
+
+		for (int i = 1; i < nodes.length; i++) {
+			if (!isSupported(nodes[i])) {
+				return false;
+			}
+
+			SpikingNeuron neuron = (SpikingNeuron) nodes[i];
+			LIFSpikeGenerator generator = (LIFSpikeGenerator) neuron.getGenerator();
+			if (!generator.getMode().equals(mode)
+					|| ((LinearSynapticIntegrator) neuron.getIntegrator()).getCorrectedMaxTimeStep() != integratorStep
+					|| generator.getCorrectedMaxTimeStep() != generatorStep) {
+				return false;
+			}
+		}
+
+		return true;
+	}
+
+	private static boolean isSupported(Node node) {
+		if ( !(node instanceof SpikingNeuron) ) {
+			return false;
+		}
+
+		SpikingNeuron neuron = (SpikingNeuron) node;
+		if (neuron.getNoise() != null
+				|| !(neuron.getIntegrator() instanceof LinearSynapticIntegrator)
+				|| neuron.getGenerator() == null
+				|| !neuron.getGenerator().getClass().equals(LIFSpikeGenerator.class)) {
+			return false;
+		}
+
+		for (Termination t : neuron.getIntegrator().getTerminations()) {
+			if ( !(t instanceof LinearExponentialTermination) ) {
+				return false;
+			}
+		}
+
+		return true;
+	}
+
+	/**
+	 * @param nodes A list of Nodes
+	 * @return True if getConstantRates(...) can be used for the Nodes, ie they are all SpikingNeurons
+	 * 		without noise, with LIFSpikeGenerators
+	 */
+	public static boolean isConstantRateSupported(Node[] nodes) {
+		for (Node node : nodes) {
+			if ( !(node instanceof SpikingNeuron) ) {
+				return false;
+			}
+			SpikingNeuron neuron = (SpikingNeuron) node;
+			if (neuron.getNoise() != null
+					|| neuron.getGenerator() == null
+					|| !neuron.getGenerator().getClass().equals(LIFSpikeGenerator.class)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Finds the CONSTANT_RATE outputs (at the AXON Origin) of many neurons at many radial inputs
+	 * in one pass, from their gains, biases and time constants. The arithmetic is the same as that
+	 * of SpikingNeuron.run(...) with a LIFSpikeGenerator in CONSTANT_RATE mode, with no synaptic
+	 * input, but the neurons aren't run, so their modes and states are unchanged. Neurons are
+	 * processed on several threads.
+	 *
+	 * @param nodes Nodes (must satisfy isConstantRateSupported(nodes))
+	 * @param radialInput Radial input to each neuron (first dimension) at each point (second
+	 * 		dimension); each value is replaced with the corresponding rate
+	 * @return radialInput, now holding firing rates (spikes/s)
+	 */
+	public static float[][] getConstantRates(Node[] nodes, final float[][] radialInput) {
+		if (!isConstantRateSupported(nodes)) {
+			throw new IllegalArgumentException("Nodes must be SpikingNeurons with LIFSpikeGenerators and no noise");
+		}
+
+		final float[] scale = new float[nodes.length];
+		final float[] bias = new float[nodes.length];
+		final float[] tauRC = new float[nodes.length];
+		final float[] tauRef = new float[nodes.length];
+		for (int i = 0; i < nodes.length; i++) {
+			SpikingNeuron neuron = (SpikingNeuron) nodes[i];
+			LIFSpikeGenerator generator = (LIFSpikeGenerator) neuron.getGenerator();
+			scale[i] = neuron.getScale();
+			bias[i] = neuron.getBias();
+			tauRC[i] = generator.getTauRC();
+			tauRef[i] = generator.getTauRef();
+		}
+
+		ParallelLoop.run(nodes.length, new ParallelLoop.Body() {
+			public void run(int i) {
+				float[] row = radialInput[i];
+				for (int j = 0; j < row.length; j++) {
+					float current = bias[i] + scale[i] * row[j];
+					row[j] = current > Vth ? 1f / ( tauRef[i] - tauRC[i] * ((float) Math.log(1 - Vth/current)) ) : 0;
+				}
+			}
+		});
+		return radialInput;
+	}
+
+	/**
+	 * @return Number of neurons in the population
+	 */
+	public int getNumNeurons() {
+		return myNeurons.length;
+	}
+
+	/**
+	 * @return Simulation mode (DEFAULT or PRECISE) in which the population runs
+	 */
+	public SimulationMode getMode() {
+		return myMode;
+	}
+
+	/**
+	 * @return Membrane voltage of each neuron at the end of the last step (not a copy)
+	 */
+	public float[] getVoltages() {
+		return myVoltage;
+	}
+
+	/**
+	 * @return Synaptic current of each neuron at the end of the last step (not a copy)
+	 */
+	public float[] getSynapticCurrents() {
+		return mySynapticCurrent;
+	}
+
+	/**
+	 * @return Time of each neuron's spike within the last step, relative to the start of the
+	 * 		step, or -1 if the neuron didn't spike (not a copy)
+	 */
+	public float[] getSpikeTimes() {
+		return mySpikeTimes;
+	}
+
+	/**
+	 * @return Indices of the neurons that spiked in the last step, in increasing order, in the first
+	 * 		getNumSpikes() elements (not a copy)
+	 */
+	public int[] getSpikeIndices() {
+		return mySpikeIndices;
+	}
+
+	/**
+	 * @return Number of neurons that spiked in the last step
+	 */
+	public int getNumSpikes() {
+		return myNumSpikes;
+	}
+
+	/**
+	 * Runs all neurons in the population from startTime to endTime.
+	 *
+	 * @param startTime simulation time at which running starts (s)
+	 * @param endTime simulation time at which running ends (s)
+	 * @param radialInput Radial input to each neuron (see NEFNode.setRadialInput(...))
+	 */
+	public void run(float startTime, float endTime, float[] radialInput) {
+		assert radialInput.length == myNeurons.length;
+
+		//time points of the synaptic integrators (shared by all neurons)
+		float len = endTime - startTime;
+		int steps = (int) Math.ceil(len / myIntegratorMaxTimeStep);
+		float dt = len / steps;
+
+		if (myTimes.length != steps + 1) {
+			myTimes = new float[steps + 1];
+			mySynapticBuffer = new float[steps + 1];
+		}
+		myTimes[0] = startTime;
+		for (int i = 1; i <= steps; i++) {
+			myTimes[i] = startTime + i * dt;
+		}
+		if (myTimes.length < 2) {
+			throw new IllegalArgumentException("Arg time must have length at least 2");
+		}
+
+		//time points of the spike generators, and the integrator time point that drives each one
+		float[] times = myTimes;
+		float genLen = times[steps] - times[0];
+		int genSteps = (int) Math.ceil(genLen / myGeneratorMaxTimeStep);
+		float genDt = genLen / genSteps;
+
+		if (myInputIndices.length != genSteps) {
+			myInputIndices = new int[genSteps];
+		}
+		int inputIndex = 0;
+		for (int i = 0; i < genSteps; i++) {
+			float time = times[0] + i * genDt;
+			while (times[inputIndex + 1] <= time) {
+				inputIndex++;
+			}
+			myInputIndices[i] = inputIndex;
+		}
+
+		float endOfStep = times[steps];
+		myNumSpikes = 0;
+		for (int n = 0; n < myNeurons.length; n++) {
+			float[] synaptic = integrateSynapses(n, steps, dt);
+			float radial = radialInput[n];
+			float scale = myScale[n];
+			float bias = myBias[n];
+			float tauRC = myTauRC[n];
+			float tauRef = myTauRef[n];
+
+			float voltage = myVoltage[n];
+			float previousVoltage = myPreviousVoltage[n];
+			float timeSinceLastSpike = myTimeSinceLastSpike[n];
+			float spikeTime = -1;
+
+			for (int i = 0; i < genSteps; i++) {
+				float I = bias + scale * (radial + synaptic[myInputIndices[i]]);
+
+				float dV = (1 / tauRC) * (I - voltage);
+				timeSinceLastSpike = timeSinceLastSpike + genDt;
+				if (timeSinceLastSpike < tauRef) {
+					dV = 0;
+				} else if (timeSinceLastSpike < tauRef + genDt) {
+					dV *= (timeSinceLastSpike - tauRef) / genDt;
+				}
+				previousVoltage = voltage;
+				voltage = Math.max(0, voltage + genDt * dV);
+
+				if (voltage >= Vth) {
+					float dSpike = (Vth - previousVoltage) * genDt / (voltage - previousVoltage);
+					timeSinceLastSpike = genDt - dSpike;
+					spikeTime = i * genDt + dSpike;
+					voltage = 0;
+				}
+			}
+
+			myVoltage[n] = voltage;
+			myPreviousVoltage[n] = previousVoltage;
+			myTimeSinceLastSpike[n] = timeSinceLastSpike;
+			mySynapticCurrent[n] = synaptic[steps];
+			mySpikeTimes[n] = spikeTime;
+			if (spikeTime >= 0) {
+				mySpikeIndices[myNumSpikes++] = n;
+			}
+
+			float unscaledCurrent = radial + synaptic[steps];
+			InstantaneousOutput output = myGenerators[n].makeSpikeOutput(spikeTime, endOfStep);
+			myGenerators[n].setState(voltage, previousVoltage, timeSinceLastSpike, endOfStep);
+			myNeurons[n].setPopulationOutput(startTime, endTime, endOfStep, unscaledCurrent, bias + scale * unscaledCurrent, output);
+		}
+	}
+
+	//same sequence of termination updates as LinearSynapticIntegrator.run(...)
+	private float[] integrateSynapses(int neuron, int steps, float dt) {
+		float[] result = mySynapticBuffer;
+		LinearExponentialTermination[] terminations = myTerminations[neuron];
+
+		if (terminations.length == 0) {
+			for (int i = 0; i <= steps; i++) {
+				result[i] = 0;
+			}
+		} else {
+			result[0] = update(terminations, true, 0, 0);
+			for (int i = 1; i <= steps; i++) {
+				result[i] = update(terminations, false, dt, dt);
+			}
+		}
+
+		return result;
+	}
+
+	private static float update(LinearExponentialTermination[] terminations, boolean spikes, float intTime, float decayTime) {
+		float result = 0f;
+		for (LinearExponentialTermination t : terminations) {
+			float current = t.updateCurrent(spikes, intTime, decayTime);
+			if (!t.getModulatory()) {
+				result += current;
+			}
+		}
+		return result;
+	}
+
+}
@@ -39,6 +39,7 @@ import ca.nengo.model.Units;
 import ca.nengo.model.impl.PreciseSpikeOutputImpl;
 import ca.nengo.model.impl.RealOutputImpl;
 import ca.nengo.model.impl.SpikeOutputImpl;
+import ca.nengo.model.neuron.BufferReusing;
 import ca.nengo.model.neuron.SpikeGenerator;
 import ca.nengo.util.TimeSeries;
 import ca.nengo.util.TimeSeries1D;
@@ -55,7 +56,7 @@ import ca.nengo.util.impl.TimeSeries1DImpl;
  *
  * @author Bryan Tripp
  */
-public class LIFSpikeGenerator implements SpikeGenerator, Probeable {
+public class LIFSpikeGenerator implements SpikeGenerator, Probeable, BufferReusing {
 
 	private static final long serialVersionUID = 1L;
 
@@ -79,6 +80,9 @@ public class LIFSpikeGenerator implements SpikeGenerator, Probeable {
 	private SimulationMode myMode;
 	private SimulationMode[] mySupportedModes;
 
+	private boolean myReuseBuffers;
+	private transient ReusableOutputs myOutputs;
+
 	private static final float[] ourNullTime = new float[0];
 	private static final float[] ourNullVoltageHistory = new float[0];
 	private static final float ourMaxTimeStepCorrection = 1.01f;
@@ -178,17 +182,56 @@ public class LIFSpikeGenerator implements SpikeGenerator, Probeable {
 		InstantaneousOutput result = null;
 
 		if (myMode.equals(SimulationMode.CONSTANT_RATE) || myMode.equals(SimulationMode.RATE)) {
-			result = new RealOutputImpl(new float[]{doConstantRateRun(time[0], current[0])}, Units.SPIKES_PER_S, time[time.length-1]);
-		} else if (myMode.equals(SimulationMode.PRECISE)) {
-			result = new PreciseSpikeOutputImpl(new float[]{doPreciseSpikingRun(time, current)}, Units.SPIKES, time[time.length-1]);
+			float rate = doConstantRateRun(time[0], current[0]);
+			result = myReuseBuffers ? getOutputs().real(rate, time[time.length-1])
+					: new RealOutputImpl(new float[]{rate}, Units.SPIKES_PER_S, time[time.length-1]);
 		} else {
 			//result = new SpikeOutputImpl(new boolean[]{doSpikingRun(time, current)}, Units.SPIKES, time[time.length-1]);
-			result = new SpikeOutputImpl(new boolean[]{doPreciseSpikingRun(time, current)>=0}, Units.SPIKES, time[time.length-1]);
+			result = makeSpikeOutput(doPreciseSpikingRun(time, current), time[time.length-1]);
 		}
 
 		return result;
 	}
 
+	/**
+	 * @param spikeTime Time of spike from the start of the step (negative if there is no spike)
+	 * @param time Time at the end of the step
+	 * @return Spike output for the current mode (DEFAULT or PRECISE), which is reused if
+	 * 		getReuseBuffers() is true
+	 */
+	InstantaneousOutput makeSpikeOutput(float spikeTime, float time) {
+		InstantaneousOutput result;
+		if (myMode.equals(SimulationMode.PRECISE)) {
+			result = myReuseBuffers ? getOutputs().preciseSpike(spikeTime, time)
+					: new PreciseSpikeOutputImpl(new float[]{spikeTime}, Units.SPIKES, time);
+		} else {
+			result = myReuseBuffers ? getOutputs().spike(spikeTime >= 0, time)
+					: new SpikeOutputImpl(new boolean[]{spikeTime >= 0}, Units.SPIKES, time);
+		}
+		return result;
+	}
+
+	private ReusableOutputs getOutputs() {
+		if (myOutputs == null) {
+			myOutputs = new ReusableOutputs(Units.SPIKES_PER_S);
+		}
+		return myOutputs;
+	}
+
+	/**
+	 * @see ca.nengo.model.neuron.BufferReusing#setReuseBuffers(boolean)
+	 */
+	public void setReuseBuffers(boolean reuse) {
+		myReuseBuffers = reuse;
+	}
+
+	/**
+	 * @see ca.nengo.model.neuron.BufferReusing#getReuseBuffers()
+	 */
+	public boolean getReuseBuffers() {
+		return myReuseBuffers;
+	}
+
 //	private boolean doSpikingRun(float[] time, float[] current) {
 //		if (time.length < 2) {
 //			throw new IllegalArgumentException("Arg time must have length at least 2");
@@ -248,8 +291,10 @@ public class LIFSpikeGenerator implements SpikeGenerator, Probeable {
 		int steps = (int) Math.ceil(len / myMaxTimeStep);
 		float dt = len / steps;
 
-		myTime = new float[steps];
-		myVoltageHistory = new float[steps];
+		if (myTime.length != steps) { //otherwise history is overwritten (getHistory() returns a copy)
+			myTime = new float[steps];
+			myVoltageHistory = new float[steps];
+		}
 //		mySpikeTimes = new ArrayList(10);
 
 		int inputIndex = 0;
@@ -293,6 +338,49 @@ public class LIFSpikeGenerator implements SpikeGenerator, Probeable {
 		return myVoltage;
 	}
 
+	/**
+	 * @return Membrane voltage before the last integration step (used to interpolate spike times)
+	 */
+	float getPreviousVoltage() {
+		return myPreviousVoltage;
+	}
+
+	/**
+	 * @return Time since the last spike (s)
+	 */
+	float getTimeSinceLastSpike() {
+		return myTimeSinceLastSpike;
+	}
+
+	/**
+	 * @return Maximum integration time step (s), including the correction made in setMaxTimeStep(...)
+	 */
+	float getCorrectedMaxTimeStep() {
+		return myMaxTimeStep;
+	}
+
+	/**
+	 * Sets the state of this generator after it has been advanced externally (by a LIFPopulationEngine).
+	 * The voltage history is reduced to the voltage at the end of the step.
+	 *
+	 * @param voltage Membrane voltage
+	 * @param previousVoltage Membrane voltage before the last integration step
+	 * @param timeSinceLastSpike Time since the last spike (s)
+	 * @param time Simulation time at the end of the step (s)
+	 */
+	void setState(float voltage, float previousVoltage, float timeSinceLastSpike, float time) {
+		myVoltage = voltage;
+		myPreviousVoltage = previousVoltage;
+		myTimeSinceLastSpike = timeSinceLastSpike;
+
+		if (myTime.length != 1) {
+			myTime = new float[1];
+			myVoltageHistory = new float[1];
+		}
+		myTime[0] = time;
+		myVoltageHistory[0] = voltage;
+	}
+
 	//Note that no voltage history is available after a constant-rate run.
 	private float doConstantRateRun(float time, float current) {
 		myTime = ourNullTime;
@@ -317,7 +405,7 @@ public class LIFSpikeGenerator implements SpikeGenerator, Probeable {
 		TimeSeries1D result = null;
 
 		if (stateName.equals("V")) {
-			result = new TimeSeries1DImpl(myTime, myVoltageHistory, Units.AVU);
+			result = new TimeSeries1DImpl(myTime.clone(), myVoltageHistory.clone(), Units.AVU);
 		} else {
 			throw new SimulationException("The state name " + stateName + " is unknown.");
 		}
@@ -355,6 +443,7 @@ public class LIFSpikeGenerator implements SpikeGenerator, Probeable {
 		System.arraycopy(mySupportedModes, 0, result.mySupportedModes, 0, mySupportedModes.length);
 		result.myTime = myTime.clone();
 		result.myVoltageHistory = myVoltageHistory.clone();
+		result.myOutputs = null;
 		return result;
 	}
 
@@ -30,7 +30,7 @@ a recipient may use your version of this file under either the MPL or the GPL Li
  */
 package ca.nengo.model.neuron.impl;
 
-import java.util.Collection;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.Map;
@@ -40,6 +40,7 @@ import ca.nengo.model.StructuralException;
 import ca.nengo.model.Termination;
 import ca.nengo.model.Units;
 import ca.nengo.model.impl.LinearExponentialTermination;
+import ca.nengo.model.neuron.BufferReusing;
 import ca.nengo.model.neuron.ExpandableSynapticIntegrator;
 import ca.nengo.model.neuron.SynapticIntegrator;
 import ca.nengo.util.TimeSeries1D;
@@ -60,7 +61,7 @@ import ca.nengo.util.impl.TimeSeries1DImpl;
  *
  * @author Bryan Tripp
  */
-public class LinearSynapticIntegrator implements ExpandableSynapticIntegrator {
+public class LinearSynapticIntegrator implements ExpandableSynapticIntegrator, BufferReusing {
 
 	private static final long serialVersionUID = 1L;
 
@@ -70,6 +71,9 @@ public class LinearSynapticIntegrator implements ExpandableSynapticIntegrator {
 	private float myMaxTimeStep;
 	private Units myCurrentUnits;
 	private Map<String, LinearExponentialTermination> myTerminations;
+	private transient LinearExponentialTermination[] myTerminationArray; //in map order, to avoid an iterator with each update
+	private boolean myReuseBuffers;
+	private transient TimeSeries1DImpl myResult;
 
 	/**
 	 * @param maxTimeStep Maximum length of integration time step. Shorter steps may be used to better match
@@ -97,38 +101,59 @@ public class LinearSynapticIntegrator implements ExpandableSynapticIntegrator {
 		int steps = (int) Math.ceil(len / myMaxTimeStep);
 		float dt = len / steps;
 
-		float[] times = new float[steps+1];
-		float[] currents = new float[steps+1];
+		float[] times;
+		float[] currents;
+		if (myReuseBuffers && myResult != null && myResult.getTimes().length == steps+1) {
+			times = myResult.getTimes();
+			currents = myResult.getValues1D();
+		} else {
+			times = new float[steps+1];
+			currents = new float[steps+1];
+			if (myReuseBuffers) {
+				myResult = new TimeSeries1DImpl(times, currents, myCurrentUnits);
+			}
+		}
+
+		LinearExponentialTermination[] terminations = getTerminationArray();
 
 		times[0] = startTime;
-		if (myTerminations.size() == 0) {
+		if (terminations.length == 0) {
 			for (int i = 1; i <= steps; i++) {
 				times[i] = startTime + i * dt;
 			}
+			if (myReuseBuffers) {
+				Arrays.fill(currents, 0);
+			}
 		} else {
 			//Note: we leave out decay and real input integration at start time, to make total
 			//decay and integration times equal to simulation time (previously left integration out of
 			//end step, but some spike generators need accurate value at end time)
 
 			times[0] = startTime;
-			currents[0] = update(myTerminations.values(), true, 0, 0);
+			currents[0] = update(terminations, true, 0, 0);
 
 			for (int i = 1; i <= steps; i++) {
 				times[i] = startTime + i * dt;
-				currents[i] = update(myTerminations.values(), false, dt, dt);
+				currents[i] = update(terminations, false, dt, dt);
 			}
 		}
 
-		return new TimeSeries1DImpl(times, currents, myCurrentUnits);
+		return myReuseBuffers ? myResult : new TimeSeries1DImpl(times, currents, myCurrentUnits);
+	}
+
+	private LinearExponentialTermination[] getTerminationArray() {
+		if (myTerminationArray == null) {
+			myTerminationArray = myTerminations.values().toArray(new LinearExponentialTermination[0]);
+		}
+		return myTerminationArray;
 	}
 
 	//update current in all Terminations
-	private static float update(Collection<LinearExponentialTermination> terminations, boolean spikes, float intTime, float decayTime) {
+	private static float update(LinearExponentialTermination[] terminations, boolean spikes, float intTime, float decayTime) {
 		float result = 0f;
 
-		Iterator<LinearExponentialTermination> it = terminations.iterator();
-		while (it.hasNext()) {
-			LinearExponentialTermination t = it.next();
+		for (int i = 0; i < terminations.length; i++) {
+			LinearExponentialTermination t = terminations[i];
 			float current = t.updateCurrent(spikes, intTime, decayTime);
 			if (!t.getModulatory()) {
                 result += current;
@@ -148,6 +173,21 @@ public class LinearSynapticIntegrator implements ExpandableSynapticIntegrator {
 		}
 	}
 
+	/**
+	 * @see ca.nengo.model.neuron.BufferReusing#setReuseBuffers(boolean)
+	 */
+	public void setReuseBuffers(boolean reuse) {
+		myReuseBuffers = reuse;
+		myResult = null;
+	}
+
+	/**
+	 * @see ca.nengo.model.neuron.BufferReusing#getReuseBuffers()
+	 */
+	public boolean getReuseBuffers() {
+		return myReuseBuffers;
+	}
+
 	/**
 	 * @return maximum time step
 	 */
@@ -162,6 +202,13 @@ public class LinearSynapticIntegrator implements ExpandableSynapticIntegrator {
 		myMaxTimeStep = maxTimeStep * ourTimeStepCorrection; //increased slightly because float/float != integer
 	}
 
+	/**
+	 * @return Maximum time step, including the correction made in setMaxTimeStep(...)
+	 */
+	float getCorrectedMaxTimeStep() {
+		return myMaxTimeStep;
+	}
+
 	/**
 	 * @return Units that current is expressed in
 	 */
@@ -174,6 +221,7 @@ public class LinearSynapticIntegrator implements ExpandableSynapticIntegrator {
 	 */
 	public void setCurrentUnits(Units units) {
 		myCurrentUnits = units;
+		myResult = null;
 	}
 
 	/**
@@ -194,6 +242,7 @@ public class LinearSynapticIntegrator implements ExpandableSynapticIntegrator {
 		LinearExponentialTermination result = new LinearExponentialTermination(myNode, name, weights, tauPSC);
 		result.setModulatory(modulatory);
 		myTerminations.put(name, result);
+		myTerminationArray = null;
 
 		return result;
 	}
@@ -202,6 +251,7 @@ public class LinearSynapticIntegrator implements ExpandableSynapticIntegrator {
 	 * @see ca.nengo.model.neuron.ExpandableSynapticIntegrator#removeTermination(java.lang.String)
 	 */
 	public Termination removeTermination(String name) throws StructuralException {
+		myTerminationArray = null;
 		return myTerminations.remove(name);
 	}
 
@@ -231,6 +281,8 @@ public class LinearSynapticIntegrator implements ExpandableSynapticIntegrator {
 		for (LinearExponentialTermination oldTerm : myTerminations.values()) {
 			result.myTerminations.put(oldTerm.getName(), oldTerm.clone(result.myNode));
 		}
+		result.myTerminationArray = null;
+		result.myResult = null;
 
 		return result;
 	}
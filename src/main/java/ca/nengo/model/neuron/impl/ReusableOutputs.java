@@ -0,0 +1,99 @@
+/*
+The contents of this file are subject to the Mozilla Public License Version 1.1
+(the "License"); you may not use this file except in compliance with the License.
+You may obtain a copy of the License at http://www.mozilla.org/MPL/
+
+Software distributed under the License is distributed on an "AS IS" basis, WITHOUT
+WARRANTY OF ANY KIND, either express or implied. See the License for the specific
+language governing rights and limitations under the License.
+
+The Original Code is "ReusableOutputs.java". Description:
+"Double-buffered outputs that are overwritten on each time step"
+
+The Initial Developer of the Original Code is Bryan Tripp & Centre for Theoretical Neuroscience, University of Waterloo. Copyright (C) 2006-2008. All Rights Reserved.
+
+Alternatively, the contents of this file may be used under the terms of the GNU
+Public License license (the GPL License), in which case the provisions of GPL
+License are applicable  instead of those above. If you wish to allow use of your
+version of this file only under the terms of the GPL License and not to allow
+others to use your version of this file under the MPL, indicate your decision
+by deleting the provisions above and replace  them with the notice and other
+provisions required by the GPL License.  If you do not delete the provisions above,
+a recipient may use your version of this file under either the MPL or the GPL License.
+*/
+
+package ca.nengo.model.neuron.impl;
+
+import ca.nengo.model.Units;
+import ca.nengo.model.impl.PreciseSpikeOutputImpl;
+import ca.nengo.model.impl.RealOutputImpl;
+import ca.nengo.model.impl.SpikeOutputImpl;
+
+/**
+ * One-dimensional outputs that are overwritten on each time step, for components in
+ * BufferReusing mode. There are two of each kind of output, and successive calls alternate between
+ * them, so an output returned on one step is not overwritten until the step after next.
+ */
+final class ReusableOutputs {
+
+	private final SpikeOutputImpl[] mySpikes;
+	private final PreciseSpikeOutputImpl[] myPreciseSpikes;
+	private final RealOutputImpl[] myReals;
+	private int myIndex;
+
+	/**
+	 * @param realUnits Units of real-valued outputs
+	 */
+	ReusableOutputs(Units realUnits) {
+		mySpikes = new SpikeOutputImpl[2];
+		myPreciseSpikes = new PreciseSpikeOutputImpl[2];
+		myReals = new RealOutputImpl[2];
+		for (int i = 0; i < 2; i++) {
+			mySpikes[i] = new SpikeOutputImpl(new boolean[1], Units.SPIKES, 0);
+			myPreciseSpikes[i] = new PreciseSpikeOutputImpl(new float[]{-1}, Units.SPIKES, 0);
+			myReals[i] = new RealOutputImpl(new float[1], realUnits, 0);
+		}
+	}
+
+	/**
+	 * @param spike True if there is a spike
+	 * @param time Time of the output
+	 * @return A SpikeOutput with the given value
+	 */
+	SpikeOutputImpl spike(boolean spike, float time) {
+		SpikeOutputImpl result = mySpikes[next()];
+		result.setValue(0, spike);
+		result.setTime(time);
+		return result;
+	}
+
+	/**
+	 * @param spikeTime Spike time relative to the start of the step (negative if no spike)
+	 * @param time Time of the output
+	 * @return A PreciseSpikeOutput with the given spike time
+	 */
+	PreciseSpikeOutputImpl preciseSpike(float spikeTime, float time) {
+		PreciseSpikeOutputImpl result = myPreciseSpikes[next()];
+		result.setSpikeTime(0, spikeTime);
+		result.setTime(time);
+		return result;
+	}
+
+	/**
+	 * @param value Real value
+	 * @param time Time of the output
+	 * @return A RealOutput with the given value
+	 */
+	RealOutputImpl real(float value, float time) {
+		RealOutputImpl result = myReals[next()];
+		result.setValue(0, value);
+		result.setTime(time);
+		return result;
+	}
+
+	private int next() {
+		myIndex = 1 - myIndex;
+		return myIndex;
+	}
+
+}
@@ -46,6 +46,7 @@ import ca.nengo.model.Termination;
 import ca.nengo.model.Units;
 import ca.nengo.model.impl.BasicOrigin;
 import ca.nengo.model.nef.NEFNode;
+import ca.nengo.model.neuron.BufferReusing;
 import ca.nengo.model.neuron.Neuron;
 import ca.nengo.model.neuron.SpikeGenerator;
 import ca.nengo.model.neuron.SynapticIntegrator;
@@ -61,7 +62,7 @@ import ca.nengo.util.impl.TimeSeries1DImpl;
  *
  * @author Bryan Tripp
  */
-public class SpikingNeuron implements Neuron, Probeable, NEFNode {
+public class SpikingNeuron implements Neuron, Probeable, NEFNode, BufferReusing {
 
 	private static final long serialVersionUID = 1L;
 
@@ -83,6 +84,9 @@ public class SpikingNeuron implements Neuron, Probeable, NEFNode {
 	private String myDocumentation;
 	private transient List<VisiblyMutable.Listener> myListeners;
 	private Noise myNoise = null;
+	private boolean myReuseBuffers;
+	private transient float[] myGeneratorInput;
+	private transient ReusableOutputs myCurrentOutputs;
 
 
 	/**
@@ -124,9 +128,18 @@ public class SpikingNeuron implements Neuron, Probeable, NEFNode {
 		//TODO: this method could use some cleanup and optimization
 		TimeSeries1D current = myIntegrator.run(startTime, endTime);
 
+		float[] times = current.getTimes();
 		float[] integratorOutput = current.getValues1D();
-		float[] generatorInput = new float[integratorOutput.length];
-		
+		float[] generatorInput;
+		if (myReuseBuffers) {
+			if (myGeneratorInput == null || myGeneratorInput.length != integratorOutput.length) {
+				myGeneratorInput = new float[integratorOutput.length];
+			}
+			generatorInput = myGeneratorInput;
+		} else {
+			generatorInput = new float[integratorOutput.length];
+		}
+
 		for (int i = 0; i < integratorOutput.length; i++) {
 			myUnscaledCurrent = (myRadialInput + integratorOutput[i]);
 			generatorInput[i] = myBias + myScale * myUnscaledCurrent;
@@ -135,10 +148,50 @@ public class SpikingNeuron implements Neuron, Probeable, NEFNode {
 			}
 		}
 
-		myCurrent = new TimeSeries1DImpl(current.getTimes(), generatorInput, Units.UNK);
+		if (!myReuseBuffers || myCurrent.getTimes() != times || myCurrent.getValues1D() != generatorInput) {
+			myCurrent = new TimeSeries1DImpl(times, generatorInput, Units.UNK);
+		}
+
+		mySpikeOrigin.run(times, generatorInput);
+		setCurrentOrigin(startTime, endTime);
+	}
 
-		mySpikeOrigin.run(myCurrent.getTimes(), generatorInput);
-		myCurrentOrigin.setValues(startTime, endTime, new float[]{myUnscaledCurrent});
+	private void setCurrentOrigin(float startTime, float endTime) {
+		if (myReuseBuffers && myCurrentOrigin.getNoise() == null) {
+			if (myCurrentOutputs == null) {
+				myCurrentOutputs = new ReusableOutputs(myCurrentOrigin.getUnits());
+			}
+			myCurrentOrigin.setValues(myCurrentOutputs.real(myUnscaledCurrent, endTime));
+		} else {
+			myCurrentOrigin.setValues(startTime, endTime, new float[]{myUnscaledCurrent});
+		}
+	}
+
+	/**
+	 * Sets the outputs of this neuron after it has been run externally (by a LIFPopulationEngine)
+	 * rather than through run(...).
+	 *
+	 * @param startTime simulation time at which the step started (s)
+	 * @param endTime simulation time at which the step ended (s)
+	 * @param lastTime Last time point of the step, as seen by the SynapticIntegrator (s)
+	 * @param unscaledCurrent Radial input plus synaptic current at the end of the step
+	 * @param current Net current into the SpikeGenerator at the end of the step
+	 * @param output Output of the SpikeGenerator
+	 */
+	void setPopulationOutput(float startTime, float endTime, float lastTime, float unscaledCurrent, float current, InstantaneousOutput output) {
+		myUnscaledCurrent = unscaledCurrent;
+		if (myReuseBuffers) {
+			if (myGeneratorInput == null || myGeneratorInput.length != 1 || myCurrent.getValues1D() != myGeneratorInput) {
+				myGeneratorInput = new float[1];
+				myCurrent = new TimeSeries1DImpl(new float[1], myGeneratorInput, Units.UNK);
+			}
+			myCurrent.getTimes()[0] = lastTime;
+			myGeneratorInput[0] = current;
+		} else {
+			myCurrent = new TimeSeries1DImpl(new float[]{lastTime}, new float[]{current}, Units.UNK);
+		}
+		mySpikeOrigin.setValues(output);
+		setCurrentOrigin(startTime, endTime);
 	}
 
 	/**
@@ -201,7 +254,7 @@ public class SpikingNeuron implements Neuron, Probeable, NEFNode {
 	public TimeSeries getHistory(String stateName) throws SimulationException {
 		TimeSeries result = null;
 		if (stateName.equals("I")) {
-			result = myCurrent;
+			result = new TimeSeries1DImpl(myCurrent.getTimes().clone(), myCurrent.getValues1D().clone(), Units.UNK);
 		} else if (stateName.equals("rate")) {
 			InstantaneousOutput output = mySpikeOrigin.getValues();
 			float[] times = myCurrent.getTimes();
@@ -290,6 +343,9 @@ public class SpikingNeuron implements Neuron, Probeable, NEFNode {
 	public void setIntegrator(SynapticIntegrator integrator) {
 		myIntegrator = integrator;
 		myIntegrator.setNode(this);
+		if (myIntegrator instanceof BufferReusing) {
+			((BufferReusing) myIntegrator).setReuseBuffers(myReuseBuffers);
+		}
 	}
 
 	/**
@@ -306,6 +362,34 @@ public class SpikingNeuron implements Neuron, Probeable, NEFNode {
 	public void setGenerator(SpikeGenerator generator) {
 		myGenerator = generator;
 		mySpikeOrigin = new SpikeGeneratorOrigin(this, generator);
+		if (myGenerator instanceof BufferReusing) {
+			((BufferReusing) myGenerator).setReuseBuffers(myReuseBuffers);
+		}
+	}
+
+	/**
+	 * Also sets reuse of buffers in the SynapticIntegrator and SpikeGenerator, if they
+	 * support it.
+	 *
+	 * @see ca.nengo.model.neuron.BufferReusing#setReuseBuffers(boolean)
+	 */
+	public void setReuseBuffers(boolean reuse) {
+		myReuseBuffers = reuse;
+		myGeneratorInput = null;
+		myCurrentOutputs = null;
+		if (myIntegrator instanceof BufferReusing) {
+			((BufferReusing) myIntegrator).setReuseBuffers(reuse);
+		}
+		if (myGenerator instanceof BufferReusing) {
+			((BufferReusing) myGenerator).setReuseBuffers(reuse);
+		}
+	}
+
+	/**
+	 * @see ca.nengo.model.neuron.BufferReusing#getReuseBuffers()
+	 */
+	public boolean getReuseBuffers() {
+		return myReuseBuffers;
 	}
 
 	/**
@@ -371,7 +455,9 @@ public class SpikingNeuron implements Neuron, Probeable, NEFNode {
 	@Override
 	public SpikingNeuron clone() throws CloneNotSupportedException {
 		SpikingNeuron result = (SpikingNeuron) super.clone();
-		result.myCurrent = (TimeSeries1D) myCurrent.clone();
+		result.myCurrent = new TimeSeries1DImpl(myCurrent.getTimes().clone(), myCurrent.getValues1D().clone(), Units.UNK);
+		result.myGeneratorInput = null;
+		result.myCurrentOutputs = null;
 
 		result.myCurrentOrigin = (BasicOrigin) myCurrentOrigin.clone();
 
@@ -41,6 +41,18 @@ public class SimulatorEvent {
 		myType = type;
 	}
 
+	/**
+	 * Reuses this event for a new notification, clearing any interrupt request.
+	 *
+	 * @param progress Fraction of the run completed
+	 * @param type Type of the event
+	 */
+	public void set(float progress, Type type) {
+		myProgress = progress;
+		myType = type;
+		interrupt = false;
+	}
+
 	public float getProgress() {
 		return myProgress;
 	}
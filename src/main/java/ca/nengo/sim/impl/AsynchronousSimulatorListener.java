@@ -0,0 +1,255 @@
+package ca.nengo.sim.impl;
+
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+import ca.nengo.sim.SimulatorEvent;
+import ca.nengo.sim.SimulatorListener;
+
+/**
+ * <p>Passes SimulatorEvents to another listener on a separate thread, so that a slow listener
+ * (eg one that updates a display) doesn't hold up the simulation.</p>
+ *
+ * <p>Events are queued in a fixed-size ring of reusable events. When the ring is full, a
+ * STEP_TAKEN event is handled according to the Backpressure policy: the simulation can wait for
+ * room (BLOCK), skip the event (DROP), or replace the newest queued step event with it (COALESCE).
+ * STARTED and FINISHED events are never dropped, and a FINISHED event isn't returned from until every
+ * queued event has been delivered, so the listener has seen the whole run when run() returns.</p>
+ *
+ * <p>If the listener asks for an interrupt, the request is passed on with the next event sent
+ * from the simulation (so the simulation may take a few more steps before it stops).</p>
+ *
+ * <p>The wrapped listener should only use the event it is given, not the live state of the
+ * simulation (eg probes), because the simulation may have moved on by the time it is called.</p>
+ */
+public class AsynchronousSimulatorListener implements SimulatorListener {
+
+	/**
+	 * What to do with a step event when the queue is full.
+	 */
+	public enum Backpressure {
+		/**
+		 * Wait until there is room in the queue
+		 */
+		BLOCK,
+
+		/**
+		 * Discard the new event
+		 */
+		DROP,
+
+		/**
+		 * Replace the newest queued step event with the new one
+		 */
+		COALESCE
+	};
+
+	private final SimulatorListener myListener;
+	private final Backpressure myBackpressure;
+
+	private final SimulatorEvent[] myQueue;
+	private final SimulatorEvent myDelivered; //copy of the event being delivered
+	private int myHead; //index of the next event to deliver
+	private int myCount; //number of queued events
+	private boolean myDelivering;
+	private long myNumSkipped;
+
+	private final ReentrantLock myLock;
+	private final Condition myNotEmpty;
+	private final Condition myNotFull;
+	private final Condition myDrained;
+
+	private volatile boolean myInterruptRequested;
+	private volatile boolean myClosed;
+	private Thread myThread;
+
+	/**
+	 * @param listener Listener to which events are passed
+	 * @param capacity Maximum number of events that can wait to be delivered
+	 * @param backpressure What to do with a step event when capacity is reached
+	 */
+	public AsynchronousSimulatorListener(SimulatorListener listener, int capacity, Backpressure backpressure) {
+		if (capacity < 1) {
+			throw new IllegalArgumentException("Capacity must be at least one");
+		}
+
+		myListener = listener;
+		myBackpressure = backpressure;
+
+		myQueue = new SimulatorEvent[capacity];
+		for (int i = 0; i < capacity; i++) {
+			myQueue[i] = new SimulatorEvent(0, SimulatorEvent.Type.STEP_TAKEN);
+		}
+		myDelivered = new SimulatorEvent(0, SimulatorEvent.Type.STEP_TAKEN);
+
+		myLock = new ReentrantLock();
+		myNotEmpty = myLock.newCondition();
+		myNotFull = myLock.newCondition();
+		myDrained = myLock.newCondition();
+	}
+
+	/**
+	 * Uses a queue of 1024 events that coalesces step events when full.
+	 *
+	 * @param listener Listener to which events are passed
+	 */
+	public AsynchronousSimulatorListener(SimulatorListener listener) {
+		this(listener, 1024, Backpressure.COALESCE);
+	}
+
+	/**
+	 * @return Listener to which events are passed
+	 */
+	public SimulatorListener getListener() {
+		return myListener;
+	}
+
+	/**
+	 * @return What is done with a step event when the queue is full
+	 */
+	public Backpressure getBackpressure() {
+		return myBackpressure;
+	}
+
+	/**
+	 * @return Number of step events that have been dropped or coalesced because the queue was full
+	 */
+	public long getNumSkipped() {
+		myLock.lock();
+		try {
+			return myNumSkipped;
+		} finally {
+			myLock.unlock();
+		}
+	}
+
+	/**
+	 * @see ca.nengo.sim.SimulatorListener#processEvent(ca.nengo.sim.SimulatorEvent)
+	 */
+	public void processEvent(SimulatorEvent event) {
+		if (myClosed) {
+			throw new IllegalStateException("This listener has been closed");
+		}
+		if (event.getType() == SimulatorEvent.Type.STARTED) {
+			myInterruptRequested = false;
+		}
+
+		myLock.lock();
+		try {
+			if (myThread == null) {
+				startThread();
+			}
+
+			if (!enqueue(event)) {
+				myNumSkipped++;
+			}
+
+			if (event.getType() == SimulatorEvent.Type.FINISHED) {
+				while ((myCount > 0 || myDelivering) && !myClosed) {
+					myDrained.awaitUninterruptibly();
+				}
+			}
+		} finally {
+			myLock.unlock();
+		}
+
+		if (myInterruptRequested) {
+			event.setInterrupt(true);
+		}
+	}
+
+	//called with the lock held; returns false if the event was dropped or coalesced
+	private boolean enqueue(SimulatorEvent event) {
+		boolean step = event.getType() == SimulatorEvent.Type.STEP_TAKEN;
+
+		if (myCount == myQueue.length && step) {
+			if (myBackpressure == Backpressure.DROP) {
+				return false;
+			}
+			if (myBackpressure == Backpressure.COALESCE) {
+				SimulatorEvent newest = myQueue[(myHead + myCount - 1) % myQueue.length];
+				if (newest.getType() == SimulatorEvent.Type.STEP_TAKEN) {
+					newest.set(event.getProgress(), event.getType());
+					return false;
+				}
+			}
+		}
+
+		while (myCount == myQueue.length && !myClosed) {
+			myNotFull.awaitUninterruptibly();
+		}
+		if (myClosed) {
+			return false;
+		}
+
+		myQueue[(myHead + myCount) % myQueue.length].set(event.getProgress(), event.getType());
+		myCount++;
+		myNotEmpty.signal();
+		return true;
+	}
+
+	/**
+	 * Stops the delivery thread. Events that are still queued aren't delivered. This listener
+	 * can't be used afterwards.
+	 */
+	public void close() {
+		myLock.lock();
+		try {
+			myClosed = true;
+			myNotEmpty.signalAll();
+			myNotFull.signalAll();
+			myDrained.signalAll();
+		} finally {
+			myLock.unlock();
+		}
+	}
+
+	private void startThread() {
+		myThread = new Thread(new Runnable() {
+			public void run() {
+				deliver();
+			}
+		}, "Simulator listener");
+		myThread.setDaemon(true);
+		myThread.start();
+	}
+
+	private void deliver() {
+		while (true) {
+			myLock.lock();
+			try {
+				myDelivering = false;
+				if (myCount == 0) {
+					myDrained.signalAll();
+				}
+				while (myCount == 0 && !myClosed) {
+					myNotEmpty.awaitUninterruptibly();
+				}
+				if (myClosed) {
+					myCount = 0;
+					myDrained.signalAll();
+					return;
+				}
+
+				SimulatorEvent next = myQueue[myHead];
+				myDelivered.set(next.getProgress(), next.getType());
+				myHead = (myHead + 1) % myQueue.length;
+				myCount--;
+				myDelivering = true;
+				myNotFull.signal();
+			} finally {
+				myLock.unlock();
+			}
+
+			try {
+				myListener.processEvent(myDelivered);
+			} catch (RuntimeException e) {
+				e.printStackTrace();
+			}
+			if (myDelivered.getInterrupt()) {
+				myInterruptRequested = true;
+			}
+		}
+	}
+
+}
@@ -0,0 +1,244 @@
+package ca.nengo.sim.impl;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import ca.nengo.math.Function;
+import ca.nengo.math.PDFTools;
+import ca.nengo.model.Network;
+import ca.nengo.model.Node;
+import ca.nengo.model.SimulationException;
+import ca.nengo.model.StructuralException;
+import ca.nengo.model.impl.FunctionInput;
+import ca.nengo.model.nef.impl.DecodableEnsembleImpl;
+import ca.nengo.sim.Simulator;
+import ca.nengo.util.Probe;
+
+/**
+ * <p>Runs many independent copies (instances) of a Network concurrently, eg for parameter sweeps
+ * or Monte-Carlo studies. Each instance runs on one thread, with as many instances at a time as
+ * there are threads.</p>
+ *
+ * <p>Instances are copies of a prototype Network (including its probes). Decoders, encoders,
+ * evaluation points and decoded termination transforms of each instance are shared with the
+ * prototype rather than copied, so only state (neurons, filters, outputs, plastic weights) is
+ * kept per instance. The prototype and instances therefore shouldn't be changed structurally
+ * after the batch is made.</p>
+ *
+ * <p>Instances can be given their own inputs and random seeds. Seeds are applied when the
+ * instances are reset, one at a time. Noise drawn while running comes from a generator that is
+ * shared by all instances, so it isn't reproducible per instance.</p>
+ */
+public class BatchSimulator {
+
+	private final Network myPrototype;
+	private final Network[] myInstances;
+	private final Long[] mySeeds;
+	private int myNumThreads;
+
+	private long myLastRunSteps;
+	private double myLastRunSeconds;
+
+	/**
+	 * @param prototype Network to copy
+	 * @param numInstances Number of copies to run
+	 * @throws StructuralException if the network can't be copied
+	 */
+	public BatchSimulator(Network prototype, int numInstances) throws StructuralException {
+		if (numInstances < 1) {
+			throw new IllegalArgumentException("There must be at least one instance");
+		}
+
+		myPrototype = prototype;
+		myInstances = new Network[numInstances];
+		mySeeds = new Long[numInstances];
+		myNumThreads = Runtime.getRuntime().availableProcessors();
+
+		for (int i = 0; i < numInstances; i++) {
+			try {
+				myInstances[i] = (Network) prototype.clone();
+			} catch (CloneNotSupportedException e) {
+				throw new StructuralException("Can't copy network for batch", e);
+			}
+			shareStructure(prototype.getNodes(), myInstances[i]);
+
+			Simulator simulator = myInstances[i].getSimulator();
+			if (simulator instanceof LocalSimulator) {
+				((LocalSimulator) simulator).setUseThreadPool(false);
+				((LocalSimulator) simulator).setDisplayProgress(false);
+			}
+		}
+	}
+
+	/**
+	 * @return The Network of which the instances are copies
+	 */
+	public Network getPrototype() {
+		return myPrototype;
+	}
+
+	/**
+	 * @return Number of instances
+	 */
+	public int getNumInstances() {
+		return myInstances.length;
+	}
+
+	/**
+	 * @param index Index of an instance
+	 * @return The instance
+	 */
+	public Network getInstance(int index) {
+		return myInstances[index];
+	}
+
+	/**
+	 * @return Maximum number of instances that run at once (defaults to the number of processors)
+	 */
+	public int getNumThreads() {
+		return myNumThreads;
+	}
+
+	/**
+	 * @param numThreads Maximum number of instances that run at once
+	 */
+	public void setNumThreads(int numThreads) {
+		if (numThreads < 1) {
+			throw new IllegalArgumentException("There must be at least one thread");
+		}
+		myNumThreads = numThreads;
+	}
+
+	/**
+	 * @param index Index of an instance
+	 * @param seed Random seed to use when the instance is reset, or null to continue with the
+	 * 		current state of the random number generator
+	 */
+	public void setSeed(int index, Long seed) {
+		mySeeds[index] = seed;
+	}
+
+	/**
+	 * @param index Index of an instance
+	 * @return Random seed used when the instance is reset, or null if none
+	 */
+	public Long getSeed(int index) {
+		return mySeeds[index];
+	}
+
+	/**
+	 * @param index Index of an instance
+	 * @param nodeName Name of a FunctionInput at the top level of the network
+	 * @param functions New output functions of the input, in this instance only
+	 * @throws StructuralException if there is no such FunctionInput, or the functions are invalid
+	 */
+	public void setInput(int index, String nodeName, Function[] functions) throws StructuralException {
+		Node node = myInstances[index].getNode(nodeName);
+		if (!(node instanceof FunctionInput)) {
+			throw new StructuralException("Node " + nodeName + " is not a FunctionInput");
+		}
+		((FunctionInput) node).setFunctions(functions);
+	}
+
+	/**
+	 * @param index Index of an instance
+	 * @return Probes of the instance (copies of the prototype's probes), with data from the last run
+	 */
+	public Probe[] getProbes(int index) {
+		return myInstances[index].getSimulator().getProbes();
+	}
+
+	/**
+	 * Resets every instance, using its seed if it has one.
+	 *
+	 * @param randomize True to randomize initial states
+	 */
+	public void reset(boolean randomize) {
+		for (int i = 0; i < myInstances.length; i++) {
+			if (mySeeds[i] != null) {
+				PDFTools.setSeed(mySeeds[i].longValue());
+			}
+			myInstances[i].getSimulator().resetNetwork(randomize, false);
+		}
+	}
+
+	/**
+	 * Runs every instance over the same interval, returning when all have finished.
+	 *
+	 * @param startTime Simulation time at which running starts
+	 * @param endTime Simulation time at which running ends
+	 * @param stepSize Length of each simulation step
+	 * @throws SimulationException if an instance can't be run
+	 */
+	public void run(final float startTime, final float endTime, final float stepSize) throws SimulationException {
+		ExecutorService executor = Executors.newFixedThreadPool(Math.min(myNumThreads, myInstances.length));
+		long start = System.nanoTime();
+
+		try {
+			List<Future<Object>> results = new ArrayList<Future<Object>>(myInstances.length);
+			for (final Network instance : myInstances) {
+				results.add(executor.submit(new Callable<Object>() {
+					public Object call() throws SimulationException {
+						instance.getSimulator().run(startTime, endTime, stepSize);
+						return null;
+					}
+				}));
+			}
+
+			for (Future<Object> result : results) {
+				result.get();
+			}
+		} catch (InterruptedException e) {
+			throw new SimulationException("Interrupted while running batch", e);
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof SimulationException) {
+				throw (SimulationException) e.getCause();
+			}
+			throw new SimulationException("Problem running batch instance", e.getCause());
+		} finally {
+			executor.shutdownNow();
+		}
+
+		myLastRunSeconds = (System.nanoTime() - start) / 1e9;
+		myLastRunSteps = Math.round((endTime - startTime) / stepSize) * (long) myInstances.length;
+	}
+
+	/**
+	 * @return Total number of steps taken by all instances in the last run
+	 */
+	public long getLastRunSteps() {
+		return myLastRunSteps;
+	}
+
+	/**
+	 * @return Wall-clock duration of the last run (s)
+	 */
+	public double getLastRunSeconds() {
+		return myLastRunSeconds;
+	}
+
+	/**
+	 * @return Steps taken per second of wall-clock time in the last run, summed over instances
+	 */
+	public double getStepsPerSecond() {
+		return myLastRunSeconds > 0 ? myLastRunSteps / myLastRunSeconds : 0;
+	}
+
+	//shares read-only data of the prototype's ensembles with their copies in an instance
+	private static void shareStructure(Node[] prototypeNodes, Network instance) throws StructuralException {
+		for (Node prototypeNode : prototypeNodes) {
+			Node instanceNode = instance.getNode(prototypeNode.getName());
+			if (prototypeNode instanceof DecodableEnsembleImpl && instanceNode instanceof DecodableEnsembleImpl) {
+				((DecodableEnsembleImpl) instanceNode).shareStructure((DecodableEnsembleImpl) prototypeNode);
+			} else if (prototypeNode instanceof Network && instanceNode instanceof Network) {
+				shareStructure(((Network) prototypeNode).getNodes(), (Network) instanceNode);
+			}
+		}
+	}
+
+}
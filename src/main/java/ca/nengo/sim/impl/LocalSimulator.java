@@ -31,6 +31,7 @@ package ca.nengo.sim.impl;
 import java.lang.System;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.HashMap;
 import java.util.Iterator;
@@ -41,9 +42,11 @@ import ca.nengo.model.Ensemble;
 import ca.nengo.model.InstantaneousOutput;
 import ca.nengo.model.Network;
 import ca.nengo.model.Node;
+import ca.nengo.model.Origin;
 import ca.nengo.model.Probeable;
 import ca.nengo.model.Projection;
 import ca.nengo.model.SimulationException;
+import ca.nengo.model.StructuralException;
 import ca.nengo.model.Termination;
 import ca.nengo.model.impl.NetworkImpl;
 import ca.nengo.model.plasticity.impl.PlasticEnsembleTermination;
@@ -51,6 +54,7 @@ import ca.nengo.sim.Simulator;
 import ca.nengo.sim.SimulatorEvent;
 import ca.nengo.sim.SimulatorListener;
 import ca.nengo.util.Probe;
+import ca.nengo.util.TaskSpawner;
 import ca.nengo.util.ThreadTask;
 import ca.nengo.util.VisiblyMutable;
 import ca.nengo.util.VisiblyMutableUtils;
@@ -76,6 +80,27 @@ public class LocalSimulator implements Simulator, java.io.Serializable {
     private boolean myDisplayProgress;
     private transient List<VisiblyMutable.Listener> myChangeListeners;
     private transient NodeThreadPool myNodeThreadPool;
+    private boolean myKeepThreadPool;
+    private boolean myThreadPoolDisabled;
+    private transient volatile boolean myThreadPoolStale;
+    private transient VisiblyMutable myObservedNetwork;
+    private transient VisiblyMutable.Listener myNetworkListener;
+
+    // Flat plan of the whole network hierarchy, for running without a thread pool. Subnetworks
+    // are run as part of this simulator's step rather than by their own simulators.
+    private transient volatile boolean myPlanStale;
+    private transient boolean myUsePlan;
+    private transient Node[] myPlanNodes;
+    private transient Origin[] myPlanOrigins;
+    private transient Termination[] myPlanTerminations;
+    private transient ThreadTask[] myPlanTasks;
+    private transient NetworkImpl[] myPlanNetworks;
+    private transient Probe[] myPlanProbes;
+    private transient long myPlanProbeChanges = -1;
+
+    // Incremented when a probe is added or removed, so that a parent's plan can tell when to
+    // gather the probes of its subnetworks again.
+    private transient long myProbeChanges;
 
     /**
      * Collection of Simulator
@@ -94,6 +119,9 @@ public class LocalSimulator implements Simulator, java.io.Serializable {
     public synchronized void initialize(Network network) {
     	
     	myNetwork = network;
+    	myThreadPoolStale = true;
+    	myPlanStale = true;
+    	observeNetwork(network);
         
         myNodes = network.getNodes();
         myProjections = network.getProjections();
@@ -133,11 +161,78 @@ public class LocalSimulator implements Simulator, java.io.Serializable {
     }
 
     /**
-     * Setup the run. Interactive specifies whether it is an interactive run or not. 
+     * Setup the run. Interactive specifies whether it is an interactive run or not. If the thread pool
+     * is kept between runs, and the network, probes and thread pool settings haven't changed since it
+     * was made, it is reused.
      */
     public void initRun(boolean interactive){
-        if(NodeThreadPool.isMultithreading()){
+        if(NodeThreadPool.isMultithreading() && !myThreadPoolDisabled){
+            if(myNodeThreadPool != null && myKeepThreadPool && !myThreadPoolStale
+                    && myNodeThreadPool.isReusable(interactive)){
+                return;
+            }
+            releaseThreadPool();
             makeNodeThreadPool(interactive);
+        }else{
+            releaseThreadPool();
+        }
+    }
+
+    /**
+     * @param keep True if the thread pool is to be kept between runs, rather than made at the start of
+     * 		each run and killed at the end. It is rebuilt when the network or probes change. Useful when
+     * 		running a few steps at a time (see runStep(float, float)). Call releaseThreadPool() to kill
+     * 		the threads when no more runs are expected.
+     */
+    public void setKeepThreadPool(boolean keep){
+        myKeepThreadPool = keep;
+        if(!keep){
+            releaseThreadPool();
+        }
+    }
+
+    /**
+     * @param use False if this simulator is to run on the calling thread even when NodeThreadPool
+     * 		multithreading is on (eg because many simulators are run concurrently). Defaults to true.
+     */
+    public void setUseThreadPool(boolean use){
+        myThreadPoolDisabled = !use;
+        if(!use){
+            releaseThreadPool();
+        }
+    }
+
+    /**
+     * @return False if this simulator always runs on the calling thread
+     */
+    public boolean getUseThreadPool(){
+        return !myThreadPoolDisabled;
+    }
+
+    /**
+     * @return True if the thread pool is kept between runs
+     */
+    public boolean getKeepThreadPool(){
+        return myKeepThreadPool;
+    }
+
+    /**
+     * Runs a single step, for callers that advance the simulation themselves (eg closed-loop control).
+     * Unlike run(...), this doesn't reset probes or fire simulator events. If the thread pool is kept
+     * between runs, it is made on the first call and reused afterwards, so each call costs little more
+     * than the step itself.
+     *
+     * @param startTime Simulation time at which the step starts
+     * @param endTime Simulation time at which the step ends
+     * @throws SimulationException if a problem is encountered while running
+     */
+    public synchronized void runStep(float startTime, float endTime) throws SimulationException {
+        initRun(false);
+        try {
+            myUsePlan = myNodeThreadPool == null && preparePlan(endTime - startTime);
+            step(startTime, endTime);
+        } finally {
+            endRun();
         }
     }
 
@@ -188,8 +283,11 @@ public class LocalSimulator implements Simulator, java.io.Serializable {
             thisStepSize=0.000001;
         }
 
+        myUsePlan = myNodeThreadPool == null && preparePlan((float) thisStepSize);
+
         int c = 0;
         boolean interrupt=false;
+        SimulatorEvent event=new SimulatorEvent(0, SimulatorEvent.Type.STEP_TAKEN); //reused for every step
         
         while (time < endTime && !interrupt) {
 
@@ -205,8 +303,7 @@ public class LocalSimulator implements Simulator, java.io.Serializable {
 
             float currentProgress = ((float) time - startTime) / (endTime - startTime);
             
-            SimulatorEvent event=new SimulatorEvent(currentProgress,
-                    SimulatorEvent.Type.STEP_TAKEN);
+            event.set(currentProgress, SimulatorEvent.Type.STEP_TAKEN);
             fireSimulatorEvent(event);
             if (event.getInterrupt()) interrupt=true;
 
@@ -228,6 +325,8 @@ public class LocalSimulator implements Simulator, java.io.Serializable {
     	
         if(myNodeThreadPool != null){
             myNodeThreadPool.step(startTime, endTime);
+        }else if(myUsePlan && !myPlanStale){
+            stepPlan(startTime, endTime);
         }else{
             for (Projection myProjection : myProjections) {
                 InstantaneousOutput values = myProjection.getOrigin().getValues();
@@ -253,13 +352,165 @@ public class LocalSimulator implements Simulator, java.io.Serializable {
         }
     }
 
+    /**
+     * Takes a step with the flat plan: one pass over all projections in the hierarchy, one over all
+     * leaf nodes, one over all tasks and one over all probes.
+     */
+    private void stepPlan(float startTime, float endTime) throws SimulationException {
+        for (NetworkImpl network : myPlanNetworks) {
+            network.fireStepListeners(startTime);
+        }
+
+        for (int i = 0; i < myPlanOrigins.length; i++) {
+            myPlanTerminations[i].setValues(myPlanOrigins[i].getValues());
+        }
+
+        for (Node node : myPlanNodes) {
+            if(node instanceof NetworkImpl) {
+                ((NetworkImpl)node).run(startTime, endTime, false);
+            } else {
+                node.run(startTime, endTime);
+            }
+        }
+
+        for (ThreadTask task : myPlanTasks) {
+            task.run(startTime, endTime);
+        }
+
+        for (Probe probe : myPlanProbes) {
+            probe.collect(endTime);
+        }
+    }
+
+    /**
+     * Compiles the flat plan if the network has changed, and gathers the probes of the whole hierarchy.
+     *
+     * @param stepSize Step size of the coming run
+     * @return True if the plan can be used, i.e. every flattened subnetwork has a LocalSimulator without
+     * 		listeners and runs with the same step size (otherwise subnetworks are run by their own simulators)
+     */
+    private boolean preparePlan(float stepSize) {
+        boolean compiled = false;
+        if (myPlanStale || myPlanNodes == null) {
+            compilePlan();
+            compiled = true;
+        }
+
+        // runStep(...) prepares the plan on every step, so the probes are only gathered again
+        // when the plan or a probe has changed
+        long probeChanges = myProbeChanges;
+        for (NetworkImpl network : myPlanNetworks) {
+            if (!(network.getSimulator() instanceof LocalSimulator)
+                    || Math.round(network.getStepSize() * 1000000) != Math.round(stepSize * 1000000)) {
+                return false;
+            }
+
+            LocalSimulator simulator = (LocalSimulator) network.getSimulator();
+            if (!simulator.mySimulatorListeners.isEmpty()) {
+                return false;
+            }
+            probeChanges += simulator.myProbeChanges;
+        }
+
+        if (compiled || myPlanProbes == null || probeChanges != myPlanProbeChanges) {
+            List<Probe> probes = new ArrayList<Probe>(myProbes);
+            for (NetworkImpl network : myPlanNetworks) {
+                probes.addAll(((LocalSimulator) network.getSimulator()).myProbes);
+            }
+            myPlanProbes = probes.toArray(new Probe[0]);
+            myPlanProbeChanges = probeChanges;
+        }
+
+        return true;
+    }
+
+    private void compilePlan() {
+        myPlanStale = false;
+
+        List<Node> nodes = new ArrayList<Node>();
+        List<Projection> projections = new ArrayList<Projection>();
+        List<NetworkImpl> networks = new ArrayList<NetworkImpl>();
+        addToPlan(myNodes, myProjections, nodes, projections, networks);
+
+        List<ThreadTask> tasks = new ArrayList<ThreadTask>();
+        for (Node node : nodes) {
+            if (node instanceof TaskSpawner && !(node instanceof Network)) {
+                tasks.addAll(Arrays.asList(((TaskSpawner) node).getTasks()));
+            }
+        }
+
+        myPlanOrigins = new Origin[projections.size()];
+        myPlanTerminations = new Termination[projections.size()];
+        for (int i = 0; i < projections.size(); i++) {
+            Origin origin = projections.get(i).getOrigin();
+            if (origin instanceof NetworkImpl.OriginWrapper) {
+                origin = ((NetworkImpl.OriginWrapper) origin).getBaseOrigin();
+            }
+            Termination termination = projections.get(i).getTermination();
+            if (termination instanceof NetworkImpl.TerminationWrapper) {
+                termination = ((NetworkImpl.TerminationWrapper) termination).getBaseTermination();
+            }
+            myPlanOrigins[i] = origin;
+            myPlanTerminations[i] = termination;
+        }
+
+        myPlanNodes = nodes.toArray(new Node[0]);
+        myPlanTasks = tasks.toArray(new ThreadTask[0]);
+        myPlanNetworks = networks.toArray(new NetworkImpl[0]);
+    }
+
+    //adds nodes and projections to the plan, descending into subnetworks
+    private static void addToPlan(Node[] nodes, Projection[] projections, List<Node> planNodes,
+            List<Projection> planProjections, List<NetworkImpl> planNetworks) {
+        planProjections.addAll(Arrays.asList(projections));
+        for (Node node : nodes) {
+            if (node instanceof NetworkImpl && !node.getClass().getCanonicalName().contains("CCMModelNetwork")) {
+                NetworkImpl network = (NetworkImpl) node;
+                planNetworks.add(network);
+                addToPlan(network.getNodes(), network.getProjections(), planNodes, planProjections, planNetworks);
+            } else {
+                planNodes.add(node);
+            }
+        }
+    }
+
     public void endRun(){
+        if(!myKeepThreadPool){
+            releaseThreadPool();
+        }
+    }
+
+    /**
+     * Kills the threads of the thread pool, if there is one. A new pool is made for the next run.
+     */
+    public void releaseThreadPool(){
         if(myNodeThreadPool != null){
             myNodeThreadPool.kill();
             myNodeThreadPool = null;
         }
     }
 
+    //listens for changes to the network so that a kept thread pool is rebuilt for the next run
+    private void observeNetwork(Network network) {
+        if (myObservedNetwork == network) {
+            return;
+        }
+        if (myObservedNetwork != null) {
+            myObservedNetwork.removeChangeListener(myNetworkListener);
+        }
+
+        if (myNetworkListener == null) {
+            myNetworkListener = new VisiblyMutable.Listener() {
+                public void changed(VisiblyMutable.Event e) throws StructuralException {
+                    myThreadPoolStale = true;
+                    myPlanStale = true;
+                }
+            };
+        }
+        network.addChangeListener(myNetworkListener);
+        myObservedNetwork = network;
+    }
+
     /**
      * @see ca.nengo.sim.Simulator#resetNetwork(boolean, boolean)
      */
@@ -327,6 +578,9 @@ public class LocalSimulator implements Simulator, java.io.Serializable {
         
         myProbeTasks.add(result.getProbeTask());
         myProbes.add(result);
+        myProbeChanges++;
+        myThreadPoolStale = true;
+        myPlanStale = true;
 
         fireVisibleChangeEvent();
         return result;
@@ -343,6 +597,9 @@ public class LocalSimulator implements Simulator, java.io.Serializable {
         if (!myProbeTasks.remove(probe.getProbeTask())) {
             throw new SimulationException("Probe could not be removed");
         }
+        myProbeChanges++;
+        myThreadPoolStale = true;
+        myPlanStale = true;
         
         fireVisibleChangeEvent();
     }
@@ -394,6 +651,7 @@ public class LocalSimulator implements Simulator, java.io.Serializable {
     }
     
     public void makeNodeThreadPool(boolean interactive) {
+        myThreadPoolStale = false;
         myNodeThreadPool = new NodeThreadPool(myNetwork, myProbeTasks, interactive);
     }
     
@@ -45,7 +45,8 @@ import ca.nengo.sim.SimulatorListener;
  * a long period of time, and it is likely that the amount of data being stored
  * will cause issues with the proper running of Nengo. By attaching a
  * WriteToDiskSimulatorListener to a simulator instance, progress is saved to disk
- * after each recordInterval.
+ * after each recordInterval. Output is buffered, and the file is complete once the
+ * simulation has finished.
  * 
  * Example usage (Python syntax):
  *   probe_error = network.getSimulator().addProbe("error",error.X,True)
@@ -62,6 +63,7 @@ public class WriteToDiskSimulatorListener implements SimulatorListener {
 	private float myLastInterval;
 	private long myStartTime;
 	private BufferedWriter myWriter;
+	private final StringBuilder myLine = new StringBuilder(); //reused for each line written
 	
 	/**
 	 * @param file The file that progress will be saved to. If it already exists, it will be overwritten.
@@ -91,17 +93,18 @@ public class WriteToDiskSimulatorListener implements SimulatorListener {
 	        	myStartTime = Calendar.getInstance().getTimeInMillis();
 	        	myWriter = new BufferedWriter(new FileWriter(myFile));
 	        } else if (event.getType() == SimulatorEvent.Type.STEP_TAKEN) {
-	            float[] times = myTargetProbe.getData().getTimes();
+	            float time = myTargetProbe.getLatestTime();
 	            
-	            if (times[times.length - 1] >= myLastInterval) {
-	                float[][] data = myTargetProbe.getData().getValues();
+	            if (time >= myLastInterval) {
+	                float[] data = myTargetProbe.getLatestValues();
 	
-	                myWriter.write(Float.toString(times[times.length-1]));
-	                for (int i=0; i < data[0].length; i++) {
-	                	myWriter.write("," + Float.toString(data[times.length-1][i]));
+	                myLine.setLength(0);
+	                myLine.append(time);
+	                for (int i=0; i < data.length; i++) {
+	                	myLine.append(',').append(data[i]);
 	                }
+	                myWriter.write(myLine.toString());
 	                myWriter.newLine();
-	                myWriter.flush();
 	                myLastInterval += myRecordInterval;
 	            }
 	        } else if (event.getType() == SimulatorEvent.Type.FINISHED) {
@@ -91,6 +91,18 @@ public interface Probe {
 	 */
 	public TimeSeries getData();
 
+	/**
+	 * @return Time of the most recent sample, or NaN if nothing has been collected since reset().
+	 * 		Unlike getData(), this doesn't copy the collected data.
+	 */
+	public float getLatestTime();
+
+	/**
+	 * @return Values of the most recent sample (not to be modified), or null if nothing has been
+	 * 		collected since reset()
+	 */
+	public float[] getLatestValues();
+
 	/**
 	 * @return The object about which state history is to be collected
 	 */
@@ -0,0 +1,249 @@
+package ca.nengo.util.impl;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+import ca.nengo.model.Network;
+import ca.nengo.model.Node;
+import ca.nengo.model.Origin;
+import ca.nengo.model.Projection;
+import ca.nengo.model.SimulationException;
+import ca.nengo.model.Termination;
+import ca.nengo.model.impl.NetworkImpl.OriginWrapper;
+import ca.nengo.model.impl.NetworkImpl.TerminationWrapper;
+import ca.nengo.util.TaskSpawner;
+import ca.nengo.util.ThreadTask;
+
+/**
+ * <p>Runs the projections, nodes and tasks of a simulation step in order of their dependencies,
+ * rather than in three global phases. Any number of threads can take part in a step, each taking
+ * whatever work is ready next.</p>
+ *
+ * <p>A node is ready once every projection into it has set its termination values, and every
+ * projection out of it has read its origin values (so that projections see the same outputs as in
+ * the phased step, from the end of the previous step). A task is ready once the node that spawned it
+ * has run; tasks that don't belong to a node wait for all nodes. Projections are ready at the start of
+ * the step. The results are therefore the same as those of the phased step.</p>
+ *
+ * <p>Projections that connect to a Network (eg a NetworkArray that has been broken down into its
+ * ensembles) are taken to involve every node in that network, and projections that connect to
+ * something else that isn't being run, every node.</p>
+ *
+ * <p>startStep() must be called by the coordinating thread while no thread is running work
+ * (between steps), and runItems(...) by each worker thread during the step.</p>
+ */
+public class DataflowStepExecutor {
+
+	private static final int ourSpinsBeforeYield = 1000;
+
+	private final Node[] myNodes;
+	private final Projection[] myProjections;
+	private final ThreadTask[] myTasks;
+
+	//work items are numbered: projections, then nodes, then tasks
+	private final int myNumItems;
+	private final int[][] myDependents; //items that wait (in part) on each item
+	private final int[] myNumDependencies; //number of items each item waits on
+
+	private final AtomicIntegerArray myPending; //dependencies not yet finished in this step
+	private final AtomicIntegerArray myQueue; //ready items in the order they became ready (-1 if not yet)
+	private final AtomicInteger myHead; //next queue slot to be taken
+	private final AtomicInteger myTail; //next queue slot to be filled
+	private volatile boolean myFailed;
+
+	/**
+	 * @param nodes Nodes to be run (not Networks, except those that run themselves)
+	 * @param projections Projections between the nodes (or the Networks that contain them)
+	 * @param tasks Tasks to be run after the nodes
+	 */
+	public DataflowStepExecutor(Node[] nodes, Projection[] projections, ThreadTask[] tasks) {
+		myNodes = nodes;
+		myProjections = projections;
+		myTasks = tasks;
+		myNumItems = projections.length + nodes.length + tasks.length;
+
+		Map<Node, Integer> indices = new HashMap<Node, Integer>();
+		for (int i = 0; i < nodes.length; i++) {
+			indices.put(nodes[i], Integer.valueOf(i));
+		}
+
+		List<List<Integer>> dependents = new ArrayList<List<Integer>>(myNumItems);
+		for (int i = 0; i < myNumItems; i++) {
+			dependents.add(new ArrayList<Integer>(2));
+		}
+		myNumDependencies = new int[myNumItems];
+
+		int nodeOffset = projections.length;
+		for (int i = 0; i < projections.length; i++) {
+			Set<Integer> involved = new LinkedHashSet<Integer>();
+			involved.addAll(getNodeIndices(getNode(projections[i].getTermination()), indices));
+			involved.addAll(getNodeIndices(getNode(projections[i].getOrigin()), indices));
+			for (Integer node : involved) {
+				dependents.get(i).add(Integer.valueOf(nodeOffset + node.intValue()));
+				myNumDependencies[nodeOffset + node.intValue()]++;
+			}
+		}
+
+		Map<ThreadTask, Integer> parents = new HashMap<ThreadTask, Integer>();
+		for (int i = 0; i < nodes.length; i++) {
+			if (nodes[i] instanceof TaskSpawner) {
+				for (ThreadTask task : ((TaskSpawner) nodes[i]).getTasks()) {
+					parents.put(task, Integer.valueOf(i));
+				}
+			}
+		}
+
+		int taskOffset = nodeOffset + nodes.length;
+		for (int i = 0; i < tasks.length; i++) {
+			Integer parent = parents.get(tasks[i]);
+			for (int j = 0; j < nodes.length; j++) {
+				if (parent == null || parent.intValue() == j) {
+					dependents.get(nodeOffset + j).add(Integer.valueOf(taskOffset + i));
+					myNumDependencies[taskOffset + i]++;
+				}
+			}
+		}
+
+		myDependents = new int[myNumItems][];
+		for (int i = 0; i < myNumItems; i++) {
+			List<Integer> list = dependents.get(i);
+			myDependents[i] = new int[list.size()];
+			for (int j = 0; j < list.size(); j++) {
+				myDependents[i][j] = list.get(j).intValue();
+			}
+		}
+
+		myPending = new AtomicIntegerArray(myNumItems);
+		myQueue = new AtomicIntegerArray(myNumItems);
+		myHead = new AtomicInteger(0);
+		myTail = new AtomicInteger(0);
+	}
+
+	/**
+	 * @param item Index of a work item (projections, then nodes, then tasks)
+	 * @return Indices of the work items that wait for the given one
+	 */
+	public int[] getDependents(int item) {
+		return myDependents[item].clone();
+	}
+
+	/**
+	 * Prepares for the next step. Must not be called while work is running.
+	 */
+	public void startStep() {
+		myFailed = false;
+		myHead.set(0);
+		myTail.set(0);
+		for (int i = 0; i < myNumItems; i++) {
+			myQueue.set(i, -1);
+		}
+		for (int i = 0; i < myNumItems; i++) {
+			myPending.set(i, myNumDependencies[i]);
+			if (myNumDependencies[i] == 0) {
+				myQueue.set(myTail.getAndIncrement(), i);
+			}
+		}
+	}
+
+	/**
+	 * Runs work items as they become ready, until all of the step's items have been taken.
+	 *
+	 * @param startTime Simulation time at which running starts
+	 * @param endTime Simulation time at which running ends
+	 * @throws SimulationException if an item can't be run, or another thread failed to run one
+	 */
+	public void runItems(float startTime, float endTime) throws SimulationException {
+		int slot;
+		while ((slot = myHead.getAndIncrement()) < myNumItems) {
+			int item = awaitItem(slot);
+
+			boolean done = false;
+			try {
+				runItem(item, startTime, endTime);
+				done = true;
+			} finally {
+				if (!done) {
+					myFailed = true;
+				}
+			}
+
+			int[] dependents = myDependents[item];
+			for (int i = 0; i < dependents.length; i++) {
+				if (myPending.decrementAndGet(dependents[i]) == 0) {
+					myQueue.set(myTail.getAndIncrement(), dependents[i]);
+				}
+			}
+		}
+	}
+
+	//waits until the given queue slot is filled (every item is eventually queued because dependencies are acyclic)
+	private int awaitItem(int slot) throws SimulationException {
+		int item;
+		int spins = 0;
+		while ((item = myQueue.get(slot)) < 0) {
+			if (myFailed) {
+				throw new SimulationException("Step abandoned because another thread failed");
+			}
+			if (++spins > ourSpinsBeforeYield) {
+				Thread.yield();
+			}
+		}
+		return item;
+	}
+
+	private void runItem(int item, float startTime, float endTime) throws SimulationException {
+		if (item < myProjections.length) {
+			Projection projection = myProjections[item];
+			projection.getTermination().setValues(projection.getOrigin().getValues());
+		} else if (item < myProjections.length + myNodes.length) {
+			myNodes[item - myProjections.length].run(startTime, endTime);
+		} else {
+			myTasks[item - myProjections.length - myNodes.length].run(startTime, endTime);
+		}
+	}
+
+	//indices of the given node, or of the run nodes it contains, or of all nodes if neither
+	private List<Integer> getNodeIndices(Node node, Map<Node, Integer> indices) {
+		List<Integer> result = new ArrayList<Integer>();
+
+		Integer index = indices.get(node);
+		if (index != null) {
+			result.add(index);
+		} else if (node instanceof Network) {
+			for (Node member : NodeThreadPool.collectNodes(new Node[]{node}, true)) {
+				index = indices.get(member);
+				if (index != null) {
+					result.add(index);
+				}
+			}
+		}
+
+		if (result.isEmpty()) {
+			for (int i = 0; i < myNodes.length; i++) {
+				result.add(Integer.valueOf(i));
+			}
+		}
+		return result;
+	}
+
+	private static Node getNode(Termination termination) {
+		if (termination instanceof TerminationWrapper) {
+			termination = ((TerminationWrapper) termination).getBaseTermination();
+		}
+		return termination.getNode();
+	}
+
+	private static Node getNode(Origin origin) {
+		if (origin instanceof OriginWrapper) {
+			origin = ((OriginWrapper) origin).getBaseOrigin();
+		}
+		return origin.getNode();
+	}
+
+}
@@ -29,6 +29,11 @@ public class NodeThread extends Thread {
 	private int myStartIndexInTasks;
 	private int myEndIndexInTasks;
 
+	private WorkStealingNodeScheduler myNodeScheduler;
+	private int myIndexInScheduler;
+
+	private DataflowStepExecutor myDataflowExecutor;
+
 	private boolean myCollectTimings;
 
 	private double myAverageTimeOnProjectionsPerStep;
@@ -93,6 +98,10 @@ public class NodeThread extends Thread {
 	
 	protected void runNodes(float startTime, float endTime) throws SimulationException{
 		
+		if (myNodeScheduler != null) {
+			myNodeScheduler.runNodes(myIndexInScheduler, startTime, endTime);
+			return;
+		}
 		
 		for (int i = myStartIndexInNodes; i < myEndIndexInNodes; i++) {
 			
@@ -118,32 +127,43 @@ public class NodeThread extends Thread {
 				startTime = myNodeThreadPool.getStartTime();
 				endTime = myNodeThreadPool.getEndTime();
 				
-				long projectionInterval, nodeInterval, taskInterval;
-				
-				projectionInterval = myCollectTimings ? new Date().getTime() : 0;
+				long projectionInterval = 0, nodeInterval = 0, taskInterval = 0;
+
+				if (myDataflowExecutor != null) {
+					// projections, nodes and tasks in a single phase, in order of their dependencies
+					nodeInterval = myCollectTimings ? new Date().getTime() : 0;
+
+					myDataflowExecutor.runItems(startTime, endTime);
+
+					nodeInterval = myCollectTimings ? new Date().getTime() - nodeInterval : 0;
+
+					finished();
+				} else {
+					projectionInterval = myCollectTimings ? new Date().getTime() : 0;
 				
-				runProjections(startTime, endTime);
+					runProjections(startTime, endTime);
 				
-				projectionInterval = myCollectTimings ? new Date().getTime() - projectionInterval : 0;
+					projectionInterval = myCollectTimings ? new Date().getTime() - projectionInterval : 0;
 
-				finished();
+					finished();
 				
-				nodeInterval = myCollectTimings ? new Date().getTime() : 0;
+					nodeInterval = myCollectTimings ? new Date().getTime() : 0;
 
-				runNodes(startTime, endTime);
+					runNodes(startTime, endTime);
 				
-				nodeInterval = myCollectTimings ? new Date().getTime() - nodeInterval : 0;
+					nodeInterval = myCollectTimings ? new Date().getTime() - nodeInterval : 0;
 
-				finished();
+					finished();
 				
-				taskInterval = myCollectTimings ? new Date().getTime() : 0;
+					taskInterval = myCollectTimings ? new Date().getTime() : 0;
 
-                runTasks(startTime, endTime);
+	                runTasks(startTime, endTime);
                 
-                taskInterval = myCollectTimings ? new Date().getTime() - taskInterval : 0;
+	                taskInterval = myCollectTimings ? new Date().getTime() - taskInterval : 0;
+
+	                finished();
+				}
 
-                finished();
-                
                 if(myCollectTimings){
 	                myAverageTimeOnProjectionsPerStep = (myAverageTimeOnProjectionsPerStep * myNumSteps + projectionInterval) / (myNumSteps + 1);
 	                myAverageTimeOnNodesPerStep = (myAverageTimeOnNodesPerStep * myNumSteps + nodeInterval) / (myNumSteps + 1);
@@ -178,6 +198,25 @@ public class NodeThread extends Thread {
 		}
 	}
 	
+	/**
+	 * @param scheduler A scheduler that decides which nodes this thread runs (instead of its fixed
+	 * 		range of nodes), or null to use the fixed range
+	 * @param index Index of this thread in the scheduler
+	 */
+	public void setNodeScheduler(WorkStealingNodeScheduler scheduler, int index) {
+		myNodeScheduler = scheduler;
+		myIndexInScheduler = index;
+	}
+
+	/**
+	 * @param executor An executor that runs the projections, nodes and tasks of each step in a single
+	 * 		phase, in order of their dependencies (instead of this thread's fixed ranges), or null to
+	 * 		use the fixed ranges in three phases
+	 */
+	public void setDataflowExecutor(DataflowStepExecutor executor) {
+		myDataflowExecutor = executor;
+	}
+
 	public void setCollectTimings(boolean myCollectTimings) {
 		this.myCollectTimings = myCollectTimings;
 	}
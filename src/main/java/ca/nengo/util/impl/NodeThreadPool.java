@@ -4,14 +4,22 @@ package ca.nengo.util.impl;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Date;
+import java.util.HashMap;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
+import org.apache.log4j.Logger;
+
+import ca.nengo.math.impl.MultiLevelKLNetworkPartitioner;
 import ca.nengo.model.Network;
 import ca.nengo.model.Node;
 import ca.nengo.model.Projection;
 import ca.nengo.model.SimulationException;
+import ca.nengo.model.Termination;
 import ca.nengo.model.impl.NetworkArrayImpl;
+import ca.nengo.model.impl.NetworkImpl.TerminationWrapper;
 import ca.nengo.util.TaskSpawner;
 import ca.nengo.util.ThreadTask;
 
@@ -22,6 +30,8 @@ import ca.nengo.util.ThreadTask;
  * @author Eric Crawford
  */
 public class NodeThreadPool {
+	private static Logger ourLogger = Logger.getLogger(NodeThreadPool.class);
+
 	protected static final int maxNumJavaThreads = 100;
 	protected static final int defaultNumJavaThreads = 8;
 
@@ -32,23 +42,34 @@ public class NodeThreadPool {
 	protected int myNumThreads;
 	protected NodeThread[] myThreads;
 	protected Object myLock;
+	protected PhaseBarrier myBarrier;
 
 	protected Node[] myNodes;
 	protected Projection[] myProjections;
     protected ThreadTask[] myTasks;
 
-	protected volatile int numThreadsComplete;
-	protected volatile int numThreadsWaiting;
-
-	protected volatile boolean threadsRunning;
 	protected volatile boolean runFinished;
 	protected float myStartTime;
 	protected float myEndTime;
 	
 	protected static boolean myCollectTimings;
+	protected static boolean myUseWorkStealing = false;
+	protected static boolean myUseLocalityPartitioning = false;
+	protected static boolean myUseDataflow = false;
+	protected DataflowStepExecutor myDataflowExecutor;
+	protected WorkStealingNodeScheduler myNodeScheduler;
 	protected long myRunStartTime;
 	protected double myAverageTimePerStep;
 	protected int myNumSteps;
+
+	// settings with which this pool was created, to tell whether it can be reused
+	protected boolean myInteractive;
+	protected int mySettingNumJavaThreads;
+	protected boolean mySettingUseGPU;
+	protected boolean mySettingWorkStealing;
+	protected boolean mySettingLocalityPartitioning;
+	protected boolean mySettingDataflow;
+	protected boolean mySettingCollectTimings;
 	
 	public static int getNumJavaThreads(){
 		return myNumJavaThreads;
@@ -72,6 +93,60 @@ public class NodeThreadPool {
 		myNumJavaThreads = 0;
 	}
 
+	/**
+	 * @return True if nodes are distributed among threads by cost, with idle threads taking
+	 * 		nodes from busy ones, rather than evenly by count
+	 */
+	public static boolean isUsingWorkStealing() {
+		return myUseWorkStealing;
+	}
+
+	/**
+	 * @param useWorkStealing True if nodes are to be distributed among threads by cost, with idle
+	 * 		threads taking nodes from busy ones (see WorkStealingNodeScheduler), rather than evenly
+	 * 		by count. Takes effect when the next thread pool is created.
+	 */
+	public static void setUseWorkStealing(boolean useWorkStealing) {
+		myUseWorkStealing = useWorkStealing;
+	}
+
+	/**
+	 * @return True if nodes are assigned to threads with a MultiLevelKLNetworkPartitioner, so that
+	 * 		connected nodes tend to run on the same thread, rather than in array order
+	 */
+	public static boolean isUsingLocalityPartitioning() {
+		return myUseLocalityPartitioning;
+	}
+
+	/**
+	 * @param useLocalityPartitioning True if nodes are to be assigned to threads with a
+	 * 		MultiLevelKLNetworkPartitioner (balancing neuron counts and minimizing the dimensionality
+	 * 		of projections between threads), with each projection run on the thread of the node it
+	 * 		terminates on. Takes effect when the next thread pool is created. The assignment is
+	 * 		ignored if work stealing or dataflow steps are also used, since these choose which
+	 * 		thread runs each node (and projection) as the simulation runs.
+	 */
+	public static void setUseLocalityPartitioning(boolean useLocalityPartitioning) {
+		myUseLocalityPartitioning = useLocalityPartitioning;
+	}
+
+	/**
+	 * @return True if each step runs projections, nodes and tasks in order of their dependencies
+	 * 		rather than in three global phases
+	 */
+	public static boolean isUsingDataflow() {
+		return myUseDataflow;
+	}
+
+	/**
+	 * @param useDataflow True if each step is to run projections, nodes and tasks in order of their
+	 * 		dependencies (see DataflowStepExecutor), so that nodes can start before unrelated projections
+	 * 		have finished. Ignored when nodes run on the GPU. Takes effect when the next thread pool is created.
+	 */
+	public static void setUseDataflow(boolean useDataflow) {
+		myUseDataflow = useDataflow;
+	}
+
 	public static boolean isCollectingTimings() {
 		return myCollectTimings;
 	}
@@ -92,6 +167,23 @@ public class NodeThreadPool {
 		return runFinished;
 	}
 
+	/**
+	 * @param interactive Whether the next run is interactive
+	 * @return True if this pool hasn't been killed and was created with the current thread pool
+	 * 		settings (number of threads, GPU use, scheduling), so that it can be used for another run
+	 * 		of the same network. Changes to the network itself are not checked.
+	 */
+	public boolean isReusable(boolean interactive){
+		return !runFinished
+			&& interactive == myInteractive
+			&& mySettingNumJavaThreads == myNumJavaThreads
+			&& mySettingUseGPU == NEFGPUInterface.getUseGPU()
+			&& mySettingWorkStealing == myUseWorkStealing
+			&& mySettingLocalityPartitioning == myUseLocalityPartitioning
+			&& mySettingDataflow == myUseDataflow
+			&& mySettingCollectTimings == myCollectTimings;
+	}
+
 	// Dummy default constructor.
 	protected NodeThreadPool(){
 	}
@@ -109,13 +201,21 @@ public class NodeThreadPool {
 	 * projections, nodes and tasks from those that remain after the GPU data has been dealt with.
 	 * Starts the Java threads.
 	 * 
-	 * 3. Initializes synchronization primitives and variables for collecting timing data if applicable.
+	 * 3. Initializes the barrier between phases and variables for collecting timing data if applicable.
 	 * 
 	 * @author Eric Crawford
 	 */
 	protected void initialize(Network network, List<ThreadTask> threadTasks, boolean interactive){
 		
 		myLock = new Object();
+
+		myInteractive = interactive;
+		mySettingNumJavaThreads = myNumJavaThreads;
+		mySettingUseGPU = NEFGPUInterface.getUseGPU();
+		mySettingWorkStealing = myUseWorkStealing;
+		mySettingLocalityPartitioning = myUseLocalityPartitioning;
+		mySettingDataflow = myUseDataflow;
+		mySettingCollectTimings = myCollectTimings;
 		
 		Node[] nodes = network.getNodes();
 		Projection[] projections = network.getProjections();
@@ -129,10 +229,7 @@ public class NodeThreadPool {
 		myProjections = projList.toArray(new Projection[0]);
 		myTasks = taskList.toArray(new ThreadTask[0]);
 		
-		threadsRunning = false;
 		runFinished = false;
-		numThreadsWaiting = 0;
-		numThreadsComplete = 0;
 		
 		boolean useGPU = NEFGPUInterface.getUseGPU();
 		
@@ -159,7 +256,7 @@ public class NodeThreadPool {
 				gpuThread.setName("GPUThread0");
 
 				gpuThread.setPriority(Thread.MAX_PRIORITY);
-				gpuThread.start();
+				gpuThread.setDaemon(true);
 
 				numNonJavaThreads += 1;
 			}
@@ -171,9 +268,11 @@ public class NodeThreadPool {
 		myNumThreads = myCurrentNumJavaThreads + numNonJavaThreads;
 
 		myThreads = new NodeThread[myNumThreads];
+		myBarrier = new PhaseBarrier(myNumThreads);
 
 		if(useGPU){
 			myThreads[myNumThreads-1] = gpuThread;
+			gpuThread.start();
 		}
 
 		//In the remaining nodes (non-GPU nodes), DO break down the NetworkArrays, we don't want to call the 
@@ -181,42 +280,43 @@ public class NodeThreadPool {
 		// NetworkImpls create their own LocalSimulators when run.
 		myNodes = collectNodes(myNodes, true).toArray(new Node[0]);
 
-		int nodesPerJavaThread = (int) Math.ceil((float) myNodes.length / (float) myCurrentNumJavaThreads);
-		int projectionsPerJavaThread = (int) Math.ceil((float) myProjections.length / (float) myCurrentNumJavaThreads);
-        int tasksPerJavaThread = (int) Math.ceil((float) myTasks.length / (float) myCurrentNumJavaThreads);
-        
-		int nodeOffset = 0, projectionOffset = 0, taskOffset = 0;
-		int nodeStartIndex, nodeEndIndex, projectionStartIndex, projectionEndIndex, taskStartIndex, taskEndIndex;
-		
-		// Evenly distribute projections, nodes and tasks to the java threads.
-		for(int i = 0; i < myCurrentNumJavaThreads; i++){
-
-			nodeStartIndex = nodeOffset;
-			nodeEndIndex = myNodes.length - nodeOffset >= nodesPerJavaThread ?
-					nodeOffset + nodesPerJavaThread : myNodes.length;
-
-			nodeOffset += nodesPerJavaThread;
-
-			projectionStartIndex = projectionOffset;
-			projectionEndIndex = myProjections.length - projectionOffset >= projectionsPerJavaThread ?
-					projectionOffset + projectionsPerJavaThread : myProjections.length;
+		int[] nodeStarts, projectionStarts;
+		if(myUseLocalityPartitioning && myCurrentNumJavaThreads > 1){
+			// Group connected nodes, and the projections into them, on the same threads.
+			nodeStarts = new int[myCurrentNumJavaThreads + 1];
+			projectionStarts = new int[myCurrentNumJavaThreads + 1];
+			partitionByLocality(nodeStarts, projectionStarts);
+			if(myUseWorkStealing || (myUseDataflow && !useGPU)){
+				ourLogger.warn("Locality partitioning is ignored when work stealing or dataflow steps are used");
+			}
+		}else{
+			// Evenly distribute projections and nodes to the java threads.
+			nodeStarts = evenSplit(myNodes.length, myCurrentNumJavaThreads);
+			projectionStarts = evenSplit(myProjections.length, myCurrentNumJavaThreads);
+		}
+		int[] taskStarts = evenSplit(myTasks.length, myCurrentNumJavaThreads);
 
-			projectionOffset += projectionsPerJavaThread;
+		myNodeScheduler = (myUseWorkStealing && myCurrentNumJavaThreads > 1) ?
+				new WorkStealingNodeScheduler(myNodes, myCurrentNumJavaThreads) : null;
 
-			taskStartIndex = taskOffset;
-			taskEndIndex = myTasks.length - taskOffset >= tasksPerJavaThread ?
-					taskOffset + tasksPerJavaThread : myTasks.length;
+		// The GPU thread only runs in phases, so dataflow steps are only used without it.
+		myDataflowExecutor = (myUseDataflow && !useGPU) ?
+				new DataflowStepExecutor(myNodes, myProjections, myTasks) : null;
 
-			taskOffset += tasksPerJavaThread;
+		for(int i = 0; i < myCurrentNumJavaThreads; i++){
 
-			myThreads[i] = new NodeThread(this, myNodes, nodeStartIndex,
-					nodeEndIndex, myProjections, projectionStartIndex,
-					projectionEndIndex, myTasks, taskStartIndex, taskEndIndex);
+			myThreads[i] = new NodeThread(this, myNodes, nodeStarts[i],
+					nodeStarts[i+1], myProjections, projectionStarts[i],
+					projectionStarts[i+1], myTasks, taskStarts[i], taskStarts[i+1]);
 			
+			myThreads[i].setNodeScheduler(myNodeScheduler, i);
+			myThreads[i].setDataflowExecutor(myDataflowExecutor);
 			myThreads[i].setCollectTimings(myCollectTimings);
 			myThreads[i].setName("JavaThread" + i);
 
 			myThreads[i].setPriority(Thread.MAX_PRIORITY);
+			// a pool may be kept between runs, so idle threads shouldn't keep the JVM alive
+			myThreads[i].setDaemon(true);
 			myThreads[i].start();
 		}
 		
@@ -225,11 +325,101 @@ public class NodeThreadPool {
 		myNumSteps = 0;
 	}
 
+	/**
+	 * @param length Number of items
+	 * @param parts Number of parts
+	 * @return Start index of each of the given number of contiguous parts of about equal size,
+	 * 		followed by length
+	 */
+	private static int[] evenSplit(int length, int parts){
+		int[] result = new int[parts + 1];
+		int perPart = (int) Math.ceil((float) length / (float) parts);
+		for(int i = 0; i <= parts; i++){
+			result[i] = Math.min(i * perPart, length);
+		}
+		return result;
+	}
+
+	/**
+	 * Partitions myNodes among the java threads with a MultiLevelKLNetworkPartitioner, which balances
+	 * the number of neurons per thread while minimizing the total dimension of projections between
+	 * threads. Reorders myNodes and myProjections so that each thread's share is contiguous. Each
+	 * projection goes to the thread that runs the node it terminates on, so that the values it sets
+	 * are read by the same core in the node phase. Projections into nodes that aren't run directly
+	 * (e.g. NetworkArrays, which are broken down into their ensembles) are spread over the threads.
+	 *
+	 * @param nodeStarts Filled with the start index of each thread's nodes, followed by the number of nodes
+	 * @param projectionStarts Filled with the start index of each thread's projections, followed by the
+	 * 		number of projections
+	 */
+	protected void partitionByLocality(int[] nodeStarts, int[] projectionStarts){
+		MultiLevelKLNetworkPartitioner partitioner = new MultiLevelKLNetworkPartitioner();
+		partitioner.initialize(myNodes, myProjections, myCurrentNumJavaThreads);
+		ArrayList<Set<Node>> partitions = partitioner.getPartitions();
+
+		Map<Node, Integer> threadOfNode = new HashMap<Node, Integer>();
+		for(int i = 0; i < partitions.size() && i < myCurrentNumJavaThreads; i++){
+			for(Node node : partitions.get(i)){
+				threadOfNode.put(node, Integer.valueOf(i));
+			}
+		}
+
+		int[] threadOfProjection = new int[myProjections.length];
+		int[] projectionCounts = new int[myCurrentNumJavaThreads];
+		for(int i = 0; i < myProjections.length; i++){
+			Termination termination = myProjections[i].getTermination();
+			if(termination instanceof TerminationWrapper){
+				termination = ((TerminationWrapper) termination).getBaseTermination();
+			}
+
+			Integer thread = threadOfNode.get(termination.getNode());
+			if(thread == null){
+				int fewest = 0;
+				for(int j = 1; j < myCurrentNumJavaThreads; j++){
+					if(projectionCounts[j] < projectionCounts[fewest]){
+						fewest = j;
+					}
+				}
+				thread = Integer.valueOf(fewest);
+			}
+
+			threadOfProjection[i] = thread.intValue();
+			projectionCounts[thread.intValue()]++;
+		}
+
+		// Stable grouping by thread, so that nodes keep their relative order within a thread.
+		Node[] nodes = new Node[myNodes.length];
+		Projection[] projections = new Projection[myProjections.length];
+		int nodeIndex = 0, projectionIndex = 0;
+		for(int i = 0; i < myCurrentNumJavaThreads; i++){
+			nodeStarts[i] = nodeIndex;
+			for(Node node : myNodes){
+				Integer thread = threadOfNode.get(node);
+				if((thread == null ? 0 : thread.intValue()) == i){
+					nodes[nodeIndex++] = node;
+				}
+			}
+
+			projectionStarts[i] = projectionIndex;
+			for(int j = 0; j < myProjections.length; j++){
+				if(threadOfProjection[j] == i){
+					projections[projectionIndex++] = myProjections[j];
+				}
+			}
+		}
+		nodeStarts[myCurrentNumJavaThreads] = nodeIndex;
+		projectionStarts[myCurrentNumJavaThreads] = projectionIndex;
+
+		myNodes = nodes;
+		myProjections = projections;
+	}
+
 	/**
 	 * Tell the threads in the current thread pool to take a step. The step consists of three
 	 * phases: projections, nodes, tasks. All threads must complete a stage before any thread begins
 	 * the next stage, so, for example, all threads must finish processing all of their projections 
-	 * before any thread starts processing its nodes.
+	 * before any thread starts processing its nodes. If dataflow is used, the step is a single
+	 * phase in which each projection, node and task runs as soon as its dependencies have.
 	 * 
 	 * @author Eric Crawford
 	 */
@@ -242,19 +432,35 @@ public class NodeThreadPool {
 		
 		try
 		{
+			// skip the priority changes if the caller already runs at max priority (eg when stepping a
+			// persistent pool from a control loop), since they are system calls on each step
 			int oldPriority = Thread.currentThread().getPriority();
-			Thread.currentThread().setPriority(Thread.MAX_PRIORITY);
+			if(oldPriority != Thread.MAX_PRIORITY){
+				Thread.currentThread().setPriority(Thread.MAX_PRIORITY);
+			}
 
-			// start the projection processing, wait for it to finish
-			startThreads();
+			if (myDataflowExecutor != null) {
+				// run projections, nodes and tasks in one phase, wait for it to finish
+				myDataflowExecutor.startStep();
+				startThreads();
+			} else {
+				if (myNodeScheduler != null) {
+					myNodeScheduler.startStep();
+				}
 
-			// start the node processing, wait for it to finish
-			startThreads();
-			
-			// start the task processing, wait for it to finish
-			startThreads();
+				// start the projection processing, wait for it to finish
+				startThreads();
+
+				// start the node processing, wait for it to finish
+				startThreads();
 
-			Thread.currentThread().setPriority(oldPriority);
+				// start the task processing, wait for it to finish
+				startThreads();
+			}
+
+			if(oldPriority != Thread.MAX_PRIORITY){
+				Thread.currentThread().setPriority(oldPriority);
+			}
 		}
 		catch(Exception e) {
 			throw new SimulationException(e);
@@ -269,65 +475,36 @@ public class NodeThreadPool {
 	}
 
 	/**
-	 * Tells the threads to run for one phase (projections, nodes or tasks). 
-	 * The threads should be waiting on myLock at the time this is called.
+	 * Tells the threads to run for one phase (projections, nodes or tasks), and waits until
+	 * they have all finished it.
 	 * 
 	 * @author Eric Crawford
 	 */
 	private void startThreads() throws InterruptedException {
-		synchronized(myLock){
-			if(runFinished)
-				throw new InterruptedException();
-			
-			numThreadsComplete = 0;
-			threadsRunning = true;
-			myLock.notifyAll();  //release all the threads from the threadWait() loop
-			
-			while(threadsRunning || numThreadsWaiting < myThreads.length) 
-				myLock.wait();  //we don't want the stepthread to be able to continue (and start threads) until all the threads are waiting to be started
-		}
+		if(runFinished)
+			throw new InterruptedException();
+
+		myBarrier.runPhase();
 	}
 
 	/**
-	 * Called by the threads in this node pool. Called once they finish a phase (projections, nodes or tasks).
-	 * Forces them to wait on myLock.
+	 * Called by the threads in this node pool before their first phase. Returns when a phase
+	 * (projections, nodes or tasks) is started.
 	 * 
 	 * @author Eric Crawford
 	 */
 	public void threadWait() throws InterruptedException{
-		synchronized(myLock){
-			numThreadsWaiting++;
-			if(numThreadsWaiting == myThreads.length)
-				myLock.notifyAll(); //all the threads are done the step and in a waiting state, so free the stepthread
-			
-			while(!threadsRunning) {
-                myLock.wait();
-            }
-		}
+		myBarrier.awaitPhase();
 	}
 
 	/**
-	 * Called by the threads in this pool to signal that they are done a phase. 
+	 * Called by the threads in this pool to signal that they are done a phase. Returns when
+	 * the next phase is started.
 	 * 
 	 * @author Eric Crawford
 	 */
 	public void threadFinished() throws InterruptedException{
-		
-		synchronized(myLock){
-			numThreadsComplete++;
-
-			if(numThreadsComplete == myThreads.length){
-				threadsRunning = false;
-				numThreadsWaiting=0;
-				myLock.notifyAll(); //this is to move the threads into the threadwait loop
-			}
-			else{
-				while(threadsRunning) //threads wait here when they are finished, but others are still running (i.e. wait here until end of one step)
-					myLock.wait();
-			}
-	
-			threadWait(); //threads wait here when they're all finished (i.e. wait here between steps)
-		}
+		myBarrier.arriveAndAwaitNext();
 	}
 
 	/**
@@ -357,7 +534,7 @@ public class NodeThreadPool {
 				System.out.print(timingOutput.toString());
 			}
 
-			myLock.notifyAll();
+			myBarrier.cancel();
 		}
 		
 		
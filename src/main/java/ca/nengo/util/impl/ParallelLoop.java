@@ -0,0 +1,127 @@
+package ca.nengo.util.impl;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import ca.nengo.math.PDFTools;
+
+/**
+ * <p>Runs the iterations of a loop on several threads, for coarse-grained work such as blocks of a
+ * matrix product. Iterations are handed out one at a time, in order, to whichever thread is free, so
+ * they should be independent of each other and each should be big enough to be worth a thread.</p>
+ *
+ * <p>The calling thread takes part, and the other threads only last for the one loop, so loops can be
+ * nested without running out of threads.</p>
+ *
+ * <p>If the calling thread has its own source of random numbers (see PDFTools.setThreadRandom()), the
+ * loop runs on that thread alone, in order, so that random numbers drawn in the loop are reproducible.</p>
+ */
+public class ParallelLoop {
+
+	private static int ourDefaultNumThreads = Runtime.getRuntime().availableProcessors();
+
+	/**
+	 * The body of a loop.
+	 */
+	public interface Body {
+
+		/**
+		 * @param index Index of the iteration to run
+		 */
+		public void run(int index);
+
+	}
+
+	/**
+	 * @return Number of threads used by loops that don't ask for a particular number (defaults to the
+	 * 		number of processors)
+	 */
+	public static int getDefaultNumThreads() {
+		return ourDefaultNumThreads;
+	}
+
+	/**
+	 * @param numThreads Number of threads used by loops that don't ask for a particular number
+	 */
+	public static void setDefaultNumThreads(int numThreads) {
+		if (numThreads < 1) {
+			throw new IllegalArgumentException("There must be at least one thread");
+		}
+		ourDefaultNumThreads = numThreads;
+	}
+
+	/**
+	 * Runs a loop with the default number of threads.
+	 *
+	 * @param count Number of iterations
+	 * @param body Body of the loop
+	 */
+	public static void run(int count, Body body) {
+		run(count, ourDefaultNumThreads, body);
+	}
+
+	/**
+	 * Runs a loop, returning when every iteration has finished. If an iteration throws an
+	 * exception, remaining iterations are skipped and the exception is rethrown.
+	 *
+	 * @param count Number of iterations
+	 * @param numThreads Maximum number of threads to use (including the calling thread)
+	 * @param body Body of the loop
+	 */
+	public static void run(final int count, int numThreads, final Body body) {
+		numThreads = Math.min(numThreads, count);
+		if (numThreads <= 1 || PDFTools.getThreadRandom() != null) {
+			for (int i = 0; i < count; i++) {
+				body.run(i);
+			}
+			return;
+		}
+
+		final AtomicInteger next = new AtomicInteger(0);
+		final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+		Runnable worker = new Runnable() {
+			public void run() {
+				int i;
+				while (failure.get() == null && (i = next.getAndIncrement()) < count) {
+					try {
+						body.run(i);
+					} catch (Throwable t) {
+						failure.compareAndSet(null, t);
+					}
+				}
+			}
+		};
+
+		Thread[] threads = new Thread[numThreads - 1];
+		for (int i = 0; i < threads.length; i++) {
+			threads[i] = new Thread(worker, "Parallel loop " + i);
+			threads[i].setDaemon(true);
+			threads[i].start();
+		}
+		worker.run();
+
+		boolean interrupted = false;
+		for (Thread thread : threads) {
+			while (thread.isAlive()) {
+				try {
+					thread.join();
+				} catch (InterruptedException e) {
+					interrupted = true;
+				}
+			}
+		}
+		if (interrupted) {
+			Thread.currentThread().interrupt();
+		}
+
+		Throwable t = failure.get();
+		if (t instanceof RuntimeException) {
+			throw (RuntimeException) t;
+		} else if (t instanceof Error) {
+			throw (Error) t;
+		} else if (t != null) {
+			throw new RuntimeException(t);
+		}
+	}
+
+}
@@ -0,0 +1,155 @@
+package ca.nengo.util.impl;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * <p>A barrier between the phases of a simulation step, for a coordinating thread and a fixed
+ * number of worker threads (parties). The coordinator releases a phase with runPhase(), which
+ * returns once every party has called arriveAndAwaitNext(). Parties then wait there until the
+ * coordinator releases the next phase.</p>
+ *
+ * <p>Synchronization uses a volatile phase counter and an atomic count of arrivals instead of a
+ * monitor. Waiting threads spin briefly (on multiprocessor machines) before parking, since
+ * phases in small networks are often shorter than the time it takes to wake a thread from
+ * Object.wait().</p>
+ *
+ * <p>The memory effects of a party's work in a phase are visible to the coordinator once
+ * runPhase() returns, and to all parties in the next phase.</p>
+ */
+public class PhaseBarrier {
+
+	private static final long ourSpinNanos = Runtime.getRuntime().availableProcessors() > 1 ? 20000 : 0;
+
+	private final int myParties;
+	private final AtomicInteger myArrived;
+	private final Queue<Thread> myParkedParties;
+	private volatile Thread myParkedCoordinator;
+
+	private volatile int myPhase; //number of phases released
+	private volatile int myCompletedPhase; //number of phases that all parties have finished
+	private volatile boolean myCancelled;
+
+	/**
+	 * @param parties Number of worker threads that take part in each phase
+	 */
+	public PhaseBarrier(int parties) {
+		myParties = parties;
+		myArrived = new AtomicInteger(0);
+		myParkedParties = new ConcurrentLinkedQueue<Thread>();
+	}
+
+	/**
+	 * @return Number of worker threads that take part in each phase
+	 */
+	public int getParties() {
+		return myParties;
+	}
+
+	/**
+	 * Called by the coordinating thread to release the parties for a new phase. Returns when all
+	 * of them have finished the phase.
+	 *
+	 * @throws InterruptedException If the barrier is cancelled or the calling thread is interrupted
+	 */
+	public void runPhase() throws InterruptedException {
+		checkCancelled();
+
+		myArrived.set(0);
+		myPhase = myPhase + 1; //only the coordinator writes this
+		unparkParties();
+
+		long spinUntil = System.nanoTime() + ourSpinNanos;
+		while (myArrived.get() < myParties) {
+			checkCancelled();
+			if (ourSpinNanos > 0 && System.nanoTime() < spinUntil) {
+				continue;
+			}
+
+			myParkedCoordinator = Thread.currentThread();
+			if (myArrived.get() < myParties) {
+				LockSupport.park(this);
+			}
+			myParkedCoordinator = null;
+		}
+
+		myCompletedPhase = myPhase;
+	}
+
+	/**
+	 * Called by a party when it has finished the current phase. Returns when the next phase is released.
+	 *
+	 * @throws InterruptedException If the barrier is cancelled or the calling thread is interrupted
+	 */
+	public void arriveAndAwaitNext() throws InterruptedException {
+		int phase = myPhase;
+		if (myArrived.incrementAndGet() == myParties) {
+			Thread coordinator = myParkedCoordinator;
+			if (coordinator != null) {
+				LockSupport.unpark(coordinator);
+			}
+		}
+		awaitPhaseAfter(phase);
+	}
+
+	/**
+	 * Called by a party that is not yet taking part in a phase (eg when it starts). Returns when
+	 * there is a phase that has been released but not finished.
+	 *
+	 * @throws InterruptedException If the barrier is cancelled or the calling thread is interrupted
+	 */
+	public void awaitPhase() throws InterruptedException {
+		awaitPhaseAfter(myCompletedPhase);
+	}
+
+	/**
+	 * Releases all waiting threads with an InterruptedException, now and in future calls.
+	 */
+	public void cancel() {
+		myCancelled = true;
+		unparkParties();
+		Thread coordinator = myParkedCoordinator;
+		if (coordinator != null) {
+			LockSupport.unpark(coordinator);
+		}
+	}
+
+	/**
+	 * @return True if cancel() has been called
+	 */
+	public boolean isCancelled() {
+		return myCancelled;
+	}
+
+	private void awaitPhaseAfter(int phase) throws InterruptedException {
+		long spinUntil = System.nanoTime() + ourSpinNanos;
+		while (myPhase == phase) {
+			checkCancelled();
+			if (ourSpinNanos > 0 && System.nanoTime() < spinUntil) {
+				continue;
+			}
+
+			//the coordinator changes the phase before polling the queue, so one of us sees the other
+			myParkedParties.add(Thread.currentThread());
+			if (myPhase == phase) {
+				LockSupport.park(this);
+			}
+		}
+	}
+
+	private void unparkParties() {
+		Thread party;
+		while ((party = myParkedParties.poll()) != null) {
+			LockSupport.unpark(party);
+		}
+	}
+
+	private void checkCancelled() throws InterruptedException {
+		if (myCancelled || Thread.interrupted()) {
+			throw new InterruptedException();
+		}
+	}
+
+}
@@ -157,6 +157,22 @@ public class ProbeImpl implements Probe, java.io.Serializable {
 		return result;
 	}
 
+	/**
+	 * @see ca.nengo.util.Probe#getLatestTime()
+	 */
+	public float getLatestTime() {
+		int n = myValues.size();
+		return (n > 0) ? myTimes[n-1] : Float.NaN;
+	}
+
+	/**
+	 * @see ca.nengo.util.Probe#getLatestValues()
+	 */
+	public float[] getLatestValues() {
+		int n = myValues.size();
+		return (n > 0) ? myValues.get(n-1) : null;
+	}
+
 	/**
 	 * @see ca.nengo.util.Probe#setSamplingRate(float)
 	 */
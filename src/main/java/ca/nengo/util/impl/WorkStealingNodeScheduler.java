@@ -0,0 +1,224 @@
+package ca.nengo.util.impl;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.concurrent.atomic.AtomicLong;
+
+import ca.nengo.model.Ensemble;
+import ca.nengo.model.Node;
+import ca.nengo.model.SimulationException;
+import ca.nengo.model.nef.NEFEnsemble;
+
+/**
+ * <p>Distributes the nodes of a NodeThreadPool among its Java threads according to their cost,
+ * rather than evenly by count.</p>
+ *
+ * <p>Each node has a cost, initially estimated from its size (neurons times dimensions for
+ * an NEFEnsemble, neurons for other Ensembles, 1 otherwise) and then replaced by a moving average of
+ * its measured run time. Nodes are assigned to threads greedily, most expensive first, so that
+ * the total cost per thread is about even. Each thread runs its own nodes from the most expensive
+ * down, and when it runs out, it steals the cheapest remaining nodes of other threads. The
+ * assignment is recalculated from measured costs every few steps.</p>
+ *
+ * <p>startStep() must be called by the coordinating thread while the worker threads are idle
+ * (between steps), and runNodes(...) by each worker thread in the node phase.</p>
+ */
+public class WorkStealingNodeScheduler {
+
+	private static final int ourStepsPerRebalance = 100;
+	private static final double ourCostSmoothing = .2; //weight of each new measurement in the moving average
+
+	private final Node[] myNodes;
+	private final int myNumThreads;
+
+	private final double[] myCosts;
+	private final long[] myMeasuredTimes; //total measured run time of each node since the last rebalance
+	private final boolean[] myMeasured; //true if the cost is measured rather than estimated
+
+	private final int[] myOrder; //node indices, grouped by thread
+	private final int[] mySegmentStarts; //start of each thread's group in myOrder (with an extra entry for the end)
+	private final AtomicLong[] mySegments; //remaining part of each thread's group: (next index << 32) | end index
+
+	private int myStepsSinceRebalance;
+
+	/**
+	 * @param nodes Nodes to be run
+	 * @param numThreads Number of threads that will run them
+	 */
+	public WorkStealingNodeScheduler(Node[] nodes, int numThreads) {
+		myNodes = nodes;
+		myNumThreads = numThreads;
+
+		myCosts = new double[nodes.length];
+		myMeasuredTimes = new long[nodes.length];
+		myMeasured = new boolean[nodes.length];
+		for (int i = 0; i < nodes.length; i++) {
+			myCosts[i] = estimateCost(nodes[i]);
+		}
+
+		myOrder = new int[nodes.length];
+		mySegmentStarts = new int[numThreads + 1];
+		mySegments = new AtomicLong[numThreads];
+		for (int i = 0; i < numThreads; i++) {
+			mySegments[i] = new AtomicLong(0);
+		}
+
+		rebalance();
+	}
+
+	/**
+	 * @param node A Node
+	 * @return A rough estimate of the relative cost of running the node
+	 */
+	public static double estimateCost(Node node) {
+		double result = 1;
+		if (node instanceof NEFEnsemble) {
+			result = ((NEFEnsemble) node).getNodes().length * Math.max(1, ((NEFEnsemble) node).getDimension());
+		} else if (node instanceof Ensemble) {
+			result = ((Ensemble) node).getNodes().length;
+		}
+		return Math.max(1, result);
+	}
+
+	/**
+	 * @return Current cost of each node (estimated at first; later measured in ns per step)
+	 */
+	public double[] getCosts() {
+		return myCosts.clone();
+	}
+
+	/**
+	 * @param thread Index of a thread
+	 * @return Indices of the nodes currently assigned to the thread (before stealing)
+	 */
+	public int[] getAssignment(int thread) {
+		return Arrays.copyOfRange(myOrder, mySegmentStarts[thread], mySegmentStarts[thread+1]);
+	}
+
+	/**
+	 * Prepares for the node phase of the next step. Must not be called while nodes are running.
+	 */
+	public void startStep() {
+		myStepsSinceRebalance++;
+		if (myStepsSinceRebalance >= ourStepsPerRebalance) {
+			updateCosts();
+			rebalance();
+		}
+
+		for (int i = 0; i < myNumThreads; i++) {
+			mySegments[i].set(pack(mySegmentStarts[i], mySegmentStarts[i+1]));
+		}
+	}
+
+	/**
+	 * Runs the nodes assigned to the given thread, and then nodes stolen from other threads, until
+	 * there are none left.
+	 *
+	 * @param thread Index of the calling thread
+	 * @param startTime Simulation time at which running starts
+	 * @param endTime Simulation time at which running ends
+	 * @throws SimulationException if a node can't be run
+	 */
+	public void runNodes(int thread, float startTime, float endTime) throws SimulationException {
+		int index;
+		while ((index = takeFirst(mySegments[thread])) >= 0) {
+			runNode(myOrder[index], startTime, endTime);
+		}
+
+		for (int i = 1; i < myNumThreads; i++) {
+			AtomicLong victim = mySegments[(thread + i) % myNumThreads];
+			while ((index = takeLast(victim)) >= 0) {
+				runNode(myOrder[index], startTime, endTime);
+			}
+		}
+	}
+
+	private void runNode(int node, float startTime, float endTime) throws SimulationException {
+		long start = System.nanoTime();
+		myNodes[node].run(startTime, endTime);
+		myMeasuredTimes[node] += System.nanoTime() - start;
+	}
+
+	//index of next node from the front of a segment, or -1 if the segment is empty
+	private static int takeFirst(AtomicLong segment) {
+		while (true) {
+			long value = segment.get();
+			int next = (int) (value >>> 32);
+			int end = (int) value;
+			if (next >= end) {
+				return -1;
+			}
+			if (segment.compareAndSet(value, pack(next + 1, end))) {
+				return next;
+			}
+		}
+	}
+
+	//index of last node of a segment, or -1 if the segment is empty
+	private static int takeLast(AtomicLong segment) {
+		while (true) {
+			long value = segment.get();
+			int next = (int) (value >>> 32);
+			int end = (int) value;
+			if (next >= end) {
+				return -1;
+			}
+			if (segment.compareAndSet(value, pack(next, end - 1))) {
+				return end - 1;
+			}
+		}
+	}
+
+	private static long pack(int next, int end) {
+		return ((long) next << 32) | (end & 0xffffffffL);
+	}
+
+	private void updateCosts() {
+		for (int i = 0; i < myNodes.length; i++) {
+			double measured = (double) myMeasuredTimes[i] / myStepsSinceRebalance;
+			myCosts[i] = myMeasured[i] ? (1 - ourCostSmoothing) * myCosts[i] + ourCostSmoothing * measured : measured;
+			myMeasured[i] = true;
+			myMeasuredTimes[i] = 0;
+		}
+		myStepsSinceRebalance = 0;
+	}
+
+	//assigns nodes to threads, most expensive first, each to the thread with the least total cost
+	private void rebalance() {
+		Integer[] sorted = new Integer[myNodes.length];
+		for (int i = 0; i < sorted.length; i++) {
+			sorted[i] = Integer.valueOf(i);
+		}
+		Arrays.sort(sorted, new Comparator<Integer>() {
+			public int compare(Integer a, Integer b) {
+				return Double.compare(myCosts[b.intValue()], myCosts[a.intValue()]);
+			}
+		});
+
+		double[] loads = new double[myNumThreads];
+		int[] threadOfNode = new int[myNodes.length];
+		int[] counts = new int[myNumThreads];
+		for (Integer node : sorted) {
+			int lightest = 0;
+			for (int t = 1; t < myNumThreads; t++) {
+				if (loads[t] < loads[lightest]) {
+					lightest = t;
+				}
+			}
+			loads[lightest] += myCosts[node.intValue()];
+			threadOfNode[node.intValue()] = lightest;
+			counts[lightest]++;
+		}
+
+		mySegmentStarts[0] = 0;
+		for (int t = 0; t < myNumThreads; t++) {
+			mySegmentStarts[t+1] = mySegmentStarts[t] + counts[t];
+		}
+		int[] positions = Arrays.copyOf(mySegmentStarts, myNumThreads);
+		for (Integer node : sorted) {
+			int thread = threadOfNode[node.intValue()];
+			myOrder[positions[thread]++] = node.intValue();
+		}
+	}
+
+}
@@ -0,0 +1,88 @@
+package ca.nengo.dynamics.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import org.junit.Test;
+
+import ca.nengo.model.Units;
+import ca.nengo.util.TimeSeries;
+import ca.nengo.util.impl.TimeSeriesImpl;
+
+/**
+ * Unit tests for DiscreteLTIIntegrator.
+ */
+public class DiscreteLTIIntegratorTest {
+
+	private static TimeSeries constantInput(float start, float end, float value) {
+		return new TimeSeriesImpl(new float[]{start, end}, new float[][]{new float[]{value}, new float[]{value}},
+				new Units[]{Units.UNK});
+	}
+
+	@Test
+	public void testFirstOrder() {
+		float tau = .02f;
+		SimpleLTISystem system = new SimpleLTISystem(new float[]{-1f/tau}, new float[][]{new float[]{1f}},
+				new float[][]{new float[]{1f/tau}}, new float[]{0f}, new Units[]{Units.UNK});
+		float[] initial = system.getState();
+
+		DiscreteLTIIntegrator integrator = new DiscreteLTIIntegrator();
+		float time = 0;
+		float[] steps = new float[]{.001f, .005f, .001f, .05f};
+		for (int i = 0; i < 40; i++) {
+			float dt = steps[i % steps.length];
+			TimeSeries output = integrator.integrate(system, constantInput(time, time + dt, 1f));
+			time += dt;
+			float[][] values = output.getValues();
+			assertEquals(1 - Math.exp(-time / tau), values[values.length-1][0], 1e-5);
+		}
+
+		assertEquals(0f, initial[0], 0f); //state array given to the system is not changed in place
+	}
+
+	@Test
+	public void testSecondOrder() {
+		//undamped oscillator with forcing: x'' = -w^2 x + u
+		float w = 20f;
+		LTISystem system = new LTISystem(
+				new float[][]{new float[]{0f, 1f}, new float[]{-w*w, 0f}},
+				new float[][]{new float[]{0f}, new float[]{1f}},
+				new float[][]{new float[]{1f, 0f}},
+				new float[][]{new float[]{0f}},
+				new float[]{1f, 0f},
+				new Units[]{Units.UNK});
+
+		DiscreteLTIIntegrator integrator = new DiscreteLTIIntegrator();
+		float dt = .01f;
+		float u = 100f;
+		for (int i = 1; i <= 100; i++) {
+			TimeSeries output = integrator.integrate(system, constantInput((i-1) * dt, i * dt, u));
+			double t = i * dt;
+			double expected = u / (w*w) + (1 - u / (w*w)) * Math.cos(w * t);
+			assertEquals(expected, output.getValues()[1][0], 1e-4);
+		}
+	}
+
+	@Test
+	public void testDiscretize() {
+		float[][][] discrete = DiscreteLTIIntegrator.discretize(new float[][]{new float[]{-10f}},
+				new float[][]{new float[]{2f}}, .1f);
+		assertEquals(Math.exp(-1), discrete[0][0][0], 1e-6);
+		assertEquals(.2 * (1 - Math.exp(-1)), discrete[1][0][0], 1e-6);
+	}
+
+	@Test
+	public void testFallback() throws CloneNotSupportedException {
+		EulerIntegrator euler = new EulerIntegrator(.001f);
+		DiscreteLTIIntegrator integrator = new DiscreteLTIIntegrator(euler);
+		assertSame(euler, integrator.getFallback());
+
+		RK45IntegratorTest.VanderPol one = new RK45IntegratorTest.VanderPol(new float[]{.1f, .1f});
+		RK45IntegratorTest.VanderPol two = new RK45IntegratorTest.VanderPol(new float[]{.1f, .1f});
+		TimeSeries input = new TimeSeriesImpl(new float[]{0f, 1f}, new float[][]{new float[0], new float[0]}, new Units[0]);
+		float[][] expected = euler.integrate(one, input).getValues();
+		float[][] actual = integrator.clone().integrate(two, input).getValues();
+		assertEquals(expected[expected.length-1][0], actual[actual.length-1][0], 0f);
+	}
+
+}
@@ -0,0 +1,119 @@
+package ca.nengo.math.impl;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+import java.io.File;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import ca.nengo.math.ApproximatorFactory;
+import ca.nengo.math.Function;
+import ca.nengo.math.LinearApproximator;
+
+/**
+ * Unit tests for DecoderCache and CachingApproximatorFactory.
+ */
+public class DecoderCacheTest {
+
+	private File myDirectory;
+
+	@Before
+	public void setUp() {
+		myDirectory = new File(System.getProperty("java.io.tmpdir"), "DecoderCacheTest" + System.nanoTime());
+	}
+
+	@After
+	public void tearDown() {
+		new DecoderCache(myDirectory, 0).clear();
+		myDirectory.delete();
+	}
+
+	@Test
+	public void testPutGet() {
+		DecoderCache cache = new DecoderCache(myDirectory, 1000000);
+		assertNull(cache.get("a"));
+
+		cache.put("a", new float[]{1, 2, 3});
+		assertArrayEquals(new float[]{1, 2, 3}, cache.get("a"), 0f);
+		assertEquals(1, cache.getNumHits());
+		assertEquals(1, cache.getNumMisses());
+	}
+
+	@Test
+	public void testEviction() throws InterruptedException {
+		//room for two entries of 100 floats
+		DecoderCache cache = new DecoderCache(myDirectory, 900);
+		cache.put("a", new float[100]);
+		Thread.sleep(1100); //file times may only have a resolution of 1s
+		cache.put("b", new float[100]);
+		Thread.sleep(1100);
+		cache.get("a"); //now b is least recently used
+		Thread.sleep(1100);
+		cache.put("c", new float[100]);
+
+		assertNotNull(cache.get("a"));
+		assertNull(cache.get("b"));
+		assertNotNull(cache.get("c"));
+		assertEquals(808, cache.getSize());
+	}
+
+	@Test
+	public void testCachingApproximator() {
+		float[][] evalPoints = new float[50][];
+		float[][] values = new float[2][evalPoints.length];
+		for (int j = 0; j < evalPoints.length; j++) {
+			evalPoints[j] = new float[]{2f * j / evalPoints.length - 1f};
+			values[0][j] = 1;
+			values[1][j] = evalPoints[j][0];
+		}
+		Function target = new IdentityFunction(1, 0);
+		DecoderCache cache = new DecoderCache(myDirectory, 1000000);
+
+		CountingFactory counting = new CountingFactory();
+		ApproximatorFactory factory = new CachingApproximatorFactory(counting, cache);
+		float[] first = factory.getApproximator(evalPoints, values).findCoefficients(target);
+		assertEquals(1, counting.myCount);
+
+		//same components and target: no approximator needed
+		float[] second = factory.getApproximator(evalPoints, values).findCoefficients(target);
+		assertEquals(1, counting.myCount);
+		assertArrayEquals(first, second, 0f);
+
+		//different target
+		factory.getApproximator(evalPoints, values).findCoefficients(new ConstantFunction(1, 1));
+		assertEquals(2, counting.myCount);
+
+		//different components
+		values[1][0] = 2;
+		factory.getApproximator(evalPoints, values).findCoefficients(target);
+		assertEquals(3, counting.myCount);
+
+		//different factory settings
+		counting.setNoise(.01f);
+		factory.getApproximator(evalPoints, values).findCoefficients(target);
+		assertEquals(4, counting.myCount);
+	}
+
+	private static class CountingFactory extends WeightedCostApproximator.Factory {
+
+		private static final long serialVersionUID = 1L;
+
+		private transient int myCount;
+
+		public CountingFactory() {
+			super(0f, true);
+		}
+
+		@Override
+		public LinearApproximator getApproximator(float[][] evalPoints, float[][] values) {
+			myCount++;
+			return super.getApproximator(evalPoints, values);
+		}
+	}
+
+}
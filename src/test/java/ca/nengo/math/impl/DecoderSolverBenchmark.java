@@ -0,0 +1,78 @@
+package ca.nengo.math.impl;
+
+import java.util.Random;
+
+import ca.nengo.math.Function;
+import ca.nengo.math.LinearApproximator;
+
+/**
+ * Measures the time taken to find decoders with each WeightedCostApproximator.Solver, and the error of
+ * the resulting decoders, over a range of ensemble sizes. Not a unit test; run main() by hand.
+ */
+public class DecoderSolverBenchmark {
+
+	private static final int[] ourSizes = new int[]{100, 300, 600, 1000, 1500};
+	private static final int ourNumPoints = 2000;
+	private static final float ourNoise = .1f;
+
+	/**
+	 * @param numNeurons Number of neurons
+	 * @param evalPoints Evaluation points in [-1, 1]
+	 * @param seed Random seed
+	 * @return Rectified-linear tuning curves with random gains, intercepts and directions
+	 */
+	public static float[][] createActivities(int numNeurons, float[][] evalPoints, long seed) {
+		Random random = new Random(seed);
+		float[][] result = new float[numNeurons][evalPoints.length];
+		for (int i = 0; i < numNeurons; i++) {
+			float encoder = random.nextBoolean() ? 1 : -1;
+			float intercept = 2 * random.nextFloat() - 1;
+			float maxRate = 100 + 100 * random.nextFloat();
+			float gain = maxRate / (1 - intercept * encoder + 1e-3f);
+			for (int j = 0; j < evalPoints.length; j++) {
+				result[i][j] = Math.max(0, gain * (encoder * evalPoints[j][0] - intercept * encoder));
+			}
+		}
+		return result;
+	}
+
+	public static void main(String[] args) {
+		float[][] evalPoints = new float[ourNumPoints][];
+		for (int j = 0; j < evalPoints.length; j++) {
+			evalPoints[j] = new float[]{2f * j / (evalPoints.length - 1) - 1f};
+		}
+		Function target = new IdentityFunction(1, 0);
+
+		String[] names = new String[]{"SVD", "eigen", "Cholesky"};
+		WeightedCostApproximator.Solver[] solvers = new WeightedCostApproximator.Solver[]{
+				new WeightedCostApproximator.SVDSolver(),
+				new WeightedCostApproximator.EigenSolver(),
+				new WeightedCostApproximator.CholeskySolver()};
+
+		for (int size : ourSizes) {
+			float[][] activities = createActivities(size, evalPoints, size);
+			for (int s = 0; s < solvers.length; s++) {
+				WeightedCostApproximator.Factory factory = new WeightedCostApproximator.Factory(ourNoise, true);
+				factory.setSolver(solvers[s]);
+
+				long start = System.nanoTime();
+				LinearApproximator approximator = factory.getApproximator(evalPoints, activities);
+				float[] decoders = approximator.findCoefficients(target);
+				double seconds = (System.nanoTime() - start) / 1e9;
+
+				double squaredError = 0;
+				for (int j = 0; j < evalPoints.length; j++) {
+					double estimate = 0;
+					for (int i = 0; i < size; i++) {
+						estimate += decoders[i] * activities[i][j];
+					}
+					squaredError += (estimate - evalPoints[j][0]) * (estimate - evalPoints[j][0]);
+				}
+
+				System.out.println(size + " neurons, " + names[s] + ": " + seconds + " s, RMS error "
+						+ Math.sqrt(squaredError / evalPoints.length));
+			}
+		}
+	}
+
+}
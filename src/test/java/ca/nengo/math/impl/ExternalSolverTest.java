@@ -0,0 +1,127 @@
+package ca.nengo.math.impl;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.File;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Unit tests for ExternalSolver, using its LocalWorker.
+ */
+public class ExternalSolverTest {
+
+	private File myDirectory;
+	private ExternalSolver mySolver;
+
+	@Before
+	public void setUp() {
+		myDirectory = new File(System.getProperty("java.io.tmpdir"), "ExternalSolverTest" + System.nanoTime());
+		mySolver = new ExternalSolver(ExternalSolver.getLocalWorkerCommand(), myDirectory);
+	}
+
+	@After
+	public void tearDown() {
+		mySolver.close();
+		myDirectory.delete();
+	}
+
+	@Test
+	public void testMatrixFiles() throws Exception {
+		myDirectory.mkdirs();
+		File file = new File(myDirectory, "matrix");
+		double[][] matrix = new double[][]{{1, 2}, {3, 4.5}};
+		ExternalSolver.writeMatrix(file, matrix);
+		assertEquals(16, file.length());
+
+		double[][] read = ExternalSolver.readMatrix(file, 2);
+		for (int i = 0; i < 2; i++) {
+			for (int j = 0; j < 2; j++) {
+				assertEquals(matrix[i][j], read[i][j], 0);
+			}
+		}
+
+		//larger than the I/O buffer
+		int n = 300;
+		matrix = new double[n][n];
+		for (int i = 0; i < n; i++) {
+			for (int j = 0; j < n; j++) {
+				matrix[i][j] = i - .5 * j;
+			}
+		}
+		ExternalSolver.writeMatrix(file, matrix);
+		assertEquals(n * n * 4, file.length());
+		read = ExternalSolver.readMatrix(file, n);
+		for (int i = 0; i < n; i++) {
+			for (int j = 0; j < n; j++) {
+				assertEquals(matrix[i][j], read[i][j], 0);
+			}
+		}
+		file.delete();
+	}
+
+	@Test
+	public void testInvert() {
+		WeightedCostApproximator.Solver svd = new WeightedCostApproximator.SVDSolver();
+		for (int n = 5; n < 40; n += 10) {
+			double[][] gamma = new double[n][n];
+			for (int i = 0; i < n; i++) {
+				for (int j = 0; j < n; j++) {
+					gamma[i][j] = 1d / (1 + Math.abs(i - j));
+				}
+			}
+
+			double[][] expected = svd.invert(gamma, 1e-6f, -1, true);
+			double[][] result = mySolver.invert(gamma, 1e-6f, -1, true);
+			for (int i = 0; i < n; i++) {
+				for (int j = 0; j < n; j++) {
+					assertEquals(expected[i][j], result[i][j], 1e-3 * Math.max(1, Math.abs(expected[i][j])));
+				}
+			}
+		}
+
+		//one worker for all solves, and no files left behind
+		assertEquals(4, mySolver.getSolveCount());
+		assertEquals(0, myDirectory.list().length);
+	}
+
+	@Test
+	public void testFallback() {
+		ExternalSolver broken = new ExternalSolver(new String[]{"no-such-solver-program"}, myDirectory);
+		double[][] result = broken.invert(new double[][]{{2, 0}, {0, 4}}, 1e-6f, -1, true);
+		assertEquals(.5, result[0][0], 1e-6);
+		assertEquals(.25, result[1][1], 1e-6);
+		assertEquals(0, broken.getSolveCount());
+	}
+
+	@Test
+	public void testTimeout() {
+		String[] command = ExternalSolver.getLocalWorkerCommand();
+		command[command.length-1] = SilentWorker.class.getName();
+		ExternalSolver hung = new ExternalSolver(command, myDirectory);
+		hung.setTimeout(2000);
+		try {
+			double[][] result = hung.invert(new double[][]{{2, 0}, {0, 4}}, 1e-6f, -1, true);
+			assertEquals(.5, result[0][0], 1e-6);
+			assertEquals(.25, result[1][1], 1e-6);
+			assertEquals(0, hung.getSolveCount());
+			assertEquals(0, myDirectory.list().length);
+		} finally {
+			hung.close();
+		}
+	}
+
+	/**
+	 * A worker that reads requests but never replies.
+	 */
+	public static class SilentWorker {
+		public static void main(String[] args) throws Exception {
+			while (System.in.read() >= 0) {
+				//ignore
+			}
+		}
+	}
+
+}
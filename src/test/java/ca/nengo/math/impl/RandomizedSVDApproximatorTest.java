@@ -0,0 +1,81 @@
+package ca.nengo.math.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import ca.nengo.math.Function;
+import ca.nengo.math.LinearApproximator;
+
+/**
+ * Unit tests for RandomizedSVDApproximator.
+ */
+public class RandomizedSVDApproximatorTest {
+
+	private static float[][] createEvalPoints(int n) {
+		float[][] result = new float[n][];
+		for (int j = 0; j < n; j++) {
+			result[j] = new float[]{2f * j / (n - 1) - 1f};
+		}
+		return result;
+	}
+
+	@Test
+	public void testFullRank() {
+		float[][] evalPoints = createEvalPoints(200);
+		float[][] values = DecoderSolverBenchmark.createActivities(30, evalPoints, 1);
+		float noise = .1f;
+		Function target = new IdentityFunction(1, 0);
+
+		RandomizedSVDApproximator approximator = new RandomizedSVDApproximator(evalPoints, values,
+				new ConstantFunction(1, 1), noise, values.length, 2, 0, true);
+		float[] coefficients = approximator.findCoefficients(target);
+
+		//with every singular vector, the result is the regularized least-squares solution
+		double[] weights = new double[evalPoints.length];
+		float maxValue = 0;
+		for (int k = 0; k < weights.length; k++) {
+			weights[k] = 1d / weights.length;
+		}
+		for (float[] row : values) {
+			for (float value : row) {
+				maxValue = Math.max(maxValue, Math.abs(value));
+			}
+		}
+		double[][] gamma = WeightedCostApproximator.findGamma(values, weights);
+		for (int i = 0; i < gamma.length; i++) {
+			gamma[i][i] += (noise * maxValue) * (noise * maxValue);
+		}
+		double[][] inverse = new WeightedCostApproximator.SVDSolver().invert(gamma, 0f, -1, true);
+		float[][] upsilon = WeightedCostApproximator.findUpsilon(values, weights, new float[][]{target.multiMap(evalPoints)});
+		float[] expected = WeightedCostApproximator.multiply(inverse, upsilon)[0];
+
+		for (int i = 0; i < expected.length; i++) {
+			assertEquals(expected[i], coefficients[i], 1e-4 + 1e-3 * Math.abs(expected[i]));
+		}
+	}
+
+	@Test
+	public void testLowRank() {
+		float[][] evalPoints = createEvalPoints(500);
+		float[][] values = DecoderSolverBenchmark.createActivities(200, evalPoints, 2);
+
+		RandomizedSVDApproximator.Factory factory = new RandomizedSVDApproximator.Factory(.1f, 20);
+		LinearApproximator approximator = factory.getApproximator(evalPoints, values);
+		assertTrue(((RandomizedSVDApproximator) approximator).getRank() <= 20);
+
+		float[][] coefficients = approximator.findCoefficients(new Function[]{new IdentityFunction(1, 0), new ConstantFunction(1, .5f)});
+		for (int j = 0; j < evalPoints.length; j++) {
+			float x = 0;
+			float c = 0;
+			for (int i = 0; i < values.length; i++) {
+				x += coefficients[0][i] * values[i][j];
+				c += coefficients[1][i] * values[i][j];
+			}
+			assertEquals(evalPoints[j][0], x, .05);
+			assertEquals(.5, c, .05);
+		}
+	}
+
+}
@@ -0,0 +1,60 @@
+package ca.nengo.math.impl;
+
+import ca.nengo.math.ApproximatorFactory;
+import ca.nengo.math.Function;
+import ca.nengo.math.LinearApproximator;
+
+/**
+ * Compares the time taken to find decoders, and the error of the decoders, between
+ * RandomizedSVDApproximator (at several ranks) and WeightedCostApproximator with an exact solver,
+ * over a range of ensemble sizes. Not a unit test; run main() by hand. The exact solver is skipped
+ * for the largest ensembles.
+ */
+public class RandomizedSVDBenchmark {
+
+	private static final int[] ourSizes = new int[]{500, 1000, 2000, 5000, 10000};
+	private static final int[] ourRanks = new int[]{20, 50, 100};
+	private static final int ourMaxExactSize = 2000;
+	private static final int ourNumPoints = 5000;
+	private static final float ourNoise = .1f;
+
+	public static void main(String[] args) {
+		float[][] evalPoints = new float[ourNumPoints][];
+		for (int j = 0; j < evalPoints.length; j++) {
+			evalPoints[j] = new float[]{2f * j / (evalPoints.length - 1) - 1f};
+		}
+		Function target = new IdentityFunction(1, 0);
+
+		for (int size : ourSizes) {
+			float[][] activities = DecoderSolverBenchmark.createActivities(size, evalPoints, size);
+
+			if (size <= ourMaxExactSize) {
+				WeightedCostApproximator.Factory exact = new WeightedCostApproximator.Factory(ourNoise, true);
+				exact.setSolver(new WeightedCostApproximator.EigenSolver());
+				run(size + " neurons, exact", exact, evalPoints, activities, target);
+			}
+			for (int rank : ourRanks) {
+				run(size + " neurons, rank " + rank, new RandomizedSVDApproximator.Factory(ourNoise, rank), evalPoints, activities, target);
+			}
+		}
+	}
+
+	private static void run(String name, ApproximatorFactory factory, float[][] evalPoints, float[][] activities, Function target) {
+		long start = System.nanoTime();
+		LinearApproximator approximator = factory.getApproximator(evalPoints, activities);
+		float[] decoders = approximator.findCoefficients(target);
+		double seconds = (System.nanoTime() - start) / 1e9;
+
+		double squaredError = 0;
+		for (int j = 0; j < evalPoints.length; j++) {
+			double estimate = 0;
+			for (int i = 0; i < activities.length; i++) {
+				estimate += decoders[i] * activities[i][j];
+			}
+			squaredError += (estimate - evalPoints[j][0]) * (estimate - evalPoints[j][0]);
+		}
+
+		System.out.println(name + ": " + seconds + " s, RMS error " + Math.sqrt(squaredError / evalPoints.length));
+	}
+
+}
@@ -0,0 +1,105 @@
+package ca.nengo.math.impl;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+import ca.nengo.math.Function;
+import ca.nengo.math.LinearApproximator;
+
+/**
+ * Unit tests for StreamingApproximator.
+ */
+public class StreamingApproximatorTest {
+
+	@Test
+	public void testMatchesWeightedCostApproximator() {
+		TuningCurveSource source = new TuningCurveSource(30, 1000, 64);
+		Function cost = new LinearFunction(new float[]{.2f}, 1f, false);
+		WeightedCostApproximator.Solver solver = new WeightedCostApproximator.CholeskySolver(10f);
+		StreamingApproximator streaming = new StreamingApproximator(source, cost, 0f, -1, solver, true);
+
+		float[][] points = streaming.getEvalPoints();
+		float[][] values = source.getValues(points);
+		LinearApproximator reference = new WeightedCostApproximator(points, values, cost, 0f, -1, true, solver);
+
+		Function[] targets = new Function[]{new IdentityFunction(1, 0),
+				new PostfixFunction("x0*x0", 1)};
+		float[][] expected = reference.findCoefficients(targets);
+		float[][] actual = streaming.findCoefficients(targets);
+		for (int t = 0; t < targets.length; t++) {
+			for (int i = 0; i < expected[t].length; i++) {
+				assertEquals(expected[t][i], actual[t][i], 1e-3f * Math.max(1, Math.abs(expected[t][i])));
+			}
+		}
+	}
+
+	@Test
+	public void testNoise() {
+		TuningCurveSource source = new TuningCurveSource(30, 1000, 100);
+		Function cost = new ConstantFunction(1, 1);
+		StreamingApproximator streaming = new StreamingApproximator(source, cost, .1f, -1, null, true);
+		float[] decoders = streaming.findCoefficients(new IdentityFunction(1, 0));
+
+		//decoded estimate should still be close
+		float[][] points = streaming.getEvalPoints();
+		float[][] values = source.getValues(points);
+		for (int k = 0; k < points.length; k += 50) {
+			float estimate = 0;
+			for (int i = 0; i < decoders.length; i++) {
+				estimate += decoders[i] * values[i][k];
+			}
+			assertEquals(points[k][0], estimate, .1f);
+		}
+	}
+
+	//rectified-linear functions of evenly spaced points in [-1, 1]
+	private static class TuningCurveSource implements StreamingApproximator.Source {
+
+		private static final long serialVersionUID = 1L;
+
+		private final int myNumComponents;
+		private final int myNumPoints;
+		private final int myChunkSize;
+
+		public TuningCurveSource(int numComponents, int numPoints, int chunkSize) {
+			myNumComponents = numComponents;
+			myNumPoints = numPoints;
+			myChunkSize = chunkSize;
+		}
+
+		public int getNumComponents() {
+			return myNumComponents;
+		}
+
+		public int getNumChunks() {
+			return (myNumPoints + myChunkSize - 1) / myChunkSize;
+		}
+
+		public int getNumPoints() {
+			return myNumPoints;
+		}
+
+		public float[][] getPoints(int chunk) {
+			int start = chunk * myChunkSize;
+			float[][] result = new float[Math.min(myChunkSize, myNumPoints - start)][];
+			for (int k = 0; k < result.length; k++) {
+				result[k] = new float[]{2f * (start + k) / (myNumPoints - 1) - 1f};
+			}
+			return result;
+		}
+
+		public float[][] getValues(float[][] points) {
+			float[][] result = new float[myNumComponents][points.length];
+			for (int i = 0; i < myNumComponents; i++) {
+				float direction = (i % 2 == 0) ? 1 : -1;
+				float intercept = 2f * i / myNumComponents - 1f;
+				for (int k = 0; k < points.length; k++) {
+					result[i][k] = Math.max(0, 100 * (direction * points[k][0] - intercept));
+				}
+			}
+			return result;
+		}
+	}
+
+}
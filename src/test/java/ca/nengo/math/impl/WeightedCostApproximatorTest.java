@@ -88,4 +88,153 @@ public class WeightedCostApproximatorTest {
 		
 		assertEquals(0.0f, MU.sum(MU.difference(approxsig,targetsig.getValues1D())), 0.0001f);
 	}
+
+	@Test
+	public void testBlockedGamma() {
+		//more functions and points than fit in one block
+		int n = 70;
+		int m = 1500;
+		java.util.Random random = new java.util.Random(1);
+		float[][] evalPoints = new float[m][];
+		for (int k = 0; k < m; k++) {
+			evalPoints[k] = new float[]{2f * k / m - 1f};
+		}
+		float[][] values = new float[n][m];
+		for (int i = 0; i < n; i++) {
+			for (int k = 0; k < m; k++) {
+				values[i][k] = random.nextFloat();
+			}
+		}
+		Function cost = new LinearFunction(new float[]{.5f}, 1f, false);
+		Function target = new FourierFunction(new float[]{1}, new float[]{1}, new float[]{0});
+
+		WeightedCostApproximator approximator = new WeightedCostApproximator(evalPoints, values, cost, 0f, -1, true);
+		float[] coefficients = approximator.findCoefficients(target);
+
+		//unblocked calculation
+		double[][] gamma = new double[n][n];
+		double[] upsilon = new double[n];
+		for (int i = 0; i < n; i++) {
+			for (int k = 0; k < m; k++) {
+				double weight = cost.map(evalPoints[k]) / m;
+				for (int j = 0; j < n; j++) {
+					gamma[i][j] += values[i][k] * values[j][k] * weight;
+				}
+				upsilon[i] += values[i][k] * target.map(evalPoints[k]) * weight;
+			}
+		}
+		double[][] gammaInverse = approximator.pseudoInverse(gamma, 0f, -1);
+		for (int i = 0; i < n; i++) {
+			double expected = 0;
+			for (int j = 0; j < n; j++) {
+				expected += gammaInverse[i][j] * upsilon[j];
+			}
+			assertEquals(expected, coefficients[i], 1e-3 * Math.max(1, Math.abs(expected)));
+		}
+	}
+
+	@Test
+	public void testSolvers() {
+		java.util.Random random = new java.util.Random(2);
+		int n = 20;
+		double[][] a = new double[n][30];
+		for (int i = 0; i < n; i++) {
+			for (int k = 0; k < a[i].length; k++) {
+				a[i][k] = random.nextGaussian();
+			}
+		}
+		Matrix aM = new Matrix(a);
+		double[][] gamma = aM.times(aM.transpose()).getArray();
+
+		double[][] svd = new WeightedCostApproximator.SVDSolver().invert(gamma, 0f, -1, true);
+		double[][] eigen = new WeightedCostApproximator.EigenSolver().invert(gamma, 0f, -1, true);
+		double[][] cholesky = new WeightedCostApproximator.CholeskySolver(0f).invert(gamma, 0f, -1, true);
+		for (int i = 0; i < n; i++) {
+			for (int j = 0; j < n; j++) {
+				assertEquals(svd[i][j], eigen[i][j], 1e-6);
+				assertEquals(svd[i][j], cholesky[i][j], 1e-6);
+			}
+		}
+
+		//same cutoff on number of singular values
+		svd = new WeightedCostApproximator.SVDSolver().invert(gamma, 0f, 5, true);
+		eigen = new WeightedCostApproximator.EigenSolver().invert(gamma, 0f, 5, true);
+		for (int i = 0; i < n; i++) {
+			for (int j = 0; j < n; j++) {
+				assertEquals(svd[i][j], eigen[i][j], 1e-6);
+			}
+		}
+
+		//regularized inverse of a singular matrix
+		double[][] singular = new double[][]{new double[]{1, 1}, new double[]{1, 1}};
+		double[][] regularized = new WeightedCostApproximator.CholeskySolver().invert(singular, .5f, -1, true);
+		assertEquals(1, singular[0][0], 0); //input is not changed
+		Matrix product = new Matrix(singular).plus(Matrix.identity(2, 2).times(.5)).times(new Matrix(regularized));
+		assertEquals(1, product.get(0, 0), 1e-6);
+		assertEquals(0, product.get(0, 1), 1e-6);
+	}
+
+	@Test
+	public void testFactorySolver() {
+		float[][] evalPoints = new float[50][];
+		float[][] values = new float[3][evalPoints.length];
+		for (int j = 0; j < evalPoints.length; j++) {
+			evalPoints[j] = new float[]{2f * j / evalPoints.length - 1f};
+			values[0][j] = 1;
+			values[1][j] = evalPoints[j][0];
+			values[2][j] = evalPoints[j][0] * evalPoints[j][0];
+		}
+		Function target = new IdentityFunction(1, 0);
+
+		WeightedCostApproximator.Solver[] solvers = new WeightedCostApproximator.Solver[]{
+				new WeightedCostApproximator.EigenSolver(), new WeightedCostApproximator.CholeskySolver(1e-8f)};
+		for (WeightedCostApproximator.Solver solver : solvers) {
+			WeightedCostApproximator.Factory factory = new WeightedCostApproximator.Factory(0f, true);
+			factory.setSolver(solver);
+			float[] coefficients = factory.getApproximator(evalPoints, values).findCoefficients(target);
+			assertEquals(0, coefficients[0], 1e-3);
+			assertEquals(1, coefficients[1], 1e-3);
+			assertEquals(0, coefficients[2], 1e-3);
+		}
+	}
+
+	@Test
+	public void testFindCoefficientsBatch() {
+		java.util.Random random = new java.util.Random(3);
+		float[][] evalPoints = new float[200][];
+		for (int j = 0; j < evalPoints.length; j++) {
+			evalPoints[j] = new float[]{random.nextFloat() * 2 - 1, random.nextFloat() * 2 - 1};
+		}
+		float[][] values = new float[40][evalPoints.length];
+		for (int i = 0; i < values.length; i++) {
+			float[] encoder = new float[]{(float) random.nextGaussian(), (float) random.nextGaussian()};
+			for (int j = 0; j < evalPoints.length; j++) {
+				values[i][j] = Math.max(0, MU.prod(encoder, evalPoints[j]) + random.nextFloat() - .5f);
+			}
+		}
+		Function[] targets = new Function[]{new IdentityFunction(2, 0), new IdentityFunction(2, 1),
+				new ConstantFunction(2, 1)};
+
+		LinearApproximator approximator = new WeightedCostApproximator.Factory(.1f, true).getApproximator(evalPoints, values);
+		float[][] batch = approximator.findCoefficients(targets);
+		assertEquals(targets.length, batch.length);
+		for (int t = 0; t < targets.length; t++) {
+			float[] single = approximator.findCoefficients(targets[t]);
+			for (int i = 0; i < single.length; i++) {
+				assertEquals(single[i], batch[t][i], 1e-4f * Math.max(1, Math.abs(single[i])));
+			}
+		}
+
+		//composite of the same approximator along each dimension
+		CompositeApproximator composite = new CompositeApproximator(new LinearApproximator[]{approximator, approximator},
+				new int[][]{new int[]{0, 1}, new int[]{0, 1}});
+		float[][] compositeBatch = composite.findCoefficients(targets);
+		for (int t = 0; t < targets.length; t++) {
+			float[] single = composite.findCoefficients(targets[t]);
+			assertEquals(2 * values.length, compositeBatch[t].length);
+			for (int i = 0; i < single.length; i++) {
+				assertEquals(single[i], compositeBatch[t][i], 1e-4f * Math.max(1, Math.abs(single[i])));
+			}
+		}
+	}
 }
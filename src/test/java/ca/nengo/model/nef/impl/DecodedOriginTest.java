@@ -1,20 +1,85 @@
 package ca.nengo.model.nef.impl;
 
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import ca.nengo.model.Node;
+import ca.nengo.model.RealOutput;
+import ca.nengo.model.SpikeOutput;
 import ca.nengo.model.nef.NEFEnsemble;
+import ca.nengo.model.neuron.Neuron;
 import ca.nengo.util.MU;
 import org.junit.Test;
 
 public class DecodedOriginTest {
+	private NEFEnsemble myEnsemble;
 	private DecodedOrigin myOrigin;
 	
 	public DecodedOriginTest() throws Exception {
 		NEFEnsembleFactoryImpl ef = new NEFEnsembleFactoryImpl();
-		NEFEnsemble ensemble = ef.make("test", 100, 1);
-		myOrigin = (DecodedOrigin) ensemble.getOrigin(NEFEnsemble.X);
+		myEnsemble = ef.make("test", 100, 1);
+		myOrigin = (DecodedOrigin) myEnsemble.getOrigin(NEFEnsemble.X);
 	}
 
 	@Test
 	public void testGetError() {
 		System.out.println(MU.toString(new float[][]{myOrigin.getError()}, 10));
 	}
+
+	@Test
+	public void testSparseRun() throws Exception {
+		assertTrue(myOrigin.getSupportsSparseRun());
+
+		Node[] nodes = myEnsemble.getNodes();
+		int[] spiking = new int[nodes.length];
+		int totalSpikes = 0;
+		float dt = .001f;
+		for (int step = 0; step < 100; step++) {
+			float time = step * dt;
+			myEnsemble.run(time, time + dt); //decodes every node
+			float[] dense = ((RealOutput) myOrigin.getValues()).getValues();
+
+			int numSpiking = 0;
+			for (int i = 0; i < nodes.length; i++) {
+				if (((SpikeOutput) nodes[i].getOrigin(Neuron.AXON).getValues()).getValues()[0]) {
+					spiking[numSpiking++] = i;
+				}
+			}
+			totalSpikes += numSpiking;
+
+			myOrigin.run(spiking, numSpiking, time, time + dt);
+			assertArrayEquals(dense, ((RealOutput) myOrigin.getValues()).getValues(), 0f);
+		}
+		assertTrue(totalSpikes > 0);
+	}
+
+	@Test
+	public void testSparseRunAfterRescale() throws Exception {
+		Node[] nodes = myEnsemble.getNodes();
+		int[] spiking = new int[nodes.length];
+		float dt = .001f;
+		boolean checked = false;
+		for (int step = 0; step < 100 && !checked; step++) {
+			float time = step * dt;
+			myEnsemble.run(time, time + dt);
+
+			int numSpiking = 0;
+			for (int i = 0; i < nodes.length; i++) {
+				if (((SpikeOutput) nodes[i].getOrigin(Neuron.AXON).getValues()).getValues()[0]) {
+					spiking[numSpiking++] = i;
+				}
+			}
+			if (numSpiking > 0) {
+				myOrigin.run(spiking, numSpiking, time, time + dt);
+				float before = ((RealOutput) myOrigin.getValues()).getValues()[0];
+
+				myOrigin.rescaleDecoders(new float[]{2f});
+				myOrigin.run(spiking, numSpiking, time, time + dt);
+				assertEquals(2 * before, ((RealOutput) myOrigin.getValues()).getValues()[0], 0f);
+				checked = true;
+			}
+		}
+		assertTrue(checked);
+	}
 }
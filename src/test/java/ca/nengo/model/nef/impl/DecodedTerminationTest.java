@@ -0,0 +1,67 @@
+package ca.nengo.model.nef.impl;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+import ca.nengo.dynamics.impl.EulerIntegrator;
+import ca.nengo.dynamics.impl.SimpleLTISystem;
+import ca.nengo.model.Units;
+import ca.nengo.model.impl.RealOutputImpl;
+
+/**
+ * Unit tests for DecodedTermination.
+ */
+public class DecodedTerminationTest {
+
+	private static DecodedTermination makeTermination(float[][] transform, float tau) throws Exception {
+		SimpleLTISystem dynamics = new SimpleLTISystem(new float[]{-1f/tau}, new float[][]{new float[]{1f}},
+				new float[][]{new float[]{1f/tau}}, new float[]{0f}, new Units[]{Units.UNK});
+		return new DecodedTermination(null, "test", transform, dynamics, new EulerIntegrator(tau / 10f));
+	}
+
+	@Test
+	public void testFirstOrder() throws Exception {
+		float tau = .01f;
+		float dt = .001f;
+		DecodedTermination t = makeTermination(new float[][]{new float[]{1f, 0f}, new float[]{.5f, 2f}}, tau);
+
+		t.setValues(new RealOutputImpl(new float[]{1f, -1f}, Units.UNK, 0));
+		for (int step = 0; step < 50; step++) {
+			t.run(step * dt, (step + 1) * dt);
+			double expected = 1 - Math.exp(-(step + 1) * dt / tau); //step response
+			assertEquals(expected, t.getOutput()[0], 1e-5);
+			assertEquals(-1.5 * expected, t.getOutput()[1], 1e-5);
+		}
+
+		//state survives a change of time step and is cleared by reset
+		float before = t.getOutput()[0];
+		t.run(50 * dt, 50 * dt + 2 * dt);
+		assertEquals(1 - (1 - before) * Math.exp(-2 * dt / tau), t.getOutput()[0], 1e-5);
+		t.reset(false);
+		t.setValues(new RealOutputImpl(new float[]{0f, 0f}, Units.UNK, 0));
+		t.run(0, dt);
+		assertEquals(0f, t.getOutput()[0], 0f);
+	}
+
+	@Test
+	public void testScaling() throws Exception {
+		float tau = .005f;
+		float dt = .001f;
+		DecodedTermination scaling = makeTermination(new float[][]{new float[]{1f}}, tau);
+		DecodedTermination t = makeTermination(new float[][]{new float[]{2f}}, tau);
+		t.setScaling(scaling);
+
+		scaling.setValues(new RealOutputImpl(new float[]{1f}, Units.UNK, 0));
+		t.setValues(new RealOutputImpl(new float[]{1f}, Units.UNK, 0));
+		float state = 0;
+		for (int step = 0; step < 20; step++) {
+			scaling.run(step * dt, (step + 1) * dt);
+			t.run(step * dt, (step + 1) * dt);
+			float decay = (float) Math.exp(-dt / tau);
+			state = decay * state + (1 - decay) * 2f * scaling.getOutput()[0];
+			assertEquals(state, t.getOutput()[0], 1e-5);
+		}
+	}
+
+}
@@ -0,0 +1,189 @@
+package ca.nengo.model.nef.impl;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+import ca.nengo.dynamics.LinearSystem;
+import ca.nengo.dynamics.impl.EulerIntegrator;
+import ca.nengo.dynamics.impl.SimpleLTISystem;
+import ca.nengo.model.Network;
+import ca.nengo.model.RealOutput;
+import ca.nengo.model.SimulationMode;
+import ca.nengo.model.Termination;
+import ca.nengo.model.Units;
+import ca.nengo.model.impl.NetworkImpl;
+import ca.nengo.model.impl.RealOutputImpl;
+import ca.nengo.model.impl.SpikeOutputImpl;
+import ca.nengo.model.nef.NEFEnsemble;
+import ca.nengo.model.neuron.Neuron;
+import ca.nengo.util.MU;
+
+/**
+ * Unit tests for FactoredTermination.
+ */
+public class FactoredTerminationTest {
+
+	private static LinearSystem makeDynamics(float tau) {
+		return new SimpleLTISystem(new float[]{-1f/tau}, new float[][]{new float[]{1f}},
+				new float[][]{new float[]{1f/tau}}, new float[]{0f}, new Units[]{Units.UNK});
+	}
+
+	private static float[][] makeDecoders(int n, int dimension, Random random) {
+		float[][] result = new float[n][dimension];
+		for (int i = 0; i < n; i++) {
+			for (int j = 0; j < dimension; j++) {
+				result[i][j] = random.nextFloat() - .5f;
+			}
+		}
+		return result;
+	}
+
+	@Test
+	public void testSpikes() throws Exception {
+		Random random = new Random(1);
+		float[][] decoders = makeDecoders(50, 2, random);
+		float[][] transform = new float[][]{new float[]{1f, -1f}, new float[]{.5f, 2f}, new float[]{0f, 1f}};
+		float tau = .005f;
+		float dt = .001f;
+
+		FactoredTermination factored = new FactoredTermination(null, "f", decoders, transform, makeDynamics(tau), new EulerIntegrator(tau/10f));
+		DecodedTermination decoded = new DecodedTermination(null, "d", transform, makeDynamics(tau), new EulerIntegrator(tau/10f));
+		assertEquals(50, factored.getDimensions());
+
+		for (int step = 0; step < 100; step++) {
+			boolean[] spikes = new boolean[decoders.length];
+			float[] decodedInput = new float[2];
+			for (int i = 0; i < spikes.length; i++) {
+				spikes[i] = random.nextFloat() < .1f;
+				if (spikes[i]) {
+					decodedInput = MU.sum(decodedInput, MU.prod(decoders[i], 1f / dt));
+				}
+			}
+
+			factored.setValues(new SpikeOutputImpl(spikes, Units.SPIKES, step * dt));
+			decoded.setValues(new RealOutputImpl(decodedInput, Units.UNK, step * dt));
+			factored.run(step * dt, (step + 1) * dt);
+			decoded.run(step * dt, (step + 1) * dt);
+			for (int i = 0; i < transform.length; i++) {
+				float expected = decoded.getOutput()[i];
+				assertEquals(expected, factored.getOutput()[i], 1e-3 + 1e-4 * Math.abs(expected)); //inputs are O(1/dt)
+			}
+		}
+	}
+
+	@Test
+	public void testRates() throws Exception {
+		Random random = new Random(2);
+		float[][] decoders = makeDecoders(20, 1, random);
+		float[][] transform = new float[][]{new float[]{2f}};
+		float tau = .01f;
+		float dt = .001f;
+
+		FactoredTermination factored = new FactoredTermination(null, "f", decoders, transform, makeDynamics(tau), new EulerIntegrator(tau/10f));
+		DecodedTermination decoded = new DecodedTermination(null, "d", transform, makeDynamics(tau), new EulerIntegrator(tau/10f));
+
+		float[] rates = new float[decoders.length];
+		for (int i = 0; i < rates.length; i++) {
+			rates[i] = 100 * random.nextFloat();
+		}
+		factored.setValues(new RealOutputImpl(rates, Units.SPIKES_PER_S, 0));
+		decoded.setValues(new RealOutputImpl(MU.prod(MU.transpose(decoders), rates), Units.UNK, 0));
+		for (int step = 0; step < 20; step++) {
+			factored.run(step * dt, (step + 1) * dt);
+			decoded.run(step * dt, (step + 1) * dt);
+			assertArrayEquals(decoded.getOutput(), factored.getOutput(), 1e-4f);
+		}
+
+		factored.reset(false);
+		factored.run(0, dt);
+		assertEquals(0f, factored.getOutput()[0], 0f);
+	}
+
+	@Test
+	public void testProjection() throws Exception {
+		NEFEnsembleFactoryImpl ef = new NEFEnsembleFactoryImpl();
+		NEFEnsembleImpl pre = (NEFEnsembleImpl) ef.make("pre", 30, 1);
+		pre.addDecodedTermination("input", MU.I(1), .005f, false);
+		NEFEnsembleImpl decodedPost = (NEFEnsembleImpl) ef.make("post", 20, 2);
+		decodedPost.setMode(SimulationMode.RATE);
+		NEFEnsembleImpl factoredPost = decodedPost.clone();
+
+		DecodedOrigin origin = (DecodedOrigin) pre.getOrigin(NEFEnsemble.X);
+		float[][] transform = new float[][]{new float[]{1f}, new float[]{-.5f}};
+		Termination decoded = decodedPost.addDecodedTermination("input", transform, .005f, false);
+		Termination factored = factoredPost.addFactoredTermination("input", origin, transform, .005f, false);
+		assertEquals(30, factored.getDimensions());
+
+		float dt = .001f;
+		for (int step = 0; step < 400; step++) {
+			float time = step * dt;
+			if (step == 200) {
+				origin.rescaleDecoders(new float[]{-2f}); //seen by the factored connection as well
+			}
+
+			pre.getTermination("input").setValues(new RealOutputImpl(new float[]{(float) Math.sin(10*time)}, Units.UNK, time));
+			pre.run(time, time + dt);
+			decoded.setValues(origin.getValues());
+			factored.setValues(pre.getOrigin(Neuron.AXON).getValues());
+			decodedPost.run(time, time + dt);
+			factoredPost.run(time, time + dt);
+
+			float[] expected = ((RealOutput) decodedPost.getOrigin(NEFEnsemble.X).getValues()).getValues();
+			float[] actual = ((RealOutput) factoredPost.getOrigin(NEFEnsemble.X).getValues()).getValues();
+			assertArrayEquals(expected, actual, 1e-3f);
+		}
+	}
+
+	@Test
+	public void testClone() throws Exception {
+		NEFEnsembleFactoryImpl ef = new NEFEnsembleFactoryImpl();
+		NEFEnsembleImpl pre = (NEFEnsembleImpl) ef.make("pre", 30, 1);
+		NEFEnsembleImpl post = (NEFEnsembleImpl) ef.make("post", 20, 1);
+		DecodedOrigin origin = (DecodedOrigin) pre.getOrigin(NEFEnsemble.X);
+		post.addFactoredTermination("input", origin, MU.I(1), .005f, false);
+		float[][] decoders = origin.getDecoders();
+		float first = decoders[0][0];
+
+		NetworkImpl network = new NetworkImpl();
+		network.addNode(pre);
+		network.addNode(post);
+		Network copy = network.clone();
+
+		//the copy follows its own presynaptic origin
+		DecodedOrigin copyOrigin = (DecodedOrigin) copy.getNode("pre").getOrigin(NEFEnsemble.X);
+		FactoredTermination copyTermination = (FactoredTermination) copy.getNode("post").getTermination("input");
+		assertSame(copyOrigin, copyTermination.getOrigin());
+		copyOrigin.rescaleDecoders(new float[]{2f});
+		assertEquals(2 * first, copyTermination.getDecoders()[0][0], 0f);
+		assertEquals(first, ((FactoredTermination) post.getTermination("input")).getDecoders()[0][0], 0f);
+
+		//a copy of the ensemble alone keeps the decoders it had
+		NEFEnsembleImpl postCopy = post.clone();
+		FactoredTermination termination = (FactoredTermination) postCopy.getTermination("input");
+		assertNull(termination.getOrigin());
+		origin.rescaleDecoders(new float[]{3f});
+		assertEquals(first, termination.getDecoders()[0][0], 0f);
+		assertEquals(3 * first, ((FactoredTermination) post.getTermination("input")).getDecoders()[0][0], 0f);
+	}
+
+	@Test
+	public void testSetDecoders() throws Exception {
+		float[][] decoders = makeDecoders(10, 1, new Random(3));
+		FactoredTermination t = new FactoredTermination(null, "f", decoders, new float[][]{new float[]{1f}}, makeDynamics(.005f), new EulerIntegrator(.0005f));
+		decoders[0][0] = 100f;
+		assertTrue(t.getDecoders()[0][0] != 100f);
+
+		float[][] newDecoders = makeDecoders(10, 1, new Random(4));
+		t.setDecoders(newDecoders);
+		newDecoders[0][0] = 100f;
+		assertTrue(t.getDecoders()[0][0] != 100f);
+	}
+
+}
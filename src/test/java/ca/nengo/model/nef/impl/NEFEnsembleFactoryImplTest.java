@@ -0,0 +1,99 @@
+package ca.nengo.model.nef.impl;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+import java.util.Arrays;
+
+import org.junit.Test;
+
+import ca.nengo.math.impl.IndicatorPDF;
+import ca.nengo.model.Node;
+import ca.nengo.model.StructuralException;
+import ca.nengo.model.impl.NodeFactory;
+import ca.nengo.model.impl.NoiseFactory;
+import ca.nengo.model.nef.NEFEnsemble;
+import ca.nengo.model.neuron.impl.LIFNeuronFactory;
+import ca.nengo.model.neuron.impl.SpikingNeuron;
+import ca.nengo.util.impl.ParallelLoop;
+
+/**
+ * Unit tests for NEFEnsembleFactoryImpl.
+ */
+public class NEFEnsembleFactoryImplTest {
+
+	@Test
+	public void testMakeAll() throws StructuralException {
+		NEFEnsembleFactoryImpl ef = new NEFEnsembleFactoryImpl();
+		String[] names = new String[]{"a", "b", "c", "d"};
+		float[] radii = new float[]{1f, 2f};
+
+		NEFEnsemble[] serial = ef.makeAll(names, 30, radii, 5, 1);
+		NEFEnsemble[] parallel = ef.makeAll(names, 30, radii, 5, 3);
+		NEFEnsemble[] other = ef.makeAll(names, 30, radii, 6, 3);
+
+		for (int i = 0; i < names.length; i++) {
+			assertEquals(names[i], parallel[i].getName());
+			assertEquals(ef, parallel[i].getEnsembleFactory());
+
+			float[][] encoders = serial[i].getEncoders();
+			for (int j = 0; j < encoders.length; j++) {
+				assertArrayEquals(encoders[j], parallel[i].getEncoders()[j], 0f);
+			}
+			float[][] decoders = ((DecodedOrigin) serial[i].getOrigin(NEFEnsemble.X)).getDecoders();
+			for (int j = 0; j < decoders.length; j++) {
+				assertArrayEquals(decoders[j], ((DecodedOrigin) parallel[i].getOrigin(NEFEnsemble.X)).getDecoders()[j], 0f);
+			}
+
+			assertFalse(Arrays.equals(encoders[0], other[i].getEncoders()[0]));
+		}
+
+		//ensembles differ from each other
+		assertFalse(Arrays.equals(serial[0].getEncoders()[0], serial[1].getEncoders()[0]));
+	}
+
+	@Test
+	public void testMakeAllWithNoise() throws StructuralException {
+		NEFEnsembleFactoryImpl ef = new NEFEnsembleFactoryImpl();
+		ef.setNodeFactory(new NoisyNeuronFactory());
+		String[] names = new String[]{"a", "b", "c", "d"};
+		float[] radii = new float[]{1f};
+
+		//nested loops would otherwise run on several threads
+		int numThreads = ParallelLoop.getDefaultNumThreads();
+		ParallelLoop.setDefaultNumThreads(4);
+		try {
+			NEFEnsemble[] serial = ef.makeAll(names, 30, radii, 5, 1);
+			NEFEnsemble[] parallel = ef.makeAll(names, 30, radii, 5, 3);
+			for (int i = 0; i < names.length; i++) {
+				float[][] decoders = ((DecodedOrigin) serial[i].getOrigin(NEFEnsemble.X)).getDecoders();
+				for (int j = 0; j < decoders.length; j++) {
+					assertArrayEquals(decoders[j], ((DecodedOrigin) parallel[i].getOrigin(NEFEnsemble.X)).getDecoders()[j], 0f);
+				}
+			}
+		} finally {
+			ParallelLoop.setDefaultNumThreads(numThreads);
+		}
+	}
+
+	/**
+	 * Makes LIF neurons with noise that is sampled on every run (including CONSTANT_RATE runs).
+	 */
+	public static class NoisyNeuronFactory implements NodeFactory {
+
+		private static final long serialVersionUID = 1L;
+
+		private final NodeFactory myFactory = new LIFNeuronFactory(.02f, .002f, new IndicatorPDF(200f, 400f), new IndicatorPDF(-.9f, .9f));
+
+		public Node make(String name) throws StructuralException {
+			SpikingNeuron result = (SpikingNeuron) myFactory.make(name);
+			result.setNoise(NoiseFactory.makeRandomNoise(Float.POSITIVE_INFINITY, new IndicatorPDF(-1f, 1f)));
+			return result;
+		}
+
+		public String getTypeDescription() {
+			return "Noisy LIF Neuron";
+		}
+	}
+}
@@ -1,23 +1,37 @@
 package ca.nengo.model.nef.impl;
 
 import ca.nengo.math.Function;
+import ca.nengo.math.PDFTools;
 import ca.nengo.math.impl.AbstractFunction;
+import ca.nengo.math.impl.IndicatorPDF;
+import ca.nengo.model.InstantaneousOutput;
 import ca.nengo.model.Network;
 import ca.nengo.model.Node;
+import ca.nengo.model.PreciseSpikeOutput;
 import ca.nengo.model.Projection;
+import ca.nengo.model.RealOutput;
 import ca.nengo.model.SimulationException;
+import ca.nengo.model.SimulationMode;
+import ca.nengo.model.SpikeOutput;
 import ca.nengo.model.StructuralException;
 import ca.nengo.model.Units;
 import ca.nengo.model.impl.FunctionInput;
 import ca.nengo.model.impl.NetworkImpl;
+import ca.nengo.model.impl.NoiseFactory;
+import ca.nengo.model.impl.RealOutputImpl;
+import ca.nengo.model.impl.SpikeOutputImpl;
 import ca.nengo.model.nef.NEFEnsemble;
 import ca.nengo.model.nef.NEFEnsembleFactory;
+import ca.nengo.model.neuron.Neuron;
 import ca.nengo.model.neuron.impl.SpikingNeuron;
 import ca.nengo.plot.Plotter;
 import ca.nengo.util.MU;
 import ca.nengo.util.Probe;
 import ca.nengo.util.TimeSeries;
+import ca.nengo.util.impl.ParallelLoop;
 import ca.nengo.util.impl.TimeSeriesImpl;
+import java.util.Arrays;
+
 import static org.junit.Assert.*;
 import org.junit.Test;
 
@@ -202,4 +216,177 @@ public class NEFEnsembleImplTest {
 			fail("Error creating per-node signal origin");
 	}
 
+	@Test
+	public void testPopulationEngine() throws StructuralException, SimulationException, CloneNotSupportedException {
+		NEFEnsembleFactoryImpl ef = new NEFEnsembleFactoryImpl();
+		NEFEnsembleImpl ensemble = (NEFEnsembleImpl)ef.make("test", 50, 2);
+		ensemble.addDecodedTermination("input", MU.I(2), .005f, false);
+		ensemble.addTermination("direct", MU.uniform(50, 1, 1f), .01f, false);
+
+		NEFEnsembleImpl engineEnsemble = ensemble.clone();
+		engineEnsemble.setUsePopulationEngine(true);
+		assertTrue(engineEnsemble.getUsePopulationEngine());
+
+		SimulationMode[] modes = new SimulationMode[]{SimulationMode.DEFAULT, SimulationMode.PRECISE};
+		for (SimulationMode mode : modes) {
+			ensemble.setMode(mode);
+			engineEnsemble.setMode(mode);
+			ensemble.reset(false);
+			engineEnsemble.reset(false);
+
+			float dt = .001f;
+			for (int step = 0; step < 200; step++) {
+				float time = step * dt;
+				InstantaneousOutput input = new RealOutputImpl(new float[]{(float)Math.sin(10*time), .5f}, Units.UNK, time);
+				InstantaneousOutput spikes = new SpikeOutputImpl(new boolean[]{step % 7 == 0}, Units.SPIKES, time);
+				ensemble.getTermination("input").setValues(input);
+				engineEnsemble.getTermination("input").setValues(input);
+				ensemble.getTermination("direct").setValues(spikes);
+				engineEnsemble.getTermination("direct").setValues(spikes);
+
+				ensemble.run(time, time + dt);
+				engineEnsemble.run(time, time + dt);
+
+				Node[] nodes = ensemble.getNodes();
+				Node[] engineNodes = engineEnsemble.getNodes();
+				for (int i = 0; i < nodes.length; i++) {
+					InstantaneousOutput expected = nodes[i].getOrigin(Neuron.AXON).getValues();
+					InstantaneousOutput actual = engineNodes[i].getOrigin(Neuron.AXON).getValues();
+					assertTrue(Arrays.equals(((SpikeOutput)expected).getValues(), ((SpikeOutput)actual).getValues()));
+					if (expected instanceof PreciseSpikeOutput) {
+						assertArrayEquals(((PreciseSpikeOutput)expected).getSpikeTimes(), ((PreciseSpikeOutput)actual).getSpikeTimes(), 0f);
+					}
+				}
+
+				float[] expectedX = ((RealOutput)ensemble.getOrigin(NEFEnsemble.X).getValues()).getValues();
+				float[] actualX = ((RealOutput)engineEnsemble.getOrigin(NEFEnsemble.X).getValues()).getValues();
+				assertArrayEquals(expectedX, actualX, 0f);
+			}
+		}
+		assertNotNull(engineEnsemble.getPopulationEngine());
+	}
+
+	@Test
+	public void testRadialInputs() throws StructuralException, SimulationException, CloneNotSupportedException {
+		NEFEnsembleFactoryImpl ef = new NEFEnsembleFactoryImpl();
+		NEFEnsembleImpl ensemble = (NEFEnsembleImpl)ef.make("test", 30, new float[]{2f, .5f});
+		ensemble.setMode(SimulationMode.RATE);
+		DecodedTermination input = (DecodedTermination) ensemble.addDecodedTermination("input", new float[][]{new float[]{1f}, new float[]{-.5f}}, .005f, false);
+		float[][] functionDecoders = MU.random(10, 1, new IndicatorPDF(-1f, 1f));
+		float[][] biasDecoders = MU.random(10, 1, new IndicatorPDF(.1f, 1f));
+		BiasTermination[] biasTerminations = ensemble.addBiasTerminations(input, .01f, biasDecoders, functionDecoders);
+		float[] biasEncoders = biasTerminations[0].getBiasEncoders();
+
+		//each node's radial input is found by hand and given to a copy of the node
+		Node[] nodes = ensemble.getNodes();
+		SpikingNeuron[] copies = new SpikingNeuron[nodes.length];
+		for (int i = 0; i < nodes.length; i++) {
+			copies[i] = (SpikingNeuron) nodes[i].clone();
+		}
+
+		float dt = .001f;
+		for (int step = 0; step < 50; step++) {
+			float time = step * dt;
+			input.setValues(new RealOutputImpl(new float[]{1.5f * (float)Math.sin(20*time)}, Units.UNK, time));
+			biasTerminations[0].setValues(new RealOutputImpl(new float[]{.8f}, Units.UNK, time));
+			biasTerminations[1].setValues(new RealOutputImpl(new float[]{.3f}, Units.UNK, time));
+			ensemble.run(time, time + dt);
+
+			float[] state = input.getOutput();
+			float bias = biasTerminations[0].getOutput()[0] + biasTerminations[1].getOutput()[0];
+			assertTrue(bias != 0);
+			for (int i = 0; i < nodes.length; i++) {
+				copies[i].setRadialInput(ensemble.getRadialInput(state, i) + bias * biasEncoders[i]);
+				copies[i].run(time, time + dt);
+				float expected = ((RealOutput) copies[i].getOrigin(Neuron.AXON).getValues()).getValues()[0];
+				float actual = ((RealOutput) nodes[i].getOrigin(Neuron.AXON).getValues()).getValues()[0];
+				assertEquals(expected, actual, 1e-3f);
+			}
+		}
+	}
+
+	@Test
+	public void testConstantOutputs() throws StructuralException, SimulationException {
+		NEFEnsembleFactoryImpl ef = new NEFEnsembleFactoryImpl();
+		NEFEnsembleImpl ensemble = (NEFEnsembleImpl)ef.make("test", 40, new float[]{2f, .5f});
+		float[][] evalPoints = MU.random(100, 2, new IndicatorPDF(-2f, 2f));
+
+		//LIF rates found in bulk match rates found by running each node
+		float[][] rates = ensemble.getConstantOutputs(evalPoints, Neuron.AXON);
+		for (int i = 0; i < rates.length; i++) {
+			assertArrayEquals(ensemble.getConstantOutput(i, evalPoints, Neuron.AXON), rates[i], 0f);
+		}
+
+		//other origins are found by running nodes in parallel
+		float[][] currents = ensemble.getConstantOutputs(evalPoints, SpikingNeuron.CURRENT);
+		for (int i = 0; i < currents.length; i++) {
+			assertArrayEquals(ensemble.getConstantOutput(i, evalPoints, SpikingNeuron.CURRENT), currents[i], 0f);
+		}
+
+		assertEquals(SimulationMode.DEFAULT, ensemble.getNodes()[0].getMode());
+	}
+
+	@Test
+	public void testConstantOutputsWithNoise() throws StructuralException, SimulationException, CloneNotSupportedException {
+		NEFEnsembleFactoryImpl ef = new NEFEnsembleFactoryImpl();
+		NEFEnsembleImpl ensemble = (NEFEnsembleImpl)ef.make("test", 40, 1);
+		for (Node node : ensemble.getNodes()) {
+			((SpikingNeuron) node).setNoise(NoiseFactory.makeRandomNoise(Float.POSITIVE_INFINITY, new IndicatorPDF(-.5f, .5f))); //new sample on every run
+		}
+		NEFEnsembleImpl copy = ensemble.clone();
+		float[][] evalPoints = MU.random(50, 1, new IndicatorPDF(-1f, 1f));
+
+		//noisy nodes draw the same samples, in the same order, as when run one at a time
+		int numThreads = ParallelLoop.getDefaultNumThreads();
+		ParallelLoop.setDefaultNumThreads(4);
+		try {
+			PDFTools.setSeed(7);
+			float[][] rates = ensemble.getConstantOutputs(evalPoints, Neuron.AXON);
+			PDFTools.setSeed(7);
+			for (int i = 0; i < rates.length; i++) {
+				assertArrayEquals(copy.getConstantOutput(i, evalPoints, Neuron.AXON), rates[i], 0f);
+			}
+		} finally {
+			ParallelLoop.setDefaultNumThreads(numThreads);
+		}
+	}
+
+	@Test
+	public void testSignalOutputs() throws StructuralException, SimulationException, CloneNotSupportedException {
+		NEFEnsembleFactoryImpl ef = new NEFEnsembleFactoryImpl();
+		NEFEnsembleImpl ensemble = (NEFEnsembleImpl)ef.make("test", 20, 1);
+
+		float dt = .001f;
+		TimeSeries[] evalSignals = new TimeSeries[2];
+		for (int j = 0; j < evalSignals.length; j++) {
+			float[] times = new float[200 + 100*j];
+			float[][] values = new float[times.length][];
+			for (int t = 0; t < times.length; t++) {
+				times[t] = t * dt;
+				values[t] = new float[]{(float) Math.sin((j+1) * 10 * times[t])};
+			}
+			evalSignals[j] = new TimeSeriesImpl(times, values, new Units[]{Units.UNK});
+		}
+
+		float[][][] outputs = ensemble.getSignalOutputs(evalSignals, Neuron.AXON);
+
+		//compare with each node run by hand over each signal
+		Node[] nodes = ensemble.getNodes();
+		for (int i = 0; i < nodes.length; i++) {
+			SpikingNeuron node = (SpikingNeuron) nodes[i].clone();
+			node.setMode(SimulationMode.RATE);
+			for (int j = 0; j < evalSignals.length; j++) {
+				node.reset(false);
+				float[] times = evalSignals[j].getTimes();
+				assertEquals(times.length, outputs[i][j].length);
+				for (int t = 0; t < times.length; t++) {
+					node.setRadialInput(ensemble.getRadialInput(evalSignals[j].getValues()[t], i));
+					node.run(times[t], times[t]+dt);
+					assertEquals(((RealOutput) node.getOrigin(Neuron.AXON).getValues()).getValues()[0], outputs[i][j][t], 0f);
+				}
+			}
+			assertEquals(SimulationMode.DEFAULT, nodes[i].getMode());
+		}
+	}
+
 }
@@ -1,6 +1,9 @@
 package ca.nengo.model.neuron.impl;
 
+import java.lang.management.ManagementFactory;
+
 import ca.nengo.model.InstantaneousOutput;
+import ca.nengo.model.PreciseSpikeOutput;
 import ca.nengo.model.RealOutput;
 import ca.nengo.model.SimulationException;
 import ca.nengo.model.SimulationMode;
@@ -8,10 +11,14 @@ import ca.nengo.model.SpikeOutput;
 import ca.nengo.model.StructuralException;
 import ca.nengo.model.Units;
 import ca.nengo.model.impl.RealOutputImpl;
+import ca.nengo.model.impl.SpikeOutputImpl;
 import ca.nengo.model.neuron.ExpandableSynapticIntegrator;
+import ca.nengo.model.neuron.Neuron;
 import ca.nengo.model.neuron.SpikeGenerator;
+import ca.nengo.util.TimeSeries;
 import org.apache.log4j.Logger;
 import static org.junit.Assert.*;
+import static org.junit.Assume.assumeTrue;
 import org.junit.Test;
 
 public class SpikingNeuronTest {
@@ -70,4 +77,94 @@ public class SpikingNeuronTest {
 		assertTrue(((RealOutput) output).getValues()[0] > 100);
 		ourLogger.info(((RealOutput) output).getValues()[0]);
 	}
+
+	@Test
+	public void testReuseBuffers() throws StructuralException, SimulationException {
+		for (SimulationMode mode : new SimulationMode[]{SimulationMode.DEFAULT, SimulationMode.PRECISE, SimulationMode.RATE}) {
+			SpikingNeuron neuron = makeNeuron();
+			SpikingNeuron reusing = makeNeuron();
+			reusing.setReuseBuffers(true);
+			assertTrue(((LinearSynapticIntegrator) reusing.getIntegrator()).getReuseBuffers());
+			assertTrue(((LIFSpikeGenerator) reusing.getGenerator()).getReuseBuffers());
+			neuron.setMode(mode);
+			reusing.setMode(mode);
+
+			InstantaneousOutput previous = null;
+			boolean previousSpike = false;
+			for (int i = 0; i < 500; i++) {
+				float time = i * .001f;
+				InstantaneousOutput input = new SpikeOutputImpl(new boolean[]{i % 3 == 0}, Units.SPIKES, time);
+				neuron.getTermination("test").setValues(input);
+				reusing.getTermination("test").setValues(input);
+				neuron.run(time, time + .001f);
+				reusing.run(time, time + .001f);
+
+				InstantaneousOutput expected = neuron.getOrigin(Neuron.AXON).getValues();
+				InstantaneousOutput actual = reusing.getOrigin(Neuron.AXON).getValues();
+				assertEquals(expected.getTime(), actual.getTime(), 0f);
+				if (expected instanceof RealOutput) {
+					assertEquals(((RealOutput) expected).getValues()[0], ((RealOutput) actual).getValues()[0], 0f);
+				} else {
+					assertEquals(((SpikeOutput) expected).getValues()[0], ((SpikeOutput) actual).getValues()[0]);
+				}
+				if (expected instanceof PreciseSpikeOutput) {
+					assertEquals(((PreciseSpikeOutput) expected).getSpikeTimes()[0], ((PreciseSpikeOutput) actual).getSpikeTimes()[0], 0f);
+				}
+				assertEquals(((RealOutput) neuron.getOrigin(SpikingNeuron.CURRENT).getValues()).getValues()[0],
+						((RealOutput) reusing.getOrigin(SpikingNeuron.CURRENT).getValues()).getValues()[0], 0f);
+
+				//output from the last step must still be intact for Terminations that received it
+				if (previous instanceof SpikeOutput) {
+					assertEquals(previousSpike, ((SpikeOutput) previous).getValues()[0]);
+				}
+				previous = actual;
+				previousSpike = (actual instanceof SpikeOutput) && ((SpikeOutput) actual).getValues()[0];
+			}
+
+			//probed history must not change with later steps
+			TimeSeries history = reusing.getHistory("I");
+			float value = history.getValues()[0][0];
+			reusing.run(.5f, .501f);
+			assertEquals(value, history.getValues()[0][0], 0f);
+		}
+	}
+
+	@Test
+	public void testReuseBuffersAllocation() throws StructuralException, SimulationException {
+		java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+		assumeTrue(bean instanceof com.sun.management.ThreadMXBean);
+		com.sun.management.ThreadMXBean threadBean = (com.sun.management.ThreadMXBean) bean;
+		assumeTrue(threadBean.isThreadAllocatedMemorySupported() && threadBean.isThreadAllocatedMemoryEnabled());
+		long threadID = Thread.currentThread().getId();
+
+		for (SimulationMode mode : new SimulationMode[]{SimulationMode.DEFAULT, SimulationMode.PRECISE}) {
+			SpikingNeuron neuron = makeNeuron();
+			neuron.setReuseBuffers(true);
+			neuron.setMode(mode);
+			SpikeOutputImpl input = new SpikeOutputImpl(new boolean[]{true}, Units.SPIKES, 0);
+			neuron.getTermination("test").setValues(input);
+
+			runSteps(neuron, 0, 20000); //warm up
+
+			long overhead = threadBean.getThreadAllocatedBytes(threadID);
+			long before = threadBean.getThreadAllocatedBytes(threadID);
+			overhead = before - overhead;
+			runSteps(neuron, 20000, 10000);
+			long allocated = threadBean.getThreadAllocatedBytes(threadID) - before - overhead;
+
+			assertEquals("Bytes allocated in " + mode + " mode", 0, allocated);
+		}
+	}
+
+	private static void runSteps(SpikingNeuron neuron, int start, int n) throws SimulationException {
+		for (int i = start; i < start + n; i++) {
+			neuron.run(i * .001f, (i+1) * .001f);
+		}
+	}
+
+	private static SpikingNeuron makeNeuron() throws StructuralException {
+		LinearSynapticIntegrator integrator = new LinearSynapticIntegrator(.0005f, Units.ACU);
+		integrator.addTermination("test", new float[]{.5f}, .005f, false);
+		return new SpikingNeuron(integrator, new LIFSpikeGenerator(.00025f, .02f, .002f), 2, 1.2f, "test");
+	}
 }
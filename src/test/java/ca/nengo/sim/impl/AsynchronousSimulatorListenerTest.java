@@ -0,0 +1,128 @@
+package ca.nengo.sim.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+import ca.nengo.sim.SimulatorEvent;
+import ca.nengo.sim.SimulatorListener;
+
+/**
+ * Unit tests for AsynchronousSimulatorListener.
+ */
+public class AsynchronousSimulatorListenerTest {
+
+	@Test
+	public void testBlock() {
+		RecordingListener recorder = new RecordingListener(0);
+		AsynchronousSimulatorListener listener = new AsynchronousSimulatorListener(recorder, 4,
+				AsynchronousSimulatorListener.Backpressure.BLOCK);
+
+		run(listener, 100);
+
+		assertEquals(102, recorder.getTypes().size());
+		assertEquals(SimulatorEvent.Type.STARTED, recorder.getTypes().get(0));
+		assertEquals(SimulatorEvent.Type.FINISHED, recorder.getTypes().get(101));
+		for (int i = 1; i <= 100; i++) {
+			assertEquals((i - 1) / 100f, recorder.getProgress().get(i).floatValue(), 1e-6f);
+		}
+		assertEquals(0, listener.getNumSkipped());
+		listener.close();
+	}
+
+	@Test
+	public void testDropAndCoalesce() {
+		for (AsynchronousSimulatorListener.Backpressure backpressure : new AsynchronousSimulatorListener.Backpressure[] {
+				AsynchronousSimulatorListener.Backpressure.DROP, AsynchronousSimulatorListener.Backpressure.COALESCE}) {
+			RecordingListener recorder = new RecordingListener(1);
+			AsynchronousSimulatorListener listener = new AsynchronousSimulatorListener(recorder, 2, backpressure);
+
+			run(listener, 100);
+
+			List<SimulatorEvent.Type> types = recorder.getTypes();
+			assertEquals(SimulatorEvent.Type.STARTED, types.get(0));
+			assertEquals(SimulatorEvent.Type.FINISHED, types.get(types.size() - 1));
+			assertTrue(listener.getNumSkipped() > 0);
+			assertEquals(102, types.size() + listener.getNumSkipped());
+
+			List<Float> progress = recorder.getProgress();
+			for (int i = 2; i < progress.size() - 1; i++) {
+				assertTrue(progress.get(i).floatValue() > progress.get(i - 1).floatValue());
+			}
+			if (backpressure == AsynchronousSimulatorListener.Backpressure.COALESCE) {
+				assertEquals(.99f, progress.get(progress.size() - 2).floatValue(), 1e-6f);
+			}
+			listener.close();
+		}
+	}
+
+	@Test
+	public void testInterrupt() {
+		SimulatorListener interrupter = new SimulatorListener() {
+			public void processEvent(SimulatorEvent event) {
+				if (event.getType() == SimulatorEvent.Type.STEP_TAKEN) {
+					event.setInterrupt(true);
+				}
+			}
+		};
+		AsynchronousSimulatorListener listener = new AsynchronousSimulatorListener(interrupter);
+
+		listener.processEvent(new SimulatorEvent(0, SimulatorEvent.Type.STARTED));
+		listener.processEvent(new SimulatorEvent(0, SimulatorEvent.Type.STEP_TAKEN));
+		SimulatorEvent finished = new SimulatorEvent(1, SimulatorEvent.Type.FINISHED);
+		listener.processEvent(finished);
+		assertTrue(finished.getInterrupt());
+
+		//cleared at the start of the next run
+		SimulatorEvent started = new SimulatorEvent(0, SimulatorEvent.Type.STARTED);
+		listener.processEvent(started);
+		assertTrue(!started.getInterrupt());
+		listener.close();
+	}
+
+	private static void run(SimulatorListener listener, int steps) {
+		listener.processEvent(new SimulatorEvent(0, SimulatorEvent.Type.STARTED));
+		SimulatorEvent event = new SimulatorEvent(0, SimulatorEvent.Type.STEP_TAKEN);
+		for (int i = 0; i < steps; i++) {
+			event.set(i / (float) steps, SimulatorEvent.Type.STEP_TAKEN);
+			listener.processEvent(event);
+		}
+		listener.processEvent(new SimulatorEvent(1, SimulatorEvent.Type.FINISHED));
+	}
+
+	private static class RecordingListener implements SimulatorListener {
+
+		private final long myDelay;
+		private final List<SimulatorEvent.Type> myTypes = new ArrayList<SimulatorEvent.Type>();
+		private final List<Float> myProgress = new ArrayList<Float>();
+
+		public RecordingListener(long delay) {
+			myDelay = delay;
+		}
+
+		public synchronized void processEvent(SimulatorEvent event) {
+			myTypes.add(event.getType());
+			myProgress.add(Float.valueOf(event.getProgress()));
+			if (myDelay > 0) {
+				try {
+					Thread.sleep(myDelay);
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+			}
+		}
+
+		public synchronized List<SimulatorEvent.Type> getTypes() {
+			return new ArrayList<SimulatorEvent.Type>(myTypes);
+		}
+
+		public synchronized List<Float> getProgress() {
+			return new ArrayList<Float>(myProgress);
+		}
+	}
+
+}
@@ -0,0 +1,77 @@
+package ca.nengo.sim.impl;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+import ca.nengo.math.Function;
+import ca.nengo.math.PDFTools;
+import ca.nengo.math.impl.ConstantFunction;
+import ca.nengo.model.Network;
+import ca.nengo.model.SimulationException;
+import ca.nengo.model.SimulationMode;
+import ca.nengo.model.StructuralException;
+import ca.nengo.model.nef.NEFEnsemble;
+import ca.nengo.model.nef.impl.DecodedOrigin;
+import ca.nengo.util.impl.NodeThreadPoolBenchmark;
+
+/**
+ * Unit tests for BatchSimulator.
+ */
+public class BatchSimulatorTest {
+
+	@Test
+	public void testSharedStructure() throws StructuralException {
+		Network prototype = NodeThreadPoolBenchmark.createNetwork(2, 20);
+		BatchSimulator batch = new BatchSimulator(prototype, 3);
+		assertEquals(3, batch.getNumInstances());
+
+		DecodedOrigin original = (DecodedOrigin) prototype.getNode("ensemble0").getOrigin(NEFEnsemble.X);
+		for (int i = 0; i < batch.getNumInstances(); i++) {
+			NEFEnsemble ensemble = (NEFEnsemble) batch.getInstance(i).getNode("ensemble0");
+			assertNotSame(prototype.getNode("ensemble0"), ensemble);
+			assertSame(original.getDecoders(), ((DecodedOrigin) ensemble.getOrigin(NEFEnsemble.X)).getDecoders());
+		}
+	}
+
+	@Test
+	public void testRun() throws StructuralException, SimulationException {
+		PDFTools.setSeed(1);
+		Network prototype = NodeThreadPoolBenchmark.createNetwork(2, 20);
+		prototype.setMode(SimulationMode.RATE);
+		prototype.getSimulator().addProbe("ensemble1", NEFEnsemble.X, true);
+
+		BatchSimulator batch = new BatchSimulator(prototype, 4);
+		batch.setNumThreads(2);
+		batch.setInput(3, "input", new Function[]{new ConstantFunction(1, -.5f)});
+		batch.reset(false);
+		batch.run(0, .1f, .001f);
+
+		assertEquals(400, batch.getLastRunSteps());
+		assertTrue(batch.getStepsPerSecond() > 0);
+
+		float[][] first = batch.getProbes(0)[0].getData().getValues();
+		assertEquals(100, first.length);
+		for (int i = 1; i < 3; i++) {
+			float[][] values = batch.getProbes(i)[0].getData().getValues();
+			for (int j = 0; j < first.length; j++) {
+				assertArrayEquals(first[j], values[j], 0f);
+			}
+		}
+
+		//the instance with the negated input ends up on the other side
+		float[][] negated = batch.getProbes(3)[0].getData().getValues();
+		assertTrue(getMean(first, 50) > .25);
+		assertTrue(getMean(negated, 50) < -.25);
+	}
+
+	//mean of the first dimension over the last n samples (after the PSCs have settled)
+	private static float getMean(float[][] values, int n) {
+		float sum = 0;
+		for (int j = values.length - n; j < values.length; j++) {
+			sum += values[j][0];
+		}
+		return sum / n;
+	}
+
+}
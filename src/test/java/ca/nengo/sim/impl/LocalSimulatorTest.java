@@ -0,0 +1,179 @@
+package ca.nengo.sim.impl;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+import ca.nengo.math.Function;
+import ca.nengo.math.impl.SineFunction;
+import ca.nengo.model.Network;
+import ca.nengo.model.SimulationException;
+import ca.nengo.model.StructuralException;
+import ca.nengo.model.Termination;
+import ca.nengo.model.Units;
+import ca.nengo.model.impl.FunctionInput;
+import ca.nengo.model.impl.NetworkImpl;
+import ca.nengo.model.nef.NEFEnsemble;
+import ca.nengo.model.nef.impl.NEFEnsembleFactoryImpl;
+import ca.nengo.sim.SimulatorEvent;
+import ca.nengo.sim.SimulatorListener;
+import ca.nengo.util.Probe;
+import ca.nengo.util.impl.NodeThreadPool;
+import ca.nengo.util.impl.NodeThreadPoolBenchmark;
+
+/**
+ * Unit tests for LocalSimulator.
+ */
+public class LocalSimulatorTest {
+
+	@Test
+	public void testKeepThreadPool() throws StructuralException, SimulationException {
+		Network network = NodeThreadPoolBenchmark.createNetwork(3, 20);
+		LocalSimulator simulator = (LocalSimulator) network.getSimulator();
+		int threads = NodeThreadPool.getNumJavaThreads();
+
+		try {
+			NodeThreadPool.setNumJavaThreads(2);
+			simulator.setKeepThreadPool(true);
+
+			simulator.run(0, .01f, .001f);
+			NodeThreadPool pool = simulator.getNodeThreadPool();
+			assertNotNull(pool);
+
+			//reused while nothing changes
+			simulator.run(.01f, .02f, .001f);
+			assertSame(pool, simulator.getNodeThreadPool());
+			simulator.runStep(.02f, .021f);
+			assertSame(pool, simulator.getNodeThreadPool());
+
+			//rebuilt after probes, the network or settings change
+			Probe probe = simulator.addProbe("ensemble2", NEFEnsemble.X, true);
+			simulator.runStep(.021f, .022f);
+			assertNotSame(pool, simulator.getNodeThreadPool());
+			assertTrue(pool.getRunFinished());
+			assertTrue(probe.getData().getTimes().length > 0);
+
+			pool = simulator.getNodeThreadPool();
+			network.addNode(new NEFEnsembleFactoryImpl().make("extra", 10, 1));
+			simulator.runStep(.022f, .023f);
+			assertNotSame(pool, simulator.getNodeThreadPool());
+
+			pool = simulator.getNodeThreadPool();
+			NodeThreadPool.setNumJavaThreads(3);
+			simulator.runStep(.023f, .024f);
+			assertNotSame(pool, simulator.getNodeThreadPool());
+
+			pool = simulator.getNodeThreadPool();
+			simulator.releaseThreadPool();
+			assertNull(simulator.getNodeThreadPool());
+			assertTrue(pool.getRunFinished());
+		} finally {
+			simulator.setKeepThreadPool(false);
+			NodeThreadPool.setNumJavaThreads(threads);
+		}
+	}
+
+	@Test
+	public void testDefaultThreadPool() throws StructuralException, SimulationException {
+		Network network = NodeThreadPoolBenchmark.createNetwork(2, 20);
+		LocalSimulator simulator = (LocalSimulator) network.getSimulator();
+		int threads = NodeThreadPool.getNumJavaThreads();
+
+		try {
+			NodeThreadPool.setNumJavaThreads(2);
+			simulator.run(0, .01f, .001f);
+			assertNull(simulator.getNodeThreadPool());
+		} finally {
+			NodeThreadPool.setNumJavaThreads(threads);
+		}
+	}
+
+	@Test
+	public void testFlatPlan() throws StructuralException, SimulationException {
+		//input -> inner (in a subnetwork of a subnetwork) -> outer
+		NetworkImpl network = new NetworkImpl();
+		FunctionInput input = new FunctionInput("input", new Function[]{new SineFunction(10)}, Units.UNK);
+		network.addNode(input);
+
+		NetworkImpl middle = new NetworkImpl();
+		middle.setName("middle");
+		NetworkImpl deep = new NetworkImpl();
+		deep.setName("deep");
+		NEFEnsemble inner = new NEFEnsembleFactoryImpl().make("inner", 30, 1);
+		deep.addNode(inner);
+		deep.exposeTermination(inner.addDecodedTermination("input", new float[][]{new float[]{1}}, .005f, false), "input");
+		deep.exposeOrigin(inner.getOrigin(NEFEnsemble.X), "X");
+		middle.addNode(deep);
+		middle.exposeTermination(deep.getTermination("input"), "input");
+		middle.exposeOrigin(deep.getOrigin("X"), "X");
+		network.addNode(middle);
+
+		NEFEnsemble outer = new NEFEnsembleFactoryImpl().make("outer", 30, 1);
+		network.addNode(outer);
+		Termination termination = outer.addDecodedTermination("input", new float[][]{new float[]{1}}, .005f, false);
+		network.addProjection(input.getOrigin(FunctionInput.ORIGIN_NAME), middle.getTermination("input"));
+		network.addProjection(middle.getOrigin("X"), termination);
+
+		Probe innerProbe = deep.getSimulator().addProbe("inner", NEFEnsemble.X, true);
+		Probe outerProbe = network.getSimulator().addProbe("outer", NEFEnsemble.X, true);
+		int threads = NodeThreadPool.getNumJavaThreads();
+
+		try {
+			NodeThreadPool.turnOffMultithreading();
+			network.getSimulator().resetNetwork(false, false);
+			network.getSimulator().run(0, .1f, .001f);
+			float[][] innerFlat = innerProbe.getData().getValues();
+			float[][] outerFlat = outerProbe.getData().getValues();
+			assertEquals(100, innerFlat.length);
+
+			//a listener on a subnetwork's simulator makes it run the subnetwork itself
+			deep.getSimulator().addSimulatorListener(new SimulatorListener() {
+				public void processEvent(SimulatorEvent event) {
+				}
+			});
+			network.getSimulator().resetNetwork(false, false);
+			network.getSimulator().run(0, .1f, .001f);
+			float[][] innerNested = innerProbe.getData().getValues();
+			float[][] outerNested = outerProbe.getData().getValues();
+
+			assertEquals(innerNested.length, innerFlat.length);
+			for (int i = 0; i < innerFlat.length; i++) {
+				assertArrayEquals(innerNested[i], innerFlat[i], 0f);
+				assertArrayEquals(outerNested[i], outerFlat[i], 0f);
+			}
+		} finally {
+			NodeThreadPool.setNumJavaThreads(threads);
+		}
+	}
+
+	@Test
+	public void testFlatPlanProbeAdded() throws StructuralException, SimulationException {
+		//the plan's probes are kept between steps, but a probe added to a subnetwork must be picked up
+		NetworkImpl network = new NetworkImpl();
+		NetworkImpl sub = new NetworkImpl();
+		sub.setName("sub");
+		sub.addNode(new NEFEnsembleFactoryImpl().make("inner", 30, 1));
+		network.addNode(sub);
+		network.addNode(new NEFEnsembleFactoryImpl().make("outer", 30, 1));
+		Probe outerProbe = network.getSimulator().addProbe("outer", NEFEnsemble.X, true);
+		int threads = NodeThreadPool.getNumJavaThreads();
+
+		try {
+			NodeThreadPool.turnOffMultithreading();
+			LocalSimulator simulator = (LocalSimulator) network.getSimulator();
+			for (int i = 0; i < 3; i++) {
+				simulator.runStep(i * .001f, (i+1) * .001f);
+			}
+			Probe innerProbe = sub.getSimulator().addProbe("inner", NEFEnsemble.X, true);
+			for (int i = 3; i < 5; i++) {
+				simulator.runStep(i * .001f, (i+1) * .001f);
+			}
+
+			assertEquals(5, outerProbe.getData().getValues().length);
+			assertEquals(2, innerProbe.getData().getValues().length);
+		} finally {
+			NodeThreadPool.setNumJavaThreads(threads);
+		}
+	}
+
+}
@@ -0,0 +1,83 @@
+package ca.nengo.util.impl;
+
+import ca.nengo.model.Network;
+import ca.nengo.model.Node;
+import ca.nengo.model.Projection;
+import ca.nengo.model.SimulationException;
+import ca.nengo.model.StructuralException;
+import ca.nengo.model.Termination;
+import ca.nengo.model.nef.NEFEnsemble;
+import ca.nengo.util.Probe;
+import ca.nengo.util.ThreadTask;
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+public class DataflowStepExecutorTest {
+
+	@Test
+	public void testDependencies() throws StructuralException {
+		Network network = NodeThreadPoolBenchmark.createNetwork(2, 10);
+		Node[] nodes = network.getNodes(); //input, ensemble0, ensemble1
+		Projection[] projections = network.getProjections(); //input -> ensemble0, ensemble0 -> ensemble1
+		DataflowStepExecutor executor = new DataflowStepExecutor(nodes, projections, new ThreadTask[0]);
+
+		//each projection waits for the nodes it reads from and writes to
+		assertEquals(2, executor.getDependents(0).length);
+		assertEquals(2, executor.getDependents(1).length);
+		int ensemble0 = projections.length + indexOf(nodes, "ensemble0");
+		assertTrue(contains(executor.getDependents(0), ensemble0));
+		assertTrue(contains(executor.getDependents(1), ensemble0));
+	}
+
+	@Test
+	public void testSimulation() throws StructuralException, SimulationException {
+		Network network = NodeThreadPoolBenchmark.createNetwork(4, 30);
+		NEFEnsemble ensemble = (NEFEnsemble) network.getNode("ensemble1");
+		Termination recurrent = ensemble.addDecodedTermination("recurrent", new float[][]{new float[]{.5f}}, .05f, false);
+		network.addProjection(ensemble.getOrigin(NEFEnsemble.X), recurrent);
+
+		boolean dataflow = NodeThreadPool.isUsingDataflow();
+		int threads = NodeThreadPool.getNumJavaThreads();
+
+		try {
+			NodeThreadPool.turnOffMultithreading();
+			Probe probe = network.getSimulator().addProbe("ensemble3", NEFEnsemble.X, true);
+			network.getSimulator().resetNetwork(false, false);
+			network.getSimulator().run(0, .2f, .001f);
+			float[][] expected = probe.getData().getValues();
+
+			NodeThreadPool.setNumJavaThreads(4);
+			NodeThreadPool.setUseDataflow(true);
+			network.getSimulator().resetNetwork(false, false);
+			network.getSimulator().run(0, .2f, .001f);
+			float[][] actual = probe.getData().getValues();
+
+			assertEquals(expected.length, actual.length);
+			for (int i = 0; i < expected.length; i++) {
+				assertArrayEquals(expected[i], actual[i], 0f);
+			}
+		} finally {
+			NodeThreadPool.setUseDataflow(dataflow);
+			NodeThreadPool.setNumJavaThreads(threads);
+		}
+	}
+
+	private static int indexOf(Node[] nodes, String name) {
+		for (int i = 0; i < nodes.length; i++) {
+			if (nodes[i].getName().equals(name)) {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	private static boolean contains(int[] values, int value) {
+		for (int v : values) {
+			if (v == value) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+}
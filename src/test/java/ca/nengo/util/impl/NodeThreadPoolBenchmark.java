@@ -0,0 +1,155 @@
+package ca.nengo.util.impl;
+
+import ca.nengo.math.Function;
+import ca.nengo.math.impl.ConstantFunction;
+import ca.nengo.model.Network;
+import ca.nengo.model.SimulationException;
+import ca.nengo.model.StructuralException;
+import ca.nengo.model.Termination;
+import ca.nengo.model.Units;
+import ca.nengo.model.impl.FunctionInput;
+import ca.nengo.model.impl.NetworkImpl;
+import ca.nengo.model.nef.NEFEnsemble;
+import ca.nengo.model.nef.NEFEnsembleFactory;
+import ca.nengo.model.nef.impl.NEFEnsembleFactoryImpl;
+
+/**
+ * Measures simulation step rates with and without the NodeThreadPool, for small networks
+ * (fewer than 1000 neurons) in which synchronization between phases is a large part of
+ * the cost of each step, for unbalanced networks in which a static partition of nodes
+ * leaves threads idle, and for large chains in which connected nodes may run on different threads. Not a unit test; run main() by hand.
+ */
+public class NodeThreadPoolBenchmark {
+
+	private static final float ourStepSize = .001f;
+	private static final int ourRepeats = 3;
+
+	/**
+	 * @param numEnsembles Number of ensembles, connected in a chain
+	 * @param neuronsPerEnsemble Number of neurons in each ensemble
+	 * @return A chain of ensembles driven by a constant input
+	 */
+	public static Network createNetwork(int numEnsembles, int neuronsPerEnsemble) throws StructuralException {
+		Network network = new NetworkImpl();
+		FunctionInput input = new FunctionInput("input", new Function[]{new ConstantFunction(1, .5f)}, Units.UNK);
+		network.addNode(input);
+
+		NEFEnsembleFactory ef = new NEFEnsembleFactoryImpl();
+		NEFEnsemble previous = null;
+		for (int i = 0; i < numEnsembles; i++) {
+			NEFEnsemble ensemble = ef.make("ensemble" + i, neuronsPerEnsemble, 1);
+			network.addNode(ensemble);
+			Termination termination = ensemble.addDecodedTermination("input", new float[][]{new float[]{1}}, .005f, false);
+			if (previous == null) {
+				network.addProjection(input.getOrigin(FunctionInput.ORIGIN_NAME), termination);
+			} else {
+				network.addProjection(previous.getOrigin(NEFEnsemble.X), termination);
+			}
+			previous = ensemble;
+		}
+		return network;
+	}
+
+	/**
+	 * @param numSmall Number of small ensembles, connected in a chain
+	 * @param smallNeurons Number of neurons in each small ensemble
+	 * @param bigNeurons Number of neurons in a single large ensemble driven by the same input
+	 * @return A chain of small ensembles alongside one large ensemble
+	 */
+	public static Network createUnbalancedNetwork(int numSmall, int smallNeurons, int bigNeurons) throws StructuralException {
+		Network network = createNetwork(numSmall, smallNeurons);
+		NEFEnsemble big = new NEFEnsembleFactoryImpl().make("big", bigNeurons, 1);
+		network.addNode(big);
+		Termination termination = big.addDecodedTermination("input", new float[][]{new float[]{1}}, .005f, false);
+		network.addProjection(network.getNode("input").getOrigin(FunctionInput.ORIGIN_NAME), termination);
+		return network;
+	}
+
+	/**
+	 * @return Simulation steps per second of wall-clock time (best of several runs)
+	 */
+	private static double stepsPerSecond(Network network, int numThreads, float simTime) throws SimulationException {
+		if (numThreads == 0) {
+			NodeThreadPool.turnOffMultithreading();
+		} else {
+			NodeThreadPool.setNumJavaThreads(numThreads);
+		}
+
+		network.getSimulator().run(0, simTime / 4, ourStepSize); //warm up
+
+		double best = 0;
+		for (int i = 0; i < ourRepeats; i++) {
+			network.reset(false);
+			long start = System.nanoTime();
+			network.getSimulator().run(0, simTime, ourStepSize);
+			double seconds = (System.nanoTime() - start) / 1e9;
+			best = Math.max(best, simTime / ourStepSize / seconds);
+		}
+		return best;
+	}
+
+	public static void main(String[] args) {
+		int[][] sizes = new int[][]{{2, 50}, {4, 50}, {8, 50}, {8, 100}};
+		int[] threads = new int[]{0, 2, 4, 8};
+		float simTime = 1f;
+
+		try {
+			for (int[] size : sizes) {
+				Network network = createNetwork(size[0], size[1]);
+				StringBuffer line = new StringBuffer(size[0] * size[1] + " neurons (" + size[0] + " ensembles):");
+				for (int numThreads : threads) {
+					line.append(String.format("  %d threads %.0f steps/s", numThreads, stepsPerSecond(network, numThreads, simTime)));
+				}
+				System.out.println(line);
+			}
+
+			//static partition vs. cost-weighted work stealing on an unbalanced network
+			Network network = createUnbalancedNetwork(16, 50, 2000);
+			for (boolean stealing : new boolean[]{false, true}) {
+				NodeThreadPool.setUseWorkStealing(stealing);
+				StringBuffer line = new StringBuffer("2800 neurons (1 large, 16 small ensembles), "
+						+ (stealing ? "work stealing:" : "static partition:"));
+				for (int numThreads : new int[]{2, 4, 8}) {
+					line.append(String.format("  %d threads %.0f steps/s", numThreads, stepsPerSecond(network, numThreads, simTime)));
+				}
+				System.out.println(line);
+			}
+			NodeThreadPool.setUseWorkStealing(false);
+
+			//array order vs. KL partitioning on a large chain of ensembles
+			network = createNetwork(32, 200);
+			for (boolean locality : new boolean[]{false, true}) {
+				NodeThreadPool.setUseLocalityPartitioning(locality);
+				StringBuffer line = new StringBuffer("6400 neurons (32 ensembles), "
+						+ (locality ? "KL partition:" : "array order:"));
+				for (int numThreads : new int[]{2, 4, 8}) {
+					line.append(String.format("  %d threads %.0f steps/s", numThreads, stepsPerSecond(network, numThreads, simTime)));
+				}
+				System.out.println(line);
+			}
+			NodeThreadPool.setUseLocalityPartitioning(false);
+
+			//phased vs. dataflow steps on the unbalanced network
+			network = createUnbalancedNetwork(16, 50, 2000);
+			for (boolean dataflow : new boolean[]{false, true}) {
+				NodeThreadPool.setUseDataflow(dataflow);
+				StringBuffer line = new StringBuffer("2800 neurons (1 large, 16 small ensembles), "
+						+ (dataflow ? "dataflow:" : "phased:"));
+				for (int numThreads : new int[]{2, 4, 8}) {
+					line.append(String.format("  %d threads %.0f steps/s", numThreads, stepsPerSecond(network, numThreads, simTime)));
+				}
+				System.out.println(line);
+			}
+		} catch (StructuralException e) {
+			e.printStackTrace();
+		} catch (SimulationException e) {
+			e.printStackTrace();
+		}
+
+		NodeThreadPool.setUseWorkStealing(false);
+		NodeThreadPool.setUseLocalityPartitioning(false);
+		NodeThreadPool.setUseDataflow(false);
+		NodeThreadPool.setNumJavaThreads(NodeThreadPool.defaultNumJavaThreads);
+	}
+
+}
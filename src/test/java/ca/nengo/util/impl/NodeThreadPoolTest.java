@@ -0,0 +1,86 @@
+package ca.nengo.util.impl;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import ca.nengo.model.Network;
+import ca.nengo.model.Node;
+import ca.nengo.model.Projection;
+import ca.nengo.model.SimulationException;
+import ca.nengo.model.StructuralException;
+import ca.nengo.model.nef.NEFEnsemble;
+import ca.nengo.util.Probe;
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+public class NodeThreadPoolTest {
+
+	@Test
+	public void testLocalityPartitioning() throws StructuralException, SimulationException {
+		Network network = NodeThreadPoolBenchmark.createNetwork(6, 30);
+		boolean locality = NodeThreadPool.isUsingLocalityPartitioning();
+		int threads = NodeThreadPool.getNumJavaThreads();
+
+		try {
+			NodeThreadPool.turnOffMultithreading();
+			Probe probe = network.getSimulator().addProbe("ensemble5", NEFEnsemble.X, true);
+			network.getSimulator().resetNetwork(false, false);
+			network.getSimulator().run(0, .2f, .001f);
+			float[][] expected = probe.getData().getValues();
+
+			NodeThreadPool.setNumJavaThreads(3);
+			NodeThreadPool.setUseLocalityPartitioning(true);
+			network.getSimulator().resetNetwork(false, false);
+			network.getSimulator().run(0, .2f, .001f);
+			float[][] actual = probe.getData().getValues();
+
+			assertEquals(expected.length, actual.length);
+			for (int i = 0; i < expected.length; i++) {
+				assertArrayEquals(expected[i], actual[i], 0f);
+			}
+		} finally {
+			NodeThreadPool.setUseLocalityPartitioning(locality);
+			NodeThreadPool.setNumJavaThreads(threads);
+		}
+	}
+
+
+	@Test
+	public void testLocalityAssignment() throws StructuralException {
+		Network network = NodeThreadPoolBenchmark.createNetwork(6, 30);
+		int numThreads = 3;
+
+		NodeThreadPool pool = new NodeThreadPool();
+		pool.myNodes = NodeThreadPool.collectNodes(network.getNodes(), true).toArray(new Node[0]);
+		pool.myProjections = NodeThreadPool.collectProjections(network.getNodes(), network.getProjections()).toArray(new Projection[0]);
+		pool.myCurrentNumJavaThreads = numThreads;
+		int[] nodeStarts = new int[numThreads + 1];
+		int[] projectionStarts = new int[numThreads + 1];
+		pool.partitionByLocality(nodeStarts, projectionStarts);
+
+		assertEquals(network.getNodes().length, nodeStarts[numThreads]);
+		assertEquals(network.getProjections().length, projectionStarts[numThreads]);
+		Map<Node, Integer> threadOfNode = new HashMap<Node, Integer>();
+		for (int t = 0; t < numThreads; t++) {
+			assertTrue(nodeStarts[t+1] > nodeStarts[t]);
+			for (int i = nodeStarts[t]; i < nodeStarts[t+1]; i++) {
+				threadOfNode.put(pool.myNodes[i], Integer.valueOf(t));
+			}
+		}
+		assertEquals(network.getNodes().length, threadOfNode.size());
+
+		//each projection runs on the thread of the node it terminates on, and the chain is cut only
+		//between threads (ie each thread has a connected segment of the chain)
+		int cuts = 0;
+		for (int t = 0; t < numThreads; t++) {
+			for (int i = projectionStarts[t]; i < projectionStarts[t+1]; i++) {
+				Projection projection = pool.myProjections[i];
+				assertEquals(Integer.valueOf(t), threadOfNode.get(projection.getTermination().getNode()));
+				if (!threadOfNode.get(projection.getOrigin().getNode()).equals(Integer.valueOf(t))) {
+					cuts++;
+				}
+			}
+		}
+		assertEquals(numThreads - 1, cuts);
+	}
+}
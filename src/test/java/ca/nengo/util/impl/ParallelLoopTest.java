@@ -0,0 +1,87 @@
+package ca.nengo.util.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+import org.junit.Test;
+
+import ca.nengo.math.PDFTools;
+
+/**
+ * Unit tests for ParallelLoop.
+ */
+public class ParallelLoopTest {
+
+	@Test
+	public void testRun() {
+		final AtomicIntegerArray counts = new AtomicIntegerArray(1000);
+		ParallelLoop.run(counts.length(), 4, new ParallelLoop.Body() {
+			public void run(int index) {
+				counts.incrementAndGet(index);
+			}
+		});
+		for (int i = 0; i < counts.length(); i++) {
+			assertEquals(1, counts.get(i));
+		}
+	}
+
+	@Test
+	public void testNested() {
+		final AtomicIntegerArray counts = new AtomicIntegerArray(100);
+		ParallelLoop.run(10, 4, new ParallelLoop.Body() {
+			public void run(final int outer) {
+				ParallelLoop.run(10, 4, new ParallelLoop.Body() {
+					public void run(int inner) {
+						counts.incrementAndGet(outer * 10 + inner);
+					}
+				});
+			}
+		});
+		for (int i = 0; i < counts.length(); i++) {
+			assertEquals(1, counts.get(i));
+		}
+	}
+
+	@Test
+	public void testThreadRandom() {
+		final Thread caller = Thread.currentThread();
+		final AtomicIntegerArray order = new AtomicIntegerArray(100);
+		final AtomicInteger next = new AtomicInteger(0);
+		PDFTools.setThreadRandom(new Random(1));
+		try {
+			ParallelLoop.run(order.length(), 4, new ParallelLoop.Body() {
+				public void run(int index) {
+					assertSame(caller, Thread.currentThread());
+					order.set(next.getAndIncrement(), index);
+				}
+			});
+		} finally {
+			PDFTools.setThreadRandom(null);
+		}
+		for (int i = 0; i < order.length(); i++) {
+			assertEquals(i, order.get(i));
+		}
+	}
+
+	@Test
+	public void testException() {
+		try {
+			ParallelLoop.run(100, 4, new ParallelLoop.Body() {
+				public void run(int index) {
+					if (index == 50) {
+						throw new IllegalStateException("test");
+					}
+				}
+			});
+			fail("Exception should have been rethrown");
+		} catch (IllegalStateException e) {
+			assertEquals("test", e.getMessage());
+		}
+	}
+
+}
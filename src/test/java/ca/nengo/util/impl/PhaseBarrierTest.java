@@ -0,0 +1,86 @@
+package ca.nengo.util.impl;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+public class PhaseBarrierTest {
+
+	@Test
+	public void testPhases() throws InterruptedException {
+		final int parties = 4;
+		final int phases = 2000;
+		final PhaseBarrier barrier = new PhaseBarrier(parties);
+		final int[] counts = new int[phases]; //written by parties, read by the coordinator between phases
+		final AtomicInteger current = new AtomicInteger(-1);
+		final AtomicReference<String> error = new AtomicReference<String>();
+
+		Thread[] threads = new Thread[parties];
+		for (int i = 0; i < parties; i++) {
+			threads[i] = new Thread() {
+				public void run() {
+					try {
+						barrier.awaitPhase();
+						for (int phase = 0; phase < phases; phase++) {
+							if (current.get() != phase) {
+								error.set("Party ran phase " + phase + " during phase " + current.get());
+							}
+							synchronized (counts) {
+								counts[phase]++;
+							}
+							barrier.arriveAndAwaitNext();
+						}
+					} catch (InterruptedException e) {
+						//cancelled at the end of the test
+					}
+				}
+			};
+			threads[i].start();
+		}
+
+		for (int phase = 0; phase < phases; phase++) {
+			current.set(phase);
+			barrier.runPhase();
+			synchronized (counts) {
+				assertEquals(parties, counts[phase]);
+			}
+		}
+		assertNull(error.get(), error.get());
+
+		barrier.cancel();
+		for (Thread thread : threads) {
+			thread.join(10000);
+			assertFalse(thread.isAlive());
+		}
+	}
+
+	@Test
+	public void testCancel() throws InterruptedException {
+		final PhaseBarrier barrier = new PhaseBarrier(2);
+		final AtomicInteger interrupted = new AtomicInteger(0);
+
+		Thread waiting = new Thread() {
+			public void run() {
+				try {
+					barrier.awaitPhase();
+				} catch (InterruptedException e) {
+					interrupted.incrementAndGet();
+				}
+			}
+		};
+		waiting.start();
+
+		barrier.cancel();
+		waiting.join(10000);
+		assertEquals(1, interrupted.get());
+		assertTrue(barrier.isCancelled());
+
+		try {
+			barrier.runPhase();
+			fail("Should not run a phase after cancel()");
+		} catch (InterruptedException e) {} //exception is expected
+	}
+
+}
@@ -0,0 +1,130 @@
+package ca.nengo.util.impl;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import ca.nengo.math.Function;
+import ca.nengo.math.impl.AbstractFunction;
+import ca.nengo.model.Network;
+import ca.nengo.model.Node;
+import ca.nengo.model.SimulationException;
+import ca.nengo.model.StructuralException;
+import ca.nengo.model.Units;
+import ca.nengo.model.impl.FunctionInput;
+import ca.nengo.model.nef.NEFEnsemble;
+import ca.nengo.model.nef.impl.NEFEnsembleFactoryImpl;
+import ca.nengo.util.Probe;
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+public class WorkStealingNodeSchedulerTest {
+
+	@Test
+	public void testAssignment() throws StructuralException {
+		Node[] nodes = new Node[11];
+		nodes[0] = new NEFEnsembleFactoryImpl().make("big", 200, 2);
+		for (int i = 1; i < nodes.length; i++) {
+			nodes[i] = makeInput("input" + i, new AtomicInteger());
+		}
+		assertEquals(400, WorkStealingNodeScheduler.estimateCost(nodes[0]), 0);
+		assertEquals(1, WorkStealingNodeScheduler.estimateCost(nodes[1]), 0);
+
+		WorkStealingNodeScheduler scheduler = new WorkStealingNodeScheduler(nodes, 2);
+		int[] first = scheduler.getAssignment(0);
+		int[] second = scheduler.getAssignment(1);
+		assertEquals(11, first.length + second.length);
+
+		//the big ensemble gets a thread to itself
+		int[] big = (first[0] == 0) ? first : second;
+		assertEquals(1, big.length);
+		assertEquals(0, big[0]);
+	}
+
+	@Test
+	public void testRunNodes() throws InterruptedException, StructuralException {
+		final int numNodes = 50;
+		final int numThreads = 4;
+		final int numSteps = 300;
+
+		final AtomicInteger[] counts = new AtomicInteger[numNodes];
+		Node[] nodes = new Node[numNodes];
+		for (int i = 0; i < numNodes; i++) {
+			counts[i] = new AtomicInteger();
+			nodes[i] = makeInput("input" + i, counts[i]);
+		}
+		final WorkStealingNodeScheduler scheduler = new WorkStealingNodeScheduler(nodes, numThreads);
+		int initialCount = counts[0].get(); //FunctionInput runs its functions once on construction
+
+		for (int step = 0; step < numSteps; step++) {
+			scheduler.startStep();
+			Thread[] threads = new Thread[numThreads];
+			for (int t = 0; t < numThreads; t++) {
+				final int index = t;
+				threads[t] = new Thread() {
+					public void run() {
+						try {
+							scheduler.runNodes(index, 0, .001f);
+						} catch (SimulationException e) {
+							throw new RuntimeException(e);
+						}
+					}
+				};
+				threads[t].start();
+			}
+			for (Thread thread : threads) {
+				thread.join();
+			}
+
+			for (int i = 0; i < numNodes; i++) {
+				assertEquals("Node " + i + " at step " + step, initialCount + step + 1, counts[i].get());
+			}
+		}
+
+		//costs are measured after enough steps
+		double[] costs = scheduler.getCosts();
+		for (int i = 0; i < numNodes; i++) {
+			assertTrue(costs[i] != 1);
+		}
+	}
+
+	@Test
+	public void testSimulation() throws StructuralException, SimulationException {
+		Network network = NodeThreadPoolBenchmark.createUnbalancedNetwork(3, 20, 100);
+		boolean stealing = NodeThreadPool.isUsingWorkStealing();
+		int threads = NodeThreadPool.getNumJavaThreads();
+
+		try {
+			NodeThreadPool.turnOffMultithreading();
+			Probe probe = network.getSimulator().addProbe("ensemble2", NEFEnsemble.X, true);
+			network.getSimulator().resetNetwork(false, false);
+			network.getSimulator().run(0, .2f, .001f);
+			float[][] expected = probe.getData().getValues();
+
+			NodeThreadPool.setNumJavaThreads(4);
+			NodeThreadPool.setUseWorkStealing(true);
+			network.getSimulator().resetNetwork(false, false);
+			network.getSimulator().run(0, .2f, .001f);
+			float[][] actual = probe.getData().getValues();
+
+			assertEquals(expected.length, actual.length);
+			for (int i = 0; i < expected.length; i++) {
+				assertArrayEquals(expected[i], actual[i], 0f);
+			}
+		} finally {
+			NodeThreadPool.setUseWorkStealing(stealing);
+			NodeThreadPool.setNumJavaThreads(threads);
+		}
+	}
+
+	private static FunctionInput makeInput(String name, final AtomicInteger count) throws StructuralException {
+		Function f = new AbstractFunction(1) {
+			private static final long serialVersionUID = 1L;
+			@Override
+			public float map(float[] from) {
+				count.incrementAndGet();
+				return from[0];
+			}
+		};
+		return new FunctionInput(name, new Function[]{f}, Units.UNK);
+	}
+
+}